@@ -75,6 +75,21 @@ package com.upokecenter.html;
       }
     }
 
+    void AppendToValue(int[] chars, int offset, int length) {
+      if (this.valueString != null) {
+        throw new IllegalStateException();
+      }
+      for (int i = offset; i < offset + length; ++i) {
+        int ch = chars[i];
+        if (ch <= 0xffff) {
+          this.value.append((char)ch);
+        } else if (ch <= 0x10ffff) {
+          this.value.append((char)((((ch - 0x10000) >> 10) & 0x3ff) | 0xd800));
+          this.value.append((char)(((ch - 0x10000) & 0x3ff) | 0xdc00));
+        }
+      }
+    }
+
     void CommitValue() {
       if (this.value == null) {
         throw new IllegalStateException();
@@ -120,6 +135,15 @@ package com.upokecenter.html;
         this.value.toString();
     }
 
+    /**
+     * Gets this attribute's name, using the shared copy of well-known
+     * names.
+     */
+    String GetInternedName() {
+      return HtmlAttributeNames.Intern((this.valueNameString != null) ?
+        this.valueNameString : this.valueName);
+    }
+
     boolean IsAttribute(String attrName, String value_namespace) {
       String thisname = this.GetLocalName();
       boolean match = attrName == null ? thisname == null : attrName.equals(
@@ -0,0 +1,330 @@
+package com.upokecenter.html;
+/*
+
+Licensed under the Expat License.
+
+Copyright (C) 2013 Peter Occil
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+import com.upokecenter.util.*;
+import com.upokecenter.text.*;
+
+  /**
+   * Decodes UTF-8 or windows-1252 input a block of bytes at a time, with
+   * the same line break normalization and byte order mark handling as
+   * Html5Decoder. Runs of printable ASCII bytes, the most common case, are
+   * copied straight to the output.
+   */
+  final class BlockDecoderInput implements ICharacterInput {
+    private static int[] windows1252;
+
+    private IByteReader reader;
+    // Null for UTF-8
+    private int[] singleByteTable;
+    private final byte[] bytes = new byte[4096];
+    private int bytePos;
+    private int byteEnd;
+    private boolean endOfBytes;
+    private final int[] chars = new int[4096];
+    private int charPos;
+    private int charEnd;
+    private boolean haveBom;
+    private boolean haveCr;
+    // Number of bytes dropped from the front of the byte buffer so far
+    private long bytesBefore;
+    // Position in the input of the first byte behind the current block of
+    // characters
+    private long blockStart;
+    // If not null, the position in the byte buffer just past each
+    // character's bytes
+    private int[] byteEnds;
+
+    public BlockDecoderInput(IByteReader reader, String encoding) {
+      this.Reset(reader, encoding);
+    }
+
+    /**
+     * Starts decoding another input, reusing this object's buffers.
+     * @param reader The bytes to decode.
+     * @param encoding The encoding's name, which IsSupported accepts.
+     */
+    public void Reset(IByteReader reader, String encoding) {
+      this.reader = reader;
+      this.singleByteTable = "utf-8".equalsIgnoreCase(encoding) ? null :
+        GetWindows1252();
+      this.bytePos = 0;
+      this.byteEnd = 0;
+      this.endOfBytes = false;
+      this.charPos = 0;
+      this.charEnd = 0;
+      this.haveBom = false;
+      this.haveCr = false;
+      this.bytesBefore = 0;
+      this.blockStart = 0;
+      this.byteEnds = null;
+    }
+
+    /**
+     * Starts recording where each decoded character's bytes end, so that
+     * GetBytePosition can be called.
+     */
+    public void TrackBytePositions() {
+      if (this.byteEnds == null) {
+        this.byteEnds = new int[this.chars.length];
+      }
+    }
+
+    /**
+     * Gets the number of bytes behind the characters read so far, less the
+     * given number of characters that were read but aren't consumed yet.
+     * TrackBytePositions must have been called before the input was read.
+     * @param unread The number of characters read but not yet consumed.
+     * @return The number of bytes behind the consumed characters; if the
+     * unread characters go back past the current block, the number of bytes
+     * before the block.
+     */
+    public long GetBytePosition(int unread) {
+      int index = this.charPos - unread;
+      return (index <= 0) ? this.blockStart : this.bytesBefore +
+        this.byteEnds[index - 1];
+    }
+
+    /**
+     * Gets whether this class can decode the given encoding.
+     * @param encoding An encoding name, as returned by
+     * Encodings.ResolveAlias.
+     * @return True if the encoding is UTF-8 or windows-1252.
+     */
+    public static boolean IsSupported(String encoding) {
+      return "utf-8".equalsIgnoreCase(encoding) ||
+        "windows-1252".equalsIgnoreCase(encoding);
+    }
+
+    private static synchronized int[] GetWindows1252() {
+      if (windows1252 == null) {
+        // Take the mapping from the encoding library itself
+        final byte[] singleByte = new byte[1];
+        IByteReader byteReader = new IByteReader() {
+          public int read() {
+            return ((int)singleByte[0]) & 0xff;
+          }
+        };
+        ICharacterDecoder decoder =
+          Encodings.GetEncoding("windows-1252").GetDecoder();
+        int[] table = new int[256];
+        for (int i = 0; i < table.length; ++i) {
+          singleByte[0] = (byte)i;
+          int c = decoder.ReadChar(byteReader);
+          table[i] = (c < 0) ? 0xfffd : c;
+        }
+        windows1252 = table;
+      }
+      return windows1252;
+    }
+
+    public int ReadChar() {
+      if (this.charPos < this.charEnd || this.Fill()) {
+        return this.chars[this.charPos++];
+      }
+      return -1;
+    }
+
+    public int Read(int[] buf, int offset, int unitCount) {
+      if (buf == null) {
+        throw new NullPointerException("buf");
+      }
+      if (offset < 0) {
+        throw new IllegalArgumentException("offset(" + offset +
+          ") is less than 0");
+      }
+      if (unitCount < 0) {
+        throw new IllegalArgumentException("unitCount(" + unitCount +
+          ") is less than 0");
+      }
+      if (buf.length - offset < unitCount) {
+        throw new IllegalArgumentException("buf's length minus " + offset + "(" +
+          (buf.length - offset) + ") is less than " + unitCount);
+      }
+      if (unitCount == 0) {
+        return 0;
+      }
+      if (this.charPos == this.charEnd && !this.Fill()) {
+        return -1;
+      }
+      int count = Math.min(unitCount, this.charEnd - this.charPos);
+      System.arraycopy(this.chars, this.charPos, buf, offset, count);
+      this.charPos += count;
+      return count;
+    }
+
+    private boolean Fill() {
+      this.charPos = 0;
+      this.charEnd = 0;
+      this.blockStart = this.bytesBefore + this.bytePos;
+      while (true) {
+        this.Decode();
+        if (this.charEnd > 0) {
+          return true;
+        }
+        if (!this.ReadBytes()) {
+          // Replace a sequence cut off by the end of input, if any
+          this.Decode();
+          return this.charEnd > 0;
+        }
+      }
+    }
+
+    private boolean ReadBytes() {
+      if (this.endOfBytes) {
+        return false;
+      }
+      int size = this.byteEnd - this.bytePos;
+      if (this.bytePos > 0) {
+        System.arraycopy(this.bytes, this.bytePos, this.bytes, 0, size);
+        this.bytesBefore += this.bytePos;
+        this.bytePos = 0;
+        this.byteEnd = size;
+      }
+      int count = 0;
+      if (this.reader instanceof IReader) {
+        count = ((IReader)this.reader).Read(
+          this.bytes,
+          this.byteEnd,
+          this.bytes.length - this.byteEnd);
+      } else {
+        while (this.byteEnd + count < this.bytes.length) {
+          int b = this.reader.read();
+          if (b < 0) {
+            break;
+          }
+          this.bytes[this.byteEnd + count] = (byte)b;
+          ++count;
+        }
+      }
+      if (count <= 0) {
+        this.endOfBytes = true;
+        return false;
+      }
+      this.byteEnd += count;
+      return true;
+    }
+
+    private void Decode() {
+      byte[] input = this.bytes;
+      int[] output = this.chars;
+      int[] table = this.singleByteTable;
+      int[] ends = this.byteEnds;
+      int i = this.bytePos;
+      int end = this.byteEnd;
+      int n = this.charEnd;
+      while (i < end && n < output.length) {
+        if (!this.haveCr && !this.haveBom) {
+          // Copy a run of printable ASCII bytes; bytes 0x80 and up are
+          // negative here, so they end the run too
+          int limit = Math.min(end, i + output.length - n);
+          while (i < limit) {
+            int b = input[i];
+            if (b < 0x20 || b > 0x7e) {
+              break;
+            }
+            if (ends != null) {
+              ends[n] = i + 1;
+            }
+            output[n++] = b;
+            ++i;
+          }
+          if (i == limit) {
+            break;
+          }
+        }
+        int c = ((int)input[i]) & 0xff;
+        if (table != null) {
+          c = table[c];
+          ++i;
+        } else if (c >= 0x80) {
+          // Decode a UTF-8 sequence as the Encoding Standard does
+          int needed = 0;
+          int lower = 0x80;
+          int upper = 0xbf;
+          if (c >= 0xc2 && c <= 0xdf) {
+            needed = 1;
+            c &= 0x1f;
+          } else if (c >= 0xe0 && c <= 0xef) {
+            lower = (c == 0xe0) ? 0xa0 : 0x80;
+            upper = (c == 0xed) ? 0x9f : 0xbf;
+            needed = 2;
+            c &= 0x0f;
+          } else if (c >= 0xf0 && c <= 0xf4) {
+            lower = (c == 0xf0) ? 0x90 : 0x80;
+            upper = (c == 0xf4) ? 0x8f : 0xbf;
+            needed = 3;
+            c &= 0x07;
+          }
+          int j = i + 1;
+          if (needed == 0) {
+            c = 0xfffd;
+          } else {
+            for (; needed > 0 && j < end; --needed, ++j) {
+              int cb = ((int)input[j]) & 0xff;
+              if (cb < lower || cb > upper) {
+                break;
+              }
+              lower = 0x80;
+              upper = 0xbf;
+              c = (c << 6) | (cb & 0x3f);
+            }
+            if (needed > 0) {
+              if (j == end && !this.endOfBytes) {
+                // Sequence continues past the bytes read so far
+                break;
+              }
+              // Invalid or cut off; the offending byte, if any, is
+              // decoded again
+              c = 0xfffd;
+            }
+          }
+          i = j;
+        } else {
+          ++i;
+        }
+        if (c == 0x0d) {
+          this.haveCr = true;
+          c = 0x0a;
+        } else if (c == 0x0a && this.haveCr) {
+          this.haveCr = false;
+          continue;
+        } else {
+          this.haveCr = false;
+        }
+        if (c == 0xfeff && !this.haveBom) {
+          this.haveBom = true;
+          continue;
+        }
+        this.haveBom &= c == 0xfeff;
+        if (ends != null) {
+          ends[n] = i;
+        }
+        output[n++] = c;
+      }
+      this.bytePos = i;
+      this.charEnd = n;
+    }
+  }
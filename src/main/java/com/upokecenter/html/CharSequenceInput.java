@@ -0,0 +1,153 @@
+package com.upokecenter.html;
+/*
+
+Licensed under the Expat License.
+
+Copyright (C) 2013 Peter Occil
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+
+import com.upokecenter.util.*;
+import com.upokecenter.text.*;
+
+  /**
+   * Reads the code points of a character sequence, such as a string, with
+   * the same line break normalization and byte order mark handling as
+   * Html5Decoder. Unpaired surrogates are replaced with U+FFFD. This
+   * avoids encoding the sequence to bytes only to decode them again.
+   */
+  final class CharSequenceInput implements ICharacterInput {
+    private final CharSequence chars;
+    private int pos;
+    private boolean haveBom;
+    private boolean haveCr;
+
+    public CharSequenceInput(CharSequence chars) {
+      if (chars == null) {
+        throw new NullPointerException("chars");
+      }
+      this.chars = chars;
+    }
+
+    /**
+     * Gets the number of UTF-16 code units read so far.
+     * @return The number of code units read.
+     */
+    public int GetPosition() {
+      return this.pos;
+    }
+
+    public int ReadChar() {
+      int length = this.chars.length();
+      while (this.pos < length) {
+        int c = this.chars.charAt(this.pos++);
+        if (!this.haveCr && !this.haveBom && c >= 0x20 && c <= 0x7e) {
+          return c;
+        }
+        c = this.Normalize(c, length);
+        if (c >= 0) {
+          return c;
+        }
+      }
+      return -1;
+    }
+
+    public int Read(int[] buf, int offset, int unitCount) {
+      if (buf == null) {
+        throw new NullPointerException("buf");
+      }
+      if (offset < 0) {
+        throw new IllegalArgumentException("offset(" + offset +
+          ") is less than 0");
+      }
+      if (unitCount < 0) {
+        throw new IllegalArgumentException("unitCount(" + unitCount +
+          ") is less than 0");
+      }
+      if (buf.length - offset < unitCount) {
+        throw new IllegalArgumentException("buf's length minus " + offset + "(" +
+          (buf.length - offset) + ") is less than " + unitCount);
+      }
+      if (unitCount == 0) {
+        return 0;
+      }
+      CharSequence input = this.chars;
+      int length = input.length();
+      int i = this.pos;
+      int n = offset;
+      int end = offset + unitCount;
+      while (i < length && n < end) {
+        if (!this.haveCr && !this.haveBom) {
+          // Copy a run of printable ASCII characters
+          int limit = Math.min(length, i + end - n);
+          while (i < limit) {
+            int c = input.charAt(i);
+            if (c < 0x20 || c > 0x7e) {
+              break;
+            }
+            buf[n++] = c;
+            ++i;
+          }
+          if (i == limit) {
+            break;
+          }
+        }
+        this.pos = i + 1;
+        int c = this.Normalize(input.charAt(i), length);
+        i = this.pos;
+        if (c >= 0) {
+          buf[n++] = c;
+        }
+      }
+      this.pos = i;
+      return (n == offset) ? -1 : n - offset;
+    }
+
+    // Combines a surrogate pair and normalizes line breaks and byte order
+    // marks for a code unit just read; returns -1 if the character is
+    // dropped
+    private int Normalize(int c, int length) {
+      if ((c & 0xf800) == 0xd800) {
+        if ((c & 0xfc00) == 0xd800 && this.pos < length &&
+          (this.chars.charAt(this.pos) & 0xfc00) == 0xdc00) {
+          c = 0x10000 + ((c & 0x3ff) << 10) +
+            (this.chars.charAt(this.pos++) & 0x3ff);
+        } else {
+          c = 0xfffd;
+        }
+      }
+      if (c == 0x0d) {
+        this.haveCr = true;
+        c = 0x0a;
+      } else if (c == 0x0a && this.haveCr) {
+        this.haveCr = false;
+        return -1;
+      } else {
+        this.haveCr = false;
+      }
+      if (c == 0xfeff && !this.haveBom) {
+        this.haveBom = true;
+        return -1;
+      }
+      this.haveBom &= c == 0xfeff;
+      return c;
+    }
+  }
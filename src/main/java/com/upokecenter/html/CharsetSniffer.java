@@ -148,7 +148,7 @@ THE SOFTWARE.
       int length = value.length();
       char c = (char)0;
       while (true) {
-        index = value.indexOf("charset",0);
+        index = value.indexOf("charset", index);
         if (index < 0) {
           return null;
         }
@@ -211,6 +211,231 @@ THE SOFTWARE.
       }
     }
 
+    /**
+     * Determines a document's character encoding before it's parsed. The
+     * encoding is taken from a byte order mark if there is one, then from
+     * the transport layer's charset if given, then from a meta element found
+     * by prescanning the first 1024 bytes; failing all these, it's
+     * tentatively UTF-8. Reads at most 1024 bytes, so the caller must rewind
+     * the stream afterwards.
+     * @param stream A stream positioned at the start of the document.
+     * @param charset The charset given by the transport layer, or null.
+     * @return The encoding and how confident the parser is of it.
+     */
+    static EncodingConfidence sniffEncoding(IReader stream, String charset) {
+      if (!((charset) == null || (charset).length() == 0)) {
+        charset = Encodings.ResolveAlias(charset);
+      }
+      boolean haveCharset = !((charset) == null || (charset).length() == 0);
+      byte[] header = new byte[1024];
+      // Only a byte order mark can override the transport layer's charset
+      int needed = haveCharset ? 3 : header.length;
+      int count = 0;
+      while (count < needed) {
+        int c = stream.Read(header, count, header.length - count);
+        if (c <= 0) {
+          break;
+        }
+        count += c;
+      }
+      count = Math.min(count, needed);
+      if (count >= 3 && header[0] == (byte)0xef && header[1] == (byte)0xbb &&
+        header[2] == (byte)0xbf) {
+        return EncodingConfidence.UTF8;
+      }
+      if (count >= 2 && header[0] == (byte)0xfe && header[1] == (byte)0xff) {
+        return EncodingConfidence.UTF16BE;
+      }
+      if (count >= 2 && header[0] == (byte)0xff && header[1] == (byte)0xfe) {
+        return EncodingConfidence.UTF16LE;
+      }
+      if (haveCharset) {
+        return new EncodingConfidence(
+          com.upokecenter.util.DataUtilities.ToLowerCaseAscii(charset),
+          EncodingConfidence.Certain);
+      }
+      charset = PrescanEncoding(header, count);
+      return (charset == null) ? EncodingConfidence.UTF8_TENTATIVE :
+        new EncodingConfidence(charset, EncodingConfidence.Tentative);
+    }
+
+    // Prescans the start of a document for a meta element declaring its
+    // encoding, as in the HTML specification; returns null if there's none
+    private static String PrescanEncoding(byte[] data, int count) {
+      StringBuilder name = new StringBuilder();
+      StringBuilder value = new StringBuilder();
+      int index = 0;
+      while (index < count) {
+        int c = data[index] & 0xff;
+        if (c != 0x3c) {
+          ++index;
+          continue;
+        }
+        if (index + 4 <= count && data[index + 1] == 0x21 &&
+          data[index + 2] == 0x2d && data[index + 3] == 0x2d) {
+          // Comment; skip to the "-->"
+          index += 4;
+          while (index < count && !(data[index] == 0x3e &&
+            data[index - 1] == 0x2d && data[index - 2] == 0x2d)) {
+            ++index;
+          }
+        } else if (index + 6 <= count &&
+          (data[index + 1] | 0x20) == 'm' && (data[index + 2] | 0x20) == 'e' &&
+          (data[index + 3] | 0x20) == 't' && (data[index + 4] | 0x20) == 'a' &&
+          (IsSpace(data[index + 5]) || data[index + 5] == 0x2f)) {
+          index += 6;
+          boolean gotPragma = false;
+          // 0: no pragma needed; 1: needed; -1: not yet known
+          int needPragma = -1;
+          String charset = null;
+          List<String> names = new ArrayList<String>();
+          while (true) {
+            index = ReadPrescanAttribute(data, index, count, name, value);
+            if (index >= count) {
+              return null;
+            }
+            if (name.length() == 0) {
+              break;
+            }
+            String attrName = name.toString();
+            if (names.contains(attrName)) {
+              continue;
+            }
+            names.add(attrName);
+            if (attrName.equals("http-equiv")) {
+              gotPragma |= value.toString().equals("content-type");
+            } else if (attrName.equals("content")) {
+              if (charset == null) {
+                String cs = ExtractCharsetFromMeta(value.toString());
+                if (cs != null) {
+                  charset = cs;
+                  needPragma = 1;
+                }
+              }
+            } else if (attrName.equals("charset")) {
+              charset = Encodings.ResolveAlias(value.toString());
+              needPragma = 0;
+            }
+          }
+          if (needPragma >= 0 && (needPragma == 0 || gotPragma) &&
+            !((charset) == null || (charset).length() == 0)) {
+            charset = com.upokecenter.util.DataUtilities.ToLowerCaseAscii(charset);
+            if (charset.equals("utf-16le") || charset.equals("utf-16be")) {
+              charset = "utf-8";
+            } else if (charset.equals("x-user-defined")) {
+              charset = "windows-1252";
+            }
+            return charset;
+          }
+        } else if (index + 3 <= count && (((data[index + 1] | 0x20) >= 'a' &&
+          (data[index + 1] | 0x20) <= 'z') || (data[index + 1] == 0x2f &&
+          (data[index + 2] | 0x20) >= 'a' && (data[index + 2] | 0x20) <= 'z'))) {
+          // Start or end tag; skip its name and attributes
+          while (index < count && !IsSpace(data[index]) &&
+            data[index] != 0x3e) {
+            ++index;
+          }
+          while (true) {
+            index = ReadPrescanAttribute(data, index, count, name, value);
+            if (index >= count) {
+              return null;
+            }
+            if (name.length() == 0) {
+              break;
+            }
+          }
+        } else if (index + 2 <= count && (data[index + 1] == 0x21 ||
+          data[index + 1] == 0x2f || data[index + 1] == 0x3f)) {
+          // Doctype, processing instruction, or bogus comment
+          while (index < count && data[index] != 0x3e) {
+            ++index;
+          }
+        }
+        ++index;
+      }
+      return null;
+    }
+
+    // Reads an attribute's lower-cased name and value for the prescan, and
+    // returns the index after it; the name is empty if no attribute
+    // follows. Returns an index of at least count if the data ends first.
+    private static int ReadPrescanAttribute(
+      byte[] data,
+      int index,
+      int count,
+      StringBuilder name,
+      StringBuilder value) {
+      name.delete(0, name.length());
+      value.delete(0, value.length());
+      while (index < count && (IsSpace(data[index]) || data[index] == 0x2f)) {
+        ++index;
+      }
+      if (index >= count || data[index] == 0x3e) {
+        return index;
+      }
+      // Attribute name
+      while (true) {
+        if (index >= count) {
+          return index;
+        }
+        int c = data[index] & 0xff;
+        if (c == 0x3d && name.length() > 0) {
+          ++index;
+          break;
+        }
+        if (IsSpace(data[index])) {
+          while (index < count && IsSpace(data[index])) {
+            ++index;
+          }
+          if (index >= count || data[index] != 0x3d) {
+            return index;
+          }
+          ++index;
+          break;
+        }
+        if (c == 0x2f || c == 0x3e) {
+          return index;
+        }
+        name.append(LowerByte(c));
+        ++index;
+      }
+      // Attribute value
+      while (index < count && IsSpace(data[index])) {
+        ++index;
+      }
+      if (index >= count) {
+        return index;
+      }
+      int quote = data[index] & 0xff;
+      if (quote == 0x22 || quote == 0x27) {
+        ++index;
+        while (index < count) {
+          int c = data[index++] & 0xff;
+          if (c == quote) {
+            return index;
+          }
+          value.append(LowerByte(c));
+        }
+        return index;
+      }
+      if (quote == 0x3e) {
+        return index;
+      }
+      while (index < count && !IsSpace(data[index]) && data[index] != 0x3e) {
+        value.append(LowerByte(data[index] & 0xff));
+        ++index;
+      }
+      return index;
+    }
+
+    private static boolean IsSpace(byte b) {
+      return b == 0x09 || b == 0x0a || b == 0x0c || b == 0x0d || b == 0x20;
+    }
+
+    private static char LowerByte(int c) {
+      return (char)((c >= 'A' && c <= 'Z') ? c + 0x20 : c);
+    }
+
     private static int IndexOfBytes(
       byte[] array,
       int offset,
@@ -0,0 +1,235 @@
+package com.upokecenter.html;
+/*
+
+Licensed under the Expat License.
+
+Copyright (C) 2013 Peter Occil
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+import java.nio.*;
+import com.upokecenter.util.*;
+import com.upokecenter.text.*;
+
+  /**
+   * A character input that is fed bytes in chunks, as they arrive. Bytes are
+   * decoded when they're fed, and the decoded characters are kept from the
+   * last checkpoint on, so that a partly read token can be read again once
+   * more input arrives. Reading past the decoded characters before the
+   * input is finished throws NeedMoreInputException.
+   */
+  final class ChunkedInput implements ICharacterInput {
+    /**
+     * Thrown when the characters read so far end before the input does.
+     */
+    static final class NeedMoreInputException extends RuntimeException {
+      private static final long serialVersionUID = 1L;
+
+      NeedMoreInputException() {
+        super(null, null, false, false);
+      }
+    }
+
+    private static final NeedMoreInputException NeedMoreInput = new
+    NeedMoreInputException();
+
+    // Number of bytes kept from the decoder until more input arrives or the
+    // input is finished, so that a character is never decoded from only part
+    // of its bytes. This covers a character along with a line feed and byte
+    // order mark that the HTML decoder may skip before it.
+    private static final int Reserve = 16;
+
+    private final ICharacterDecoder decoder;
+    private final IByteReader byteReader;
+    private byte[] bytes = new byte[1024];
+    private int bytePos;
+    private int byteEnd;
+    private long byteCount;
+    private int[] chars = new int[1024];
+    private int charPos;
+    private int charEnd;
+    private int charMark;
+    private long rereadCount;
+    private boolean finished;
+
+    public ChunkedInput(ICharacterDecoder decoder) {
+      this.decoder = decoder;
+      this.byteReader = new IByteReader() {
+        public int read() {
+          return ChunkedInput.this.ReadByte();
+        }
+      };
+    }
+
+    /**
+     * Adds the remaining bytes of a chunk to the input and decodes them.
+     * @param chunk A buffer of bytes. Its position is moved to its limit.
+     */
+    public void Append(ByteBuffer chunk) {
+      if (this.finished) {
+        throw new IllegalStateException();
+      }
+      int length = chunk.remaining();
+      if (this.byteEnd + length > this.bytes.length) {
+        int size = this.byteEnd - this.bytePos;
+        byte[] newBytes = (size + length > this.bytes.length) ?
+          new byte[Math.max(size + length, this.bytes.length * 2)] :
+          this.bytes;
+        System.arraycopy(this.bytes, this.bytePos, newBytes, 0, size);
+        this.bytes = newBytes;
+        this.bytePos = 0;
+        this.byteEnd = size;
+      }
+      chunk.get(this.bytes, this.byteEnd, length);
+      this.byteEnd += length;
+      this.Decode();
+    }
+
+    /**
+     * Marks the end of the input and decodes the bytes that are left.
+     */
+    public void Finish() {
+      this.finished = true;
+      this.Decode();
+    }
+
+    public boolean IsFinished() {
+      return this.finished;
+    }
+
+    /**
+     * Gets the number of bytes decoded so far.
+     * @return The number of bytes decoded so far.
+     */
+    public long GetByteCount() {
+      return this.byteCount;
+    }
+
+    /**
+     * Sets the position that Rewind goes back to, and discards the characters
+     * before it.
+     * @param unread The number of characters already read that count as
+     * unread, because the reader keeps them in its own buffer.
+     */
+    public void SetCheckpoint(int unread) {
+      this.charMark = this.charPos - unread;
+    }
+
+    /**
+     * Goes back to the position set by the last checkpoint.
+     */
+    public void Rewind() {
+      this.rereadCount += this.charPos - this.charMark;
+      this.charPos = this.charMark;
+    }
+
+    /**
+     * Gets the number of characters decoded from the last checkpoint on.
+     * @return The number of characters available from the checkpoint.
+     */
+    public int GetCheckpointLength() {
+      return this.charEnd - this.charMark;
+    }
+
+    /**
+     * Gets the total number of characters given back by Rewind so far,
+     * which have to be read again.
+     * @return The number of characters read again.
+     */
+    long GetRereadCount() {
+      return this.rereadCount;
+    }
+
+    public int ReadChar() {
+      if (this.charPos < this.charEnd) {
+        return this.chars[this.charPos++];
+      }
+      if (this.finished) {
+        return -1;
+      }
+      throw NeedMoreInput;
+    }
+
+    public int Read(int[] buf, int offset, int unitCount) {
+      if (buf == null) {
+        throw new NullPointerException("buf");
+      }
+      if (offset < 0) {
+        throw new IllegalArgumentException("offset(" + offset +
+          ") is less than 0");
+      }
+      if (unitCount < 0) {
+        throw new IllegalArgumentException("unitCount(" + unitCount +
+          ") is less than 0");
+      }
+      if (buf.length - offset < unitCount) {
+        throw new IllegalArgumentException("buf's length minus " + offset + "(" +
+          (buf.length - offset) + ") is less than " + unitCount);
+      }
+      if (unitCount == 0) {
+        return 0;
+      }
+      int count = Math.min(unitCount, this.charEnd - this.charPos);
+      if (count == 0) {
+        if (this.finished) {
+          return -1;
+        }
+        throw NeedMoreInput;
+      }
+      System.arraycopy(this.chars, this.charPos, buf, offset, count);
+      this.charPos += count;
+      return count;
+    }
+
+    private int ReadByte() {
+      if (this.bytePos < this.byteEnd) {
+        ++this.byteCount;
+        return ((int)this.bytes[this.bytePos++]) & 0xff;
+      }
+      return -1;
+    }
+
+    private void Decode() {
+      if (this.charMark > 0) {
+        // Discard characters before the checkpoint
+        System.arraycopy(
+          this.chars,
+          this.charMark,
+          this.chars,
+          0,
+          this.charEnd - this.charMark);
+        this.charEnd -= this.charMark;
+        this.charPos -= this.charMark;
+        this.charMark = 0;
+      }
+      while (this.finished || this.byteEnd - this.bytePos >= Reserve) {
+        int c = this.decoder.ReadChar(this.byteReader);
+        if (c < 0) {
+          break;
+        }
+        if (this.charEnd >= this.chars.length) {
+          int[] newChars = new int[this.chars.length * 2];
+          System.arraycopy(this.chars, 0, newChars, 0, this.charEnd);
+          this.chars = newChars;
+        }
+        this.chars[this.charEnd++] = c;
+      }
+    }
+  }
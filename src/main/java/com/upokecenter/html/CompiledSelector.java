@@ -0,0 +1,1128 @@
+package com.upokecenter.html;
+/*
+
+Licensed under the Expat License.
+
+Copyright (C) 2013 Peter Occil
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+import java.util.*;
+
+import com.upokecenter.util.*;
+
+  /**
+   * A group of selectors, as defined in Selectors Level 3, compiled for
+   * matching against elements. A compiled selector is immutable, so one
+   * instance can be shared among threads and applied to any number of
+   * documents. Each selector is matched from right to left, starting with
+   * the element being tested and moving to its ancestors and earlier
+   * siblings only as far as needed.
+   * <p>Supported are type and universal selectors, ID, class and attribute
+   * selectors, the four combinators, :not(), the structural pseudo-classes
+   * (:root, :empty, :nth-child() and related), :lang(), :link, :checked,
+   * :enabled and :disabled. Namespace prefixes other than "*|" and "|"
+   * aren't supported. Dynamic pseudo-classes such as :hover, as well as
+   * pseudo-elements, are accepted but never match.</p>
+   */
+  public final class CompiledSelector {
+    // Combinators between one compound selector and the next
+    private static final int DESCENDANT = 0;
+    private static final int CHILD = 1;
+    private static final int ADJACENT_SIBLING = 2;
+    private static final int GENERAL_SIBLING = 3;
+
+    // Results of matching part of a selector. Unless the part matched, they
+    // say where the combinators to its right may still find a match: at
+    // an earlier sibling or ancestor, only at an ancestor (further left
+    // than the nearest descendant combinator), or nowhere.
+    private static final int MATCHED = 0;
+    private static final int NOT_MATCHED_TRY_EARLIER_SIBLING = 1;
+    private static final int NOT_MATCHED_TRY_ANCESTOR = 2;
+    private static final int NOT_MATCHED_GLOBALLY = 3;
+
+    // Kinds of conditions in a compound selector
+    private static final int ID = 0;
+    private static final int CLASS = 1;
+    private static final int ATTR_EXISTS = 2;
+    private static final int ATTR_EQUALS = 3;
+    private static final int ATTR_INCLUDES = 4;
+    private static final int ATTR_DASH_MATCH = 5;
+    private static final int ATTR_PREFIX = 6;
+    private static final int ATTR_SUFFIX = 7;
+    private static final int ATTR_SUBSTRING = 8;
+    private static final int NTH_CHILD = 9;
+    private static final int NTH_LAST_CHILD = 10;
+    private static final int NTH_OF_TYPE = 11;
+    private static final int NTH_LAST_OF_TYPE = 12;
+    private static final int ONLY_CHILD = 13;
+    private static final int ONLY_OF_TYPE = 14;
+    private static final int ROOT = 15;
+    private static final int EMPTY = 16;
+    private static final int NOT = 17;
+    private static final int LANG = 18;
+    private static final int LINK = 19;
+    private static final int CHECKED = 20;
+    private static final int ENABLED = 21;
+    private static final int DISABLED = 22;
+    // Dynamic pseudo-classes and pseudo-elements
+    private static final int NEVER = 23;
+
+    private static final int MaxCachedSelectors = 256;
+
+    private static final Map<String, CompiledSelector> Cache =
+      new LinkedHashMap<String, CompiledSelector>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override protected boolean removeEldestEntry(
+          Map.Entry<String, CompiledSelector> eldest) {
+          return this.size() > MaxCachedSelectors;
+        }
+      };
+
+    private static final class Condition {
+      private final int kind;
+      // Attribute name, ID, class name or language
+      private final String name;
+      // Attribute name as matched on HTML elements
+      private final String lowerName;
+      private final String value;
+      private final int a;
+      private final int b;
+      private final Compound negated;
+
+      public Condition(int kind, String name, String value) {
+        this.kind = kind;
+        this.name = name;
+        this.lowerName = (name == null) ? null :
+          DataUtilities.ToLowerCaseAscii(name);
+        this.value = value;
+        this.a = 0;
+        this.b = 0;
+        this.negated = null;
+      }
+
+      public Condition(int kind, int a, int b) {
+        this.kind = kind;
+        this.name = null;
+        this.lowerName = null;
+        this.value = null;
+        this.a = a;
+        this.b = b;
+        this.negated = null;
+      }
+
+      public Condition(Compound negated) {
+        this.kind = NOT;
+        this.name = null;
+        this.lowerName = null;
+        this.value = null;
+        this.a = 0;
+        this.b = 0;
+        this.negated = negated;
+      }
+    }
+
+    // A sequence of simple selectors not separated by combinators
+    private static final class Compound {
+      // Null if any local name matches
+      private final String localName;
+      private final String lowerLocalName;
+      // True for "|name", which matches only elements in no namespace
+      private final boolean noNamespace;
+      private final Condition[] conditions;
+
+      public Compound(
+        String localName,
+        boolean noNamespace,
+        List<Condition> conditions) {
+        this.localName = localName;
+        this.lowerLocalName = (localName == null) ? null :
+          DataUtilities.ToLowerCaseAscii(localName);
+        this.noNamespace = noNamespace;
+        this.conditions = conditions.toArray(new Condition[0]);
+      }
+    }
+
+    // Compound selectors from left to right, with the combinator between
+    // each compound selector and the next
+    private static final class Selector {
+      private final Compound[] compounds;
+      private final int[] combinators;
+
+      public Selector(List<Compound> compounds, List<Integer> combinators) {
+        this.compounds = compounds.toArray(new Compound[0]);
+        this.combinators = new int[combinators.size()];
+        for (int i = 0; i < this.combinators.length; ++i) {
+          this.combinators[i] = combinators.get(i);
+        }
+      }
+    }
+
+    private final String text;
+    private final Selector[] selectors;
+
+    private CompiledSelector(String text, List<Selector> selectors) {
+      this.text = text;
+      this.selectors = selectors.toArray(new Selector[0]);
+    }
+
+    /**
+     * Compiles a group of selectors, such as "div.note &gt; p, #main a[href]".
+     * Recently compiled selectors are cached, so compiling the same text
+     * again is cheap. This method is safe to call from multiple threads.
+     * @param selectors One or more selectors separated by commas.
+     * @return A compiled selector.
+     * @throws NullPointerException The parameter {@code selectors} is null.
+     * @throws IllegalArgumentException The parameter {@code selectors} is
+     * not a valid group of selectors or uses an unsupported feature.
+     */
+    public static CompiledSelector Compile(String selectors) {
+      if (selectors == null) {
+        throw new NullPointerException("selectors");
+      }
+      CompiledSelector ret;
+      synchronized (Cache) {
+        ret = Cache.get(selectors);
+      }
+      if (ret == null) {
+        ret = new CompiledSelector(
+          selectors,
+          new SelectorParser(selectors).ParseGroup());
+        synchronized (Cache) {
+          Cache.put(selectors, ret);
+        }
+      }
+      return ret;
+    }
+
+    /**
+     * Determines whether an element matches any of the selectors in this
+     * group.
+     * @param element An element.
+     * @return True if the element matches; otherwise, false.
+     * @throws NullPointerException The parameter {@code element} is null.
+     */
+    public boolean Matches(IElement element) {
+      if (element == null) {
+        throw new NullPointerException("element");
+      }
+      for (Selector selector : this.selectors) {
+        if (MatchesFrom(element, selector, selector.compounds.length - 1) ==
+          MATCHED) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    /**
+     * Finds the first descendant of a node, in tree order, that matches
+     * this group of selectors.
+     * @param root A document or element.
+     * @return The first matching element, or null if there is none.
+     * @throws NullPointerException The parameter {@code root} is null.
+     */
+    public IElement QueryFirst(INode root) {
+      if (root == null) {
+        throw new NullPointerException("root");
+      }
+      List<IElement> candidates = this.GetCandidates(root);
+      if (candidates != null) {
+        for (IElement element : candidates) {
+          if (this.Matches(element)) {
+            return element;
+          }
+        }
+        return null;
+      }
+      INode node = NextInTreeOrder(root, root);
+      while (node != null) {
+        if (node instanceof IElement && this.Matches((IElement)node)) {
+          return (IElement)node;
+        }
+        node = NextInTreeOrder(node, root);
+      }
+      return null;
+    }
+
+    /**
+     * Finds all descendants of a node, in tree order, that match this group
+     * of selectors.
+     * @param root A document or element.
+     * @return A list of the matching elements. The list is a snapshot; it
+     * doesn't change when the document changes.
+     * @throws NullPointerException The parameter {@code root} is null.
+     */
+    public List<IElement> QueryAll(INode root) {
+      if (root == null) {
+        throw new NullPointerException("root");
+      }
+      List<IElement> ret = new ArrayList<IElement>();
+      List<IElement> candidates = this.GetCandidates(root);
+      if (candidates != null) {
+        for (IElement element : candidates) {
+          if (this.Matches(element)) {
+            ret.add(element);
+          }
+        }
+        return ret;
+      }
+      INode node = NextInTreeOrder(root, root);
+      while (node != null) {
+        if (node instanceof IElement && this.Matches((IElement)node)) {
+          ret.add((IElement)node);
+        }
+        node = NextInTreeOrder(node, root);
+      }
+      return ret;
+    }
+
+    @Override public String toString() {
+      return this.text;
+    }
+
+    int GetSelectorCount() {
+      return this.selectors.length;
+    }
+
+    boolean MatchesSelector(IElement element, int index) {
+      Selector selector = this.selectors[index];
+      return MatchesFrom(element, selector, selector.compounds.length - 1) ==
+        MATCHED;
+    }
+
+    // Gets the local name required by a selector's subject, or null if it
+    // has no type selector
+    String GetSubjectLocalName(int index) {
+      Selector selector = this.selectors[index];
+      return selector.compounds[selector.compounds.length - 1].localName;
+    }
+
+    // Gets an ID or class name required by a selector's subject, or null
+    // if there is none
+    String GetSubjectName(int index, boolean id) {
+      Selector selector = this.selectors[index];
+      Compound subject = selector.compounds[selector.compounds.length - 1];
+      for (Condition condition : subject.conditions) {
+        if (condition.kind == (id ? ID : CLASS)) {
+          return condition.name;
+        }
+      }
+      return null;
+    }
+
+    // Gets the elements named by a lone selector's subject, using the
+    // document's tag index, or null if the whole subtree must be walked
+    private List<IElement> GetCandidates(INode root) {
+      if (this.selectors.length != 1) {
+        return null;
+      }
+      Selector selector = this.selectors[0];
+      String name = selector.compounds[selector.compounds.length -
+        1].localName;
+      if (name == null) {
+        return null;
+      }
+      if (root instanceof IDocument) {
+        return ((IDocument)root).GetElementsByTagName(name);
+      }
+      if (root instanceof IElement) {
+        return ((IElement)root).GetElementsByTagName(name);
+      }
+      return null;
+    }
+
+    static INode NextInTreeOrder(INode node, INode root) {
+      INode next = node.GetFirstChild();
+      if (next != null) {
+        return next;
+      }
+      while (node != root) {
+        next = node.GetNextSibling();
+        if (next != null) {
+          return next;
+        }
+        node = node.GetParentNode();
+      }
+      return null;
+    }
+
+    // Matches the compound selectors of a selector from the given index
+    // down to the first, starting with an element and moving to its
+    // ancestors and earlier siblings. When matching fails, the result tells
+    // the combinators to the right how far to keep looking, as in Servo and
+    // WebKit: if the part to the left of a descendant combinator ran out of
+    // ancestors, trying higher ancestors can't succeed either, so the cost
+    // of a failed match grows linearly, not polynomially, with the depth of
+    // the tree.
+    private static int MatchesFrom(
+      IElement element,
+      Selector selector,
+      int index) {
+      if (!MatchesCompound(element, selector.compounds[index])) {
+        return NOT_MATCHED_TRY_EARLIER_SIBLING;
+      }
+      if (index == 0) {
+        return MATCHED;
+      }
+      int combinator = selector.combinators[index - 1];
+      IElement next = NextCandidate(element, combinator);
+      while (next != null) {
+        int result = MatchesFrom(next, selector, index - 1);
+        if (result == MATCHED || result == NOT_MATCHED_GLOBALLY ||
+          combinator == ADJACENT_SIBLING) {
+          return result;
+        }
+        if (combinator == CHILD) {
+          return NOT_MATCHED_TRY_ANCESTOR;
+        }
+        if (combinator == GENERAL_SIBLING &&
+          result == NOT_MATCHED_TRY_ANCESTOR) {
+          return result;
+        }
+        next = NextCandidate(next, combinator);
+      }
+      return (combinator == DESCENDANT || combinator == CHILD) ?
+        NOT_MATCHED_GLOBALLY : NOT_MATCHED_TRY_ANCESTOR;
+    }
+
+    private static IElement NextCandidate(IElement element, int combinator) {
+      if (combinator == DESCENDANT || combinator == CHILD) {
+        INode parent = element.GetParentNode();
+        return (parent instanceof IElement) ? ((IElement)parent) : null;
+      }
+      return PreviousElement(element);
+    }
+
+    private static boolean IsHtmlElement(IElement element) {
+      return HtmlCommon.HTML_NAMESPACE.equals(element.GetNamespaceURI());
+    }
+
+    private static boolean MatchesCompound(IElement element, Compound compound) {
+      if (compound.localName != null) {
+        String localName = element.GetLocalName();
+        if (!localName.equals(IsHtmlElement(element) ?
+          compound.lowerLocalName : compound.localName)) {
+          return false;
+        }
+      }
+      if (compound.noNamespace) {
+        String ns = element.GetNamespaceURI();
+        if (ns != null && ns.length() > 0) {
+          return false;
+        }
+      }
+      for (Condition condition : compound.conditions) {
+        if (!MatchesCondition(element, condition)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private static boolean MatchesCondition(
+      IElement element,
+      Condition condition) {
+      switch (condition.kind) {
+        case ID:
+          return condition.name.equals(element.GetId());
+        case CLASS:
+          return IncludesWord(element.GetAttribute("class"), condition.name);
+        case ATTR_EXISTS:
+        case ATTR_EQUALS:
+        case ATTR_INCLUDES:
+        case ATTR_DASH_MATCH:
+        case ATTR_PREFIX:
+        case ATTR_SUFFIX:
+        case ATTR_SUBSTRING:
+          return MatchesAttribute(element, condition);
+        case NTH_CHILD:
+          return MatchesNth(condition, CountSiblings(element, false, false));
+        case NTH_LAST_CHILD:
+          return MatchesNth(condition, CountSiblings(element, true, false));
+        case NTH_OF_TYPE:
+          return MatchesNth(condition, CountSiblings(element, false, true));
+        case NTH_LAST_OF_TYPE:
+          return MatchesNth(condition, CountSiblings(element, true, true));
+        case ONLY_CHILD:
+          return CountSiblings(element, false, false) == 1 &&
+            CountSiblings(element, true, false) == 1;
+        case ONLY_OF_TYPE:
+          return CountSiblings(element, false, true) == 1 &&
+            CountSiblings(element, true, true) == 1;
+        case ROOT:
+          return element.GetParentNode() instanceof IDocument;
+        case EMPTY:
+          for (INode child = element.GetFirstChild(); child != null;
+            child = child.GetNextSibling()) {
+            if (child instanceof IElement || (child instanceof IText &&
+              ((IText)child).GetData().length() > 0)) {
+              return false;
+            }
+          }
+          return true;
+        case NOT:
+          return !MatchesCompound(element, condition.negated);
+        case LANG: {
+          String lang = DataUtilities.ToLowerCaseAscii(element.GetLanguage());
+          return lang.equals(condition.lowerName) ||
+            (lang.length() > condition.lowerName.length() &&
+            lang.startsWith(condition.lowerName) &&
+            lang.charAt(condition.lowerName.length()) == '-');
+        }
+        case LINK:
+          return IsHtmlElement(element) &&
+            element.GetAttribute("href") != null &&
+            (element.GetLocalName().equals("a") ||
+            element.GetLocalName().equals("area") ||
+            element.GetLocalName().equals("link"));
+        case CHECKED:
+          return IsChecked(element);
+        case ENABLED:
+          return IsFormElement(element) && !IsDisabled(element);
+        case DISABLED:
+          return IsFormElement(element) && IsDisabled(element);
+        default:
+          return false;
+      }
+    }
+
+    private static boolean MatchesAttribute(
+      IElement element,
+      Condition condition) {
+      String attrValue = element.GetAttribute(IsHtmlElement(element) ?
+        condition.lowerName : condition.name);
+      if (attrValue == null) {
+        return false;
+      }
+      String value = condition.value;
+      switch (condition.kind) {
+        case ATTR_EXISTS:
+          return true;
+        case ATTR_EQUALS:
+          return attrValue.equals(value);
+        case ATTR_INCLUDES:
+          return IncludesWord(attrValue, value);
+        case ATTR_DASH_MATCH:
+          return attrValue.equals(value) ||
+            (attrValue.length() > value.length() &&
+            attrValue.startsWith(value) &&
+            attrValue.charAt(value.length()) == '-');
+        case ATTR_PREFIX:
+          return value.length() > 0 && attrValue.startsWith(value);
+        case ATTR_SUFFIX:
+          return value.length() > 0 && attrValue.endsWith(value);
+        default:
+          return value.length() > 0 && attrValue.contains(value);
+      }
+    }
+
+    // Determines whether a whitespace-separated list contains a word
+    static boolean IncludesWord(String list, String word) {
+      if (list == null || word.length() == 0) {
+        return false;
+      }
+      int length = word.length();
+      for (int i = 0; i < length; ++i) {
+        if (IsSpace(word.charAt(i))) {
+          return false;
+        }
+      }
+      int index = list.indexOf(word);
+      while (index >= 0) {
+        if ((index == 0 || IsSpace(list.charAt(index - 1))) &&
+          (index + length == list.length() ||
+          IsSpace(list.charAt(index + length)))) {
+          return true;
+        }
+        index = list.indexOf(word, index + 1);
+      }
+      return false;
+    }
+
+    private static boolean MatchesNth(Condition condition, int position) {
+      int a = condition.a;
+      int diff = position - condition.b;
+      if (a == 0) {
+        return diff == 0;
+      }
+      return diff % a == 0 && diff / a >= 0;
+    }
+
+    // Gets the one-based position of an element among its element
+    // siblings, counting from the first or last, and counting all
+    // elements or only those of the same type
+    private static int CountSiblings(
+      IElement element,
+      boolean fromLast,
+      boolean sameType) {
+      int count = 1;
+      IElement sibling = fromLast ? NextElement(element) :
+        PreviousElement(element);
+      while (sibling != null) {
+        if (!sameType || (sibling.GetLocalName().equals(
+          element.GetLocalName()) && (sibling.GetNamespaceURI() == null ?
+          element.GetNamespaceURI() == null :
+          sibling.GetNamespaceURI().equals(element.GetNamespaceURI())))) {
+          ++count;
+        }
+        sibling = fromLast ? NextElement(sibling) : PreviousElement(sibling);
+      }
+      return count;
+    }
+
+    private static IElement PreviousElement(INode node) {
+      INode sibling = PreviousSibling(node);
+      while (sibling != null && !(sibling instanceof IElement)) {
+        sibling = PreviousSibling(sibling);
+      }
+      return (IElement)sibling;
+    }
+
+    private static INode PreviousSibling(INode node) {
+      if (node instanceof Node) {
+        return ((Node)node).GetPreviousSiblingInternal();
+      }
+      INode parent = node.GetParentNode();
+      if (parent == null) {
+        return null;
+      }
+      INode previous = null;
+      for (INode child = parent.GetFirstChild(); child != null;
+        child = child.GetNextSibling()) {
+        if (child == node) {
+          return previous;
+        }
+        previous = child;
+      }
+      return null;
+    }
+
+    private static IElement NextElement(INode node) {
+      INode sibling = node.GetNextSibling();
+      while (sibling != null && !(sibling instanceof IElement)) {
+        sibling = sibling.GetNextSibling();
+      }
+      return (IElement)sibling;
+    }
+
+    private static boolean IsChecked(IElement element) {
+      if (!IsHtmlElement(element)) {
+        return false;
+      }
+      String localName = element.GetLocalName();
+      if (localName.equals("input")) {
+        String type = element.GetAttribute("type");
+        type = (type == null) ? "" : DataUtilities.ToLowerCaseAscii(type);
+        return (type.equals("checkbox") || type.equals("radio")) &&
+          element.GetAttribute("checked") != null;
+      }
+      return localName.equals("option") &&
+        element.GetAttribute("selected") != null;
+    }
+
+    private static boolean IsFormElement(IElement element) {
+      if (!IsHtmlElement(element)) {
+        return false;
+      }
+      String localName = element.GetLocalName();
+      return localName.equals("button") || localName.equals("input") ||
+        localName.equals("select") || localName.equals("textarea") ||
+        localName.equals("optgroup") || localName.equals("option") ||
+        localName.equals("fieldset");
+    }
+
+    private static boolean IsDisabled(IElement element) {
+      if (element.GetAttribute("disabled") != null) {
+        return true;
+      }
+      // An option is also disabled by a disabled parent option group
+      INode parent = element.GetParentNode();
+      return element.GetLocalName().equals("option") &&
+        parent instanceof IElement && IsHtmlElement((IElement)parent) &&
+        ((IElement)parent).GetLocalName().equals("optgroup") &&
+        ((IElement)parent).GetAttribute("disabled") != null;
+    }
+
+    static boolean IsSpace(int c) {
+      return c == 0x20 || c == 0x09 || c == 0x0a || c == 0x0c || c == 0x0d;
+    }
+
+    private static final class SelectorParser {
+      private final String text;
+      private int pos;
+
+      public SelectorParser(String text) {
+        this.text = text;
+        this.pos = 0;
+      }
+
+      private IllegalArgumentException Error(String message) {
+        return new IllegalArgumentException(message + " at position " +
+          this.pos + " of selector \"" + this.text + "\"");
+      }
+
+      private int Peek(int offset) {
+        int index = this.pos + offset;
+        return (index < this.text.length()) ? this.text.charAt(index) : -1;
+      }
+
+      private boolean SkipSpace() {
+        int start = this.pos;
+        while (this.pos < this.text.length() &&
+          IsSpace(this.text.charAt(this.pos))) {
+          ++this.pos;
+        }
+        return this.pos > start;
+      }
+
+      private void Expect(char c) {
+        if (this.Peek(0) != c) {
+          throw this.Error("Expected '" + c + "'");
+        }
+        ++this.pos;
+      }
+
+      public List<Selector> ParseGroup() {
+        List<Selector> selectors = new ArrayList<Selector>();
+        this.SkipSpace();
+        while (true) {
+          selectors.add(this.ParseSelector());
+          this.SkipSpace();
+          if (this.pos == this.text.length()) {
+            break;
+          }
+          this.Expect(',');
+          this.SkipSpace();
+        }
+        return selectors;
+      }
+
+      private Selector ParseSelector() {
+        List<Compound> compounds = new ArrayList<Compound>();
+        List<Integer> combinators = new ArrayList<Integer>();
+        compounds.add(this.ParseCompound());
+        while (true) {
+          boolean space = this.SkipSpace();
+          int c = this.Peek(0);
+          int combinator;
+          if (c < 0 || c == ',') {
+            break;
+          } else if (c == '>') {
+            combinator = CHILD;
+          } else if (c == '+') {
+            combinator = ADJACENT_SIBLING;
+          } else if (c == '~') {
+            combinator = GENERAL_SIBLING;
+          } else if (space) {
+            combinator = DESCENDANT;
+          } else {
+            throw this.Error("Unexpected character");
+          }
+          if (combinator != DESCENDANT) {
+            ++this.pos;
+            this.SkipSpace();
+          }
+          combinators.add(combinator);
+          compounds.add(this.ParseCompound());
+        }
+        return new Selector(compounds, combinators);
+      }
+
+      private Compound ParseCompound() {
+        String localName = null;
+        boolean noNamespace = false;
+        boolean empty = true;
+        List<Condition> conditions = new ArrayList<Condition>();
+        int c = this.Peek(0);
+        if (c == '*' || c == '|' || this.IsIdentStart()) {
+          // Type or universal selector, with an optional namespace prefix
+          if (c == '|') {
+            ++this.pos;
+            noNamespace = true;
+            localName = this.ParseTypeName();
+          } else {
+            localName = this.ParseTypeName();
+            if (this.Peek(0) == '|') {
+              if (localName != null) {
+                throw this.Error("Namespace prefixes aren't supported");
+              }
+              ++this.pos;
+              localName = this.ParseTypeName();
+            }
+          }
+          empty = false;
+        }
+        while (true) {
+          c = this.Peek(0);
+          if (c == '#') {
+            ++this.pos;
+            conditions.add(new Condition(ID, this.ParseName(), null));
+          } else if (c == '.') {
+            ++this.pos;
+            conditions.add(new Condition(CLASS, this.ParseIdent(), null));
+          } else if (c == '[') {
+            conditions.add(this.ParseAttribute());
+          } else if (c == ':') {
+            conditions.add(this.ParsePseudo());
+          } else {
+            break;
+          }
+          empty = false;
+        }
+        if (empty) {
+          throw this.Error("Expected a selector");
+        }
+        return new Compound(localName, noNamespace, conditions);
+      }
+
+      // Parses a local name or "*"; returns null for "*"
+      private String ParseTypeName() {
+        if (this.Peek(0) == '*') {
+          ++this.pos;
+          return null;
+        }
+        return this.ParseIdent();
+      }
+
+      private Condition ParseAttribute() {
+        this.Expect('[');
+        this.SkipSpace();
+        if (this.Peek(0) == '|' || this.Peek(0) == '*') {
+          throw this.Error("Namespace prefixes aren't supported");
+        }
+        String name = this.ParseIdent();
+        if (this.Peek(0) == '|' && this.Peek(1) != '=') {
+          throw this.Error("Namespace prefixes aren't supported");
+        }
+        this.SkipSpace();
+        if (this.Peek(0) == ']') {
+          ++this.pos;
+          return new Condition(ATTR_EXISTS, name, null);
+        }
+        int kind;
+        int c = this.Peek(0);
+        if (c == '=') {
+          kind = ATTR_EQUALS;
+        } else {
+          if (this.Peek(1) != '=') {
+            throw this.Error("Expected an attribute operator");
+          }
+          if (c == '~') {
+            kind = ATTR_INCLUDES;
+          } else if (c == '|') {
+            kind = ATTR_DASH_MATCH;
+          } else if (c == '^') {
+            kind = ATTR_PREFIX;
+          } else if (c == '$') {
+            kind = ATTR_SUFFIX;
+          } else if (c == '*') {
+            kind = ATTR_SUBSTRING;
+          } else {
+            throw this.Error("Expected an attribute operator");
+          }
+          ++this.pos;
+        }
+        ++this.pos;
+        this.SkipSpace();
+        c = this.Peek(0);
+        String value = (c == '"' || c == '\'') ? this.ParseString() :
+          this.ParseIdent();
+        this.SkipSpace();
+        this.Expect(']');
+        return new Condition(kind, name, value);
+      }
+
+      private Condition ParsePseudo() {
+        this.Expect(':');
+        if (this.Peek(0) == ':') {
+          // Pseudo-element
+          ++this.pos;
+          this.ParseIdent();
+          return new Condition(NEVER, null, null);
+        }
+        String name = DataUtilities.ToLowerCaseAscii(this.ParseIdent());
+        if (this.Peek(0) == '(') {
+          ++this.pos;
+          this.SkipSpace();
+          Condition ret;
+          if (name.equals("nth-child")) {
+            ret = this.ParseNth(NTH_CHILD);
+          } else if (name.equals("nth-last-child")) {
+            ret = this.ParseNth(NTH_LAST_CHILD);
+          } else if (name.equals("nth-of-type")) {
+            ret = this.ParseNth(NTH_OF_TYPE);
+          } else if (name.equals("nth-last-of-type")) {
+            ret = this.ParseNth(NTH_LAST_OF_TYPE);
+          } else if (name.equals("not")) {
+            ret = new Condition(this.ParseCompound());
+          } else if (name.equals("lang")) {
+            ret = new Condition(LANG, this.ParseIdent(), null);
+          } else {
+            throw this.Error("Unsupported pseudo-class :" + name + "()");
+          }
+          this.SkipSpace();
+          this.Expect(')');
+          return ret;
+        }
+        if (name.equals("first-child")) {
+          return new Condition(NTH_CHILD, 0, 1);
+        } else if (name.equals("last-child")) {
+          return new Condition(NTH_LAST_CHILD, 0, 1);
+        } else if (name.equals("first-of-type")) {
+          return new Condition(NTH_OF_TYPE, 0, 1);
+        } else if (name.equals("last-of-type")) {
+          return new Condition(NTH_LAST_OF_TYPE, 0, 1);
+        } else if (name.equals("only-child")) {
+          return new Condition(ONLY_CHILD, 0, 0);
+        } else if (name.equals("only-of-type")) {
+          return new Condition(ONLY_OF_TYPE, 0, 0);
+        } else if (name.equals("root")) {
+          return new Condition(ROOT, 0, 0);
+        } else if (name.equals("empty")) {
+          return new Condition(EMPTY, 0, 0);
+        } else if (name.equals("link")) {
+          return new Condition(LINK, 0, 0);
+        } else if (name.equals("checked")) {
+          return new Condition(CHECKED, 0, 0);
+        } else if (name.equals("enabled")) {
+          return new Condition(ENABLED, 0, 0);
+        } else if (name.equals("disabled")) {
+          return new Condition(DISABLED, 0, 0);
+        } else if (name.equals("visited") || name.equals("hover") ||
+          name.equals("active") || name.equals("focus") ||
+          name.equals("target") || name.equals("first-line") ||
+          name.equals("first-letter") || name.equals("before") ||
+          name.equals("after")) {
+          return new Condition(NEVER, 0, 0);
+        }
+        throw this.Error("Unsupported pseudo-class :" + name);
+      }
+
+      // Parses the argument of :nth-child() and related pseudo-classes,
+      // of the form "odd", "even", or "an+b" with either part optional.
+      // White space may surround the argument and the sign before b, but
+      // not appear within "an" or b.
+      private Condition ParseNth(int kind) {
+        int start = this.pos;
+        while (this.pos < this.text.length() &&
+          this.text.charAt(this.pos) != ')') {
+          ++this.pos;
+        }
+        int end = this.pos;
+        while (start < end && IsSpace(this.text.charAt(start))) {
+          ++start;
+        }
+        while (end > start && IsSpace(this.text.charAt(end - 1))) {
+          --end;
+        }
+        String arg = DataUtilities.ToLowerCaseAscii(
+          this.text.substring(start, end));
+        if (arg.equals("odd")) {
+          return new Condition(kind, 2, 1);
+        }
+        if (arg.equals("even")) {
+          return new Condition(kind, 2, 0);
+        }
+        int index = 0;
+        int sign = 1;
+        if (index < arg.length() && (arg.charAt(index) == '+' ||
+          arg.charAt(index) == '-')) {
+          sign = (arg.charAt(index) == '-') ? -1 : 1;
+          ++index;
+        }
+        int digitsStart = index;
+        int number = this.ParseNumber(arg, index);
+        while (index < arg.length() && arg.charAt(index) >= '0' &&
+          arg.charAt(index) <= '9') {
+          ++index;
+        }
+        boolean hasDigits = index > digitsStart;
+        if (index < arg.length() && arg.charAt(index) == 'n') {
+          int a = sign * (hasDigits ? number : 1);
+          ++index;
+          int b = 0;
+          while (index < arg.length() && IsSpace(arg.charAt(index))) {
+            ++index;
+          }
+          if (index < arg.length()) {
+            char c = arg.charAt(index);
+            if (c != '+' && c != '-') {
+              throw this.Error("Invalid :nth- argument");
+            }
+            ++index;
+            while (index < arg.length() && IsSpace(arg.charAt(index))) {
+              ++index;
+            }
+            digitsStart = index;
+            b = this.ParseNumber(arg, index);
+            while (index < arg.length() && arg.charAt(index) >= '0' &&
+              arg.charAt(index) <= '9') {
+              ++index;
+            }
+            if (index == digitsStart || index != arg.length()) {
+              throw this.Error("Invalid :nth- argument");
+            }
+            b = (c == '-') ? -b : b;
+          }
+          return new Condition(kind, a, b);
+        }
+        if (!hasDigits || index != arg.length()) {
+          throw this.Error("Invalid :nth- argument");
+        }
+        return new Condition(kind, 0, sign * number);
+      }
+
+      private int ParseNumber(String arg, int index) {
+        int number = 0;
+        while (index < arg.length() && arg.charAt(index) >= '0' &&
+          arg.charAt(index) <= '9') {
+          if (number > 100000000) {
+            throw this.Error("Number too big");
+          }
+          number = (number * 10) + (arg.charAt(index) - '0');
+          ++index;
+        }
+        return number;
+      }
+
+      private static boolean IsNameStart(int c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') ||
+          c == '_' || c >= 0x80;
+      }
+
+      private static boolean IsNameChar(int c) {
+        return IsNameStart(c) || (c >= '0' && c <= '9') || c == '-';
+      }
+
+      private boolean IsEscapeAt(int offset) {
+        int next = this.Peek(offset + 1);
+        return this.Peek(offset) == '\\' && next >= 0 && next != '\n' &&
+          next != '\r' && next != '\f';
+      }
+
+      private boolean IsIdentStart() {
+        int offset = (this.Peek(0) == '-') ? 1 : 0;
+        return IsNameStart(this.Peek(offset)) || this.IsEscapeAt(offset);
+      }
+
+      private String ParseIdent() {
+        if (!this.IsIdentStart()) {
+          throw this.Error("Expected an identifier");
+        }
+        return this.ParseName();
+      }
+
+      private String ParseName() {
+        StringBuilder builder = new StringBuilder();
+        while (true) {
+          int c = this.Peek(0);
+          if (IsNameChar(c)) {
+            builder.append((char)c);
+            ++this.pos;
+          } else if (this.IsEscapeAt(0)) {
+            this.ParseEscape(builder);
+          } else {
+            break;
+          }
+        }
+        if (builder.length() == 0) {
+          throw this.Error("Expected a name");
+        }
+        return builder.toString();
+      }
+
+      private String ParseString() {
+        int quote = this.Peek(0);
+        ++this.pos;
+        StringBuilder builder = new StringBuilder();
+        while (true) {
+          int c = this.Peek(0);
+          if (c < 0 || c == '\n' || c == '\r' || c == '\f') {
+            throw this.Error("Unterminated string");
+          }
+          if (c == quote) {
+            ++this.pos;
+            return builder.toString();
+          }
+          if (c == '\\') {
+            int next = this.Peek(1);
+            if (next == '\n' || next == '\f') {
+              this.pos += 2;
+              continue;
+            }
+            if (next == '\r') {
+              this.pos += (this.Peek(2) == '\n') ? 3 : 2;
+              continue;
+            }
+            if (next < 0) {
+              throw this.Error("Unterminated string");
+            }
+            this.ParseEscape(builder);
+          } else {
+            builder.append((char)c);
+            ++this.pos;
+          }
+        }
+      }
+
+      private static int HexValue(int c) {
+        if (c >= '0' && c <= '9') {
+          return c - '0';
+        }
+        if (c >= 'a' && c <= 'f') {
+          return c - 'a' + 10;
+        }
+        return (c >= 'A' && c <= 'F') ? c - 'A' + 10 : -1;
+      }
+
+      // Parses an escape sequence, starting at its backslash
+      private void ParseEscape(StringBuilder builder) {
+        ++this.pos;
+        int c = this.Peek(0);
+        if (HexValue(c) < 0) {
+          builder.append((char)c);
+          ++this.pos;
+          return;
+        }
+        int cp = 0;
+        for (int i = 0; i < 6 && HexValue(this.Peek(0)) >= 0; ++i) {
+          cp = (cp << 4) | HexValue(this.Peek(0));
+          ++this.pos;
+        }
+        if (this.Peek(0) == '\r' && this.Peek(1) == '\n') {
+          this.pos += 2;
+        } else if (IsSpace(this.Peek(0))) {
+          ++this.pos;
+        }
+        if (cp == 0 || cp > 0x10ffff || (cp >= 0xd800 && cp <= 0xdfff)) {
+          cp = 0xfffd;
+        }
+        if (cp <= 0xffff) {
+          builder.append((char)cp);
+        } else {
+          cp -= 0x10000;
+          builder.append((char)((cp >> 10) | 0xd800));
+          builder.append((char)((cp & 0x3ff) | 0xdc00));
+        }
+      }
+    }
+  }
@@ -40,6 +40,23 @@ private String propVarencoding;
 
     private DocumentMode docmode = DocumentMode.NoQuirksMode;
 
+    // Maps each element ID to the first element in tree order with that ID.
+    // Built on first use and discarded whenever the tree or an attribute
+    // changes. Assigned only once complete, after duplicateIds, so that
+    // threads reading an unchanging document never see it half-built.
+    private volatile HashMap<String, IElement> idIndex;
+
+    // IDs shared by more than one element, or null if there are none
+    private HashSet<String> duplicateIds;
+
+    // All elements in tree order, and the elements with each local name in
+    // tree order. Built on first use and discarded whenever the tree
+    // changes, like the ID index. Both are assigned once complete,
+    // allElements last, since it shows whether the index is built.
+    private volatile List<IElement> allElements;
+
+    private HashMap<String, List<IElement>> elementsByName;
+
     final String getDefaultLanguage() { return propVardefaultlanguage; }
 final void setDefaultLanguage(String value) { propVardefaultlanguage = value; }
 private String propVardefaultlanguage;
@@ -52,39 +69,6 @@ private String propVaraddress;
  super(NodeType.DOCUMENT_NODE);
     }
 
-    private void CollectElements(INode c, String s, List<IElement> nodes) {
-      if (c.GetNodeType() == NodeType.ELEMENT_NODE) {
-        IElement e = (IElement)c;
-        if (s == null || e.GetLocalName().equals(s)) {
-          nodes.add(e);
-        }
-      }
-      for (INode node : c.GetChildNodes()) {
-        this.CollectElements(node, s, nodes);
-      }
-    }
-
-    private void CollectElementsHtml(
-      INode c,
-      String s,
-      String valueSLowercase,
-      List<IElement> nodes) {
-      if (c.GetNodeType() == NodeType.ELEMENT_NODE) {
-        IElement e = (IElement)c;
-        if (s == null) {
-          nodes.add(e);
-        } else if (HtmlCommon.HTML_NAMESPACE.equals(e.GetNamespaceURI()) && e.GetLocalName().equals(
-            valueSLowercase)) {
-          nodes.add(e);
-        } else if (e.GetLocalName().equals(s)) {
-          nodes.add(e);
-        }
-      }
-      for (INode node : c.GetChildNodes()) {
-        this.CollectElements(node, s, nodes);
-      }
-    }
-
     public String GetCharset() {
       return (this.getEncoding() == null) ? "utf-8" : this.getEncoding();
     }
@@ -94,7 +78,8 @@ private String propVaraddress;
     }
 
     public IElement GetDocumentElement() {
-      for (INode node : this.GetChildNodes()) {
+      for (INode node = this.GetFirstChild(); node != null;
+        node = node.GetNextSibling()) {
         if (node instanceof IElement) {
           return (IElement)node;
         }
@@ -106,40 +91,200 @@ private String propVaraddress;
       if (id == null) {
         throw new IllegalArgumentException();
       }
-      for (INode node : this.GetChildNodes()) {
+      return this.GetIndexedElementById(id);
+    }
+
+    IElement GetIndexedElementById(String id) {
+      HashMap<String, IElement> index = this.idIndex;
+      if (index == null) {
+        index = new HashMap<String, IElement>();
+        HashSet<String> duplicates = new HashSet<String>();
+        IndexIds(this, index, duplicates);
+        this.duplicateIds = (duplicates.size() == 0) ? null : duplicates;
+        this.idIndex = index;
+      }
+      return index.get(id);
+    }
+
+    /**
+     * Gets whether more than one element has the given ID. Valid only after
+     * GetIndexedElementById is called.
+     */
+    boolean IsDuplicateId(String id) {
+      HashSet<String> duplicates = this.duplicateIds;
+      return duplicates != null && duplicates.contains(id);
+    }
+
+    void ClearIndexes() {
+      this.idIndex = null;
+      this.duplicateIds = null;
+      this.allElements = null;
+      this.elementsByName = null;
+    }
+
+    private static void IndexIds(
+      INode parent,
+      HashMap<String, IElement> index,
+      HashSet<String> duplicates) {
+      for (INode node = parent.GetFirstChild(); node != null;
+        node = node.GetNextSibling()) {
         if (node instanceof IElement) {
-          if (id.equals(((IElement)node).GetId())) {
-            return (IElement)node;
-          }
-          IElement element = ((IElement)node).GetElementById(id);
-          if (element != null) {
-            return element;
+          String id = ((IElement)node).GetId();
+          if (id != null) {
+            if (!index.containsKey(id)) {
+              index.put(id, (IElement)node);
+            } else {
+              duplicates.add(id);
+            }
           }
+          IndexIds(node, index, duplicates);
         }
       }
-      return null;
     }
 
     public List<IElement> GetElementsByTagName(String tagName) {
       if (tagName == null) {
         throw new IllegalArgumentException();
       }
+      return this.GetIndexedElementsByTagName(
+        tagName,
+        -1,
+        Integer.MAX_VALUE);
+    }
+
+    /**
+     * Gets the elements with the given tag name whose position in tree
+     * order, as numbered when building the tag index, is greater than
+     * {@code after} and no greater than {@code last}.
+     */
+    List<IElement> GetIndexedElementsByTagName(
+      String tagName,
+      int after,
+      int last) {
+      this.BuildTagIndex();
+      List<IElement> ret = new ArrayList<IElement>();
       if (tagName.equals("*")) {
-        tagName = null;
+        AddElementsInRange(this.allElements, after, last, null, ret);
+        return ret;
       }
-      List<IElement> ret = new ArrayList<IElement>();
-      if (this.IsHtmlDocument()) {
-        this.CollectElementsHtml(
-          this,
-          tagName,
-          com.upokecenter.util.DataUtilities.ToLowerCaseAscii(tagName),
+      HashMap<String, List<IElement>> byName = this.elementsByName;
+      List<IElement> named = byName.get(tagName);
+      String lowerTagName = this.IsHtmlDocument() ?
+        com.upokecenter.util.DataUtilities.ToLowerCaseAscii(tagName) :
+        tagName;
+      if (lowerTagName.equals(tagName)) {
+        if (named != null) {
+          AddElementsInRange(named, after, last, null, ret);
+        }
+        return ret;
+      }
+      // HTML elements match the lower-cased name, and other elements
+      // match the name as given
+      List<IElement> lowerNamed = byName.get(lowerTagName);
+      if (lowerNamed != null) {
+        AddElementsInRange(
+          lowerNamed,
+          after,
+          last,
+          HtmlCommon.HTML_NAMESPACE,
           ret);
-      } else {
-        this.CollectElements(this, tagName, ret);
+      }
+      if (named != null && ret.size() > 0) {
+        List<IElement> lowerRet = ret;
+        ret = new ArrayList<IElement>();
+        AddElementsInRange(named, after, last, null, ret);
+        ret = MergeInTreeOrder(lowerRet, ret);
+      } else if (named != null) {
+        AddElementsInRange(named, after, last, null, ret);
+      }
+      return ret;
+    }
+
+    /**
+     * Builds the tag index if it isn't current, which also numbers each
+     * element in tree order.
+     */
+    void BuildTagIndex() {
+      if (this.allElements == null) {
+        List<IElement> all = new ArrayList<IElement>();
+        HashMap<String, List<IElement>> byName =
+          new HashMap<String, List<IElement>>();
+        IndexTags(this, all, byName);
+        this.elementsByName = byName;
+        this.allElements = all;
+      }
+    }
+
+    private static void AddElementsInRange(
+      List<IElement> elements,
+      int after,
+      int last,
+      String namespaceValue,
+      List<IElement> ret) {
+      // Find the first element after the given position
+      int lo = 0;
+      int hi = elements.size();
+      while (lo < hi) {
+        int mid = (lo + hi) >> 1;
+        if (((Element)elements.get(mid)).GetTreeOrder() <= after) {
+          lo = mid + 1;
+        } else {
+          hi = mid;
+        }
+      }
+      for (int i = lo; i < elements.size(); ++i) {
+        Element e = (Element)elements.get(i);
+        if (e.GetTreeOrder() > last) {
+          break;
+        }
+        if (namespaceValue == null ||
+          namespaceValue.equals(e.GetNamespaceURI())) {
+          ret.add(e);
+        }
+      }
+    }
+
+    private static List<IElement> MergeInTreeOrder(
+      List<IElement> a,
+      List<IElement> b) {
+      List<IElement> ret = new ArrayList<IElement>(a.size() + b.size());
+      int i = 0;
+      int j = 0;
+      while (i < a.size() || j < b.size()) {
+        if (j == b.size() || (i < a.size() &&
+          ((Element)a.get(i)).GetTreeOrder() <
+          ((Element)b.get(j)).GetTreeOrder())) {
+          ret.add(a.get(i++));
+        } else {
+          ret.add(b.get(j++));
+        }
       }
       return ret;
     }
 
+    private static void IndexTags(
+      INode parent,
+      List<IElement> all,
+      HashMap<String, List<IElement>> byName) {
+      for (INode node = parent.GetFirstChild(); node != null;
+        node = node.GetNextSibling()) {
+        if (node instanceof Element) {
+          Element e = (Element)node;
+          String name = e.GetLocalName();
+          List<IElement> named = byName.get(name);
+          if (named == null) {
+            named = new ArrayList<IElement>();
+            byName.put(name, named);
+          }
+          int order = all.size();
+          all.add(e);
+          named.add(e);
+          IndexTags(e, all, byName);
+          e.SetTreeOrder(order, all.size() - 1);
+        }
+      }
+    }
+
     @Override public String GetLanguage() {
       return (this.getDefaultLanguage() == null) ? "" :
         this.getDefaultLanguage();
@@ -169,6 +314,14 @@ private String propVaraddress;
       return true;
     }
 
+    public IElement QuerySelector(String selectors) {
+      return CompiledSelector.Compile(selectors).QueryFirst(this);
+    }
+
+    public List<IElement> QuerySelectorAll(String selectors) {
+      return CompiledSelector.Compile(selectors).QueryAll(this);
+    }
+
     void SetMode(DocumentMode mode) {
       this.docmode = mode;
     }
@@ -38,6 +38,53 @@ THE SOFTWARE.
       }
     }
 
+    // A read-only view of one of an element's attributes
+    private static final class AttributeView implements IAttr {
+      private final Element element;
+      private final int index;
+
+      public AttributeView(Element element, int index) {
+        this.element = element;
+        this.index = index;
+      }
+
+      public String GetLocalName() {
+        String name = this.element.attrNames[this.index];
+        if (this.GetNamespaceURI() == null) {
+          return name;
+        }
+        int io = name.indexOf(':');
+        return (io >= 1) ? name.substring(io + 1) : name;
+      }
+
+      public String GetName() {
+        return this.element.attrNames[this.index];
+      }
+
+      public String GetNamespaceURI() {
+        return this.element.GetAttributeNamespace(this.index);
+      }
+
+      public String GetPrefix() {
+        if (this.GetNamespaceURI() == null) {
+          return null;
+        }
+        String name = this.element.attrNames[this.index];
+        int io = name.indexOf(':');
+        return (io >= 1) ? name.substring(0, io) : "";
+      }
+
+      public String GetValue() {
+        return this.element.attrValues[this.index];
+      }
+
+      @Override public String toString() {
+        return "[Attribute: " + this.GetName() + "=" + this.GetValue() + "]";
+      }
+    }
+
+    private static final String[] EmptyStrings = new String[0];
+
     static Element FromToken(INameAndAttributes token) {
       return FromToken(token, HtmlCommon.HTML_NAMESPACE);
     }
@@ -47,11 +94,28 @@ THE SOFTWARE.
       String namespaceValue) {
       Element ret = new Element();
       ret.name = token.GetName();
-      ret.attributes = new ArrayList<Attr>();
-      for (IAttr attribute : token.GetAttributes()) {
-        ret.attributes.add(new Attr(attribute));
+      List<Attr> attributes = token.GetAttributes();
+      int count = attributes.size();
+      if (count > 0) {
+        ret.attrNames = new String[count];
+        ret.attrValues = new String[count];
+        for (int i = 0; i < count; ++i) {
+          Attr attribute = attributes.get(i);
+          String ns = attribute.GetNamespaceURI();
+          if (ns != null) {
+            if (ret.attrNamespaces == null) {
+              ret.attrNamespaces = new String[count];
+            }
+            ret.attrNamespaces[i] = ns;
+          }
+          ret.attrNames[i] = attribute.GetInternedName();
+          ret.attrValues[i] = attribute.GetValue();
+        }
+        ret.attrCount = count;
       }
       ret.namespaceValue = namespaceValue;
+      ret.atom = HtmlAtoms.GetAtom(ret.name);
+      ret.categories = HtmlAtoms.GetCategories(ret.atom, namespaceValue);
       return ret;
     }
 
@@ -61,21 +125,82 @@ THE SOFTWARE.
 
     private String prefix = null;
 
-    private List<Attr> attributes;
+    // Attribute names, values, and namespaces are kept in parallel arrays.
+    // The namespace array is null unless an attribute has a namespace.
+    private String[] attrNames = EmptyStrings;
+
+    private String[] attrValues = EmptyStrings;
+
+    private String[] attrNamespaces;
+
+    private int attrCount;
+
+    // Position of this element and of its last descendant in tree order,
+    // as numbered by the owner document's tag index
+    private int treeOrder;
+
+    private int treeOrderEnd;
+
+    private int atom;
+
+    private int categories;
 
     Element() {
  super(NodeType.ELEMENT_NODE);
-      this.attributes = new ArrayList<Attr>();
     }
 
     public Element(String name) {
  super(NodeType.ELEMENT_NODE);
-      this.attributes = new ArrayList<Attr>();
       this.name = name;
+      this.atom = HtmlAtoms.GetAtom(name);
+    }
+
+    void AddAttribute(IAttr value) {
+      this.AppendAttribute(
+        HtmlAttributeNames.Intern(value.GetName()),
+        value.GetValue(),
+        value.GetNamespaceURI());
+    }
+
+    private void AppendAttribute(String name, String value, String ns) {
+      if (name.equals("id")) {
+        this.InvalidateIndexes();
+      }
+      int count = this.attrCount;
+      if (count == this.attrNames.length) {
+        int newLength = Math.max(4, count * 2);
+        this.attrNames = Arrays.copyOf(this.attrNames, newLength);
+        this.attrValues = Arrays.copyOf(this.attrValues, newLength);
+        if (this.attrNamespaces != null) {
+          this.attrNamespaces = Arrays.copyOf(this.attrNamespaces, newLength);
+        }
+      }
+      if (ns != null && this.attrNamespaces == null) {
+        this.attrNamespaces = new String[this.attrNames.length];
+      }
+      this.attrNames[count] = name;
+      this.attrValues[count] = value;
+      if (this.attrNamespaces != null) {
+        this.attrNamespaces[count] = ns;
+      }
+      this.attrCount = count + 1;
+    }
+
+    int GetAttributeCount() {
+      return this.attrCount;
+    }
+
+    String GetAttributeName(int index) {
+      return this.attrNames[index];
     }
 
-    void AddAttribute(Attr value) {
-      this.attributes.add(value);
+    String GetAttributeNamespace(int index) {
+      return (this.attrNamespaces == null) ? null :
+        this.attrNamespaces[index];
+    }
+
+    String GetAttributeValue(int index) {
+      return this.attrValues[index];
     }
 
     private void CollectElements(INode c, String s, List<IElement> nodes) {
@@ -85,7 +210,8 @@ THE SOFTWARE.
           nodes.add(e);
         }
       }
-      for (INode node : c.GetChildNodes()) {
+      for (INode node = c.GetFirstChild(); node != null;
+        node = node.GetNextSibling()) {
         this.CollectElements(node, s, nodes);
       }
     }
@@ -106,37 +232,77 @@ THE SOFTWARE.
           nodes.add(e);
         }
       }
-      for (INode node : c.GetChildNodes()) {
-        this.CollectElements(node, s, nodes);
+      for (INode node = c.GetFirstChild(); node != null;
+        node = node.GetNextSibling()) {
+        this.CollectElementsHtml(node, s, valueSLowercase, nodes);
       }
     }
 
-    public String GetAttribute(String name) {
-      for (IAttr attr : this.GetAttributes()) {
-        if (attr.GetName().equals(name)) {
-          return attr.GetValue();
+    int GetAtom() {
+      return this.atom;
+    }
+
+    int GetCategories() {
+      return this.categories;
+    }
+
+    int GetTreeOrder() {
+      return this.treeOrder;
+    }
+
+    void SetTreeOrder(int order, int lastDescendantOrder) {
+      this.treeOrder = order;
+      this.treeOrderEnd = lastDescendantOrder;
+    }
+
+    private int IndexOfAttribute(String name) {
+      String[] names = this.attrNames;
+      for (int i = 0; i < this.attrCount; ++i) {
+        String attrName = names[i];
+        if (attrName == name || attrName.equals(name)) {
+          return i;
         }
       }
-      return null;
+      return -1;
+    }
+
+    public String GetAttribute(String name) {
+      int index = this.IndexOfAttribute(name);
+      return (index < 0) ? null : this.attrValues[index];
     }
 
     public String GetAttributeNS(String namespaceValue, String localName) {
-      for (IAttr attr : this.GetAttributes()) {
-        if ((localName == null ? attr.GetLocalName() == null :
-          localName.equals(attr.GetLocalName())) &&
-          (namespaceValue == null ? attr.GetNamespaceURI() == null :
-          namespaceValue.equals(attr.GetNamespaceURI()))) {
-          return attr.GetValue();
+      if (localName == null) {
+        return null;
+      }
+      for (int i = 0; i < this.attrCount; ++i) {
+        String ns = this.GetAttributeNamespace(i);
+        if (namespaceValue == null ? ns != null : !namespaceValue.equals(ns)) {
+          continue;
+        }
+        String attrName = this.attrNames[i];
+        if (ns != null) {
+          // The local name follows the prefix, if any
+          int io = attrName.indexOf(':');
+          if (io >= 1) {
+            if (attrName.length() - io - 1 == localName.length() &&
+              attrName.startsWith(localName, io + 1)) {
+              return this.attrValues[i];
+            }
+            continue;
+          }
+        }
+        if (attrName.equals(localName)) {
+          return this.attrValues[i];
         }
       }
       return null;
     }
 
     private ArrayList<IAttr> GetAttributesList() {
-      ArrayList<IAttr> attrs = new ArrayList<IAttr>();
-      List<Attr> thisattrs = this.attributes;
-      for (Attr attr : thisattrs) {
-        attrs.add(attr);
+      ArrayList<IAttr> attrs = new ArrayList<IAttr>(this.attrCount);
+      for (int i = 0; i < this.attrCount; ++i) {
+        attrs.add(new AttributeView(this, i));
       }
       return attrs;
     }
@@ -149,12 +315,40 @@ THE SOFTWARE.
       if (id == null) {
         throw new IllegalArgumentException();
       }
-      for (INode node : this.GetChildNodes()) {
+      INode root = this;
+      while (root.GetParentNode() != null) {
+        root = root.GetParentNode();
+      }
+      if (root instanceof Document) {
+        // Use the document's index; the indexed element is the first in
+        // tree order, so it's also the first within this element
+        // if it's a descendant
+        Document doc = (Document)root;
+        IElement element = doc.GetIndexedElementById(id);
+        if (element == null) {
+          return null;
+        }
+        for (INode node = element.GetParentNode(); node != null;
+          node = node.GetParentNode()) {
+          if (node == this) {
+            return element;
+          }
+        }
+        if (!doc.IsDuplicateId(id)) {
+          return null;
+        }
+      }
+      return FindElementById(this, id);
+    }
+
+    private static IElement FindElementById(INode parent, String id) {
+      for (INode node = parent.GetFirstChild(); node != null;
+        node = node.GetNextSibling()) {
         if (node instanceof IElement) {
           if (id.equals(((IElement)node).GetId())) {
             return (IElement)node;
           }
-          IElement element = ((IElement)node).GetElementById(id);
+          IElement element = FindElementById(node, id);
           if (element != null) {
             return element;
           }
@@ -167,17 +361,35 @@ THE SOFTWARE.
       if (tagName == null) {
         throw new IllegalArgumentException();
       }
+      INode root = this;
+      while (root.GetParentNode() != null) {
+        root = root.GetParentNode();
+      }
+      if (root instanceof Document) {
+        // Use the document's tag index; the positions after this
+        // element up to its last descendant are this element's
+        // descendants
+        Document doc = (Document)root;
+        doc.BuildTagIndex();
+        return doc.GetIndexedElementsByTagName(
+          tagName,
+          this.treeOrder,
+          this.treeOrderEnd);
+      }
       if (tagName.equals("*")) {
         tagName = null;
       }
       List<IElement> ret = new ArrayList<IElement>();
-      if (((Document)this.GetOwnerDocument()).IsHtmlDocument()) {
+      IDocument owner = this.GetOwnerDocument();
+      if (owner == null || ((Document)owner).IsHtmlDocument()) {
         String lowerTagName = com.upokecenter.util.DataUtilities.ToLowerCaseAscii(tagName);
-        for (INode node : this.GetChildNodes()) {
+        for (INode node = this.GetFirstChild(); node != null;
+          node = node.GetNextSibling()) {
           this.CollectElementsHtml(node, tagName, lowerTagName, ret);
         }
       } else {
-        for (INode node : this.GetChildNodes()) {
+        for (INode node = this.GetFirstChild(); node != null;
+          node = node.GetNextSibling()) {
           this.CollectElements(node, tagName, ret);
         }
       }
@@ -192,6 +404,10 @@ THE SOFTWARE.
       return this.GetInnerHtmlInternal();
     }
 
+    public String GetOuterHTML() {
+      return HtmlSerializer.ToHtmlString(this, true);
+    }
+
     @Override public final String GetLanguage() {
       INode parent = this.GetParentNode();
       String a = this.GetAttributeNS(HtmlCommon.XML_NAMESPACE, "lang");
@@ -235,7 +451,8 @@ THE SOFTWARE.
 
     @Override public final String GetTextContent() {
       StringBuilder builder = new StringBuilder();
-      for (INode node : this.GetChildNodes()) {
+      for (INode node = this.GetFirstChild(); node != null;
+        node = node.GetNextSibling()) {
         if (node.GetNodeType() != NodeType.COMMENT_NODE) {
           builder.append(node.GetTextContent());
         }
@@ -244,29 +461,48 @@ THE SOFTWARE.
     }
 
     void MergeAttributes(INameAndAttributes token) {
-      for (IAttr attr : token.GetAttributes()) {
-        String s = this.GetAttribute(attr.GetName());
-        if (s == null) {
-          this.SetAttribute(attr.GetName(), attr.GetValue());
+      for (Attr attr : token.GetAttributes()) {
+        String name = attr.GetInternedName();
+        if (this.IndexOfAttribute(name) < 0) {
+          this.AppendAttribute(name, attr.GetValue(), null);
         }
       }
     }
 
+    public IElement QuerySelector(String selectors) {
+      return CompiledSelector.Compile(selectors).QueryFirst(this);
+    }
+
+    public List<IElement> QuerySelectorAll(String selectors) {
+      return CompiledSelector.Compile(selectors).QueryAll(this);
+    }
+
     void SetAttribute(String stringValue, String value) {
-      for (IAttr attr : this.GetAttributes()) {
-        if (attr.GetName().equals(stringValue)) {
-          ((Attr)attr).SetValue(value);
+      int index = this.IndexOfAttribute(stringValue);
+      if (index >= 0) {
+        if (stringValue.equals("id")) {
+          this.InvalidateIndexes();
         }
+        this.attrValues[index] = value;
+      } else {
+        this.AppendAttribute(
+          HtmlAttributeNames.Intern(stringValue),
+          value,
+          null);
       }
-      this.attributes.add(new Attr(stringValue, value));
     }
 
     void SetLocalName(String name) {
+      this.InvalidateIndexes();
       this.name = name;
+      this.atom = HtmlAtoms.GetAtom(name);
+      this.categories = HtmlAtoms.GetCategories(this.atom, this.namespaceValue);
     }
 
     void SetNamespace(String namespaceValue) {
+      this.InvalidateIndexes();
       this.namespaceValue = namespaceValue;
+      this.categories = HtmlAtoms.GetCategories(this.atom, namespaceValue);
     }
 
     public void SetPrefix(String prefix) {
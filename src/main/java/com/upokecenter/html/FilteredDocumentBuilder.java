@@ -0,0 +1,125 @@
+package com.upokecenter.html;
+/*
+
+Licensed under the Expat License.
+
+Copyright (C) 2013 Peter Occil
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+import java.util.*;
+
+  /**
+   * Builds a document out of parser events, keeping only the elements an
+   * element filter accepts, along with their contents. The html, head and
+   * body elements are kept as containers so that the kept elements stay
+   * grouped as in the full document; other discarded elements are
+   * replaced by the kept elements inside them.
+   */
+  final class FilteredDocumentBuilder implements IHtmlEventHandler {
+    private final IElementFilter filter;
+    private final Document document = new Document();
+    // For each started element, the node its contents go into
+    private final List<Node> parents = new ArrayList<Node>();
+    // For each started element, whether it and its contents are kept
+    private final List<Boolean> kept = new ArrayList<Boolean>();
+    private Node current;
+    private int keptDepth;
+
+    public FilteredDocumentBuilder(IElementFilter filter) {
+      this.filter = filter;
+      this.current = this.document;
+    }
+
+    public void StartElement(IElement element) {
+      boolean keep = this.keptDepth > 0 || this.filter.IsMatch(element);
+      this.parents.add(this.current);
+      this.kept.add(keep);
+      if (keep || HtmlAtoms.IsHtmlElement(element, HtmlAtoms.HTML) ||
+        HtmlAtoms.IsHtmlElement(element, HtmlAtoms.HEAD) ||
+        HtmlAtoms.IsHtmlElement(element, HtmlAtoms.BODY)) {
+        Element copy = new Element();
+        copy.SetLocalName(element.GetLocalName());
+        copy.SetNamespace(element.GetNamespaceURI());
+        copy.SetPrefix(element.GetPrefix());
+        for (IAttr attr : element.GetAttributes()) {
+          copy.AddAttribute(attr);
+        }
+        this.current.AppendChild(copy);
+        this.current = copy;
+      }
+      if (keep) {
+        ++this.keptDepth;
+      }
+    }
+
+    public void EndElement(IElement element) {
+      int last = this.parents.size() - 1;
+      this.current = this.parents.remove(last);
+      if (this.kept.remove(last)) {
+        --this.keptDepth;
+      }
+    }
+
+    public void Characters(String text) {
+      if (this.keptDepth > 0) {
+        INode lastChild = this.current.GetLastChildInternal();
+        if (lastChild instanceof Text) {
+          ((Text)lastChild).AppendText(text);
+        } else {
+          Text textNode = new Text();
+          textNode.AppendText(text);
+          this.current.AppendChild(textNode);
+        }
+      }
+    }
+
+    public void Comment(String data) {
+      if (this.keptDepth > 0) {
+        Comment comment = new Comment();
+        comment.SetData(data);
+        this.current.AppendChild(comment);
+      }
+    }
+
+    public void DocumentType(IDocumentType doctype) {
+      DocumentType copy = new DocumentType(
+        doctype.GetName(),
+        doctype.GetPublicId(),
+        doctype.GetSystemId());
+      this.document.setDoctype(copy);
+      this.document.AppendChild(copy);
+    }
+
+    /**
+     * Gets the built document, copying its properties from the document
+     * the parser built.
+     * @param source The document the parser built.
+     * @return The built document.
+     */
+    public Document GetDocument(Document source) {
+      this.document.setAddress(source.getAddress());
+      this.document.setEncoding(source.getEncoding());
+      this.document.setDefaultLanguage(source.getDefaultLanguage());
+      this.document.SetBaseURI(source.GetBaseURI());
+      this.document.SetMode(source.GetMode());
+      return this.document;
+    }
+  }
@@ -49,6 +49,10 @@ import com.upokecenter.text.*;
       while (true) {
         int c = this.valueDecoder.ReadChar(byteReader);
         // System.out.println("c=" + ((char)c) + ",cc=" + cc);
+        if (c == -2) {
+          // Invalid byte sequence
+          c = 0xfffd;
+        }
         if (!this.valueHavebom && !this.valueHavecr && c >= 0x20 && c <= 0x7e) {
           return c;
         }
@@ -113,6 +117,10 @@ import com.upokecenter.text.*;
       while (length > 0) {
         int c = this.valueDecoder.ReadChar(stream);
         // System.out.println("read c=" + ((char)c) + ",cc=" + cc);
+        if (c == -2) {
+          // Invalid byte sequence
+          c = 0xfffd;
+        }
         if (!this.valueHavebom && !this.valueHavecr && c >= 0x20 && c <= 0x7e) {
           buffer[offset] = c;
           ++offset;
@@ -0,0 +1,549 @@
+package com.upokecenter.html;
+
+/*
+
+Licensed under the Expat License.
+
+Copyright (C) 2013 Peter Occil
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+  /**
+   * Table of interned local names of HTML, SVG, and MathML elements known
+   * to the tree builder. Each name has a small integer ID (an atom), and
+   * elements in each namespace have precomputed category bits used in
+   * scope checks and insertion mode dispatch. The atom 0 stands for any
+   * name not in the table.
+   */
+  final class HtmlAtoms {
+private HtmlAtoms() {
+}
+    static final int UNKNOWN = 0;
+
+    static final int A = 1;
+    static final int ABBR = 2;
+    static final int ACRONYM = 3;
+    static final int ADDRESS = 4;
+    static final int ALT_GLYPH = 5;
+    static final int ALTGLYPH = 6;
+    static final int ALT_GLYPH_DEF = 7;
+    static final int ALTGLYPHDEF = 8;
+    static final int ALT_GLYPH_ITEM = 9;
+    static final int ALTGLYPHITEM = 10;
+    static final int ANIMATE_COLOR = 11;
+    static final int ANIMATECOLOR = 12;
+    static final int ANIMATE_MOTION = 13;
+    static final int ANIMATEMOTION = 14;
+    static final int ANIMATE_TRANSFORM = 15;
+    static final int ANIMATETRANSFORM = 16;
+    static final int ANNOTATION = 17;
+    static final int ANNOTATION_XML = 18;
+    static final int APPLET = 19;
+    static final int AREA = 20;
+    static final int ARTICLE = 21;
+    static final int ASIDE = 22;
+    static final int AUDIO = 23;
+    static final int B = 24;
+    static final int BASE = 25;
+    static final int BASEFONT = 26;
+    static final int BDI = 27;
+    static final int BDO = 28;
+    static final int BGSOUND = 29;
+    static final int BIG = 30;
+    static final int BLINK = 31;
+    static final int BLOCKQUOTE = 32;
+    static final int BODY = 33;
+    static final int BR = 34;
+    static final int BUTTON = 35;
+    static final int CANVAS = 36;
+    static final int CAPTION = 37;
+    static final int CENTER = 38;
+    static final int CIRCLE = 39;
+    static final int CITE = 40;
+    static final int CLIP_PATH = 41;
+    static final int CLIPPATH = 42;
+    static final int CODE = 43;
+    static final int COL = 44;
+    static final int COLGROUP = 45;
+    static final int DATA = 46;
+    static final int DATALIST = 47;
+    static final int DD = 48;
+    static final int DEFS = 49;
+    static final int DEL = 50;
+    static final int DESC = 51;
+    static final int DETAILS = 52;
+    static final int DFN = 53;
+    static final int DIALOG = 54;
+    static final int DIR = 55;
+    static final int DIV = 56;
+    static final int DL = 57;
+    static final int DT = 58;
+    static final int ELLIPSE = 59;
+    static final int EM = 60;
+    static final int EMBED = 61;
+    static final int FE_BLEND = 62;
+    static final int FEBLEND = 63;
+    static final int FE_COLOR_MATRIX = 64;
+    static final int FECOLORMATRIX = 65;
+    static final int FE_COMPONENT_TRANSFER = 66;
+    static final int FECOMPONENTTRANSFER = 67;
+    static final int FE_COMPOSITE = 68;
+    static final int FECOMPOSITE = 69;
+    static final int FE_CONVOLVE_MATRIX = 70;
+    static final int FECONVOLVEMATRIX = 71;
+    static final int FE_DIFFUSE_LIGHTING = 72;
+    static final int FEDIFFUSELIGHTING = 73;
+    static final int FE_DISPLACEMENT_MAP = 74;
+    static final int FEDISPLACEMENTMAP = 75;
+    static final int FE_DISTANT_LIGHT = 76;
+    static final int FEDISTANTLIGHT = 77;
+    static final int FE_FLOOD = 78;
+    static final int FEFLOOD = 79;
+    static final int FE_FUNC_A = 80;
+    static final int FEFUNCA = 81;
+    static final int FE_FUNC_B = 82;
+    static final int FEFUNCB = 83;
+    static final int FE_FUNC_G = 84;
+    static final int FEFUNCG = 85;
+    static final int FE_FUNC_R = 86;
+    static final int FEFUNCR = 87;
+    static final int FE_GAUSSIAN_BLUR = 88;
+    static final int FEGAUSSIANBLUR = 89;
+    static final int FE_IMAGE = 90;
+    static final int FEIMAGE = 91;
+    static final int FE_MERGE = 92;
+    static final int FEMERGE = 93;
+    static final int FE_MERGE_NODE = 94;
+    static final int FEMERGENODE = 95;
+    static final int FE_MORPHOLOGY = 96;
+    static final int FEMORPHOLOGY = 97;
+    static final int FE_OFFSET = 98;
+    static final int FEOFFSET = 99;
+    static final int FE_POINT_LIGHT = 100;
+    static final int FEPOINTLIGHT = 101;
+    static final int FE_SPECULAR_LIGHTING = 102;
+    static final int FESPECULARLIGHTING = 103;
+    static final int FE_SPOT_LIGHT = 104;
+    static final int FESPOTLIGHT = 105;
+    static final int FE_TILE = 106;
+    static final int FETILE = 107;
+    static final int FE_TURBULENCE = 108;
+    static final int FETURBULENCE = 109;
+    static final int FIELDSET = 110;
+    static final int FIGCAPTION = 111;
+    static final int FIGURE = 112;
+    static final int FILTER = 113;
+    static final int FONT = 114;
+    static final int FOOTER = 115;
+    static final int FOREIGN_OBJECT = 116;
+    static final int FOREIGNOBJECT = 117;
+    static final int FORM = 118;
+    static final int FRAME = 119;
+    static final int FRAMESET = 120;
+    static final int G = 121;
+    static final int GLYPH_REF = 122;
+    static final int GLYPHREF = 123;
+    static final int H1 = 124;
+    static final int H2 = 125;
+    static final int H3 = 126;
+    static final int H4 = 127;
+    static final int H5 = 128;
+    static final int H6 = 129;
+    static final int HEAD = 130;
+    static final int HEADER = 131;
+    static final int HGROUP = 132;
+    static final int HR = 133;
+    static final int HTML = 134;
+    static final int I = 135;
+    static final int IFRAME = 136;
+    static final int IMAGE = 137;
+    static final int IMG = 138;
+    static final int INPUT = 139;
+    static final int INS = 140;
+    static final int ISINDEX = 141;
+    static final int KBD = 142;
+    static final int KEYGEN = 143;
+    static final int LABEL = 144;
+    static final int LEGEND = 145;
+    static final int LI = 146;
+    static final int LINE = 147;
+    static final int LINEAR_GRADIENT = 148;
+    static final int LINEARGRADIENT = 149;
+    static final int LINK = 150;
+    static final int LISTING = 151;
+    static final int MAIN = 152;
+    static final int MALIGNMARK = 153;
+    static final int MAP = 154;
+    static final int MARK = 155;
+    static final int MARKER = 156;
+    static final int MARQUEE = 157;
+    static final int MASK = 158;
+    static final int MATH = 159;
+    static final int MENU = 160;
+    static final int MENUITEM = 161;
+    static final int META = 162;
+    static final int METADATA = 163;
+    static final int METER = 164;
+    static final int MGLYPH = 165;
+    static final int MI = 166;
+    static final int MN = 167;
+    static final int MO = 168;
+    static final int MROW = 169;
+    static final int MS = 170;
+    static final int MTEXT = 171;
+    static final int NAV = 172;
+    static final int NOBR = 173;
+    static final int NOEMBED = 174;
+    static final int NOFRAMES = 175;
+    static final int NOSCRIPT = 176;
+    static final int OBJECT = 177;
+    static final int OL = 178;
+    static final int OPTGROUP = 179;
+    static final int OPTION = 180;
+    static final int OUTPUT = 181;
+    static final int P = 182;
+    static final int PARAM = 183;
+    static final int PATH = 184;
+    static final int PATTERN = 185;
+    static final int PICTURE = 186;
+    static final int PLAINTEXT = 187;
+    static final int POLYGON = 188;
+    static final int POLYLINE = 189;
+    static final int PRE = 190;
+    static final int PROGRESS = 191;
+    static final int Q = 192;
+    static final int RADIAL_GRADIENT = 193;
+    static final int RADIALGRADIENT = 194;
+    static final int RB = 195;
+    static final int RECT = 196;
+    static final int RP = 197;
+    static final int RT = 198;
+    static final int RTC = 199;
+    static final int RUBY = 200;
+    static final int S = 201;
+    static final int SAMP = 202;
+    static final int SCRIPT = 203;
+    static final int SECTION = 204;
+    static final int SELECT = 205;
+    static final int SEMANTICS = 206;
+    static final int SLOT = 207;
+    static final int SMALL = 208;
+    static final int SOURCE = 209;
+    static final int SPAN = 210;
+    static final int STOP = 211;
+    static final int STRIKE = 212;
+    static final int STRONG = 213;
+    static final int STYLE = 214;
+    static final int SUB = 215;
+    static final int SUMMARY = 216;
+    static final int SUP = 217;
+    static final int SVG = 218;
+    static final int SYMBOL = 219;
+    static final int TABLE = 220;
+    static final int TBODY = 221;
+    static final int TD = 222;
+    static final int TEMPLATE = 223;
+    static final int TEXT = 224;
+    static final int TEXTAREA = 225;
+    static final int TEXT_PATH = 226;
+    static final int TEXTPATH = 227;
+    static final int TFOOT = 228;
+    static final int TH = 229;
+    static final int THEAD = 230;
+    static final int TIME = 231;
+    static final int TITLE = 232;
+    static final int TR = 233;
+    static final int TRACK = 234;
+    static final int TSPAN = 235;
+    static final int TT = 236;
+    static final int U = 237;
+    static final int UL = 238;
+    static final int USE = 239;
+    static final int VAR = 240;
+    static final int VIDEO = 241;
+    static final int WBR = 242;
+    static final int XMP = 243;
+
+    // Category bits
+    static final int HTML_ELEMENT = 1;
+    static final int MATHML_ELEMENT = 1 << 1;
+    static final int SVG_ELEMENT = 1 << 2;
+    static final int SPECIAL = 1 << 3;
+    static final int FORMATTING = 1 << 4;
+    // Boundary of the default scope
+    static final int SCOPING = 1 << 5;
+    // Additional boundaries of list item scope and button scope
+    static final int LIST_ITEM_SCOPING = 1 << 6;
+    static final int BUTTON_SCOPING = 1 << 7;
+    // Boundaries of table scope
+    static final int TABLE_SCOPING = 1 << 8;
+    // Elements that are not boundaries of select scope
+    static final int OPTION_OR_OPTGROUP = 1 << 9;
+    static final int IMPLIED_END_TAG = 1 << 10;
+    static final int THOROUGH_IMPLIED_END_TAG = 1 << 11;
+    static final int HEADING = 1 << 12;
+    // Elements under which inserted nodes are foster parented
+    static final int FOSTER_PARENTING = 1 << 13;
+    // Elements serialized without content or an end tag
+    static final int VOID = 1 << 14;
+    // Elements whose text is serialized without escaping
+    static final int RAW_TEXT = 1 << 15;
+
+    private static final String[] names = new String[] {
+      null, "a", "abbr", "acronym", "address", "altGlyph", "altglyph",
+      "altGlyphDef", "altglyphdef", "altGlyphItem", "altglyphitem",
+      "animateColor", "animatecolor", "animateMotion", "animatemotion",
+      "animateTransform", "animatetransform", "annotation", "annotation-xml",
+      "applet", "area", "article", "aside", "audio", "b", "base", "basefont",
+      "bdi", "bdo", "bgsound", "big", "blink", "blockquote", "body", "br",
+      "button", "canvas", "caption", "center", "circle", "cite", "clipPath",
+      "clippath", "code", "col", "colgroup", "data", "datalist", "dd", "defs",
+      "del", "desc", "details", "dfn", "dialog", "dir", "div", "dl", "dt",
+      "ellipse", "em", "embed", "feBlend", "feblend", "feColorMatrix",
+      "fecolormatrix", "feComponentTransfer", "fecomponenttransfer",
+      "feComposite", "fecomposite", "feConvolveMatrix", "feconvolvematrix",
+      "feDiffuseLighting", "fediffuselighting", "feDisplacementMap",
+      "fedisplacementmap", "feDistantLight", "fedistantlight", "feFlood",
+      "feflood", "feFuncA", "fefunca", "feFuncB", "fefuncb", "feFuncG",
+      "fefuncg", "feFuncR", "fefuncr", "feGaussianBlur", "fegaussianblur",
+      "feImage", "feimage", "feMerge", "femerge", "feMergeNode",
+      "femergenode", "feMorphology", "femorphology", "feOffset", "feoffset",
+      "fePointLight", "fepointlight", "feSpecularLighting",
+      "fespecularlighting", "feSpotLight", "fespotlight", "feTile", "fetile",
+      "feTurbulence", "feturbulence", "fieldset", "figcaption", "figure",
+      "filter", "font", "footer", "foreignObject", "foreignobject", "form",
+      "frame", "frameset", "g", "glyphRef", "glyphref", "h1", "h2", "h3",
+      "h4", "h5", "h6", "head", "header", "hgroup", "hr", "html", "i",
+      "iframe", "image", "img", "input", "ins", "isindex", "kbd", "keygen",
+      "label", "legend", "li", "line", "linearGradient", "lineargradient",
+      "link", "listing", "main", "malignmark", "map", "mark", "marker",
+      "marquee", "mask", "math", "menu", "menuitem", "meta", "metadata",
+      "meter", "mglyph", "mi", "mn", "mo", "mrow", "ms", "mtext", "nav",
+      "nobr", "noembed", "noframes", "noscript", "object", "ol", "optgroup",
+      "option", "output", "p", "param", "path", "pattern", "picture",
+      "plaintext", "polygon", "polyline", "pre", "progress", "q",
+      "radialGradient", "radialgradient", "rb", "rect", "rp", "rt", "rtc",
+      "ruby", "s", "samp", "script", "section", "select", "semantics", "slot",
+      "small", "source", "span", "stop", "strike", "strong", "style", "sub",
+      "summary", "sup", "svg", "symbol", "table", "tbody", "td", "template",
+      "text", "textarea", "textPath", "textpath", "tfoot", "th", "thead",
+      "time", "title", "tr", "track", "tspan", "tt", "u", "ul", "use", "var",
+      "video", "wbr", "xmp",
+    };
+
+    private static final int[] hashTable;
+    private static final int[] htmlCategories = new int[names.length];
+    private static final int[] mathmlCategories = new int[names.length];
+    private static final int[] svgCategories = new int[names.length];
+
+    static {
+      int size = 1;
+      while (size < names.length * 4) {
+        size <<= 1;
+      }
+      hashTable = new int[size];
+      for (int i = 1; i < names.length; ++i) {
+        int index = names[i].hashCode() & (size - 1);
+        while (hashTable[index] != 0) {
+          index = (index + 1) & (size - 1);
+        }
+        hashTable[index] = i;
+      }
+      for (int i = 1; i < names.length; ++i) {
+        htmlCategories[i] = HTML_ELEMENT;
+        mathmlCategories[i] = MATHML_ELEMENT;
+        svgCategories[i] = SVG_ELEMENT;
+      }
+      SetCategories(
+        htmlCategories,
+        SPECIAL,
+        ADDRESS, APPLET, AREA, ARTICLE, ASIDE, BASE, BASEFONT, BGSOUND,
+        BLOCKQUOTE, BODY, BR, BUTTON, CAPTION, CENTER, COL, COLGROUP, DD,
+        DETAILS, DIR, DIV, DL, DT, EMBED, FIELDSET, FIGCAPTION, FIGURE,
+        FOOTER, FORM, FRAME, FRAMESET, H1, H2, H3, H4, H5, H6, HEAD,
+        HEADER, HR, HTML, IFRAME, IMG, INPUT, ISINDEX, LI, LINK, LISTING,
+        MAIN, MARQUEE, META, NAV, NOEMBED, NOFRAMES, NOSCRIPT, OBJECT, OL,
+        P, PARAM, PLAINTEXT, PRE, SCRIPT, SECTION, SELECT, SOURCE, STYLE,
+        SUMMARY, TABLE, TBODY, TD, TEXTAREA, TFOOT, TH, THEAD, TITLE, TR,
+        TRACK, UL, WBR, XMP);
+      SetCategories(
+        htmlCategories,
+        FORMATTING,
+        A, B, BIG, CODE, EM, FONT, I, NOBR, S, SMALL, STRIKE, STRONG, TT, U);
+      SetCategories(
+        htmlCategories,
+        SCOPING | LIST_ITEM_SCOPING | BUTTON_SCOPING,
+        APPLET, CAPTION, HTML, TABLE, TD, TH, MARQUEE, OBJECT);
+      SetCategories(htmlCategories, LIST_ITEM_SCOPING, OL, UL);
+      SetCategories(htmlCategories, BUTTON_SCOPING, BUTTON);
+      SetCategories(htmlCategories, TABLE_SCOPING, HTML, TABLE);
+      SetCategories(htmlCategories, OPTION_OR_OPTGROUP, OPTGROUP, OPTION);
+      SetCategories(
+        htmlCategories,
+        IMPLIED_END_TAG | THOROUGH_IMPLIED_END_TAG,
+        DD, DT, LI, OPTION, OPTGROUP, P, RB, RP, RT, RTC);
+      SetCategories(
+        htmlCategories,
+        THOROUGH_IMPLIED_END_TAG,
+        CAPTION, COLGROUP, TBODY, TFOOT, THEAD, TD, TH, TR);
+      SetCategories(htmlCategories, HEADING, H1, H2, H3, H4, H5, H6);
+      SetCategories(
+        htmlCategories,
+        FOSTER_PARENTING,
+        TABLE, TBODY, TFOOT, THEAD, TR);
+      SetCategories(
+        htmlCategories,
+        VOID,
+        AREA, BASE, BASEFONT, BGSOUND, BR, COL, EMBED, FRAME, HR, IMG,
+        INPUT, KEYGEN, LINK, MENUITEM, META, PARAM, SOURCE, TRACK, WBR);
+      SetCategories(
+        htmlCategories,
+        RAW_TEXT,
+        SCRIPT, STYLE, XMP, IFRAME, NOEMBED, NOFRAMES, PLAINTEXT);
+      SetCategories(
+        mathmlCategories,
+        SPECIAL | SCOPING | LIST_ITEM_SCOPING | BUTTON_SCOPING,
+        MI, MO, MN, MS, MTEXT, ANNOTATION_XML);
+      SetCategories(
+        svgCategories,
+        SPECIAL | SCOPING | LIST_ITEM_SCOPING | BUTTON_SCOPING,
+        FOREIGN_OBJECT, DESC, TITLE);
+    }
+
+    private static void SetCategories(
+      int[] table,
+      int categories,
+      int... atoms) {
+      for (int atom : atoms) {
+        table[atom] |= categories;
+      }
+    }
+
+    /**
+     * Gets the atom for the given local name.
+     * @param name A local name. Case-sensitive. Can be null.
+     * @return The atom for that name, or 0 if the name isn't in the table.
+     */
+    static int GetAtom(CharSequence name) {
+      if (name == null) {
+        return UNKNOWN;
+      }
+      int length = name.length();
+      int hash;
+      if (name instanceof String) {
+        hash = name.hashCode();
+      } else {
+        // Same as String's hash code
+        hash = 0;
+        for (int i = 0; i < length; ++i) {
+          hash = (31 * hash) + name.charAt(i);
+        }
+      }
+      int index = hash & (hashTable.length - 1);
+      while (true) {
+        int atom = hashTable[index];
+        if (atom == 0) {
+          return UNKNOWN;
+        }
+        String atomName = names[atom];
+        if (atomName.length() == length) {
+          boolean match = true;
+          for (int i = 0; i < length; ++i) {
+            if (atomName.charAt(i) != name.charAt(i)) {
+              match = false;
+              break;
+            }
+          }
+          if (match) {
+            return atom;
+          }
+        }
+        index = (index + 1) & (hashTable.length - 1);
+      }
+    }
+
+    /**
+     * Gets the interned local name of the given atom.
+     * @param atom An atom other than 0.
+     * @return The local name.
+     */
+    static String GetName(int atom) {
+      return names[atom];
+    }
+
+    /**
+     * Gets the number of atoms, including the unknown atom 0.
+     * @return The number of atoms.
+     */
+    static int GetCount() {
+      return names.length;
+    }
+
+    /**
+     * Gets the category bits of an element with the given atom and
+     * namespace.
+     * @param atom An atom, or 0 for a name not in the table.
+     * @param namespaceValue The element's namespace.
+     * @return The category bits; 0 if the element has an unknown name or
+     * isn't in the HTML, MathML, or SVG namespace.
+     */
+    static int GetCategories(int atom, String namespaceValue) {
+      if (HtmlCommon.HTML_NAMESPACE.equals(namespaceValue)) {
+        return htmlCategories[atom];
+      } else if (HtmlCommon.MATHML_NAMESPACE.equals(namespaceValue)) {
+        return mathmlCategories[atom];
+      } else if (HtmlCommon.SVG_NAMESPACE.equals(namespaceValue)) {
+        return svgCategories[atom];
+      } else {
+        return 0;
+      }
+    }
+
+    static int GetAtom(IElement element) {
+      return (element instanceof Element) ? ((Element)element).GetAtom() :
+        GetAtom(element.GetLocalName());
+    }
+
+    static int GetCategories(IElement element) {
+      return (element instanceof Element) ?
+        ((Element)element).GetCategories() :
+        GetCategories(
+          GetAtom(element.GetLocalName()),
+          element.GetNamespaceURI());
+    }
+
+    static boolean IsHtmlElement(IElement element, int atom) {
+      return element != null && atom != UNKNOWN &&
+        GetAtom(element) == atom &&
+        (GetCategories(element) & HTML_ELEMENT) != 0;
+    }
+
+    static boolean IsMathMLElement(IElement element, int atom) {
+      return element != null && atom != UNKNOWN &&
+        GetAtom(element) == atom &&
+        (GetCategories(element) & MATHML_ELEMENT) != 0;
+    }
+
+    static boolean IsSvgElement(IElement element, int atom) {
+      return element != null && atom != UNKNOWN &&
+        GetAtom(element) == atom &&
+        (GetCategories(element) & SVG_ELEMENT) != 0;
+    }
+  }
@@ -0,0 +1,141 @@
+package com.upokecenter.html;
+
+/*
+
+Licensed under the Expat License.
+
+Copyright (C) 2013 Peter Occil
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+  /**
+   * Table of interned names of attributes commonly found on HTML, SVG, and
+   * MathML elements. Elements store these shared names rather than a copy
+   * of the name for each attribute.
+   */
+  final class HtmlAttributeNames {
+private HtmlAttributeNames() {
+}
+    private static final String[] names = new String[] {
+      null, "abbr", "accept", "accept-charset", "accesskey", "action",
+      "align", "allow", "allowfullscreen", "alt", "aria-controls",
+      "aria-describedby", "aria-expanded", "aria-haspopup", "aria-hidden",
+      "aria-label", "aria-labelledby", "aria-live", "async", "attributeName",
+      "attributeType", "autocomplete", "autofocus", "autoplay", "baseFrequency",
+      "baseProfile", "bgcolor", "border", "calcMode", "cellpadding",
+      "cellspacing", "charset", "checked", "cite", "class", "clip-path",
+      "clip-rule", "clipPathUnits", "color", "cols", "colspan", "content",
+      "contenteditable", "controls", "coords", "crossorigin", "cx", "cy", "d",
+      "data", "datetime", "decoding", "default", "defer", "definitionURL",
+      "diffuseConstant", "dir", "disabled", "download", "draggable", "dx",
+      "dy", "edgeMode", "encoding", "enctype", "fill", "fill-opacity",
+      "fill-rule", "filter", "filterUnits", "font-family", "font-size",
+      "font-weight", "for", "form", "frameborder", "fx", "fy", "glyphRef",
+      "gradientTransform", "gradientUnits", "headers", "height", "hidden",
+      "high", "href", "hreflang", "http-equiv", "id", "integrity", "itemprop",
+      "itemscope", "itemtype", "kernelMatrix", "kernelUnitLength", "keyPoints",
+      "keySplines", "keyTimes", "label", "lang", "language", "lengthAdjust",
+      "limitingConeAngle", "list", "loading", "loop", "low", "marginheight",
+      "marginwidth", "markerHeight", "markerUnits", "markerWidth", "mask",
+      "maskContentUnits", "maskUnits", "max", "maxlength", "media", "method",
+      "min", "minlength", "multiple", "muted", "name", "nonce", "novalidate",
+      "numOctaves", "offset", "onchange", "onclick", "onload", "onmouseout",
+      "onmouseover", "onsubmit", "opacity", "open", "optimum", "pathLength",
+      "pattern", "patternContentUnits", "patternTransform", "patternUnits",
+      "placeholder", "playsinline", "points", "pointsAtX", "pointsAtY",
+      "pointsAtZ", "poster", "preload", "preserveAlpha", "preserveAspectRatio",
+      "primitiveUnits", "property", "r", "readonly", "referrerpolicy",
+      "refX", "refY", "rel", "repeatCount", "repeatDur", "required",
+      "requiredExtensions", "requiredFeatures", "rev", "reversed", "role",
+      "rows", "rowspan", "rx", "ry", "sandbox", "scope", "scrolling",
+      "selected", "shape", "size", "sizes", "slot", "span",
+      "specularConstant", "specularExponent", "spellcheck", "spreadMethod",
+      "src", "srcdoc", "srclang", "srcset", "start", "startOffset",
+      "stdDeviation", "step", "stop-color", "stop-opacity", "stroke",
+      "stroke-dasharray", "stroke-linecap", "stroke-linejoin", "stroke-width",
+      "style", "summary", "surfaceScale", "systemLanguage", "tabindex",
+      "tableValues", "target", "targetX", "targetY", "text-anchor",
+      "textLength", "title", "transform", "translate", "type", "usemap",
+      "valign", "value", "version", "viewBox", "viewTarget", "width", "wrap",
+      "x", "x1", "x2", "xChannelSelector", "xlink:actuate", "xlink:arcrole",
+      "xlink:href", "xlink:role", "xlink:show", "xlink:title", "xlink:type",
+      "xml:base", "xml:lang", "xml:space", "xmlns", "xmlns:xlink", "y", "y1",
+      "y2", "yChannelSelector", "zoomAndPan",
+    };
+
+    private static final int[] hashTable;
+
+    static {
+      int size = 1;
+      while (size < names.length * 4) {
+        size <<= 1;
+      }
+      hashTable = new int[size];
+      for (int i = 1; i < names.length; ++i) {
+        int index = names[i].hashCode() & (size - 1);
+        while (hashTable[index] != 0) {
+          index = (index + 1) & (size - 1);
+        }
+        hashTable[index] = i;
+      }
+    }
+
+    /**
+     * Gets a string equal to the given attribute name, using the shared
+     * copy if the name is in the table.
+     * @param name An attribute name. Case-sensitive.
+     * @return The shared name, or {@code name} converted to a string if
+     * the name isn't in the table.
+     */
+    static String Intern(CharSequence name) {
+      int length = name.length();
+      int hash;
+      if (name instanceof String) {
+        hash = name.hashCode();
+      } else {
+        // Same as String's hash code
+        hash = 0;
+        for (int i = 0; i < length; ++i) {
+          hash = (31 * hash) + name.charAt(i);
+        }
+      }
+      int index = hash & (hashTable.length - 1);
+      while (true) {
+        int atom = hashTable[index];
+        if (atom == 0) {
+          return name.toString();
+        }
+        String atomName = names[atom];
+        if (atomName.length() == length) {
+          boolean match = true;
+          for (int i = 0; i < length; ++i) {
+            if (atomName.charAt(i) != name.charAt(i)) {
+              match = false;
+              break;
+            }
+          }
+          if (match) {
+            return atomName;
+          }
+        }
+        index = (index + 1) & (hashTable.length - 1);
+      }
+    }
+  }
@@ -1,5 +1,9 @@
 package com.upokecenter.html;
 
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
 import java.util.*;
 import com.upokecenter.net.*;
 import com.upokecenter.util.*;
@@ -72,13 +76,24 @@ private HtmlDocument() {
     */
 
     /**
-     * Not documented yet.
+     * Parses an HTML document from a string.
      * @param str The parameter {@code str} is a text string.
      * @return An IDocument object.
+     * @throws NullPointerException The parameter {@code str} is null.
      */
     public static IDocument FromString(String str) {
-      byte[] bytes = com.upokecenter.util.DataUtilities.GetUtf8Bytes(str, true);
-      return ParseStream(DataIO.ToReader(bytes));
+      return FromString((CharSequence)str, false);
+    }
+
+    /**
+     * Parses an HTML document from a string or other character sequence. The
+     * characters are read directly rather than first encoded to bytes.
+     * @param str The parameter {@code str} is a text string.
+     * @return An IDocument object.
+     * @throws NullPointerException The parameter {@code str} is null.
+     */
+    public static IDocument FromString(CharSequence str) {
+      return FromString(str, false);
     }
 
     /**
@@ -93,29 +108,51 @@ private HtmlDocument() {
       String str,
       String state,
       String lst) {
-      byte[] bytes = com.upokecenter.util.DataUtilities.GetUtf8Bytes(str, true);
-
+      if (str == null) {
+        throw new NullPointerException("str");
+      }
       // TODO: add lang (from Content-Language?)
-      HtmlParser parser = new HtmlParser(
-        DataIO.ToReader(bytes),
-        "about:blank",
-        "utf-8",
-        null);
       if (state == null) {
         throw new NullPointerException("state");
       }
-      return parser.ParseTokens(state, lst);
+      HtmlParser parser = HtmlParser.Obtain();
+      try {
+        return parser.Reset(str, "about:blank", null).ParseTokens(state, lst);
+      } finally {
+        parser.Recycle();
+      }
     }
 
     /**
-     * Not documented yet.
+     * Parses an HTML document from a string.
      * @param str The parameter {@code str} is a text string.
      * @param checkError Either {@code true} or {@code false}.
      * @return An IDocument object.
+     * @throws NullPointerException The parameter {@code str} is null.
      */
     public static IDocument FromString(String str, boolean checkError) {
-      byte[] bytes = com.upokecenter.util.DataUtilities.GetUtf8Bytes(str, true);
-      return ParseStream(DataIO.ToReader(bytes), checkError);
+      return FromString((CharSequence)str, checkError);
+    }
+
+    /**
+     * Parses an HTML document from a string or other character sequence. The
+     * characters are read directly rather than first encoded to bytes.
+     * @param str The parameter {@code str} is a text string.
+     * @param checkError Either {@code true} or {@code false}.
+     * @return An IDocument object.
+     * @throws NullPointerException The parameter {@code str} is null.
+     */
+    public static IDocument FromString(CharSequence str, boolean checkError) {
+      if (str == null) {
+        throw new NullPointerException("str");
+      }
+      HtmlParser parser = HtmlParser.Obtain();
+      try {
+        return parser.Reset(str, "about:blank", null).CheckError(checkError)
+          .Parse();
+      } finally {
+        parser.Recycle();
+      }
     }
 
     /**
@@ -168,6 +205,19 @@ private HtmlDocument() {
     public static List<INode> FragmentFromString(
       String str,
       IElement context) {
+      return FragmentFromString((CharSequence)str, context, false);
+    }
+
+    /**
+     * Not documented yet.
+     * @param str The parameter {@code str} is a text string.
+     * @param context The parameter {@code context} is a.getUpokecenter().getHtml().getIElement()
+     * object.
+     * @return An List(INode) object.
+     */
+    public static List<INode> FragmentFromString(
+      CharSequence str,
+      IElement context) {
       return FragmentFromString(str, context, false);
     }
 
@@ -184,16 +234,33 @@ private HtmlDocument() {
       String str,
       IElement context,
       boolean checkError) {
-      byte[] bytes = com.upokecenter.util.DataUtilities.GetUtf8Bytes(str, true);
+      return FragmentFromString((CharSequence)str, context, checkError);
+    }
 
+    /**
+     * Not documented yet.
+     * @param str The parameter {@code str} is a text string.
+     * @param context The parameter {@code context} is a.getUpokecenter().getHtml().getIElement()
+     * object.
+     * @param checkError The parameter {@code checkError} is either {@code true} or
+     * {@code false}.
+     * @return An List(INode) object.
+     */
+    public static List<INode> FragmentFromString(
+      CharSequence str,
+      IElement context,
+      boolean checkError) {
+      if (str == null) {
+        throw new NullPointerException("str");
+      }
       // TODO: add lang (from Content-Language?)
-      HtmlParser parser = new HtmlParser(
-        DataIO.ToReader(bytes),
-        "about:blank",
-        "utf-8",
-        null);
-      List<INode> ret = parser.CheckError(checkError).ParseFragment(context);
-      return ret;
+      HtmlParser parser = HtmlParser.Obtain();
+      try {
+        return parser.Reset(str, "about:blank", null).CheckError(checkError)
+          .ParseFragment(context);
+      } finally {
+        parser.Recycle();
+      }
     }
 
     /**
@@ -206,6 +273,200 @@ private HtmlDocument() {
       return ParseStream(stream, "about:blank");
     }
 
+    /**
+     * Parses an HTML document from an input stream and reports its nodes to
+     * an event handler as they're finished. Finished nodes are discarded,
+     * but everything inside an open table or an unclosed formatting
+     * element (such as "b" or "font") is held in memory until that element
+     * is closed, which for some documents means most of the body. Uses
+     * "about:blank" as the document's address.
+     * @param stream An input stream representing an HTML document.
+     * @param handler An object that receives the document's nodes.
+     * @throws NullPointerException The parameter {@code stream} or {@code
+     * handler} is null.
+     */
+    public static void ParseEvents(IReader stream, IHtmlEventHandler handler) {
+      ParseEvents(stream, "about:blank", handler);
+    }
+
+    /**
+     * Parses an HTML document from an input stream and reports its nodes to
+     * an event handler as they're finished. Finished nodes are discarded,
+     * but everything inside an open table or an unclosed formatting
+     * element (such as "b" or "font") is held in memory until that element
+     * is closed, which for some documents means most of the body.
+     * @param stream An input stream representing an HTML document.
+     * @param address An absolute URL representing an address.
+     * @param handler An object that receives the document's nodes.
+     * @throws NullPointerException The parameter {@code stream} or {@code
+     * address} or {@code handler} is null.
+     */
+    public static void ParseEvents(
+      IReader stream,
+      String address,
+      IHtmlEventHandler handler) {
+      if (stream == null) {
+        throw new NullPointerException("stream");
+      }
+      if (address == null) {
+        throw new NullPointerException("address");
+      }
+      if (handler == null) {
+        throw new NullPointerException("handler");
+      }
+      HtmlParser parser = HtmlParser.Obtain();
+      try {
+        parser.Reset(stream, address, null, null).SetEventHandler(handler)
+          .Parse();
+      } finally {
+        parser.Recycle();
+      }
+    }
+
+    /**
+     * Parses an HTML document from a file. The file is memory-mapped and
+     * decoded straight from the mapping, so that large files aren't first
+     * copied into memory. The document's encoding is taken from its byte
+     * order mark or a meta element declaring it, and is otherwise UTF-8.
+     * @param path The file's path. The document's address is the file's URI.
+     * @return An IDocument representing the HTML document.
+     * @throws NullPointerException The parameter {@code path} is null.
+     * @throws IOException An I/O error occurred.
+     */
+    public static IDocument ParseFile(Path path) throws IOException {
+      if (path == null) {
+        throw new NullPointerException("path");
+      }
+      try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+        return ParseChannel(channel, path.toUri().toString());
+      }
+    }
+
+    /**
+     * Parses an HTML document from the rest of a file, starting at the
+     * channel's current position. That part of the file is memory-mapped
+     * and decoded straight from the mapping. The document's encoding is
+     * taken from its byte order mark or a meta element declaring it, and is
+     * otherwise UTF-8. The channel's position doesn't change.
+     * @param channel A channel open for reading.
+     * @param address An absolute URL representing an address.
+     * @return An IDocument representing the HTML document.
+     * @throws NullPointerException The parameter {@code channel} or {@code
+     * address} is null.
+     * @throws IllegalArgumentException The rest of the file is 2 GiB or
+     * longer.
+     * @throws IOException An I/O error occurred.
+     */
+    public static IDocument ParseChannel(
+      FileChannel channel,
+      String address) throws IOException {
+      if (channel == null) {
+        throw new NullPointerException("channel");
+      }
+      if (address == null) {
+        throw new NullPointerException("address");
+      }
+      long position = channel.position();
+      long size = Math.max(0, channel.size() - position);
+      if (size > Integer.MAX_VALUE) {
+        throw new IllegalArgumentException("file is too large to map (" +
+          size + " bytes)");
+      }
+      MappedByteBuffer buffer = channel.map(
+        FileChannel.MapMode.READ_ONLY,
+        position,
+        size);
+      HtmlParser parser = HtmlParser.Obtain();
+      try {
+        return parser.Reset(buffer, address, null, null).Parse();
+      } finally {
+        parser.Recycle();
+      }
+    }
+
+    /**
+     * Parses an HTML document from a portion of a byte array, without copying
+     * the bytes. The document's encoding is taken from its byte order mark
+     * or a meta element declaring it, and is otherwise UTF-8.
+     * @param bytes A byte array.
+     * @param offset Index in the array where the document starts.
+     * @param length The document's length in bytes.
+     * @param address An absolute URL representing an address.
+     * @return An IDocument representing the HTML document.
+     * @throws NullPointerException The parameter {@code bytes} or {@code
+     * address} is null.
+     * @throws IllegalArgumentException The parameter {@code offset} or
+     * {@code length} is less than 0 or the portion goes past the end of the
+     * array.
+     */
+    public static IDocument ParseBytes(
+      byte[] bytes,
+      int offset,
+      int length,
+      String address) {
+      if (bytes == null) {
+        throw new NullPointerException("bytes");
+      }
+      if (offset < 0) {
+        throw new IllegalArgumentException("offset(" + offset +
+          ") is less than 0");
+      }
+      if (length < 0) {
+        throw new IllegalArgumentException("length(" + length +
+          ") is less than 0");
+      }
+      if (bytes.length - offset < length) {
+        throw new IllegalArgumentException("bytes's length minus " + offset +
+          "(" + (bytes.length - offset) + ") is less than " + length);
+      }
+      return ParseBuffer(ByteBuffer.wrap(bytes, offset, length), address, null);
+    }
+
+    /**
+     * Parses an HTML document from the remaining bytes of a byte buffer,
+     * which may be read-only or direct, without copying them. The document's
+     * encoding is taken from its byte order mark or a meta element declaring
+     * it, and is otherwise UTF-8.
+     * @param buffer A byte buffer. Its position doesn't change.
+     * @param address An absolute URL representing an address.
+     * @return An IDocument representing the HTML document.
+     * @throws NullPointerException The parameter {@code buffer} or {@code
+     * address} is null.
+     */
+    public static IDocument ParseBuffer(ByteBuffer buffer, String address) {
+      return ParseBuffer(buffer, address, null);
+    }
+
+    /**
+     * Parses an HTML document from the remaining bytes of a byte buffer,
+     * which may be read-only or direct, without copying them.
+     * @param buffer A byte buffer. Its position doesn't change.
+     * @param address An absolute URL representing an address.
+     * @param charset The document's encoding as given by the transport
+     * layer, such as a Content-Type header's charset parameter, or null to
+     * sniff it from the bytes.
+     * @return An IDocument representing the HTML document.
+     * @throws NullPointerException The parameter {@code buffer} or {@code
+     * address} is null.
+     */
+    public static IDocument ParseBuffer(
+      ByteBuffer buffer,
+      String address,
+      String charset) {
+      if (buffer == null) {
+        throw new NullPointerException("buffer");
+      }
+      if (address == null) {
+        throw new NullPointerException("address");
+      }
+      HtmlParser parser = HtmlParser.Obtain();
+      try {
+        return parser.Reset(buffer, address, charset, null).Parse();
+      } finally {
+        parser.Recycle();
+      }
+    }
+
     /**
      * Not documented yet.
      * @param stream The parameter {@code stream} is a IReader object.
@@ -259,6 +520,102 @@ private HtmlDocument() {
       return ParseStream(stream, address, contentType, contentLang, false);
     }
 
+    /**
+     * Parses an HTML document from an input stream until a condition is met,
+     * such as the document's body being reached, and returns the part of
+     * the document parsed up to that point. The rest of the input is not
+     * read.
+     * @param stream An input stream representing an HTML document.
+     * @param address An absolute URL representing an address.
+     * @param condition The condition that ends parsing.
+     * @return An IDocument representing the parsed part of the HTML
+     * document.
+     * @throws NullPointerException The parameter {@code stream} or {@code
+     * address} or {@code condition} is null.
+     */
+    public static IDocument ParseStream(
+      IReader stream,
+      String address,
+      StopCondition condition) {
+      if (stream == null) {
+        throw new NullPointerException("stream");
+      }
+      if (address == null) {
+        throw new NullPointerException("address");
+      }
+      if (condition == null) {
+        throw new NullPointerException("condition");
+      }
+      HtmlParser parser = HtmlParser.Obtain();
+      try {
+        return parser.Reset(stream, address, null, null)
+          .SetStopCondition(condition).Parse();
+      } finally {
+        parser.Recycle();
+      }
+    }
+
+    /**
+     * Parses an HTML document from an input stream, keeping only the elements
+     * a filter accepts, along with their contents. The html, head and body
+     * elements are always kept; other elements the filter rejects are
+     * replaced by the kept elements inside them, and text and comments
+     * outside kept elements are discarded. Because rejected content is
+     * dropped while the document is parsed, this uses much less memory
+     * than parsing the whole document.
+     * @param stream An input stream representing an HTML document.
+     * @param address An absolute URL representing an address.
+     * @param filter An object that decides which elements to keep.
+     * @return An IDocument representing the kept parts of the HTML
+     * document.
+     * @throws NullPointerException The parameter {@code stream} or {@code
+     * address} or {@code filter} is null.
+     */
+    public static IDocument ParseStream(
+      IReader stream,
+      String address,
+      IElementFilter filter) {
+      if (stream == null) {
+        throw new NullPointerException("stream");
+      }
+      if (address == null) {
+        throw new NullPointerException("address");
+      }
+      if (filter == null) {
+        throw new NullPointerException("filter");
+      }
+      HtmlParser parser = HtmlParser.Obtain();
+      try {
+        return parser.Reset(stream, address, null, null)
+          .SetElementFilter(filter).Parse();
+      } finally {
+        parser.Recycle();
+      }
+    }
+
+    /**
+     * Parses an HTML document from an input stream, keeping only the elements
+     * with the given names, along with their contents. See the overload
+     * taking an IElementFilter for details.
+     * @param stream An input stream representing an HTML document.
+     * @param address An absolute URL representing an address.
+     * @param tagNames The local names of the elements to keep, compared
+     * case-insensitively.
+     * @return An IDocument representing the kept parts of the HTML
+     * document.
+     * @throws NullPointerException The parameter {@code stream} or {@code
+     * address} or {@code tagNames} is null.
+     */
+    public static IDocument ParseStream(
+      IReader stream,
+      String address,
+      Collection<String> tagNames) {
+      if (tagNames == null) {
+        throw new NullPointerException("tagNames");
+      }
+      return ParseStream(stream, address, new TagNameFilter(tagNames));
+    }
+
     /**
      * * Parses an HTML document from an input stream, using the specified URL as
      * its address. @ if an I/O error occurs @ if the specified address is not an
@@ -267,7 +624,8 @@ private HtmlDocument() {
      * @param address An absolute URL representing an address.
      * @param contentType Desired MIME media type of the document, including the
      * charset parameter, if any. Examples: "text/Html" or "application/xhtml+xml;
-     * charset=utf-8".
+     * charset=utf-8". The document's encoding is taken from its byte order
+     * mark or a meta element declaring it, and is otherwise UTF-8.
      * @param contentLang Language tag from the Content-Language header.
      * @param checkError Either {@code true} or {@code false}.
      * @return An IDocument representing the HTML document.
@@ -291,12 +649,16 @@ private HtmlDocument() {
       }
       // TODO: Use MediaType to get media type and charset
       String mediatype = contentType;
-      String charset = "utf-8";
+      String charset = null;
       if (mediatype.equals("text/Html")) {
         // TODO: add lang (from Content-Language?)
-        HtmlParser parser = new HtmlParser(stream, address, charset, contentLang);
-        IDocument docret = parser.CheckError(checkError).Parse();
-        return docret;
+        HtmlParser parser = HtmlParser.Obtain();
+        try {
+          return parser.Reset(stream, address, charset, contentLang)
+            .CheckError(checkError).Parse();
+        } finally {
+          parser.Recycle();
+        }
       } else if (mediatype.equals("application/xhtml+xml") ||
         mediatype.equals("application/xml") ||
         mediatype.equals("image/svg+xml") ||
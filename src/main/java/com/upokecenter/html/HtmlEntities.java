@@ -1,5 +1,7 @@
 package com.upokecenter.html;
 
+import java.util.*;
+
   final class HtmlEntities {
 private HtmlEntities() {
 }
@@ -635,6 +637,90 @@ private HtmlEntities() {
       8402, 8807, 824, 8806, 824,
     };
 
+    // Trie of entity names, packed into arrays when this class is
+    // loaded. The edges of each node are sorted by character and
+    // stored from trieEdgeStart[node] to trieEdgeStart[node + 1].
+    private static final int[] trieEdgeStart;
+    private static final char[] trieEdgeChars;
+    private static final int[] trieEdgeTargets;
+    private static final int[] trieEntities;
+
+    static {
+      List<TreeMap<Character, Integer>> nodes = new
+      ArrayList<TreeMap<Character, Integer>>();
+      List<Integer> nodeEntities = new ArrayList<Integer>();
+      nodes.add(new TreeMap<Character, Integer>());
+      nodeEntities.add(-1);
+      int edgeCount = 0;
+      for (int i = 0; i < entities.length; ++i) {
+        String entity = entities[i];
+        int node = 0;
+        for (int j = 0; j < entity.length(); ++j) {
+          Character ch = entity.charAt(j);
+          Integer next = nodes.get(node).get(ch);
+          if (next == null) {
+            next = nodes.size();
+            nodes.get(node).put(ch, next);
+            nodes.add(new TreeMap<Character, Integer>());
+            nodeEntities.add(-1);
+            ++edgeCount;
+          }
+          node = next;
+        }
+        nodeEntities.set(node, i);
+      }
+      trieEdgeStart = new int[nodes.size() + 1];
+      trieEdgeChars = new char[edgeCount];
+      trieEdgeTargets = new int[edgeCount];
+      trieEntities = new int[nodes.size()];
+      int edge = 0;
+      for (int i = 0; i < nodes.size(); ++i) {
+        trieEdgeStart[i] = edge;
+        trieEntities[i] = nodeEntities.get(i);
+        for (Map.Entry<Character, Integer> entry : nodes.get(i).entrySet()) {
+          trieEdgeChars[edge] = entry.getKey();
+          trieEdgeTargets[edge] = entry.getValue();
+          ++edge;
+        }
+      }
+      trieEdgeStart[nodes.size()] = edge;
+    }
+
+    /**
+     * Gets the node of the entity name trie reached from the given node
+     * by the given character.
+     * @param node A trie node; the root is 0.
+     * @param ch A Unicode code point.
+     * @return The next node, or -1 if no entity name continues with that
+     * character.
+     */
+    static int GetNextTrieNode(int node, int ch) {
+      int lo = trieEdgeStart[node];
+      int hi = trieEdgeStart[node + 1] - 1;
+      while (lo <= hi) {
+        int mid = (lo + hi) >> 1;
+        int c = trieEdgeChars[mid];
+        if (c == ch) {
+          return trieEdgeTargets[mid];
+        } else if (c < ch) {
+          lo = mid + 1;
+        } else {
+          hi = mid - 1;
+        }
+      }
+      return -1;
+    }
+
+    /**
+     * Gets the index of the entity whose name ends at the given trie node.
+     * @param node A trie node.
+     * @return An index into the entity table, or -1 if no entity name ends
+     * at that node.
+     */
+    static int GetTrieEntity(int node) {
+      return trieEntities[node];
+    }
+
     static String[] GetEntities() {
       return entities;
     }
@@ -648,26 +734,18 @@ private HtmlEntities() {
     }
 
     public static int GetHtmlEntity(String strValue) {
-      String[] ents = GetEntities();
-      String firstEnt = ents[0];
-      if (strValue.length() < 2 || strValue.length() > firstEnt.length()) {
+      if (strValue.length() < 2) {
         return Integer.MAX_VALUE;
       }
-      strValue += ";";
-      int len = strValue.length();
-      for (int i = 0; i < ents.length; ++i) {
-        String e = ents[i];
-        if (e.length() < len) {
-          break;
-        }
-        if (e.length() != len) {
-          continue;
-        }
-        if (e.equals(strValue)) {
-          return valueEntityValues[i];
-        }
+      int node = 0;
+      for (int i = 0; i < strValue.length() && node >= 0; ++i) {
+        node = GetNextTrieNode(node, strValue.charAt(i));
+      }
+      if (node >= 0) {
+        node = GetNextTrieNode(node, ';');
       }
-      return Integer.MAX_VALUE;
+      int index = (node >= 0) ? GetTrieEntity(node) : -1;
+      return (index >= 0) ? valueEntityValues[index] : Integer.MAX_VALUE;
     }
 
     public static int[] GetTwoCharacterEntity(int index) {
@@ -0,0 +1,195 @@
+package com.upokecenter.html;
+/*
+
+Licensed under the Expat License.
+
+Copyright (C) 2013 Peter Occil
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+import java.util.*;
+
+  /**
+   * Reports the finished parts of a document being parsed to an event
+   * handler and detaches them from the document tree. The parser calls
+   * Flush after each token and Finish once parsing is done.
+   */
+  final class HtmlEventEmitter {
+    private final IHtmlEventHandler handler;
+    // Elements whose start was reported but whose end wasn't, each the
+    // parent of the next
+    private final List<IElement> started = new ArrayList<IElement>();
+    private boolean reported;
+
+    public HtmlEventEmitter(IHtmlEventHandler handler) {
+      this.handler = handler;
+    }
+
+    /**
+     * Gets whether any node was reported to the event handler yet.
+     * @return Either {@code true} or {@code false}.
+     */
+    public boolean HasReported() {
+      return this.reported;
+    }
+
+    /**
+     * Reports and discards the nodes that can no longer change.
+     * @param document The document being built.
+     * @param openElements The stack of open elements.
+     * @param stableCount The number of elements, counting from the bottom
+     * of the stack, that the tree builder will only append to. Elements
+     * above these may still be moved (by the adoption agency algorithm)
+     * or have content inserted before them (by foster parenting).
+     */
+    public void Flush(
+      Document document,
+      OpenElementStack openElements,
+      int stableCount) {
+      // Close elements that were popped. An element removed from the middle
+      // of the stack (such as a "form" element) stays started until the
+      // elements opened inside it are closed.
+      int index = -1;
+      while (!this.started.isEmpty()) {
+        int last = this.started.size() - 1;
+        IElement element = this.started.get(last);
+        index = openElements.IndexOf(element);
+        if (index >= 0) {
+          break;
+        }
+        index = (last == 0) ? -1 :
+          openElements.IndexOf(this.started.get(last - 1));
+        if (index + 1 < openElements.Size() &&
+          IsAncestor(element, openElements.Get(index + 1))) {
+          // Removed from the stack, but still has open elements inside
+          break;
+        }
+        this.EndStartedElement(last, document);
+        index = -1;
+      }
+      // Start stable elements
+      Node parent = this.started.isEmpty() ? document :
+        (Node)this.started.get(this.started.size() - 1);
+      ++index;
+      while (index < stableCount) {
+        IElement element = openElements.Get(index);
+        if (element.GetParentNode() != parent) {
+          break;
+        }
+        List<INode> children = parent.GetChildNodesInternal();
+        this.EmitChildren(parent, children.indexOf(element));
+        this.reported = true;
+        this.handler.StartElement(element);
+        this.started.add(element);
+        parent = (Node)element;
+        ++index;
+      }
+      // Report the complete children of the innermost started element,
+      // keeping the last child, which text may still be added to, and the
+      // node before the next open element, which foster-parented text may
+      // be added to
+      List<INode> children = parent.GetChildNodesInternal();
+      int count = children.size() - 1;
+      if (index < openElements.Size()) {
+        INode next = openElements.Get(index);
+        if (next.GetParentNode() == parent) {
+          count = Math.min(count, children.indexOf(next) - 1);
+        } else {
+          // The next open element is inside a closed child
+          while (next != null && next.GetParentNode() != parent) {
+            next = next.GetParentNode();
+          }
+          if (next != null) {
+            count = Math.min(count, children.indexOf(next));
+          }
+        }
+      }
+      for (int i = 0; i < count; ++i) {
+        INode child = children.get(i);
+        if (child instanceof IElement && openElements.Contains(
+          (IElement)child)) {
+          count = i;
+          break;
+        }
+      }
+      this.EmitChildren(parent, count);
+    }
+
+    /**
+     * Reports all nodes not yet reported.
+     * @param document The document being built.
+     */
+    public void Finish(Document document) {
+      for (int i = this.started.size() - 1; i >= 0; --i) {
+        this.EndStartedElement(i, document);
+      }
+      this.EmitChildren(document, document.GetChildNodesInternal().size());
+    }
+
+    private static boolean IsAncestor(INode ancestor, INode node) {
+      node = node.GetParentNode();
+      while (node != null) {
+        if (node == ancestor) {
+          return true;
+        }
+        node = node.GetParentNode();
+      }
+      return false;
+    }
+
+    private void EmitChildren(Node parent, int count) {
+      if (count <= 0) {
+        return;
+      }
+      this.reported = true;
+      List<INode> children = parent.GetChildNodesInternal();
+      for (int i = 0; i < count; ++i) {
+        this.EmitNode(children.get(i));
+      }
+      parent.RemoveFirstChildren(count);
+    }
+
+    private void EmitNode(INode node) {
+      int nodeType = node.GetNodeType();
+      if (nodeType == NodeType.ELEMENT_NODE) {
+        IElement element = (IElement)node;
+        this.handler.StartElement(element);
+        for (INode child : ((Node)node).GetChildNodesInternal()) {
+          this.EmitNode(child);
+        }
+        this.handler.EndElement(element);
+      } else if (nodeType == NodeType.TEXT_NODE) {
+        this.handler.Characters(((IText)node).GetData());
+      } else if (nodeType == NodeType.COMMENT_NODE) {
+        this.handler.Comment(((IComment)node).GetData());
+      } else if (nodeType == NodeType.DOCUMENT_TYPE_NODE) {
+        this.handler.DocumentType((IDocumentType)node);
+      }
+    }
+
+    private void EndStartedElement(int index, Document document) {
+      Node element = (Node)this.started.remove(index);
+      this.EmitChildren(element, element.GetChildNodesInternal().size());
+      this.handler.EndElement((IElement)element);
+      Node parent = (index == 0) ? document :
+        (Node)this.started.get(index - 1);
+      parent.RemoveChild(element);
+    }
+  }
@@ -24,6 +24,7 @@ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
 THE SOFTWARE.
 */
 
+import java.nio.*;
 import java.util.*;
 
 import com.upokecenter.io.*;
@@ -42,6 +43,10 @@ private StringBuilder propVarcommentvalue;
         this.setCommentValue(new StringBuilder());
       }
 
+      public void Reset() {
+        this.getCommentValue().setLength(0);
+      }
+
       public void AppendStr(String str) {
         this.getCommentValue().append(str);
       }
@@ -173,12 +178,17 @@ private StartTagToken propVartoken;
       public void SetName(String stringValue) {
         this.builder.setLength(0);
         this.builder.append(stringValue);
+        this.ClearName();
       }
     }
 
     static abstract class TagToken implements IToken, INameAndAttributes {
       protected StringBuilder builder;
 
+      private String nameString;
+
+      private int atom;
+
       public final List<Attr> getAttributes() { return propVarattributes; }
 public final void setAttributes(List<Attr> value) { propVarattributes = value; }
 private List<Attr> propVarattributes;
@@ -208,6 +218,21 @@ private boolean propVarvalueselfclosingack;
         this.setValueSelfClosingAck(true);
       }
 
+      /**
+       * Clears this token for reuse as a new tag whose name starts with the
+       * given character.
+       */
+      public void Reset(char ch) {
+        this.builder.setLength(0);
+        this.builder.append(ch);
+        this.nameString = null;
+        if (this.getAttributes() != null) {
+          this.getAttributes().clear();
+        }
+        this.setSelfClosing(false);
+        this.setValueSelfClosingAck(false);
+      }
+
       public Attr AddAttribute(char ch) {
         this.setAttributes((this.getAttributes() == null) ? (new ArrayList<Attr>()) : this.getAttributes());
         Attr a = new Attr(ch);
@@ -223,6 +248,7 @@ private boolean propVarvalueselfclosingack;
       }
 
       public void AppendUChar(int ch) {
+        this.nameString = null;
         if (ch < 0x10000) {
           this.builder.append((char)ch);
         } else {
@@ -235,9 +261,14 @@ private boolean propVarvalueselfclosingack;
       }
 
       public void AppendChar(char ch) {
+        this.nameString = null;
         this.builder.append(ch);
       }
 
+      protected void ClearName() {
+        this.nameString = null;
+      }
+
       public boolean CheckAttributeName() {
         if (this.getAttributes() == null) {
           return true;
@@ -295,7 +326,20 @@ private boolean propVarvalueselfclosingack;
       }
 
       public String GetName() {
-        return this.builder.toString();
+        if (this.nameString == null) {
+          // Use the interned name if the name is a known one
+          this.atom = HtmlAtoms.GetAtom(this.builder);
+          this.nameString = (this.atom == HtmlAtoms.UNKNOWN) ?
+            this.builder.toString() : HtmlAtoms.GetName(this.atom);
+        }
+        return this.nameString;
+      }
+
+      public int GetAtom() {
+        if (this.nameString == null) {
+          this.GetName();
+        }
+        return this.atom;
       }
 
       public abstract int GetTokenType();
@@ -341,6 +385,65 @@ private boolean propVarvalueselfclosingack;
       }
     }
 
+    private static final class ByteCounter implements IReader {
+      private final IByteReader reader;
+      private long count;
+
+      public ByteCounter(IByteReader reader) {
+        this.reader = reader;
+      }
+
+      public long GetCount() {
+        return this.count;
+      }
+
+      public int read() {
+        int b = this.reader.read();
+        if (b >= 0) {
+          ++this.count;
+        }
+        return b;
+      }
+
+      public int Read(byte[] bytes, int offset, int length) {
+        int c = 0;
+        if (this.reader instanceof IReader) {
+          c = ((IReader)this.reader).Read(bytes, offset, length);
+        } else {
+          while (c < length) {
+            int b = this.reader.read();
+            if (b < 0) {
+              break;
+            }
+            bytes[offset + c] = (byte)b;
+            ++c;
+          }
+        }
+        if (c > 0) {
+          this.count += c;
+        }
+        return (c == 0 && length > 0) ? -1 : c;
+      }
+    }
+
+    // Tokenizer state saved before each token read from chunked input, so
+    // that reading the token can start over once more input arrives
+    private static final class TokenizerCheckpoint {
+      private TokenizerState state;
+      private TokenizerState lastState;
+      private TagToken lastStartTag;
+      private TagToken currentEndTag;
+      private TagToken currentTag;
+      private Attr currentAttribute;
+      private CommentToken lastComment;
+      private DocTypeToken docTypeToken;
+      private int bogusCommentCharacter;
+      private String tempText;
+      private int tokenCount;
+      private boolean error;
+      private boolean skipLineFeed;
+    }
+
     private static final class Html5Encoding implements ICharacterEncoding {
       private ICharacterDecoder decoder;
 
@@ -448,6 +551,19 @@ private boolean propVarvalueselfclosingack;
     private static final int TOKEN_TYPE_MASK = ((int)0xf0000000);
     private static final int TOKEN_CHARACTER = 0x00000000;
     private static final int TOKEN_INDEX_MASK = 0x0fffffff;
+    // Not a token; the chunked input doesn't have the next token yet
+    private static final int TOKEN_NONE = -1;
+
+    // Most bytes kept for rereading the input when a meta element changes
+    // an encoding that was only guessed
+    private static final int MaxRewindBytes = 1 << 16;
+
+    // A parser kept for reuse on each thread
+    private static final ThreadLocal<HtmlParser> IdleParsers = new
+    ThreadLocal<HtmlParser>();
+
+    // Most tokens of each kind kept for reuse
+    private static final int MaxPooledTokens = 32;
 
     private boolean checkErrorVar = false;
 
@@ -458,6 +574,82 @@ private boolean propVarvalueselfclosingack;
       this.tokens.add(token);
     }
 
+    private StartTagToken NewStartTag(char ch) {
+      int size = this.freeStartTags.size();
+      if (size == 0) {
+        return new StartTagToken(ch);
+      }
+      StartTagToken token = this.freeStartTags.remove(size - 1);
+      token.Reset(ch);
+      return token;
+    }
+
+    private EndTagToken NewEndTag(char ch) {
+      int size = this.freeEndTags.size();
+      if (size == 0) {
+        return new EndTagToken(ch);
+      }
+      EndTagToken token = this.freeEndTags.remove(size - 1);
+      token.Reset(ch);
+      return token;
+    }
+
+    private CommentToken NewComment() {
+      int size = this.freeComments.size();
+      if (size == 0) {
+        return new CommentToken();
+      }
+      CommentToken token = this.freeComments.remove(size - 1);
+      token.Reset();
+      return token;
+    }
+
+    // Called once the tree builder has consumed every token read so far.
+    // Clears the token list so that its indices are reused, and keeps the
+    // tokens for reuse unless the tokenizer or the list of active
+    // formatting elements still refers to them. Tokens the tokenizer
+    // still refers to (such as the last start tag) are held and checked
+    // again on the next call.
+    private void RecycleTokens() {
+      if (this.heldTokens.size() > 0) {
+        this.tokens.addAll(this.heldTokens);
+        this.heldTokens.clear();
+      }
+      int count = this.tokens.size();
+      for (int i = 0; i < count; ++i) {
+        IToken token = this.tokens.get(i);
+        if (token == this.lastStartTag || token == this.currentTag ||
+          token == this.currentEndTag || token == this.lastComment) {
+          this.heldTokens.add(token);
+          continue;
+        }
+        if (token instanceof StartTagToken) {
+          if (this.freeStartTags.size() < MaxPooledTokens &&
+            !this.IsFormattingToken(token)) {
+            this.freeStartTags.add((StartTagToken)token);
+          }
+        } else if (token instanceof EndTagToken) {
+          if (this.freeEndTags.size() < MaxPooledTokens) {
+            this.freeEndTags.add((EndTagToken)token);
+          }
+        } else if (token instanceof CommentToken) {
+          if (this.freeComments.size() < MaxPooledTokens) {
+            this.freeComments.add((CommentToken)token);
+          }
+        }
+      }
+      this.tokens.clear();
+    }
+
+    private boolean IsFormattingToken(IToken token) {
+      for (FormattingElement fe : this.formattingElements) {
+        if (fe.getToken() == token) {
+          return true;
+        }
+      }
+      return false;
+    }
+
     private static String[] quirksModePublicIdPrefixes = new String[] {
       "+//silmaril//dtd html pro v0r11 19970101//",
       "-//advasoft ltd//dtd html 3.0 aswedit + extensions//",
@@ -518,7 +710,20 @@ private boolean propVarvalueselfclosingack;
     };
 
     private ConditionalBufferReader inputReader;
-    private IMarkableCharacterInput charInput = null;
+    // The input buffer at its start, for rereading it
+    private ByteBuffer inputBuffer;
+    private ByteCounter byteCounter;
+    // Whether the byte counter is read through the block decoder
+    private boolean blockInput;
+    // Kept so that its buffers are reused when the parser is reset
+    private BlockDecoderInput blockDecoder;
+    private CharSequenceInput sequenceInput;
+    private ChunkedInput chunkedInput;
+    private TokenizerCheckpoint checkpoint;
+    // Number of characters from the checkpoint needed before a token cut
+    // off by the end of the input is read again
+    private int retryLength;
+    private StackableCharacterInput charInput = null;
     private EncodingConfidence encoding = null;
 
     private boolean error = false;
@@ -527,6 +732,10 @@ private boolean propVarvalueselfclosingack;
     private DocTypeToken docTypeToken;
     private List<IElement> integrationElements = new ArrayList<IElement>();
     private List<IToken> tokens = new ArrayList<IToken>();
+    private List<IToken> heldTokens = new ArrayList<IToken>();
+    private List<StartTagToken> freeStartTags = new ArrayList<StartTagToken>();
+    private List<EndTagToken> freeEndTags = new ArrayList<EndTagToken>();
+    private List<CommentToken> freeComments = new ArrayList<CommentToken>();
     private TagToken lastStartTag = null;
     private TagToken currentEndTag = null;
     private TagToken currentTag = null;
@@ -535,11 +744,15 @@ private boolean propVarvalueselfclosingack;
     private StringBuilder tempBuilder = new StringBuilder();
     private TokenizerState state = TokenizerState.Data;
     private boolean framesetOk = true;
-    private List<Integer> tokenQueue = new ArrayList<Integer>();
+    private IntDeque tokenQueue = new IntDeque();
+    private int[] charRun = new int[256];
+    private int charRunPos = 0;
+    private int charRunEnd = 0;
+    private boolean skipLineFeed = false;
     private InsertionMode insertionMode = InsertionMode.Initial;
     private InsertionMode originalInsertionMode = InsertionMode.Initial;
     private List<InsertionMode> templateModes = new ArrayList<InsertionMode>();
-    private List<IElement> openElements = new ArrayList<IElement>();
+    private OpenElementStack openElements = new OpenElementStack();
     private List<FormattingElement> formattingElements = new
     ArrayList<FormattingElement>();
 
@@ -549,6 +762,8 @@ private boolean propVarvalueselfclosingack;
     private String baseurl = null;
     private Document valueDocument = null;
     private boolean done = false;
+    // Whether a meta element changed the encoding, so parsing starts over
+    private boolean restartPending;
 
     private StringBuilder pendingTableCharacters = new StringBuilder();
     private boolean doFosterParent;
@@ -557,6 +772,9 @@ private boolean propVarvalueselfclosingack;
     private String address;
 
     private String[] contentLanguage;
+    private HtmlEventEmitter eventEmitter;
+    private FilteredDocumentBuilder filteredBuilder;
+    private StopCondition stopCondition;
 
     private static <T> T RemoveAtIndex(List<T> array, int index) {
       T ret = array.get(index);
@@ -576,6 +794,98 @@ private boolean propVarvalueselfclosingack;
     }
 
     public HtmlParser(
+      IReader source,
+      String address,
+      String charset,
+      String contentLanguage) {
+      this.Reset(source, address, charset, contentLanguage);
+    }
+
+    /**
+     * Initializes a parser that reads the remaining bytes of a buffer, such
+     * as a memory-mapped file. The bytes are decoded straight from the
+     * buffer rather than first copied to a buffer of their own, and the
+     * buffer's position is left unchanged. If the charset is null, the
+     * encoding is sniffed from the bytes.
+     */
+    public HtmlParser(
+      ByteBuffer source,
+      String address,
+      String charset,
+      String contentLanguage) {
+      this.Reset(source, address, charset, contentLanguage);
+    }
+
+    /**
+     * Initializes a parser that reads the characters of a string or other
+     * character sequence directly, without encoding them to bytes.
+     */
+    public HtmlParser(
+      CharSequence source,
+      String address,
+      String contentLanguage) {
+      this.Reset(source, address, contentLanguage);
+    }
+
+    /**
+     * Initializes a parser whose input is fed in chunks with the Feed
+     * method, rather than read from a stream.
+     */
+    public HtmlParser(
+      String address,
+      String charset,
+      String contentLanguage) {
+      this.ResetState(address, contentLanguage);
+      this.encoding = new EncodingConfidence(
+        charset,
+        EncodingConfidence.Certain);
+      ICharacterEncoding henc = new Html5Encoding(this.encoding);
+      this.chunkedInput = new ChunkedInput(henc.GetDecoder());
+      this.charInput = new StackableCharacterInput(this.chunkedInput);
+      this.checkpoint = new TokenizerCheckpoint();
+    }
+
+    private HtmlParser() {
+    }
+
+    /**
+     * Gets a parser for use on the current thread, namely the one last
+     * recycled on this thread, or a new parser if there is none. The
+     * parser must be given its input with one of the Reset methods.
+     * @return A parser.
+     */
+    static HtmlParser Obtain() {
+      HtmlParser parser = IdleParsers.get();
+      if (parser == null) {
+        return new HtmlParser();
+      }
+      IdleParsers.remove();
+      return parser;
+    }
+
+    /**
+     * Drops this parser's references to the last document and its input,
+     * and keeps the parser for the next call to Obtain on the current
+     * thread. The parser must not be used afterwards.
+     */
+    void Recycle() {
+      this.ResetState(null, null);
+      this.valueDocument = null;
+      IdleParsers.set(this);
+    }
+
+    /**
+     * Prepares this parser to parse another document from a stream, reusing
+     * its lists, builders and decoding buffers. The event handler, element
+     * filter, stop condition and error checking are cleared.
+     * @param source An input stream.
+     * @param address The document's address.
+     * @param charset The charset given by the transport layer, or null to
+     * sniff the encoding.
+     * @param contentLanguage The Content-Language header's value, or null.
+     * @return This object.
+     */
+    public HtmlParser Reset(
       IReader source,
       String address,
       String charset,
@@ -589,21 +899,110 @@ private boolean propVarvalueselfclosingack;
                   throw new IllegalArgumentException();
                 }
         */ }
+      this.ResetState(address, contentLanguage);
+      this.inputReader = new ConditionalBufferReader(source, MaxRewindBytes);
+      this.encoding = CharsetSniffer.sniffEncoding(this.inputReader, charset);
+      this.inputReader.Rewind();
+      if (this.encoding.GetConfidence() == EncodingConfidence.Certain) {
+        // The bytes read so far needn't be kept
+        this.inputReader.DisableBuffer();
+      }
+      this.SetByteInput(this.inputReader);
+      return this;
+    }
+
+    /**
+     * Prepares this parser to parse another document from the remaining
+     * bytes of a buffer, as the constructor taking a buffer does, reusing
+     * its lists, builders and decoding buffers.
+     * @param source A byte buffer. Its position doesn't change.
+     * @param address The document's address.
+     * @param charset The charset given by the transport layer, or null to
+     * sniff the encoding.
+     * @param contentLanguage The Content-Language header's value, or null.
+     * @return This object.
+     */
+    public HtmlParser Reset(
+      ByteBuffer source,
+      String address,
+      String charset,
+      String contentLanguage) {
+      if (source == null) {
+        throw new IllegalArgumentException();
+      }
+      this.ResetState(address, contentLanguage);
+      this.inputBuffer = source.slice();
+      this.encoding = CharsetSniffer.sniffEncoding(
+        new ByteBufferReader(this.inputBuffer.duplicate()),
+        charset);
+      this.SetByteInput(new ByteBufferReader(this.inputBuffer.duplicate()));
+      return this;
+    }
+
+    /**
+     * Prepares this parser to parse another document from a character
+     * sequence, reusing its lists, builders and buffers.
+     * @param source A string or other character sequence.
+     * @param address The document's address.
+     * @param contentLanguage The Content-Language header's value, or null.
+     * @return This object.
+     */
+    public HtmlParser Reset(
+      CharSequence source,
+      String address,
+      String contentLanguage) {
+      if (source == null) {
+        throw new IllegalArgumentException();
+      }
+      this.ResetState(address, contentLanguage);
+      this.encoding = EncodingConfidence.UTF8;
+      this.sequenceInput = new CharSequenceInput(source);
+      this.charInput = new StackableCharacterInput(this.sequenceInput);
+      return this;
+    }
+
+    private void ResetState(String address, String contentLanguage) {
+      if (this.charInput != null) {
+        this.charInput.ReleaseBuffer();
+      }
       // TODO: Use a more sophisticated language parser here
       this.contentLanguage = new String[] { contentLanguage };
       this.address = address;
+      this.inputReader = null;
+      this.inputBuffer = null;
+      this.byteCounter = null;
+      this.blockInput = false;
+      this.sequenceInput = null;
+      this.chunkedInput = null;
+      this.checkpoint = null;
+      this.retryLength = 0;
+      this.charInput = null;
+      this.encoding = null;
+      this.checkErrorVar = false;
+      this.restartPending = false;
+      this.SetEventHandler(null);
+      this.SetStopCondition(null);
       this.Initialize();
-      this.inputReader = new ConditionalBufferReader(source); // TODO: ???
-      this.encoding = new EncodingConfidence(
-        charset,
-        EncodingConfidence.Certain);
-      // TODO: Use the following below
-      // this.encoding = CharsetSniffer.sniffEncoding(this.inputReader,
-      // charset);
-      this.inputReader.Rewind();
-      ICharacterEncoding henc = new Html5Encoding(this.encoding);
-      this.charInput = new StackableCharacterInput(
-        Encodings.GetDecoderInput(henc, this.inputReader));
+    }
+
+    private void SetByteInput(IByteReader reader) {
+      this.byteCounter = new ByteCounter(reader);
+      String name = Encodings.ResolveAlias(this.encoding.GetEncoding());
+      if (BlockDecoderInput.IsSupported(name)) {
+        if (this.blockDecoder == null) {
+          this.blockDecoder = new BlockDecoderInput(this.byteCounter, name);
+        } else {
+          this.blockDecoder.Reset(this.byteCounter, name);
+        }
+        this.blockInput = true;
+        this.TrackBytePositions();
+        this.charInput = new StackableCharacterInput(this.blockDecoder);
+      } else {
+        this.blockInput = false;
+        ICharacterEncoding henc = new Html5Encoding(this.encoding);
+        this.charInput = new StackableCharacterInput(
+          Encodings.GetDecoderInput(henc, this.byteCounter));
+      }
     }
 
     private void AddCommentNodeToCurrentNode(int valueToken) {
@@ -616,7 +1015,7 @@ private boolean propVarvalueselfclosingack;
     }
 
     private void AddCommentNodeToFirst(int valueToken) {
-      ((Node)this.openElements.get(0))
+      ((Node)this.openElements.Get(0))
       .AppendChild(this.CreateCommentNode(valueToken));
     }
 
@@ -628,7 +1027,7 @@ private boolean propVarvalueselfclosingack;
       } else {
         this.valueDocument.AppendChild(valueElement);
       }
-      this.openElements.add(valueElement);
+      this.openElements.Add(valueElement);
       return valueElement;
     }
 
@@ -638,6 +1037,11 @@ private boolean propVarvalueselfclosingack;
       if (currentNode != null) {
         this.InsertInCurrentNode(valueElement);
       }
+      List<IElement> removed = this.openElements.GetRemoved();
+      if (removed != null) {
+        // Elements that aren't pushed are closed as soon as they're inserted
+        removed.add(valueElement);
+      }
       return valueElement;
     }
 
@@ -669,14 +1073,8 @@ private boolean propVarvalueselfclosingack;
       }
     }
 
-    private boolean HasHtmlOpenElement(String name) {
-      List<IElement> oe = this.openElements;
-      for (IElement e : oe) {
-        if (HtmlCommon.IsHtmlElement(e, name)) {
-          return true;
-        }
-      }
-      return false;
+    private boolean HasHtmlOpenElement(int atom) {
+      return this.openElements.HasHtmlElement(atom);
     }
 
     private void AdjustMathMLAttributes(StartTagToken valueToken) {
@@ -945,59 +1343,60 @@ private boolean propVarvalueselfclosingack;
       } else if ((valueToken & TOKEN_TYPE_MASK) == TOKEN_START_TAG) {
         StartTagToken tag = (StartTagToken)this.GetToken(valueToken);
         String valueName = tag.GetName();
+        int atom = tag.GetAtom();
         boolean specialStartTag = false;
-        if (valueName.equals("font") && (tag.GetAttribute("color") != null ||
+        if (atom == HtmlAtoms.FONT && (tag.GetAttribute("color") != null ||
             tag.GetAttribute("size") !=
 
             null || tag.GetAttribute("face") != null)) {
           specialStartTag = true;
           this.ParseError();
-        } else if (valueName.equals("b") ||
-          valueName.equals("big") ||
-          valueName.equals("blockquote") ||
-          valueName.equals("body") ||
-          valueName.equals("br") ||
-          valueName.equals("center") ||
-          valueName.equals("code") ||
+        } else if (atom == HtmlAtoms.B ||
+          atom == HtmlAtoms.BIG ||
+          atom == HtmlAtoms.BLOCKQUOTE ||
+          atom == HtmlAtoms.BODY ||
+          atom == HtmlAtoms.BR ||
+          atom == HtmlAtoms.CENTER ||
+          atom == HtmlAtoms.CODE ||
           valueName.equals(
             "dd") ||
-          valueName.equals("div") ||
-          valueName.equals("dl") ||
-          valueName.equals("dt") ||
-          valueName.equals("em") ||
-          valueName.equals("embed") ||
-          valueName.equals("h1") ||
-          valueName.equals("h2") ||
-          valueName.equals("h3") ||
-          valueName.equals("h4") ||
-          valueName.equals("h5") ||
-          valueName.equals("h6") ||
-          valueName.equals("head") ||
-          valueName.equals("hr") ||
-          valueName.equals("i") ||
-          valueName.equals("img") ||
-          valueName.equals("li") ||
-          valueName.equals("listing") ||
-          valueName.equals("meta") ||
+          atom == HtmlAtoms.DIV ||
+          atom == HtmlAtoms.DL ||
+          atom == HtmlAtoms.DT ||
+          atom == HtmlAtoms.EM ||
+          atom == HtmlAtoms.EMBED ||
+          atom == HtmlAtoms.H1 ||
+          atom == HtmlAtoms.H2 ||
+          atom == HtmlAtoms.H3 ||
+          atom == HtmlAtoms.H4 ||
+          atom == HtmlAtoms.H5 ||
+          atom == HtmlAtoms.H6 ||
+          atom == HtmlAtoms.HEAD ||
+          atom == HtmlAtoms.HR ||
+          atom == HtmlAtoms.I ||
+          atom == HtmlAtoms.IMG ||
+          atom == HtmlAtoms.LI ||
+          atom == HtmlAtoms.LISTING ||
+          atom == HtmlAtoms.META ||
           valueName.equals(
             "nobr") ||
-          valueName.equals("ol") ||
-          valueName.equals("p") ||
-          valueName.equals("pre") ||
-          valueName.equals("ruby") ||
-          valueName.equals("s") ||
-          valueName.equals("small") ||
-          valueName.equals("span") ||
-          valueName.equals("strong") ||
-          valueName.equals("strike") ||
-          valueName.equals("sub") ||
-          valueName.equals("sup") ||
+          atom == HtmlAtoms.OL ||
+          atom == HtmlAtoms.P ||
+          atom == HtmlAtoms.PRE ||
+          atom == HtmlAtoms.RUBY ||
+          atom == HtmlAtoms.S ||
+          atom == HtmlAtoms.SMALL ||
+          atom == HtmlAtoms.SPAN ||
+          atom == HtmlAtoms.STRONG ||
+          atom == HtmlAtoms.STRIKE ||
+          atom == HtmlAtoms.SUB ||
+          atom == HtmlAtoms.SUP ||
           valueName.equals(
             "table") ||
-          valueName.equals("tt") ||
-          valueName.equals("u") ||
-          valueName.equals("ul") ||
-          valueName.equals("var")) {
+          atom == HtmlAtoms.TT ||
+          atom == HtmlAtoms.U ||
+          atom == HtmlAtoms.UL ||
+          atom == HtmlAtoms.VAR) {
           specialStartTag = true;
           this.ParseError();
         }
@@ -1014,83 +1413,83 @@ private boolean propVarvalueselfclosingack;
           return this.ApplyThisInsertionMode(valueToken);
         }
         IElement adjustedCurrentNode = (this.context != null &&
-            this.openElements.size() == 1) ?
+            this.openElements.Size() == 1) ?
           this.context : this.GetCurrentNode(); // adjusted current node
 
         String namespaceValue = adjustedCurrentNode.GetNamespaceURI();
         boolean mathml = false;
         if (HtmlCommon.SVG_NAMESPACE.equals(namespaceValue)) {
-          if (valueName.equals("altglyph")) {
+          if (atom == HtmlAtoms.ALTGLYPH) {
             tag.SetName("altGlyph");
-          } else if (valueName.equals("altglyphdef")) {
+          } else if (atom == HtmlAtoms.ALTGLYPHDEF) {
             tag.SetName("altGlyphDef");
-          } else if (valueName.equals("altglyphitem")) {
+          } else if (atom == HtmlAtoms.ALTGLYPHITEM) {
             tag.SetName("altGlyphItem");
-          } else if (valueName.equals("animatecolor")) {
+          } else if (atom == HtmlAtoms.ANIMATECOLOR) {
             tag.SetName("animateColor");
-          } else if (valueName.equals("animatemotion")) {
+          } else if (atom == HtmlAtoms.ANIMATEMOTION) {
             tag.SetName("animateMotion");
-          } else if (valueName.equals("animatetransform")) {
+          } else if (atom == HtmlAtoms.ANIMATETRANSFORM) {
             tag.SetName("animateTransform");
-          } else if (valueName.equals("clippath")) {
+          } else if (atom == HtmlAtoms.CLIPPATH) {
             tag.SetName("clipPath");
-          } else if (valueName.equals("feblend")) {
+          } else if (atom == HtmlAtoms.FEBLEND) {
             tag.SetName("feBlend");
-          } else if (valueName.equals("fecolormatrix")) {
+          } else if (atom == HtmlAtoms.FECOLORMATRIX) {
             tag.SetName("feColorMatrix");
-          } else if (valueName.equals("fecomponenttransfer")) {
+          } else if (atom == HtmlAtoms.FECOMPONENTTRANSFER) {
             tag.SetName("feComponentTransfer");
-          } else if (valueName.equals("fecomposite")) {
+          } else if (atom == HtmlAtoms.FECOMPOSITE) {
             tag.SetName("feComposite");
-          } else if (valueName.equals("feconvolvematrix")) {
+          } else if (atom == HtmlAtoms.FECONVOLVEMATRIX) {
             tag.SetName("feConvolveMatrix");
-          } else if (valueName.equals("fediffuselighting")) {
+          } else if (atom == HtmlAtoms.FEDIFFUSELIGHTING) {
             tag.SetName("feDiffuseLighting");
-          } else if (valueName.equals("fedisplacementmap")) {
+          } else if (atom == HtmlAtoms.FEDISPLACEMENTMAP) {
             tag.SetName("feDisplacementMap");
-          } else if (valueName.equals("fedistantlight")) {
+          } else if (atom == HtmlAtoms.FEDISTANTLIGHT) {
             tag.SetName("feDistantLight");
-          } else if (valueName.equals("feflood")) {
+          } else if (atom == HtmlAtoms.FEFLOOD) {
             tag.SetName("feFlood");
-          } else if (valueName.equals("fefunca")) {
+          } else if (atom == HtmlAtoms.FEFUNCA) {
             tag.SetName("feFuncA");
-          } else if (valueName.equals("fefuncb")) {
+          } else if (atom == HtmlAtoms.FEFUNCB) {
             tag.SetName("feFuncB");
-          } else if (valueName.equals("fefuncg")) {
+          } else if (atom == HtmlAtoms.FEFUNCG) {
             tag.SetName("feFuncG");
-          } else if (valueName.equals("fefuncr")) {
+          } else if (atom == HtmlAtoms.FEFUNCR) {
             tag.SetName("feFuncR");
-          } else if (valueName.equals("fegaussianblur")) {
+          } else if (atom == HtmlAtoms.FEGAUSSIANBLUR) {
             tag.SetName("feGaussianBlur");
-          } else if (valueName.equals("feimage")) {
+          } else if (atom == HtmlAtoms.FEIMAGE) {
             tag.SetName("feImage");
-          } else if (valueName.equals("femerge")) {
+          } else if (atom == HtmlAtoms.FEMERGE) {
             tag.SetName("feMerge");
-          } else if (valueName.equals("femergenode")) {
+          } else if (atom == HtmlAtoms.FEMERGENODE) {
             tag.SetName("feMergeNode");
-          } else if (valueName.equals("femorphology")) {
+          } else if (atom == HtmlAtoms.FEMORPHOLOGY) {
             tag.SetName("feMorphology");
-          } else if (valueName.equals("feoffset")) {
+          } else if (atom == HtmlAtoms.FEOFFSET) {
             tag.SetName("feOffset");
-          } else if (valueName.equals("fepointlight")) {
+          } else if (atom == HtmlAtoms.FEPOINTLIGHT) {
             tag.SetName("fePointLight");
-          } else if (valueName.equals("fespecularlighting")) {
+          } else if (atom == HtmlAtoms.FESPECULARLIGHTING) {
             tag.SetName("feSpecularLighting");
-          } else if (valueName.equals("fespotlight")) {
+          } else if (atom == HtmlAtoms.FESPOTLIGHT) {
             tag.SetName("feSpotLight");
-          } else if (valueName.equals("fetile")) {
+          } else if (atom == HtmlAtoms.FETILE) {
             tag.SetName("feTile");
-          } else if (valueName.equals("feturbulence")) {
+          } else if (atom == HtmlAtoms.FETURBULENCE) {
             tag.SetName("feTurbulence");
-          } else if (valueName.equals("foreignobject")) {
+          } else if (atom == HtmlAtoms.FOREIGNOBJECT) {
             tag.SetName("foreignObject");
-          } else if (valueName.equals("glyphref")) {
+          } else if (atom == HtmlAtoms.GLYPHREF) {
             tag.SetName("glyphRef");
-          } else if (valueName.equals("lineargradient")) {
+          } else if (atom == HtmlAtoms.LINEARGRADIENT) {
             tag.SetName("linearGradient");
-          } else if (valueName.equals("radialgradient")) {
+          } else if (atom == HtmlAtoms.RADIALGRADIENT) {
             tag.SetName("radialGradient");
-          } else if (valueName.equals("textpath")) {
+          } else if (atom == HtmlAtoms.TEXTPATH) {
             tag.SetName("textPath");
           }
           this.AdjustSvgAttributes(tag);
@@ -1113,7 +1512,7 @@ private boolean propVarvalueselfclosingack;
           }
         }
         if (tag.IsSelfClosing()) {
-          if (valueName.equals("script") &&
+          if (atom == HtmlAtoms.SCRIPT &&
             this.GetCurrentNode().GetNamespaceURI()
             .equals(HtmlCommon.SVG_NAMESPACE)) {
             tag.AckSelfClosing();
@@ -1127,20 +1526,21 @@ private boolean propVarvalueselfclosingack;
       } else if ((valueToken & TOKEN_TYPE_MASK) == TOKEN_END_TAG) {
         EndTagToken tag = (EndTagToken)this.GetToken(valueToken);
         String valueName = tag.GetName();
-        if (valueName.equals("script") &&
-          HtmlCommon.IsSvgElement(this.GetCurrentNode(), "script")) {
+        int atom = tag.GetAtom();
+        if (atom == HtmlAtoms.SCRIPT &&
+          HtmlAtoms.IsSvgElement(this.GetCurrentNode(), HtmlAtoms.SCRIPT)) {
           this.PopCurrentNode();
         } else {
           if (!DataUtilities.ToLowerCaseAscii(
             this.GetCurrentNode().GetLocalName()).equals(valueName)) {
             this.ParseError();
           }
-          int originalSize = this.openElements.size();
+          int originalSize = this.openElements.Size();
           for (int i1 = originalSize - 1; i1 >= 0; --i1) {
             if (i1 == 0) {
               return true;
             }
-            IElement node = this.openElements.get(i1);
+            IElement node = this.openElements.Get(i1);
             if (i1 < originalSize - 1 &&
               HtmlCommon.HTML_NAMESPACE.equals(node.GetNamespaceURI())) {
               this.noforeign = true;
@@ -1192,7 +1592,7 @@ private boolean propVarvalueselfclosingack;
         this.GetToken(token) + " " + (insMode == null ? this.insertionMode :
          insMode) + " " + this.IsForeignContext(token) + "(" +
          this.noforeign + ")");
-       if (this.openElements.size() > 0) {
+       if (this.openElements.Size() > 0) {
       // System.out.println(Implode(this.openElements));
        }*/ if (!this.noforeign && this.IsForeignContext(token)) {
         return this.ApplyForeignContext(token);
@@ -1328,7 +1728,8 @@ private boolean propVarvalueselfclosingack;
           } else if ((token & TOKEN_TYPE_MASK) == TOKEN_START_TAG) {
             StartTagToken tag = (StartTagToken)this.GetToken(token);
             String valueName = tag.GetName();
-            if ("html".equals(valueName)) {
+            int atom = tag.GetAtom();
+            if (atom == HtmlAtoms.HTML) {
               this.AddHtmlElement(tag);
               this.insertionMode = InsertionMode.BeforeHead;
               return true;
@@ -1336,10 +1737,11 @@ private boolean propVarvalueselfclosingack;
           } else if ((token & TOKEN_TYPE_MASK) == TOKEN_END_TAG) {
             TagToken tag = (TagToken)this.GetToken(token);
             String valueName = tag.GetName();
-            if (!"html".equals(valueName) &&
-              !"br".equals(valueName) &&
-              !"head".equals(valueName) &&
-              !"body".equals(valueName)) {
+            int atom = tag.GetAtom();
+            if (atom != HtmlAtoms.HTML &&
+              atom != HtmlAtoms.BR &&
+              atom != HtmlAtoms.HEAD &&
+              atom != HtmlAtoms.BODY) {
               this.ParseError();
               return false;
             }
@@ -1348,7 +1750,7 @@ private boolean propVarvalueselfclosingack;
           valueElement.SetLocalName("html");
           valueElement.SetNamespace(HtmlCommon.HTML_NAMESPACE);
           this.valueDocument.AppendChild(valueElement);
-          this.openElements.add(valueElement);
+          this.openElements.Add(valueElement);
           this.insertionMode = InsertionMode.BeforeHead;
           return this.ApplyThisInsertionMode(token);
         }
@@ -1369,10 +1771,11 @@ private boolean propVarvalueselfclosingack;
           if ((token & TOKEN_TYPE_MASK) == TOKEN_START_TAG) {
             StartTagToken tag = (StartTagToken)this.GetToken(token);
             String valueName = tag.GetName();
-            if ("html".equals(valueName)) {
+            int atom = tag.GetAtom();
+            if (atom == HtmlAtoms.HTML) {
               this.ApplyInsertionMode(token, InsertionMode.InBody);
               return true;
-            } else if ("head".equals(valueName)) {
+            } else if (atom == HtmlAtoms.HEAD) {
               Element valueElement = this.AddHtmlElement(tag);
               this.headElement = valueElement;
               this.insertionMode = InsertionMode.InHead;
@@ -1381,10 +1784,11 @@ private boolean propVarvalueselfclosingack;
           } else if ((token & TOKEN_TYPE_MASK) == TOKEN_END_TAG) {
             TagToken tag = (TagToken)this.GetToken(token);
             String valueName = tag.GetName();
-            if ("head".equals(valueName) ||
-              "br".equals(valueName) ||
-              "body".equals(valueName) ||
-              "html".equals(valueName)) {
+            int atom = tag.GetAtom();
+            if (atom == HtmlAtoms.HEAD ||
+              atom == HtmlAtoms.BR ||
+              atom == HtmlAtoms.BODY ||
+              atom == HtmlAtoms.HTML) {
               this.ApplyStartTag("head", insMode);
               return this.ApplyThisInsertionMode(token);
             } else {
@@ -1413,21 +1817,22 @@ private boolean propVarvalueselfclosingack;
           if ((token & TOKEN_TYPE_MASK) == TOKEN_START_TAG) {
             StartTagToken tag = (StartTagToken)this.GetToken(token);
             String valueName = tag.GetName();
-            if ("html".equals(valueName)) {
+            int atom = tag.GetAtom();
+            if (atom == HtmlAtoms.HTML) {
               this.ApplyInsertionMode(token, InsertionMode.InBody);
               return true;
-            } else if ("base".equals(valueName) ||
-              "bgsound".equals(valueName) ||
-              "basefont".equals(valueName) ||
-              "link".equals(valueName)) {
+            } else if (atom == HtmlAtoms.BASE ||
+              atom == HtmlAtoms.BGSOUND ||
+              atom == HtmlAtoms.BASEFONT ||
+              atom == HtmlAtoms.LINK) {
               Element e = this.AddHtmlElementNoPush(tag);
-              if (this.baseurl == null && "base".equals(valueName)) {
+              if (this.baseurl == null && atom == HtmlAtoms.BASE) {
                 // Get the valueDocument _base URL
                 this.baseurl = e.GetAttribute("href");
               }
               tag.AckSelfClosing();
               return true;
-            } else if ("meta".equals(valueName)) {
+            } else if (atom == HtmlAtoms.META) {
               Element valueElement = this.AddHtmlElementNoPush(tag);
               tag.AckSelfClosing();
               if (this.encoding.GetConfidence() ==
@@ -1440,7 +1845,7 @@ private boolean propVarvalueselfclosingack;
                   "utf-16le".equals(charset)) */ this.ChangeEncoding(charset);
                   if (this.encoding.GetConfidence() ==
                     EncodingConfidence.Certain) {
-                    this.inputReader.DisableBuffer();
+                    this.DisableInputBuffer();
                   }
                   return true;
                 }
@@ -1456,7 +1861,7 @@ private boolean propVarvalueselfclosingack;
                       this.ChangeEncoding(charset);
                       if (this.encoding.GetConfidence() ==
                         EncodingConfidence.Certain) {
-                        this.inputReader.DisableBuffer();
+                        this.DisableInputBuffer();
                       }
                       return true;
                     }
@@ -1479,40 +1884,40 @@ private boolean propVarvalueselfclosingack;
                 }
               }
               if (this.encoding.GetConfidence() == EncodingConfidence.Certain) {
-                this.inputReader.DisableBuffer();
+                this.DisableInputBuffer();
               }
               return true;
-            } else if ("title".equals(valueName)) {
+            } else if (atom == HtmlAtoms.TITLE) {
               this.AddHtmlElement(tag);
               this.state = TokenizerState.RcData;
               this.originalInsertionMode = this.insertionMode;
               this.insertionMode = InsertionMode.Text;
               return true;
-            } else if ("noframes".equals(valueName) ||
-              "style".equals(valueName)) {
+            } else if (atom == HtmlAtoms.NOFRAMES ||
+              atom == HtmlAtoms.STYLE) {
               this.AddHtmlElement(tag);
               this.state = TokenizerState.RawText;
               this.originalInsertionMode = this.insertionMode;
               this.insertionMode = InsertionMode.Text;
               return true;
-            } else if ("noscript".equals(valueName)) {
+            } else if (atom == HtmlAtoms.NOSCRIPT) {
               this.AddHtmlElement(tag);
               this.insertionMode = InsertionMode.InHeadNoscript;
               return true;
-            } else if ("script".equals(valueName)) {
+            } else if (atom == HtmlAtoms.SCRIPT) {
               this.AddHtmlElement(tag);
               this.state = TokenizerState.ScriptData;
               this.originalInsertionMode = this.insertionMode;
               this.insertionMode = InsertionMode.Text;
               return true;
-            } else if ("template".equals(valueName)) {
+            } else if (atom == HtmlAtoms.TEMPLATE) {
               Element e = this.AddHtmlElement(tag);
               this.InsertFormattingMarker(tag, e);
               this.framesetOk = false;
               this.insertionMode = InsertionMode.InTemplate;
               this.templateModes.add(InsertionMode.InTemplate);
               return true;
-            } else if ("head".equals(valueName)) {
+            } else if (atom == HtmlAtoms.HEAD) {
               this.ParseError();
               return false;
             } else {
@@ -1522,21 +1927,22 @@ private boolean propVarvalueselfclosingack;
           } else if ((token & TOKEN_TYPE_MASK) == TOKEN_END_TAG) {
             TagToken tag = (TagToken)this.GetToken(token);
             String valueName = tag.GetName();
-            if ("head".equals(valueName)) {
-              this.openElements.remove(this.openElements.size() - 1);
+            int atom = tag.GetAtom();
+            if (atom == HtmlAtoms.HEAD) {
+              this.openElements.RemoveLast();
               this.insertionMode = InsertionMode.AfterHead;
               return true;
-            } else if ("template".equals(valueName)) {
-              if (!this.HasHtmlOpenElement("template")) {
+            } else if (atom == HtmlAtoms.TEMPLATE) {
+              if (!this.HasHtmlOpenElement(HtmlAtoms.TEMPLATE)) {
                 this.ParseError();
                 return false;
               }
               this.GenerateImpliedEndTagsThoroughly();
               IElement ie = this.GetCurrentNode();
-              if (!HtmlCommon.IsHtmlElement(ie, "template")) {
+              if (!HtmlAtoms.IsHtmlElement(ie, HtmlAtoms.TEMPLATE)) {
                 this.ParseError();
               }
-              this.PopUntilHtmlElementPopped("template");
+              this.PopUntilHtmlElementPopped(HtmlAtoms.TEMPLATE);
               this.ClearFormattingToMarker();
               if (this.templateModes.size() > 0) {
                 this.templateModes.remove(this.templateModes.size() - 1);
@@ -1544,9 +1950,9 @@ private boolean propVarvalueselfclosingack;
               this.ResetInsertionMode();
               return true;
             } else if (!(
-              "br".equals(valueName) ||
-              "body".equals(valueName) ||
-              "html".equals(valueName))) {
+              atom == HtmlAtoms.BR ||
+              atom == HtmlAtoms.BODY ||
+              atom == HtmlAtoms.HTML)) {
               this.ParseError();
               return false;
             }
@@ -1575,34 +1981,35 @@ private boolean propVarvalueselfclosingack;
           } else if ((token & TOKEN_TYPE_MASK) == TOKEN_START_TAG) {
             StartTagToken tag = (StartTagToken)this.GetToken(token);
             String valueName = tag.GetName();
-            if (valueName.equals("html")) {
+            int atom = tag.GetAtom();
+            if (atom == HtmlAtoms.HTML) {
               this.ApplyInsertionMode(token, InsertionMode.InBody);
               return true;
-            } else if (valueName.equals("body")) {
+            } else if (atom == HtmlAtoms.BODY) {
               this.AddHtmlElement(tag);
               this.framesetOk = false;
               this.insertionMode = InsertionMode.InBody;
               return true;
-            } else if (valueName.equals("frameset")) {
+            } else if (atom == HtmlAtoms.FRAMESET) {
               this.AddHtmlElement(tag);
               this.insertionMode = InsertionMode.InFrameset;
               return true;
-            } else if ("base".equals(valueName) ||
-              "bgsound".equals(valueName) ||
-              "basefont".equals(valueName) ||
-              "link".equals(valueName) ||
-              "noframes".equals(valueName) ||
-              "script".equals(valueName) ||
-              "template".equals(valueName) ||
-              "style".equals(valueName) ||
-              "title".equals(valueName) ||
-              "meta".equals(valueName)) {
-              this.ParseError();
-              this.openElements.add(this.headElement);
+            } else if (atom == HtmlAtoms.BASE ||
+              atom == HtmlAtoms.BGSOUND ||
+              atom == HtmlAtoms.BASEFONT ||
+              atom == HtmlAtoms.LINK ||
+              atom == HtmlAtoms.NOFRAMES ||
+              atom == HtmlAtoms.SCRIPT ||
+              atom == HtmlAtoms.TEMPLATE ||
+              atom == HtmlAtoms.STYLE ||
+              atom == HtmlAtoms.TITLE ||
+              atom == HtmlAtoms.META) {
+              this.ParseError();
+              this.openElements.Add(this.headElement);
               this.ApplyInsertionMode(token, InsertionMode.InHead);
-              this.openElements.remove(this.headElement);
+              this.openElements.Remove(this.headElement);
               return true;
-            } else if ("head".equals(valueName)) {
+            } else if (atom == HtmlAtoms.HEAD) {
               this.ParseError();
               return false;
             } else {
@@ -1613,13 +2020,14 @@ private boolean propVarvalueselfclosingack;
           } else if ((token & TOKEN_TYPE_MASK) == TOKEN_END_TAG) {
             EndTagToken tag = (EndTagToken)this.GetToken(token);
             String valueName = tag.GetName();
-            if (valueName.equals("body") ||
-              valueName.equals("html") ||
-              valueName.equals("br")) {
+            int atom = tag.GetAtom();
+            if (atom == HtmlAtoms.BODY ||
+              atom == HtmlAtoms.HTML ||
+              atom == HtmlAtoms.BR) {
               this.ApplyStartTag("body", insMode);
               this.framesetOk = true;
               return this.ApplyThisInsertionMode(token);
-            } else if (valueName.equals("template")) {
+            } else if (atom == HtmlAtoms.TEMPLATE) {
               return this.ApplyInsertionMode(token, InsertionMode.InHead);
             } else {
               this.ParseError();
@@ -1648,19 +2056,13 @@ private boolean propVarvalueselfclosingack;
                 throw new IllegalStateException();
               }
               while (true) {
-                StringBuilder sb = textNode.getValueText();
-                if (ch <= 0xffff) {
-                  {
-                    sb.append((char)ch);
-                  }
-                } else if (ch <= 0x10ffff) {
-                  sb.append((char)((((ch - 0x10000) >> 10) & 0x3ff) |
-                    0xd800));
-                  sb.append((char)(((ch - 0x10000) & 0x3ff) | 0xdc00));
-                }
-                token = this.ParserRead();
+                textNode.AppendCodePoint(ch);
+                this.AppendCharacterRun(textNode.getValueText());
+                token = this.ParserReadAhead();
                 if ((token & TOKEN_TYPE_MASK) != TOKEN_CHARACTER) {
-                  this.tokenQueue.add(0, token);
+                  if (token != TOKEN_NONE) {
+                    this.tokenQueue.AddFirst(token);
+                  }
                   break;
                 }
                 ch = token;
@@ -1669,11 +2071,11 @@ private boolean propVarvalueselfclosingack;
             return true;
           } else if (token == TOKEN_EOF) {
             this.ParseError();
-            this.openElements.remove(this.openElements.size() - 1);
+            this.openElements.RemoveLast();
             this.insertionMode = this.originalInsertionMode;
             return this.ApplyThisInsertionMode(token);
           } else if ((token & TOKEN_TYPE_MASK) == TOKEN_END_TAG) {
-            this.openElements.remove(this.openElements.size() - 1);
+            this.openElements.RemoveLast();
             this.insertionMode = this.originalInsertionMode;
           }
           return true;
@@ -1689,33 +2091,34 @@ private boolean propVarvalueselfclosingack;
           if ((token & TOKEN_TYPE_MASK) == TOKEN_START_TAG) {
             StartTagToken tag = (StartTagToken)this.GetToken(token);
             String valueName = tag.GetName();
-            if (valueName.equals("base") ||
-              valueName.equals("title") ||
-              valueName.equals("template") ||
-              valueName.equals("basefont") ||
-              valueName.equals("bgsound") ||
-              valueName.equals("meta") ||
-              valueName.equals("link") ||
-              valueName.equals("noframes") ||
-              valueName.equals("style") ||
-              valueName.equals("script")) {
+            int atom = tag.GetAtom();
+            if (atom == HtmlAtoms.BASE ||
+              atom == HtmlAtoms.TITLE ||
+              atom == HtmlAtoms.TEMPLATE ||
+              atom == HtmlAtoms.BASEFONT ||
+              atom == HtmlAtoms.BGSOUND ||
+              atom == HtmlAtoms.META ||
+              atom == HtmlAtoms.LINK ||
+              atom == HtmlAtoms.NOFRAMES ||
+              atom == HtmlAtoms.STYLE ||
+              atom == HtmlAtoms.SCRIPT) {
               return this.ApplyInsertionMode(
                   token,
                   InsertionMode.InHead);
             }
             InsertionMode newMode = InsertionMode.InBody;
-            if (valueName.equals("caption") ||
-              valueName.equals("tbody") ||
-              valueName.equals("thead") ||
-              valueName.equals("tfoot") ||
-              valueName.equals("colgroup")) {
+            if (atom == HtmlAtoms.CAPTION ||
+              atom == HtmlAtoms.TBODY ||
+              atom == HtmlAtoms.THEAD ||
+              atom == HtmlAtoms.TFOOT ||
+              atom == HtmlAtoms.COLGROUP) {
               newMode = InsertionMode.InTable;
-            } else if (valueName.equals("col")) {
+            } else if (atom == HtmlAtoms.COL) {
               newMode = InsertionMode.InColumnGroup;
-            } else if (valueName.equals("tr")) {
+            } else if (atom == HtmlAtoms.TR) {
               newMode = InsertionMode.InTableBody;
-            } else if (valueName.equals("td") ||
-              valueName.equals("th")) {
+            } else if (atom == HtmlAtoms.TD ||
+              atom == HtmlAtoms.TH) {
               newMode = InsertionMode.InRow;
             }
             if (this.templateModes.size() > 0) {
@@ -1728,7 +2131,8 @@ private boolean propVarvalueselfclosingack;
           if ((token & TOKEN_TYPE_MASK) == TOKEN_END_TAG) {
             EndTagToken tag = (EndTagToken)this.GetToken(token);
             String valueName = tag.GetName();
-            if (valueName.equals("template")) {
+            int atom = tag.GetAtom();
+            if (atom == HtmlAtoms.TEMPLATE) {
               return this.ApplyInsertionMode(
                   token,
                   InsertionMode.InHead);
@@ -1738,13 +2142,13 @@ private boolean propVarvalueselfclosingack;
             }
           }
           if (token == TOKEN_EOF) {
-            if (!this.HasHtmlOpenElement("template")) {
+            if (!this.HasHtmlOpenElement(HtmlAtoms.TEMPLATE)) {
               this.StopParsing();
               return true;
             } else {
               this.ParseError();
             }
-            this.PopUntilHtmlElementPopped("template");
+            this.PopUntilHtmlElementPopped(HtmlAtoms.TEMPLATE);
             this.ClearFormattingToMarker();
             if (this.templateModes.size() > 0) {
               this.templateModes.remove(this.templateModes.size() - 1);
@@ -1786,16 +2190,7 @@ private boolean propVarvalueselfclosingack;
               if (ch == 0) {
                 this.ParseError();
               } else {
-                StringBuilder sb = textNode.getValueText();
-                if (ch <= 0xffff) {
-                  {
-                    sb.append((char)ch);
-                  }
-                } else if (ch <= 0x10ffff) {
-                  sb.append((char)((((ch - 0x10000) >> 10) & 0x3ff) |
-                    0xd800));
-                  sb.append((char)(((ch - 0x10000) & 0x3ff) | 0xdc00));
-                }
+                textNode.AppendCodePoint(ch);
               }
               if (this.framesetOk && token != 0x20 && token != 0x09 &&
                 token != 0x0a && token != 0x0c && token != 0x0d) {
@@ -1806,9 +2201,14 @@ private boolean propVarvalueselfclosingack;
               if (insMode != this.insertionMode) {
                 break;
               }
-              token = this.ParserRead();
+              if (this.AppendCharacterRun(textNode.getValueText())) {
+                this.framesetOk = false;
+              }
+              token = this.ParserReadAhead();
               if ((token & TOKEN_TYPE_MASK) != TOKEN_CHARACTER) {
-                this.tokenQueue.add(0, token);
+                if (token != TOKEN_NONE) {
+                  this.tokenQueue.AddFirst(token);
+                }
                 break;
               }
               // System.out.println("{0} {1}"
@@ -1820,21 +2220,22 @@ private boolean propVarvalueselfclosingack;
             if (this.templateModes.size() > 0) {
               return this.ApplyInsertionMode(token, InsertionMode.InTemplate);
             } else {
-              for (IElement e : this.openElements) {
-                if (!HtmlCommon.IsHtmlElement(e, "dd") &&
-                  !HtmlCommon.IsHtmlElement(e, "dt") &&
-                  !HtmlCommon.IsHtmlElement(e, "li") &&
-                  !HtmlCommon.IsHtmlElement(e, "option") &&
-                  !HtmlCommon.IsHtmlElement(e, "optgroup") &&
-                  !HtmlCommon.IsHtmlElement(e, "p") &&
-                  !HtmlCommon.IsHtmlElement(e, "tbody") &&
-                  !HtmlCommon.IsHtmlElement(e, "td") &&
-                  !HtmlCommon.IsHtmlElement(e, "tfoot") &&
-                  !HtmlCommon.IsHtmlElement(e, "th") &&
-                  !HtmlCommon.IsHtmlElement(e, "tr") &&
-                  !HtmlCommon.IsHtmlElement(e, "thead") &&
-                  !HtmlCommon.IsHtmlElement(e, "body") &&
-                  !HtmlCommon.IsHtmlElement(e, "html")) {
+              for (int i = 0; i < this.openElements.Size(); ++i) {
+                IElement e = this.openElements.Get(i);
+                if (!HtmlAtoms.IsHtmlElement(e, HtmlAtoms.DD) &&
+                  !HtmlAtoms.IsHtmlElement(e, HtmlAtoms.DT) &&
+                  !HtmlAtoms.IsHtmlElement(e, HtmlAtoms.LI) &&
+                  !HtmlAtoms.IsHtmlElement(e, HtmlAtoms.OPTION) &&
+                  !HtmlAtoms.IsHtmlElement(e, HtmlAtoms.OPTGROUP) &&
+                  !HtmlAtoms.IsHtmlElement(e, HtmlAtoms.P) &&
+                  !HtmlAtoms.IsHtmlElement(e, HtmlAtoms.TBODY) &&
+                  !HtmlAtoms.IsHtmlElement(e, HtmlAtoms.TD) &&
+                  !HtmlAtoms.IsHtmlElement(e, HtmlAtoms.TFOOT) &&
+                  !HtmlAtoms.IsHtmlElement(e, HtmlAtoms.TH) &&
+                  !HtmlAtoms.IsHtmlElement(e, HtmlAtoms.TR) &&
+                  !HtmlAtoms.IsHtmlElement(e, HtmlAtoms.THEAD) &&
+                  !HtmlAtoms.IsHtmlElement(e, HtmlAtoms.BODY) &&
+                  !HtmlAtoms.IsHtmlElement(e, HtmlAtoms.HTML)) {
                   this.ParseError();
                 }
               }
@@ -1845,87 +2246,88 @@ private boolean propVarvalueselfclosingack;
             // START TAGS
             StartTagToken tag = (StartTagToken)this.GetToken(token);
             String valueName = tag.GetName();
-            if ("html".equals(valueName)) {
+            int atom = tag.GetAtom();
+            if (atom == HtmlAtoms.HTML) {
               this.ParseError();
-              if (this.HasHtmlOpenElement("template")) {
+              if (this.HasHtmlOpenElement(HtmlAtoms.TEMPLATE)) {
                 return false;
               }
-              ((Element)this.openElements.get(0)).MergeAttributes(tag);
+              ((Element)this.openElements.Get(0)).MergeAttributes(tag);
 
               return true;
-            } else if ("base".equals(valueName) ||
-              "template".equals(valueName) ||
-              "bgsound".equals(valueName) ||
-              "basefont".equals(valueName) ||
-              "link".equals(valueName) ||
-              "noframes".equals(valueName) ||
-              "script".equals(valueName) ||
-              "style".equals(valueName) ||
-              "title".equals(valueName) ||
-              "meta".equals(valueName)) {
+            } else if (atom == HtmlAtoms.BASE ||
+              atom == HtmlAtoms.TEMPLATE ||
+              atom == HtmlAtoms.BGSOUND ||
+              atom == HtmlAtoms.BASEFONT ||
+              atom == HtmlAtoms.LINK ||
+              atom == HtmlAtoms.NOFRAMES ||
+              atom == HtmlAtoms.SCRIPT ||
+              atom == HtmlAtoms.STYLE ||
+              atom == HtmlAtoms.TITLE ||
+              atom == HtmlAtoms.META) {
               this.ApplyInsertionMode(token, InsertionMode.InHead);
               return true;
-            } else if ("body".equals(valueName)) {
+            } else if (atom == HtmlAtoms.BODY) {
               this.ParseError();
-              if (this.openElements.size() <= 1 ||
-                !HtmlCommon.IsHtmlElement(this.openElements.get(1), "body")) {
+              if (this.openElements.Size() <= 1 ||
+                !HtmlAtoms.IsHtmlElement(this.openElements.Get(1), HtmlAtoms.BODY)) {
                 return false;
               }
-              if (this.HasHtmlOpenElement("template")) {
+              if (this.HasHtmlOpenElement(HtmlAtoms.TEMPLATE)) {
                 return false;
               }
               this.framesetOk = false;
-              ((Element)this.openElements.get(1)).MergeAttributes(tag);
+              ((Element)this.openElements.Get(1)).MergeAttributes(tag);
 
               return true;
-            } else if ("frameset".equals(valueName)) {
+            } else if (atom == HtmlAtoms.FRAMESET) {
               this.ParseError();
-              if (!this.framesetOk || this.openElements.size() <= 1 ||
-                !HtmlCommon.IsHtmlElement(this.openElements.get(1), "body")) {
+              if (!this.framesetOk || this.openElements.Size() <= 1 ||
+                !HtmlAtoms.IsHtmlElement(this.openElements.Get(1), HtmlAtoms.BODY)) {
                 return false;
               }
-              Node parent = (Node)this.openElements.get(1).GetParentNode();
+              Node parent = (Node)this.openElements.Get(1).GetParentNode();
               if (parent != null) {
-                parent.RemoveChild((Node)this.openElements.get(1));
+                parent.RemoveChild((Node)this.openElements.Get(1));
               }
-              while (this.openElements.size() > 1) {
+              while (this.openElements.Size() > 1) {
                 this.PopCurrentNode();
               }
               this.AddHtmlElement(tag);
               this.insertionMode = InsertionMode.InFrameset;
               return true;
-            } else if ("address".equals(valueName) ||
-              "article".equals(valueName) ||
-              "aside".equals(valueName) ||
-              "blockquote".equals(valueName) ||
-              "center".equals(valueName) ||
-              "details".equals(valueName) ||
-              "dialog".equals(valueName) ||
-              "dir".equals(valueName) ||
-              "div".equals(valueName) ||
-              "dl".equals(valueName) ||
-              "fieldset".equals(valueName) ||
-              "figcaption".equals(valueName) ||
-              "figure".equals(valueName) ||
-              "footer".equals(valueName) ||
-              "header".equals(valueName) ||
-              "main".equals(valueName) ||
-              "nav".equals(valueName) ||
-              "ol".equals(valueName) ||
-              "p".equals(valueName) ||
-              "section".equals(valueName) ||
-              "summary".equals(valueName) ||
-              "ul".equals(valueName)
+            } else if (atom == HtmlAtoms.ADDRESS ||
+              atom == HtmlAtoms.ARTICLE ||
+              atom == HtmlAtoms.ASIDE ||
+              atom == HtmlAtoms.BLOCKQUOTE ||
+              atom == HtmlAtoms.CENTER ||
+              atom == HtmlAtoms.DETAILS ||
+              atom == HtmlAtoms.DIALOG ||
+              atom == HtmlAtoms.DIR ||
+              atom == HtmlAtoms.DIV ||
+              atom == HtmlAtoms.DL ||
+              atom == HtmlAtoms.FIELDSET ||
+              atom == HtmlAtoms.FIGCAPTION ||
+              atom == HtmlAtoms.FIGURE ||
+              atom == HtmlAtoms.FOOTER ||
+              atom == HtmlAtoms.HEADER ||
+              atom == HtmlAtoms.MAIN ||
+              atom == HtmlAtoms.NAV ||
+              atom == HtmlAtoms.OL ||
+              atom == HtmlAtoms.P ||
+              atom == HtmlAtoms.SECTION ||
+              atom == HtmlAtoms.SUMMARY ||
+              atom == HtmlAtoms.UL
 ) {
               this.CloseParagraph();
               this.AddHtmlElement(tag);
               return true;
-            } else if ("h1".equals(valueName) ||
-              "h2".equals(valueName) ||
-              "h3".equals(valueName) ||
-              "h4".equals(valueName) ||
-              "h5".equals(valueName) ||
-              "h6".equals(valueName)) {
+            } else if (atom == HtmlAtoms.H1 ||
+              atom == HtmlAtoms.H2 ||
+              atom == HtmlAtoms.H3 ||
+              atom == HtmlAtoms.H4 ||
+              atom == HtmlAtoms.H5 ||
+              atom == HtmlAtoms.H6) {
               this.CloseParagraph();
               IElement node = this.GetCurrentNode();
               String name1 = node.GetLocalName();
@@ -1936,35 +2338,35 @@ private boolean propVarvalueselfclosingack;
                 "h5".equals(name1) ||
                 "h6".equals(name1)) {
                 this.ParseError();
-                this.openElements.remove(this.openElements.size() - 1);
+                this.openElements.RemoveLast();
               }
               this.AddHtmlElement(tag);
               return true;
-            } else if ("pre".equals(valueName) ||
-              "listing".equals(valueName)) {
+            } else if (atom == HtmlAtoms.PRE ||
+              atom == HtmlAtoms.LISTING) {
               this.CloseParagraph();
               this.AddHtmlElement(tag);
               this.SkipLineFeed();
               this.framesetOk = false;
               return true;
-            } else if ("form".equals(valueName)) {
+            } else if (atom == HtmlAtoms.FORM) {
               if (this.formElement != null && !this.HasHtmlOpenElement(
-                "template")) {
+                HtmlAtoms.TEMPLATE)) {
                 this.ParseError();
                 return false;
               }
               this.CloseParagraph();
               Element formElem = this.AddHtmlElement(tag);
-              if (!this.HasHtmlOpenElement("template")) {
+              if (!this.HasHtmlOpenElement(HtmlAtoms.TEMPLATE)) {
                 this.formElement = formElem;
               }
               return true;
-            } else if ("li".equals(valueName)) {
+            } else if (atom == HtmlAtoms.LI) {
               this.framesetOk = false;
-              for (int i = this.openElements.size() - 1; i >= 0; --i) {
-                IElement node = this.openElements.get(i);
+              for (int i = this.openElements.Size() - 1; i >= 0; --i) {
+                IElement node = this.openElements.Get(i);
                 String nodeName = node.GetLocalName();
-                if (HtmlCommon.IsHtmlElement(node, "li")) {
+                if (HtmlAtoms.IsHtmlElement(node, HtmlAtoms.LI)) {
                   this.ApplyInsertionMode(
                     this.GetArtificialToken(TOKEN_END_TAG, "li"),
                     insMode);
@@ -1980,11 +2382,11 @@ private boolean propVarvalueselfclosingack;
               this.CloseParagraph();
               this.AddHtmlElement(tag);
               return true;
-            } else if ("dd".equals(valueName) ||
-              "dt".equals(valueName)) {
+            } else if (atom == HtmlAtoms.DD ||
+              atom == HtmlAtoms.DT) {
               this.framesetOk = false;
-              for (int i = this.openElements.size() - 1; i >= 0; --i) {
-                IElement node = this.openElements.get(i);
+              for (int i = this.openElements.Size() - 1; i >= 0; --i) {
+                IElement node = this.openElements.Get(i);
                 String nodeName = node.GetLocalName();
                 // System.out.println("looping through %s",nodeName);
                 if (nodeName.equals("dd") ||
@@ -2002,13 +2404,13 @@ private boolean propVarvalueselfclosingack;
               this.CloseParagraph();
               this.AddHtmlElement(tag);
               return true;
-            } else if ("plaintext".equals(valueName)) {
+            } else if (atom == HtmlAtoms.PLAINTEXT) {
               this.CloseParagraph();
               this.AddHtmlElement(tag);
               this.state = TokenizerState.PlainText;
               return true;
-            } else if ("button".equals(valueName)) {
-              if (this.HasHtmlElementInScope("button")) {
+            } else if (atom == HtmlAtoms.BUTTON) {
+              if (this.HasHtmlElementInScope(HtmlAtoms.BUTTON)) {
                 this.ParseError();
                 this.ApplyEndTag("button", insMode);
                 return this.ApplyThisInsertionMode(token);
@@ -2017,7 +2419,7 @@ private boolean propVarvalueselfclosingack;
               this.AddHtmlElement(tag);
               this.framesetOk = false;
               return true;
-            } else if ("a".equals(valueName)) {
+            } else if (atom == HtmlAtoms.A) {
               while (true) {
                 IElement node = null;
                 for (int i = this.formattingElements.size() - 1; i >= 0; --i) {
@@ -2025,7 +2427,7 @@ private boolean propVarvalueselfclosingack;
                   if (fe.IsMarker()) {
                     break;
                   }
-                  if (fe.getElement().GetLocalName().equals("a")) {
+                  if (HtmlAtoms.GetAtom(fe.getElement()) == HtmlAtoms.A) {
                     node = fe.getElement();
                     break;
                   }
@@ -2034,36 +2436,36 @@ private boolean propVarvalueselfclosingack;
                   this.ParseError();
                   this.ApplyEndTag("a", insMode);
                   this.RemoveFormattingElement(node);
-                  this.openElements.remove(node);
+                  this.openElements.Remove(node);
                 } else {
                   break;
                 }
               }
               this.ReconstructFormatting();
               this.PushFormattingElement(tag);
-            } else if ("b".equals(valueName) ||
-              "big".equals(valueName) ||
-              "code".equals(valueName) ||
-              "em".equals(valueName) ||
-              "font".equals(valueName) ||
-              "i".equals(valueName) ||
-              "s".equals(valueName) ||
-              "small".equals(valueName) ||
-              "strike".equals(valueName) ||
-              "strong".equals(valueName) ||
-              "tt".equals(valueName) ||
-              "u".equals(valueName)) {
+            } else if (atom == HtmlAtoms.B ||
+              atom == HtmlAtoms.BIG ||
+              atom == HtmlAtoms.CODE ||
+              atom == HtmlAtoms.EM ||
+              atom == HtmlAtoms.FONT ||
+              atom == HtmlAtoms.I ||
+              atom == HtmlAtoms.S ||
+              atom == HtmlAtoms.SMALL ||
+              atom == HtmlAtoms.STRIKE ||
+              atom == HtmlAtoms.STRONG ||
+              atom == HtmlAtoms.TT ||
+              atom == HtmlAtoms.U) {
               this.ReconstructFormatting();
               this.PushFormattingElement(tag);
-            } else if ("nobr".equals(valueName)) {
+            } else if (atom == HtmlAtoms.NOBR) {
               this.ReconstructFormatting();
-              if (this.HasHtmlElementInScope("nobr")) {
+              if (this.HasHtmlElementInScope(HtmlAtoms.NOBR)) {
                 this.ParseError();
                 this.ApplyEndTag("nobr", insMode);
                 this.ReconstructFormatting();
               }
               this.PushFormattingElement(tag);
-            } else if ("table".equals(valueName)) {
+            } else if (atom == HtmlAtoms.TABLE) {
               if (this.valueDocument.GetMode() != DocumentMode.QuirksMode) {
                 this.CloseParagraph();
               }
@@ -2071,18 +2473,18 @@ private boolean propVarvalueselfclosingack;
               this.framesetOk = false;
               this.insertionMode = InsertionMode.InTable;
               return true;
-            } else if ("area".equals(valueName) ||
-              "br".equals(valueName) ||
-              "embed".equals(valueName) ||
-              "img".equals(valueName) ||
-              "keygen".equals(valueName) ||
-              "wbr".equals(valueName)
+            } else if (atom == HtmlAtoms.AREA ||
+              atom == HtmlAtoms.BR ||
+              atom == HtmlAtoms.EMBED ||
+              atom == HtmlAtoms.IMG ||
+              atom == HtmlAtoms.KEYGEN ||
+              atom == HtmlAtoms.WBR
 ) {
               this.ReconstructFormatting();
               this.AddHtmlElementNoPush(tag);
               tag.AckSelfClosing();
               this.framesetOk = false;
-            } else if ("input".equals(valueName)) {
+            } else if (atom == HtmlAtoms.INPUT) {
               this.ReconstructFormatting();
               this.inputElement = this.AddHtmlElementNoPush(tag);
               tag.AckSelfClosing();
@@ -2091,29 +2493,29 @@ private boolean propVarvalueselfclosingack;
                 .equals(com.upokecenter.util.DataUtilities.ToLowerCaseAscii(attr))) {
                 this.framesetOk = false;
               }
-            } else if ("param".equals(valueName) ||
-              "source".equals(valueName) ||
-              "track".equals(valueName)
+            } else if (atom == HtmlAtoms.PARAM ||
+              atom == HtmlAtoms.SOURCE ||
+              atom == HtmlAtoms.TRACK
 ) {
               this.AddHtmlElementNoPush(tag);
               tag.AckSelfClosing();
-            } else if ("hr".equals(valueName)) {
+            } else if (atom == HtmlAtoms.HR) {
               this.CloseParagraph();
               this.AddHtmlElementNoPush(tag);
               tag.AckSelfClosing();
               this.framesetOk = false;
-            } else if ("image".equals(valueName)) {
+            } else if (atom == HtmlAtoms.IMAGE) {
               this.ParseError();
               tag.SetName("img");
               return this.ApplyThisInsertionMode(token);
-            } else if ("textarea".equals(valueName)) {
+            } else if (atom == HtmlAtoms.TEXTAREA) {
               this.AddHtmlElement(tag);
               this.SkipLineFeed();
               this.state = TokenizerState.RcData;
               this.originalInsertionMode = this.insertionMode;
               this.framesetOk = false;
               this.insertionMode = InsertionMode.Text;
-            } else if ("xmp".equals(valueName)) {
+            } else if (atom == HtmlAtoms.XMP) {
               this.CloseParagraph();
               this.ReconstructFormatting();
               this.framesetOk = false;
@@ -2121,18 +2523,18 @@ private boolean propVarvalueselfclosingack;
               this.state = TokenizerState.RawText;
               this.originalInsertionMode = this.insertionMode;
               this.insertionMode = InsertionMode.Text;
-            } else if ("iframe".equals(valueName)) {
+            } else if (atom == HtmlAtoms.IFRAME) {
               this.framesetOk = false;
               this.AddHtmlElement(tag);
               this.state = TokenizerState.RawText;
               this.originalInsertionMode = this.insertionMode;
               this.insertionMode = InsertionMode.Text;
-            } else if ("noembed".equals(valueName)) {
+            } else if (atom == HtmlAtoms.NOEMBED) {
               this.AddHtmlElement(tag);
               this.state = TokenizerState.RawText;
               this.originalInsertionMode = this.insertionMode;
               this.insertionMode = InsertionMode.Text;
-            } else if ("select".equals(valueName)) {
+            } else if (atom == HtmlAtoms.SELECT) {
               this.ReconstructFormatting();
               this.AddHtmlElement(tag);
               this.framesetOk = false;
@@ -2143,43 +2545,39 @@ private boolean propVarvalueselfclosingack;
                   this.insertionMode == InsertionMode.InRow ||
                   this.insertionMode == InsertionMode.InCell) ?
                 InsertionMode.InSelectInTable : InsertionMode.InSelect;
-            } else if ("option".equals(valueName) || "optgroup".equals(valueName)) {
-              if (this.GetCurrentNode().GetLocalName().equals(
-                "option")) {
+            } else if (atom == HtmlAtoms.OPTION || atom == HtmlAtoms.OPTGROUP) {
+              if (HtmlAtoms.GetAtom(this.GetCurrentNode()) == HtmlAtoms.OPTION) {
                 this.ApplyEndTag("option", insMode);
               }
               this.ReconstructFormatting();
               this.AddHtmlElement(tag);
-            } else if ("rp".equals(valueName) ||
-              "rt".equals(valueName)) {
-              if (this.HasHtmlElementInScope("ruby")) {
-                this.GenerateImpliedEndTagsExcept("rtc");
-                if (!this.GetCurrentNode().GetLocalName().equals(
-                  "ruby") &&
-                  !this.GetCurrentNode().GetLocalName().equals(
-                    "rtc")) {
+            } else if (atom == HtmlAtoms.RP ||
+              atom == HtmlAtoms.RT) {
+              if (this.HasHtmlElementInScope(HtmlAtoms.RUBY)) {
+                this.GenerateImpliedEndTagsExcept(HtmlAtoms.RTC);
+                if (HtmlAtoms.GetAtom(this.GetCurrentNode()) != HtmlAtoms.RUBY &&
+                  HtmlAtoms.GetAtom(this.GetCurrentNode()) != HtmlAtoms.RTC) {
                   this.ParseError();
                 }
               }
               this.AddHtmlElement(tag);
-            } else if ("rb".equals(valueName) ||
-              "rtc".equals(valueName)) {
-              if (this.HasHtmlElementInScope("ruby")) {
+            } else if (atom == HtmlAtoms.RB ||
+              atom == HtmlAtoms.RTC) {
+              if (this.HasHtmlElementInScope(HtmlAtoms.RUBY)) {
                 this.GenerateImpliedEndTags();
-                if (!this.GetCurrentNode().GetLocalName().equals(
-                  "ruby")) {
+                if (HtmlAtoms.GetAtom(this.GetCurrentNode()) != HtmlAtoms.RUBY) {
                   this.ParseError();
                 }
               }
               this.AddHtmlElement(tag);
-            } else if ("applet".equals(valueName) ||
-              "marquee".equals(valueName) ||
-              "Object".equals(valueName)) {
+            } else if (atom == HtmlAtoms.APPLET ||
+              atom == HtmlAtoms.MARQUEE ||
+              atom == HtmlAtoms.OBJECT) {
               this.ReconstructFormatting();
               Element e = this.AddHtmlElement(tag);
               this.InsertFormattingMarker(tag, e);
               this.framesetOk = false;
-            } else if ("math".equals(valueName)) {
+            } else if (atom == HtmlAtoms.MATH) {
               this.ReconstructFormatting();
               this.AdjustMathMLAttributes(tag);
               this.AdjustForeignAttributes(tag);
@@ -2192,7 +2590,7 @@ private boolean propVarvalueselfclosingack;
               } else {
                 // this.hasForeignContent = true;
               }
-            } else if ("svg".equals(valueName)) {
+            } else if (atom == HtmlAtoms.SVG) {
               this.ReconstructFormatting();
               this.AdjustSvgAttributes(tag);
               this.AdjustForeignAttributes(tag);
@@ -2203,17 +2601,17 @@ private boolean propVarvalueselfclosingack;
               } else {
                 // this.hasForeignContent = true;
               }
-            } else if ("caption".equals(valueName) ||
-              "col".equals(valueName) ||
-              "colgroup".equals(valueName) ||
-              "frame".equals(valueName) ||
-              "head".equals(valueName) ||
-              "tbody".equals(valueName) ||
-              "td".equals(valueName) ||
-              "tfoot".equals(valueName) ||
-              "th".equals(valueName) ||
-              "thead".equals(valueName) ||
-              "tr".equals(valueName)
+            } else if (atom == HtmlAtoms.CAPTION ||
+              atom == HtmlAtoms.COL ||
+              atom == HtmlAtoms.COLGROUP ||
+              atom == HtmlAtoms.FRAME ||
+              atom == HtmlAtoms.HEAD ||
+              atom == HtmlAtoms.TBODY ||
+              atom == HtmlAtoms.TD ||
+              atom == HtmlAtoms.TFOOT ||
+              atom == HtmlAtoms.TH ||
+              atom == HtmlAtoms.THEAD ||
+              atom == HtmlAtoms.TR
 ) {
               this.ParseError();
               return false;
@@ -2228,16 +2626,18 @@ private boolean propVarvalueselfclosingack;
             // NOTE: Have all cases
             EndTagToken tag = (EndTagToken)this.GetToken(token);
             String valueName = tag.GetName();
-            if (valueName.equals("template")) {
+            int atom = tag.GetAtom();
+            if (atom == HtmlAtoms.TEMPLATE) {
               this.ApplyInsertionMode(token, InsertionMode.InHead);
               return true;
             }
-            if (valueName.equals("body")) {
-              if (!this.HasHtmlElementInScope("body")) {
+            if (atom == HtmlAtoms.BODY) {
+              if (!this.HasHtmlElementInScope(HtmlAtoms.BODY)) {
                 this.ParseError();
                 return false;
               }
-              for (IElement e : this.openElements) {
+              for (int i = 0; i < this.openElements.Size(); ++i) {
+                IElement e = this.openElements.Get(i);
                 String name2 = e.GetLocalName();
                 if (!"dd".equals(name2) &&
                   !"dt".equals(name2) &&
@@ -2259,25 +2659,25 @@ private boolean propVarvalueselfclosingack;
                 }
               }
               this.insertionMode = InsertionMode.AfterBody;
-            } else if (valueName.equals("a") ||
-              valueName.equals("b") ||
-              valueName.equals("big") ||
-              valueName.equals("code") ||
-              valueName.equals("em") ||
-              valueName.equals("b") ||
-              valueName.equals("font") ||
-              valueName.equals("i") ||
-              valueName.equals("nobr") ||
-              valueName.equals("s") ||
-              valueName.equals("small") ||
-              valueName.equals("strike") ||
-              valueName.equals("strong") ||
-              valueName.equals("tt") ||
-              valueName.equals("u")) {
+            } else if (atom == HtmlAtoms.A ||
+              atom == HtmlAtoms.B ||
+              atom == HtmlAtoms.BIG ||
+              atom == HtmlAtoms.CODE ||
+              atom == HtmlAtoms.EM ||
+              atom == HtmlAtoms.B ||
+              atom == HtmlAtoms.FONT ||
+              atom == HtmlAtoms.I ||
+              atom == HtmlAtoms.NOBR ||
+              atom == HtmlAtoms.S ||
+              atom == HtmlAtoms.SMALL ||
+              atom == HtmlAtoms.STRIKE ||
+              atom == HtmlAtoms.STRONG ||
+              atom == HtmlAtoms.TT ||
+              atom == HtmlAtoms.U) {
               if (
-                HtmlCommon.IsHtmlElement(
+                HtmlAtoms.IsHtmlElement(
                   this.GetCurrentNode(),
-                  valueName)) {
+                  atom)) {
                 boolean found = false;
                 for (int j = this.formattingElements.size() - 1; j >= 0; --j) {
                   FormattingElement fe = this.formattingElements.get(j);
@@ -2293,14 +2693,14 @@ private boolean propVarvalueselfclosingack;
               for (int i = 0; i < 8; ++i) {
                 // System.out.println("i=" + i);
                 // System.out.println("format before=" +
-                // this.openElements.get(0).GetOwnerDocument());
+                // this.openElements.Get(0).GetOwnerDocument());
                 FormattingElement formatting = null;
                 for (int j = this.formattingElements.size() - 1; j >= 0; --j) {
                   FormattingElement fe = this.formattingElements.get(j);
                   if (fe.IsMarker()) {
                     break;
                   }
-                  if (fe.getElement().GetLocalName().equals(valueName)) {
+                  if (HtmlAtoms.GetAtom(fe.getElement()) == atom) {
                     formatting = fe;
                     break;
                   }
@@ -2308,11 +2708,11 @@ private boolean propVarvalueselfclosingack;
                 if (formatting == null) {
                   // NOTE: Steps for "any other end tag"
                   // System.out.println("no such formatting element");
-                  for (int k = this.openElements.size() - 1;
+                  for (int k = this.openElements.Size() - 1;
                     k >= 0; --k) {
-                    IElement node = this.openElements.get(k);
+                    IElement node = this.openElements.Get(k);
                     if (HtmlCommon.IsHtmlElement(node, valueName)) {
-                      this.GenerateImpliedEndTagsExcept(valueName);
+                      this.GenerateImpliedEndTagsExcept(atom);
                       if (!node.equals(this.GetCurrentNode())) {
                         this.ParseError();
                       }
@@ -2331,7 +2731,7 @@ private boolean propVarvalueselfclosingack;
                   return true;
                 }
                 int formattingElementPos =
-                  this.openElements.indexOf(formatting.getElement());
+                  this.openElements.IndexOf(formatting.getElement());
                 // System.out.println("Formatting Element: // " +
                 // formatting.getElement());
                 if (formattingElementPos < 0) { // not found
@@ -2354,8 +2754,8 @@ private boolean propVarvalueselfclosingack;
                 IElement furthestBlock = null;
                 int furthestBlockPos = -1;
                 for (int j = formattingElementPos + 1;
-                  j < this.openElements.size(); ++j) {
-                  IElement e = this.openElements.get(j);
+                  j < this.openElements.Size(); ++j) {
+                  IElement e = this.openElements.Get(j);
                   // System.out.println("is special: // " + (// e) + "// " +
                   // (this.IsSpecialElement(e)));
                   if (this.IsSpecialElement(e)) {
@@ -2368,7 +2768,7 @@ private boolean propVarvalueselfclosingack;
                 if (furthestBlock == null) {
                   // Pop up to and including the
                   // formatting element
-                  while (this.openElements.size() > formattingElementPos) {
+                  while (this.openElements.Size() > formattingElementPos) {
                     this.PopCurrentNode();
                   }
                   this.formattingElements.remove(formatting);
@@ -2379,16 +2779,16 @@ private boolean propVarvalueselfclosingack;
                   break;
                 }
                 IElement commonAncestor =
-                  this.openElements.get(formattingElementPos -
+                  this.openElements.Get(formattingElementPos -
                     1);
                 int bookmark = this.formattingElements.indexOf(formatting);
                 // System.out.println("formel: {0}"
-                // , this.openElements.get(formattingElementPos));
+                // , this.openElements.Get(formattingElementPos));
                 // System.out.println("common ancestor: " + commonAncestor);
                 // System.out.println("Setting bookmark to {0} [len={1}]"
                 // , bookmark, this.formattingElements.size());
                 IElement myNode = furthestBlock;
-                IElement superiorNode = this.openElements.get(furthestBlockPos -
+                IElement superiorNode = this.openElements.Get(furthestBlockPos -
                     1);
                 IElement lastNode = furthestBlock;
                 for (int j = 0; ; j = Math.min(j + 1, 4)) {
@@ -2400,9 +2800,9 @@ private boolean propVarvalueselfclosingack;
                   if (nodeFE == null) {
                     // System.out.println("node not a formatting element");
                     superiorNode =
-                      this.openElements.get(this.openElements.indexOf(myNode) -
+                      this.openElements.Get(this.openElements.IndexOf(myNode) -
                         1);
-                    this.openElements.remove(myNode);
+                    this.openElements.Remove(myNode);
                     continue;
                   } else if (myNode.equals(formatting.getElement())) {
                     // System.out.println("node is the formatting element");
@@ -2414,16 +2814,16 @@ private boolean propVarvalueselfclosingack;
                       --bookmark;
                     }
                     superiorNode =
-                      this.openElements.get(this.openElements.indexOf(myNode) -
+                      this.openElements.Get(this.openElements.IndexOf(myNode) -
                         1);
-                    this.openElements.remove(myNode);
+                    this.openElements.Remove(myNode);
                     continue;
                   }
                   IElement e = Element.FromToken(nodeFE.getToken());
                   nodeFE.setElement(e);
-                  int io = this.openElements.indexOf(myNode);
-                  superiorNode = this.openElements.get(io - 1);
-                  this.openElements.set(io, e);
+                  int io = this.openElements.IndexOf(myNode);
+                  superiorNode = this.openElements.Get(io - 1);
+                  this.openElements.Set(io, e);
                   myNode = e;
                   if (lastNode.equals(furthestBlock)) {
                     bookmark = this.formattingElements.indexOf(nodeFE) + 1;
@@ -2442,11 +2842,11 @@ private boolean propVarvalueselfclosingack;
                   lastNode = myNode;
                 }
                 // System.out.println("lastNode: "+lastNode);
-                if (HtmlCommon.IsHtmlElement(commonAncestor, "table") ||
-                  HtmlCommon.IsHtmlElement(commonAncestor, "tr") ||
-                  HtmlCommon.IsHtmlElement(commonAncestor, "tbody") ||
-                  HtmlCommon.IsHtmlElement(commonAncestor, "thead") ||
-                  HtmlCommon.IsHtmlElement(commonAncestor, "tfoot")
+                if (HtmlAtoms.IsHtmlElement(commonAncestor, HtmlAtoms.TABLE) ||
+                  HtmlAtoms.IsHtmlElement(commonAncestor, HtmlAtoms.TR) ||
+                  HtmlAtoms.IsHtmlElement(commonAncestor, HtmlAtoms.TBODY) ||
+                  HtmlAtoms.IsHtmlElement(commonAncestor, HtmlAtoms.THEAD) ||
+                  HtmlAtoms.IsHtmlElement(commonAncestor, HtmlAtoms.TFOOT)
 ) {
                   if (lastNode.GetParentNode() != null) {
                     ((Node)lastNode.GetParentNode()).RemoveChild(
@@ -2461,11 +2861,7 @@ private boolean propVarvalueselfclosingack;
                   commonAncestor.AppendChild(lastNode);
                 }
                 Element e2 = Element.FromToken(formatting.getToken());
-                ArrayList<INode> fbch = new ArrayList<INode>();
                 for (INode child : furthestBlock.GetChildNodes()) {
-                  fbch.add(child);
-                }
-                for (INode child : fbch) {
                   furthestBlock.RemoveChild((Node)child);
                   // NOTE: Because 'e' can only be a formatting
                   // element, the foster parenting rule doesn't
@@ -2488,76 +2884,75 @@ private boolean propVarvalueselfclosingack;
                 this.formattingElements.add(bookmark, newFE);
                 this.formattingElements.remove(formatting);
                 // System.out.println("Replacing open element at %d"
-                // , openElements.indexOf(furthestBlock)+1);
-                int idx = this.openElements.indexOf(furthestBlock) + 1;
-                this.openElements.add(idx, e2);
-                this.openElements.remove(formatting.getElement());
+                // , openElements.IndexOf(furthestBlock)+1);
+                int idx = this.openElements.IndexOf(furthestBlock) + 1;
+                this.openElements.Insert(idx, e2);
+                this.openElements.Remove(formatting.getElement());
               }
               // System.out.println("format after="
-              // +this.openElements.get(0).GetOwnerDocument());
-            } else if ("applet".equals(valueName) ||
-              "marquee".equals(valueName) ||
-              "Object".equals(valueName)) {
-              if (!this.HasHtmlElementInScope(valueName)) {
+              // +this.openElements.Get(0).GetOwnerDocument());
+            } else if (atom == HtmlAtoms.APPLET ||
+              atom == HtmlAtoms.MARQUEE ||
+              atom == HtmlAtoms.OBJECT) {
+              if (!this.HasHtmlElementInScope(atom)) {
                 this.ParseError();
                 return false;
               } else {
                 this.GenerateImpliedEndTags();
-                if (!this.GetCurrentNode().GetLocalName().equals(valueName)) {
+                if (HtmlAtoms.GetAtom(this.GetCurrentNode()) != atom) {
                   this.ParseError();
                 }
-                this.PopUntilHtmlElementPopped(valueName);
+                this.PopUntilHtmlElementPopped(atom);
                 this.ClearFormattingToMarker();
               }
-            } else if (valueName.equals("html")) {
+            } else if (atom == HtmlAtoms.HTML) {
               return this.ApplyEndTag("body", insMode) ?
                 this.ApplyThisInsertionMode(token) : false;
-            } else if ("address".equals(valueName) ||
-              "article".equals(valueName) ||
-              "aside".equals(valueName) ||
-              "blockquote".equals(valueName) ||
-              "button".equals(valueName) ||
-              "center".equals(valueName) ||
-              "details".equals(valueName) ||
-              "dialog".equals(valueName) ||
-              "dir".equals(valueName) ||
-              "div".equals(valueName) ||
-              "dl".equals(valueName) ||
-              "fieldset".equals(valueName) ||
-              "figcaption".equals(valueName) ||
-              "figure".equals(valueName) ||
-              "footer".equals(valueName) ||
-              "header".equals(valueName) ||
-              "listing".equals(valueName) ||
-              "main".equals(valueName) ||
-              "nav".equals(valueName) ||
-              "ol".equals(valueName) ||
-              "pre".equals(valueName) ||
-              "section".equals(valueName) ||
-              "summary".equals(valueName) ||
-              "ul".equals(valueName)) {
-              if (!this.HasHtmlElementInScope(valueName)) {
+            } else if (atom == HtmlAtoms.ADDRESS ||
+              atom == HtmlAtoms.ARTICLE ||
+              atom == HtmlAtoms.ASIDE ||
+              atom == HtmlAtoms.BLOCKQUOTE ||
+              atom == HtmlAtoms.BUTTON ||
+              atom == HtmlAtoms.CENTER ||
+              atom == HtmlAtoms.DETAILS ||
+              atom == HtmlAtoms.DIALOG ||
+              atom == HtmlAtoms.DIR ||
+              atom == HtmlAtoms.DIV ||
+              atom == HtmlAtoms.DL ||
+              atom == HtmlAtoms.FIELDSET ||
+              atom == HtmlAtoms.FIGCAPTION ||
+              atom == HtmlAtoms.FIGURE ||
+              atom == HtmlAtoms.FOOTER ||
+              atom == HtmlAtoms.HEADER ||
+              atom == HtmlAtoms.LISTING ||
+              atom == HtmlAtoms.MAIN ||
+              atom == HtmlAtoms.NAV ||
+              atom == HtmlAtoms.OL ||
+              atom == HtmlAtoms.PRE ||
+              atom == HtmlAtoms.SECTION ||
+              atom == HtmlAtoms.SUMMARY ||
+              atom == HtmlAtoms.UL) {
+              if (!this.HasHtmlElementInScope(atom)) {
                 this.ParseError();
                 return true;
               } else {
                 this.GenerateImpliedEndTags();
-                if (!this.GetCurrentNode().GetLocalName().equals(valueName)) {
+                if (HtmlAtoms.GetAtom(this.GetCurrentNode()) != atom) {
                   this.ParseError();
                 }
-                this.PopUntilHtmlElementPopped(valueName);
+                this.PopUntilHtmlElementPopped(atom);
               }
-            } else if (valueName.equals("form")) {
-              if (this.HasHtmlOpenElement("template")) {
-                if (!this.HasHtmlElementInScope("form")) {
+            } else if (atom == HtmlAtoms.FORM) {
+              if (this.HasHtmlOpenElement(HtmlAtoms.TEMPLATE)) {
+                if (!this.HasHtmlElementInScope(HtmlAtoms.FORM)) {
                   this.ParseError();
                   return false;
                 }
                 this.GenerateImpliedEndTags();
-                if (!HtmlCommon.IsHtmlElement(this.GetCurrentNode(),
-                  "form")) {
+                if (!HtmlAtoms.IsHtmlElement(this.GetCurrentNode(), HtmlAtoms.FORM)) {
                   this.ParseError();
                 }
-                this.PopUntilHtmlElementPopped("form");
+                this.PopUntilHtmlElementPopped(HtmlAtoms.FORM);
               } else {
                 IElement node = this.formElement;
                 this.formElement = null;
@@ -2569,75 +2964,75 @@ private boolean propVarvalueselfclosingack;
                 if (this.GetCurrentNode() != node) {
                   this.ParseError();
                 }
-                this.openElements.remove(node);
+                this.openElements.Remove(node);
               }
-            } else if (valueName.equals("p")) {
-              if (!this.HasHtmlElementInButtonScope(valueName)) {
+            } else if (atom == HtmlAtoms.P) {
+              if (!this.HasHtmlElementInButtonScope(atom)) {
                 this.ParseError();
                 this.ApplyStartTag("p", insMode);
                 return this.ApplyThisInsertionMode(token);
               }
-              this.GenerateImpliedEndTagsExcept(valueName);
-              if (!this.GetCurrentNode().GetLocalName().equals(valueName)) {
+              this.GenerateImpliedEndTagsExcept(atom);
+              if (HtmlAtoms.GetAtom(this.GetCurrentNode()) != atom) {
                 this.ParseError();
               }
-              this.PopUntilHtmlElementPopped(valueName);
-            } else if (valueName.equals("li")) {
-              if (!this.HasHtmlElementInListItemScope(valueName)) {
+              this.PopUntilHtmlElementPopped(atom);
+            } else if (atom == HtmlAtoms.LI) {
+              if (!this.HasHtmlElementInListItemScope(atom)) {
                 this.ParseError();
                 return false;
               }
-              this.GenerateImpliedEndTagsExcept(valueName);
-              if (!this.GetCurrentNode().GetLocalName().equals(valueName)) {
+              this.GenerateImpliedEndTagsExcept(atom);
+              if (HtmlAtoms.GetAtom(this.GetCurrentNode()) != atom) {
                 this.ParseError();
               }
-              this.PopUntilHtmlElementPopped(valueName);
-            } else if (valueName.equals("h1") ||
-              valueName.equals("h2") ||
-              valueName.equals("h3") ||
-              valueName.equals("h4") ||
-              valueName.equals("h5") ||
-              valueName.equals("h6")) {
+              this.PopUntilHtmlElementPopped(atom);
+            } else if (atom == HtmlAtoms.H1 ||
+              atom == HtmlAtoms.H2 ||
+              atom == HtmlAtoms.H3 ||
+              atom == HtmlAtoms.H4 ||
+              atom == HtmlAtoms.H5 ||
+              atom == HtmlAtoms.H6) {
               if (!this.HasHtmlHeaderElementInScope()) {
                 this.ParseError();
                 return false;
               }
               this.GenerateImpliedEndTags();
-              if (!this.GetCurrentNode().GetLocalName().equals(valueName)) {
+              if (HtmlAtoms.GetAtom(this.GetCurrentNode()) != atom) {
                 this.ParseError();
               }
               while (true) {
                 IElement node = this.PopCurrentNode();
-                if (HtmlCommon.IsHtmlElement(node, "h1") ||
-                  HtmlCommon.IsHtmlElement(node, "h2") ||
-                  HtmlCommon.IsHtmlElement(node, "h3") ||
-                  HtmlCommon.IsHtmlElement(node, "h4") ||
-                  HtmlCommon.IsHtmlElement(node, "h5") ||
-                  HtmlCommon.IsHtmlElement(node, "h6")) {
+                if (HtmlAtoms.IsHtmlElement(node, HtmlAtoms.H1) ||
+                  HtmlAtoms.IsHtmlElement(node, HtmlAtoms.H2) ||
+                  HtmlAtoms.IsHtmlElement(node, HtmlAtoms.H3) ||
+                  HtmlAtoms.IsHtmlElement(node, HtmlAtoms.H4) ||
+                  HtmlAtoms.IsHtmlElement(node, HtmlAtoms.H5) ||
+                  HtmlAtoms.IsHtmlElement(node, HtmlAtoms.H6)) {
                   break;
                 }
               }
               return true;
-            } else if (valueName.equals("dd") ||
-              valueName.equals("dt")) {
-              if (!this.HasHtmlElementInScope(valueName)) {
+            } else if (atom == HtmlAtoms.DD ||
+              atom == HtmlAtoms.DT) {
+              if (!this.HasHtmlElementInScope(atom)) {
                 this.ParseError();
                 return false;
               }
-              this.GenerateImpliedEndTagsExcept(valueName);
-              if (!this.GetCurrentNode().GetLocalName().equals(valueName)) {
+              this.GenerateImpliedEndTagsExcept(atom);
+              if (HtmlAtoms.GetAtom(this.GetCurrentNode()) != atom) {
                 this.ParseError();
               }
-              this.PopUntilHtmlElementPopped(valueName);
-            } else if ("br".equals(valueName)) {
+              this.PopUntilHtmlElementPopped(atom);
+            } else if (atom == HtmlAtoms.BR) {
               this.ParseError();
               this.ApplyStartTag("br", insMode);
               return false;
             } else {
-              for (int i = this.openElements.size() - 1; i >= 0; --i) {
-                IElement node = this.openElements.get(i);
+              for (int i = this.openElements.Size() - 1; i >= 0; --i) {
+                IElement node = this.openElements.Get(i);
                 if (HtmlCommon.IsHtmlElement(node, valueName)) {
-                  this.GenerateImpliedEndTagsExcept(valueName);
+                  this.GenerateImpliedEndTagsExcept(atom);
                   if (!node.equals(this.GetCurrentNode())) {
                     this.ParseError();
                   }
@@ -2676,22 +3071,23 @@ private boolean propVarvalueselfclosingack;
           } else if ((token & TOKEN_TYPE_MASK) == TOKEN_START_TAG) {
             StartTagToken tag = (StartTagToken)this.GetToken(token);
             String valueName = tag.GetName();
-            if (valueName.equals("html")) {
+            int atom = tag.GetAtom();
+            if (atom == HtmlAtoms.HTML) {
               return this.ApplyInsertionMode(
                   token,
                   InsertionMode.InBody);
-            } else if (valueName.equals("basefont") ||
+            } else if (atom == HtmlAtoms.BASEFONT ||
    valueName.equals(
      "bgsound") ||
-   valueName.equals("link") ||
-   valueName.equals("meta") ||
-   valueName.equals("noframes") ||
-   valueName.equals("style")
+   atom == HtmlAtoms.LINK ||
+   atom == HtmlAtoms.META ||
+   atom == HtmlAtoms.NOFRAMES ||
+   atom == HtmlAtoms.STYLE
 ) {
               return this.ApplyInsertionMode(
                   token,
                   InsertionMode.InHead);
-            } else if (valueName.equals("head") ||
+            } else if (atom == HtmlAtoms.HEAD ||
               valueName.equals(
                 "noscript")) {
               this.ParseError();
@@ -2705,10 +3101,11 @@ private boolean propVarvalueselfclosingack;
           } else if ((token & TOKEN_TYPE_MASK) == TOKEN_END_TAG) {
             EndTagToken tag = (EndTagToken)this.GetToken(token);
             String valueName = tag.GetName();
-            if (valueName.equals("noscript")) {
+            int atom = tag.GetAtom();
+            if (atom == HtmlAtoms.NOSCRIPT) {
               this.PopCurrentNode();
               this.insertionMode = InsertionMode.InHead;
-            } else if (valueName.equals("br")) {
+            } else if (atom == HtmlAtoms.BR) {
               this.ParseError();
               this.PopCurrentNode();
               this.insertionMode = InsertionMode.InHead;
@@ -2732,11 +3129,11 @@ private boolean propVarvalueselfclosingack;
         case InTable: {
           if ((token & TOKEN_TYPE_MASK) == TOKEN_CHARACTER) {
             IElement currentNode = this.GetCurrentNode();
-            if (HtmlCommon.IsHtmlElement(currentNode, "table") ||
-              HtmlCommon.IsHtmlElement(currentNode, "tbody") ||
-              HtmlCommon.IsHtmlElement(currentNode, "tfoot") ||
-              HtmlCommon.IsHtmlElement(currentNode, "thead") ||
-              HtmlCommon.IsHtmlElement(currentNode, "tr")) {
+            if (HtmlAtoms.IsHtmlElement(currentNode, HtmlAtoms.TABLE) ||
+              HtmlAtoms.IsHtmlElement(currentNode, HtmlAtoms.TBODY) ||
+              HtmlAtoms.IsHtmlElement(currentNode, HtmlAtoms.TFOOT) ||
+              HtmlAtoms.IsHtmlElement(currentNode, HtmlAtoms.THEAD) ||
+              HtmlAtoms.IsHtmlElement(currentNode, HtmlAtoms.TR)) {
               this.pendingTableCharacters.delete(
                 0, (
                 0)+(this.pendingTableCharacters.length()));
@@ -2758,16 +3155,17 @@ private boolean propVarvalueselfclosingack;
           } else if ((token & TOKEN_TYPE_MASK) == TOKEN_START_TAG) {
             StartTagToken tag = (StartTagToken)this.GetToken(token);
             String valueName = tag.GetName();
-            if (valueName.equals("table")) {
+            int atom = tag.GetAtom();
+            if (atom == HtmlAtoms.TABLE) {
               this.ParseError();
               return this.ApplyEndTag("table", insMode) ?
                 this.ApplyThisInsertionMode(token) : false;
-            } else if (valueName.equals("caption")) {
+            } else if (atom == HtmlAtoms.CAPTION) {
               while (true) {
                 IElement node = this.GetCurrentNode();
-                if (node == null || HtmlCommon.IsHtmlElement(node, "table") ||
-                  HtmlCommon.IsHtmlElement(node, "html") ||
-                  HtmlCommon.IsHtmlElement(node, "template")) {
+                if (node == null || HtmlAtoms.IsHtmlElement(node, HtmlAtoms.TABLE) ||
+                  HtmlAtoms.IsHtmlElement(node, HtmlAtoms.HTML) ||
+                  HtmlAtoms.IsHtmlElement(node, HtmlAtoms.TEMPLATE)) {
                   break;
                 }
                 this.PopCurrentNode();
@@ -2777,12 +3175,12 @@ private boolean propVarvalueselfclosingack;
                 this.AddHtmlElement(tag));
               this.insertionMode = InsertionMode.InCaption;
               return true;
-            } else if (valueName.equals("colgroup")) {
+            } else if (atom == HtmlAtoms.COLGROUP) {
               while (true) {
                 IElement node = this.GetCurrentNode();
-                if (node == null || HtmlCommon.IsHtmlElement(node, "table") ||
-                  HtmlCommon.IsHtmlElement(node, "html") ||
-                  HtmlCommon.IsHtmlElement(node, "template")) {
+                if (node == null || HtmlAtoms.IsHtmlElement(node, HtmlAtoms.TABLE) ||
+                  HtmlAtoms.IsHtmlElement(node, HtmlAtoms.HTML) ||
+                  HtmlAtoms.IsHtmlElement(node, HtmlAtoms.TEMPLATE)) {
                   break;
                 }
                 this.PopCurrentNode();
@@ -2790,34 +3188,34 @@ private boolean propVarvalueselfclosingack;
               this.AddHtmlElement(tag);
               this.insertionMode = InsertionMode.InColumnGroup;
               return true;
-            } else if (valueName.equals("col")) {
+            } else if (atom == HtmlAtoms.COL) {
               this.ApplyStartTag("colgroup", insMode);
               return this.ApplyThisInsertionMode(token);
-            } else if (valueName.equals("tbody") ||
+            } else if (atom == HtmlAtoms.TBODY ||
               valueName.equals(
                 "tfoot") ||
-              valueName.equals("thead")) {
+              atom == HtmlAtoms.THEAD) {
               while (true) {
                 IElement node = this.GetCurrentNode();
-                if (node == null || HtmlCommon.IsHtmlElement(node, "table") ||
-                  HtmlCommon.IsHtmlElement(node, "html") ||
-                  HtmlCommon.IsHtmlElement(node, "template")) {
+                if (node == null || HtmlAtoms.IsHtmlElement(node, HtmlAtoms.TABLE) ||
+                  HtmlAtoms.IsHtmlElement(node, HtmlAtoms.HTML) ||
+                  HtmlAtoms.IsHtmlElement(node, HtmlAtoms.TEMPLATE)) {
                   break;
                 }
                 this.PopCurrentNode();
               }
               this.AddHtmlElement(tag);
               this.insertionMode = InsertionMode.InTableBody;
-            } else if (valueName.equals("td") ||
-              valueName.equals("th") ||
-              valueName.equals("tr")) {
+            } else if (atom == HtmlAtoms.TD ||
+              atom == HtmlAtoms.TH ||
+              atom == HtmlAtoms.TR) {
               this.ApplyStartTag("tbody", insMode);
               return this.ApplyThisInsertionMode(token);
-            } else if (valueName.equals("style") ||
-              valueName.equals("script") ||
-              valueName.equals("template")) {
+            } else if (atom == HtmlAtoms.STYLE ||
+              atom == HtmlAtoms.SCRIPT ||
+              atom == HtmlAtoms.TEMPLATE) {
               return this.ApplyInsertionMode(token, InsertionMode.InHead);
-            } else if (valueName.equals("input")) {
+            } else if (atom == HtmlAtoms.INPUT) {
               String attr = tag.GetAttribute("type");
               if (attr == null || !"hidden"
                 .equals(com.upokecenter.util.DataUtilities.ToLowerCaseAscii(attr))) {
@@ -2832,7 +3230,7 @@ private boolean propVarvalueselfclosingack;
                 this.AddHtmlElementNoPush(tag);
                 tag.AckSelfClosing();
               }
-            } else if (valueName.equals("form")) {
+            } else if (atom == HtmlAtoms.FORM) {
               this.ParseError();
               if (this.formElement != null) {
                 return false;
@@ -2847,29 +3245,30 @@ private boolean propVarvalueselfclosingack;
           } else if ((token & TOKEN_TYPE_MASK) == TOKEN_END_TAG) {
             EndTagToken tag = (EndTagToken)this.GetToken(token);
             String valueName = tag.GetName();
-            if (valueName.equals("table")) {
-              if (!this.HasHtmlElementInTableScope(valueName)) {
+            int atom = tag.GetAtom();
+            if (atom == HtmlAtoms.TABLE) {
+              if (!this.HasHtmlElementInTableScope(atom)) {
                 this.ParseError();
                 return false;
               } else {
-                this.PopUntilHtmlElementPopped(valueName);
+                this.PopUntilHtmlElementPopped(atom);
                 this.ResetInsertionMode();
               }
-            } else if (valueName.equals("body") ||
+            } else if (atom == HtmlAtoms.BODY ||
               valueName.equals(
                 "caption") ||
-              valueName.equals("col") ||
-              valueName.equals("colgroup") ||
-              valueName.equals("html") ||
-              valueName.equals("tbody") ||
-              valueName.equals("td") ||
-              valueName.equals("tfoot") ||
-              valueName.equals("th") ||
-              valueName.equals("thead") ||
-              valueName.equals("tr")) {
+              atom == HtmlAtoms.COL ||
+              atom == HtmlAtoms.COLGROUP ||
+              atom == HtmlAtoms.HTML ||
+              atom == HtmlAtoms.TBODY ||
+              atom == HtmlAtoms.TD ||
+              atom == HtmlAtoms.TFOOT ||
+              atom == HtmlAtoms.TH ||
+              atom == HtmlAtoms.THEAD ||
+              atom == HtmlAtoms.TR) {
               this.ParseError();
               return false;
-            } else if (valueName.equals("template")) {
+            } else if (atom == HtmlAtoms.TEMPLATE) {
               return this.ApplyInsertionMode(token, InsertionMode.InHead);
             } else {
               this.doFosterParent = true;
@@ -2899,6 +3298,9 @@ private boolean propVarvalueselfclosingack;
                 this.pendingTableCharacters.append((char)(((token -
                   0x10000) & 0x3ff) | 0xdc00));
               }
+              if (insMode == this.insertionMode) {
+                this.AppendCharacterRun(this.pendingTableCharacters);
+              }
             }
           } else {
             boolean nonspace = false;
@@ -2939,25 +3341,25 @@ private boolean propVarvalueselfclosingack;
           if ((token & TOKEN_TYPE_MASK) == TOKEN_START_TAG) {
             StartTagToken tag = (StartTagToken)this.GetToken(token);
             String valueName = tag.GetName();
-            if (valueName.equals("caption") ||
-              valueName.equals("col") ||
-              valueName.equals("colgroup") ||
-              valueName.equals("tbody") ||
-              valueName.equals("thead") ||
-              valueName.equals("td") ||
-              valueName.equals("tfoot") ||
-              valueName.equals("th") ||
-              valueName.equals("tr")) {
-              if (!this.HasHtmlElementInTableScope("caption")) {
+            int atom = tag.GetAtom();
+            if (atom == HtmlAtoms.CAPTION ||
+              atom == HtmlAtoms.COL ||
+              atom == HtmlAtoms.COLGROUP ||
+              atom == HtmlAtoms.TBODY ||
+              atom == HtmlAtoms.THEAD ||
+              atom == HtmlAtoms.TD ||
+              atom == HtmlAtoms.TFOOT ||
+              atom == HtmlAtoms.TH ||
+              atom == HtmlAtoms.TR) {
+              if (!this.HasHtmlElementInTableScope(HtmlAtoms.CAPTION)) {
                 this.ParseError();
                 return false;
               }
               this.GenerateImpliedEndTags();
-              if (!HtmlCommon.IsHtmlElement(this.GetCurrentNode(),
-                "caption")) {
+              if (!HtmlAtoms.IsHtmlElement(this.GetCurrentNode(), HtmlAtoms.CAPTION)) {
                 this.ParseError();
               }
-              this.PopUntilHtmlElementPopped("caption");
+              this.PopUntilHtmlElementPopped(HtmlAtoms.CAPTION);
               this.ClearFormattingToMarker();
               this.insertionMode = InsertionMode.InTable;
               return this.ApplyThisInsertionMode(token);
@@ -2969,33 +3371,33 @@ private boolean propVarvalueselfclosingack;
           } else if ((token & TOKEN_TYPE_MASK) == TOKEN_END_TAG) {
             EndTagToken tag = (EndTagToken)this.GetToken(token);
             String valueName = tag.GetName();
-            if (valueName.equals("caption") ||
-              valueName.equals("table")) {
-              if (!this.HasHtmlElementInTableScope(valueName)) {
+            int atom = tag.GetAtom();
+            if (atom == HtmlAtoms.CAPTION ||
+              atom == HtmlAtoms.TABLE) {
+              if (!this.HasHtmlElementInTableScope(atom)) {
                 this.ParseError();
                 return false;
               }
               this.GenerateImpliedEndTags();
-              if (!HtmlCommon.IsHtmlElement(this.GetCurrentNode(),
-                "caption")) {
+              if (!HtmlAtoms.IsHtmlElement(this.GetCurrentNode(), HtmlAtoms.CAPTION)) {
                 this.ParseError();
               }
-              this.PopUntilHtmlElementPopped("caption");
+              this.PopUntilHtmlElementPopped(HtmlAtoms.CAPTION);
               this.ClearFormattingToMarker();
               this.insertionMode = InsertionMode.InTable;
-              if (valueName.equals("table")) {
+              if (atom == HtmlAtoms.TABLE) {
                 return this.ApplyThisInsertionMode(token);
               }
-            } else if (valueName.equals("body") ||
-              valueName.equals("col") ||
-              valueName.equals("colgroup") ||
-              valueName.equals("tbody") ||
-              valueName.equals("thead") ||
-              valueName.equals("td") ||
-              valueName.equals("tfoot") ||
-              valueName.equals("th") ||
-              valueName.equals("tr") ||
-              valueName.equals("html")) {
+            } else if (atom == HtmlAtoms.BODY ||
+              atom == HtmlAtoms.COL ||
+              atom == HtmlAtoms.COLGROUP ||
+              atom == HtmlAtoms.TBODY ||
+              atom == HtmlAtoms.THEAD ||
+              atom == HtmlAtoms.TD ||
+              atom == HtmlAtoms.TFOOT ||
+              atom == HtmlAtoms.TH ||
+              atom == HtmlAtoms.TR ||
+              atom == HtmlAtoms.HTML) {
               this.ParseError();
             } else {
               return this.ApplyInsertionMode(
@@ -3026,15 +3428,16 @@ private boolean propVarvalueselfclosingack;
           } else if ((token & TOKEN_TYPE_MASK) == TOKEN_START_TAG) {
             StartTagToken tag = (StartTagToken)this.GetToken(token);
             String valueName = tag.GetName();
-            if (valueName.equals("html")) {
+            int atom = tag.GetAtom();
+            if (atom == HtmlAtoms.HTML) {
               return this.ApplyInsertionMode(
                   token,
                   InsertionMode.InBody);
-            } else if (valueName.equals("col")) {
+            } else if (atom == HtmlAtoms.COL) {
               this.AddHtmlElementNoPush(tag);
               tag.AckSelfClosing();
               return true;
-            } else if (valueName.equals("template")) {
+            } else if (atom == HtmlAtoms.TEMPLATE) {
               return this.ApplyInsertionMode(
                   token,
                   InsertionMode.InHead);
@@ -3042,19 +3445,19 @@ private boolean propVarvalueselfclosingack;
           } else if ((token & TOKEN_TYPE_MASK) == TOKEN_END_TAG) {
             EndTagToken tag = (EndTagToken)this.GetToken(token);
             String valueName = tag.GetName();
-            if (valueName.equals("colgroup")) {
-              if (!HtmlCommon.IsHtmlElement(this.GetCurrentNode(),
-                "colgroup")) {
+            int atom = tag.GetAtom();
+            if (atom == HtmlAtoms.COLGROUP) {
+              if (!HtmlAtoms.IsHtmlElement(this.GetCurrentNode(), HtmlAtoms.COLGROUP)) {
                 this.ParseError();
                 return false;
               }
               this.PopCurrentNode();
               this.insertionMode = InsertionMode.InTable;
               return true;
-            } else if (valueName.equals("col")) {
+            } else if (atom == HtmlAtoms.COL) {
               this.ParseError();
               return true;
-            } else if (valueName.equals("template")) {
+            } else if (atom == HtmlAtoms.TEMPLATE) {
               return this.ApplyInsertionMode(
                   token,
                   InsertionMode.InHead);
@@ -3062,7 +3465,7 @@ private boolean propVarvalueselfclosingack;
           } else if (token == TOKEN_EOF) {
             return this.ApplyInsertionMode(token, InsertionMode.InBody);
           }
-          if (!HtmlCommon.IsHtmlElement(this.GetCurrentNode(), "colgroup")) {
+          if (!HtmlAtoms.IsHtmlElement(this.GetCurrentNode(), HtmlAtoms.COLGROUP)) {
             this.ParseError();
             return false;
           }
@@ -3074,45 +3477,46 @@ private boolean propVarvalueselfclosingack;
           if ((token & TOKEN_TYPE_MASK) == TOKEN_START_TAG) {
             StartTagToken tag = (StartTagToken)this.GetToken(token);
             String valueName = tag.GetName();
-            if (valueName.equals("tr")) {
+            int atom = tag.GetAtom();
+            if (atom == HtmlAtoms.TR) {
               while (true) {
                 IElement node = this.GetCurrentNode();
-                if (node == null || HtmlCommon.IsHtmlElement(node, "tbody") ||
-                  HtmlCommon.IsHtmlElement(node, "tfoot") ||
-                  HtmlCommon.IsHtmlElement(node, "thead") ||
-                  HtmlCommon.IsHtmlElement(node, "template") ||
-                  HtmlCommon.IsHtmlElement(node, "html")) {
+                if (node == null || HtmlAtoms.IsHtmlElement(node, HtmlAtoms.TBODY) ||
+                  HtmlAtoms.IsHtmlElement(node, HtmlAtoms.TFOOT) ||
+                  HtmlAtoms.IsHtmlElement(node, HtmlAtoms.THEAD) ||
+                  HtmlAtoms.IsHtmlElement(node, HtmlAtoms.TEMPLATE) ||
+                  HtmlAtoms.IsHtmlElement(node, HtmlAtoms.HTML)) {
                   break;
                 }
                 this.PopCurrentNode();
               }
               this.AddHtmlElement(tag);
               this.insertionMode = InsertionMode.InRow;
-            } else if (valueName.equals("th") ||
-              valueName.equals("td")) {
+            } else if (atom == HtmlAtoms.TH ||
+              atom == HtmlAtoms.TD) {
               this.ParseError();
               this.ApplyStartTag("tr", insMode);
               return this.ApplyThisInsertionMode(token);
-            } else if (valueName.equals("caption") ||
-              valueName.equals("col") ||
-              valueName.equals("colgroup") ||
-              valueName.equals("tbody") ||
-              valueName.equals("tfoot") ||
-              valueName.equals("thead")) {
-              if (!this.HasHtmlElementInTableScope("tbody") &&
-                !this.HasHtmlElementInTableScope("thead") &&
-                !this.HasHtmlElementInTableScope("tfoot")
+            } else if (atom == HtmlAtoms.CAPTION ||
+              atom == HtmlAtoms.COL ||
+              atom == HtmlAtoms.COLGROUP ||
+              atom == HtmlAtoms.TBODY ||
+              atom == HtmlAtoms.TFOOT ||
+              atom == HtmlAtoms.THEAD) {
+              if (!this.HasHtmlElementInTableScope(HtmlAtoms.TBODY) &&
+                !this.HasHtmlElementInTableScope(HtmlAtoms.THEAD) &&
+                !this.HasHtmlElementInTableScope(HtmlAtoms.TFOOT)
 ) {
                 this.ParseError();
                 return false;
               }
               while (true) {
                 IElement node = this.GetCurrentNode();
-                if (node == null || HtmlCommon.IsHtmlElement(node, "tbody") ||
-                  HtmlCommon.IsHtmlElement(node, "tfoot") ||
-                  HtmlCommon.IsHtmlElement(node, "thead") ||
-                  HtmlCommon.IsHtmlElement(node, "template") ||
-                  HtmlCommon.IsHtmlElement(node, "html")) {
+                if (node == null || HtmlAtoms.IsHtmlElement(node, HtmlAtoms.TBODY) ||
+                  HtmlAtoms.IsHtmlElement(node, HtmlAtoms.TFOOT) ||
+                  HtmlAtoms.IsHtmlElement(node, HtmlAtoms.THEAD) ||
+                  HtmlAtoms.IsHtmlElement(node, HtmlAtoms.TEMPLATE) ||
+                  HtmlAtoms.IsHtmlElement(node, HtmlAtoms.HTML)) {
                   break;
                 }
                 this.PopCurrentNode();
@@ -3129,42 +3533,43 @@ private boolean propVarvalueselfclosingack;
           } else if ((token & TOKEN_TYPE_MASK) == TOKEN_END_TAG) {
             EndTagToken tag = (EndTagToken)this.GetToken(token);
             String valueName = tag.GetName();
-            if (valueName.equals("tbody") ||
-              valueName.equals("tfoot") ||
-              valueName.equals("thead")) {
-              if (!this.HasHtmlElementInTableScope(valueName)) {
+            int atom = tag.GetAtom();
+            if (atom == HtmlAtoms.TBODY ||
+              atom == HtmlAtoms.TFOOT ||
+              atom == HtmlAtoms.THEAD) {
+              if (!this.HasHtmlElementInTableScope(atom)) {
                 this.ParseError();
                 return false;
               }
               while (true) {
                 IElement node = this.GetCurrentNode();
                 if (node == null ||
-                  HtmlCommon.IsHtmlElement(node, "tbody") ||
-                  HtmlCommon.IsHtmlElement(node, "tfoot") ||
-                  HtmlCommon.IsHtmlElement(node, "thead") ||
-                  HtmlCommon.IsHtmlElement(node, "template") ||
-                  HtmlCommon.IsHtmlElement(node, "html")) {
+                  HtmlAtoms.IsHtmlElement(node, HtmlAtoms.TBODY) ||
+                  HtmlAtoms.IsHtmlElement(node, HtmlAtoms.TFOOT) ||
+                  HtmlAtoms.IsHtmlElement(node, HtmlAtoms.THEAD) ||
+                  HtmlAtoms.IsHtmlElement(node, HtmlAtoms.TEMPLATE) ||
+                  HtmlAtoms.IsHtmlElement(node, HtmlAtoms.HTML)) {
                   break;
                 }
                 this.PopCurrentNode();
               }
               this.PopCurrentNode();
               this.insertionMode = InsertionMode.InTable;
-            } else if (valueName.equals("table")) {
-              if (!this.HasHtmlElementInTableScope("tbody") &&
-                !this.HasHtmlElementInTableScope("thead") &&
-                !this.HasHtmlElementInTableScope("tfoot")
+            } else if (atom == HtmlAtoms.TABLE) {
+              if (!this.HasHtmlElementInTableScope(HtmlAtoms.TBODY) &&
+                !this.HasHtmlElementInTableScope(HtmlAtoms.THEAD) &&
+                !this.HasHtmlElementInTableScope(HtmlAtoms.TFOOT)
 ) {
                 this.ParseError();
                 return false;
               }
               while (true) {
                 IElement node = this.GetCurrentNode();
-                if (node == null || HtmlCommon.IsHtmlElement(node, "tbody") ||
-                  HtmlCommon.IsHtmlElement(node, "tfoot") ||
-                  HtmlCommon.IsHtmlElement(node, "thead") ||
-                  HtmlCommon.IsHtmlElement(node, "template") ||
-                  HtmlCommon.IsHtmlElement(node, "html")) {
+                if (node == null || HtmlAtoms.IsHtmlElement(node, HtmlAtoms.TBODY) ||
+                  HtmlAtoms.IsHtmlElement(node, HtmlAtoms.TFOOT) ||
+                  HtmlAtoms.IsHtmlElement(node, HtmlAtoms.THEAD) ||
+                  HtmlAtoms.IsHtmlElement(node, HtmlAtoms.TEMPLATE) ||
+                  HtmlAtoms.IsHtmlElement(node, HtmlAtoms.HTML)) {
                   break;
                 }
                 this.PopCurrentNode();
@@ -3173,14 +3578,14 @@ private boolean propVarvalueselfclosingack;
                 this.GetCurrentNode().GetLocalName(),
                 insMode);
               return this.ApplyThisInsertionMode(token);
-            } else if (valueName.equals("body") ||
-              valueName.equals("caption") ||
-              valueName.equals("col") ||
-              valueName.equals("colgroup") ||
-              valueName.equals("html") ||
-              valueName.equals("td") ||
-              valueName.equals("th") ||
-              valueName.equals("tr")) {
+            } else if (atom == HtmlAtoms.BODY ||
+              atom == HtmlAtoms.CAPTION ||
+              atom == HtmlAtoms.COL ||
+              atom == HtmlAtoms.COLGROUP ||
+              atom == HtmlAtoms.HTML ||
+              atom == HtmlAtoms.TD ||
+              atom == HtmlAtoms.TH ||
+              atom == HtmlAtoms.TR) {
               this.ParseError();
               return false;
             } else {
@@ -3203,25 +3608,26 @@ private boolean propVarvalueselfclosingack;
           } else if ((token & TOKEN_TYPE_MASK) == TOKEN_START_TAG) {
             StartTagToken tag = (StartTagToken)this.GetToken(token);
             String valueName = tag.GetName();
-            if (valueName.equals("th") ||
-              valueName.equals("td")) {
-              while (!HtmlCommon.IsHtmlElement(this.GetCurrentNode(), "tr") &&
-                !HtmlCommon.IsHtmlElement(this.GetCurrentNode(), "html") &&
-                !HtmlCommon.IsHtmlElement(this.GetCurrentNode(), "template")) {
+            int atom = tag.GetAtom();
+            if (atom == HtmlAtoms.TH ||
+              atom == HtmlAtoms.TD) {
+              while (!HtmlAtoms.IsHtmlElement(this.GetCurrentNode(), HtmlAtoms.TR) &&
+                !HtmlAtoms.IsHtmlElement(this.GetCurrentNode(), HtmlAtoms.HTML) &&
+                !HtmlAtoms.IsHtmlElement(this.GetCurrentNode(), HtmlAtoms.TEMPLATE)) {
                 this.PopCurrentNode();
               }
               this.insertionMode = InsertionMode.InCell;
               this.InsertFormattingMarker(
                 tag,
                 this.AddHtmlElement(tag));
-            } else if (valueName.equals("caption") ||
+            } else if (atom == HtmlAtoms.CAPTION ||
    valueName.equals(
      "col") ||
-   valueName.equals("colgroup") ||
-   valueName.equals("tbody") ||
-   valueName.equals("tfoot") ||
-   valueName.equals("thead") ||
-   valueName.equals("tr")) {
+   atom == HtmlAtoms.COLGROUP ||
+   atom == HtmlAtoms.TBODY ||
+   atom == HtmlAtoms.TFOOT ||
+   atom == HtmlAtoms.THEAD ||
+   atom == HtmlAtoms.TR) {
               if (this.ApplyEndTag("tr", insMode)) {
                 return this.ApplyThisInsertionMode(token);
               }
@@ -3231,35 +3637,36 @@ private boolean propVarvalueselfclosingack;
           } else if ((token & TOKEN_TYPE_MASK) == TOKEN_END_TAG) {
             EndTagToken tag = (EndTagToken)this.GetToken(token);
             String valueName = tag.GetName();
-            if (valueName.equals("tr")) {
-              if (!this.HasHtmlElementInTableScope(valueName)) {
+            int atom = tag.GetAtom();
+            if (atom == HtmlAtoms.TR) {
+              if (!this.HasHtmlElementInTableScope(atom)) {
                 this.ParseError();
                 return false;
               }
-              while (!HtmlCommon.IsHtmlElement(this.GetCurrentNode(), "tr") &&
-                !HtmlCommon.IsHtmlElement(this.GetCurrentNode(), "html") &&
-                !HtmlCommon.IsHtmlElement(this.GetCurrentNode(), "template")) {
+              while (!HtmlAtoms.IsHtmlElement(this.GetCurrentNode(), HtmlAtoms.TR) &&
+                !HtmlAtoms.IsHtmlElement(this.GetCurrentNode(), HtmlAtoms.HTML) &&
+                !HtmlAtoms.IsHtmlElement(this.GetCurrentNode(), HtmlAtoms.TEMPLATE)) {
                 this.PopCurrentNode();
               }
               this.PopCurrentNode();
               this.insertionMode = InsertionMode.InTableBody;
-            } else if (valueName.equals("tbody") ||
+            } else if (atom == HtmlAtoms.TBODY ||
               valueName.equals(
                 "tfoot") ||
-              valueName.equals("thead")) {
-              if (!this.HasHtmlElementInTableScope(valueName)) {
+              atom == HtmlAtoms.THEAD) {
+              if (!this.HasHtmlElementInTableScope(atom)) {
                 this.ParseError();
                 return false;
               }
               this.ApplyEndTag("tr", insMode);
               return this.ApplyThisInsertionMode(token);
-            } else if (valueName.equals("caption") ||
-              valueName.equals("col") ||
-              valueName.equals("colgroup") ||
-              valueName.equals("html") ||
-              valueName.equals("body") ||
-              valueName.equals("td") ||
-              valueName.equals("th")) {
+            } else if (atom == HtmlAtoms.CAPTION ||
+              atom == HtmlAtoms.COL ||
+              atom == HtmlAtoms.COLGROUP ||
+              atom == HtmlAtoms.HTML ||
+              atom == HtmlAtoms.BODY ||
+              atom == HtmlAtoms.TD ||
+              atom == HtmlAtoms.TH) {
               this.ParseError();
             } else {
               this.ApplyInsertionMode(token, InsertionMode.InTable);
@@ -3279,22 +3686,23 @@ private boolean propVarvalueselfclosingack;
           } else if ((token & TOKEN_TYPE_MASK) == TOKEN_START_TAG) {
             StartTagToken tag = (StartTagToken)this.GetToken(token);
             String valueName = tag.GetName();
-            if (valueName.equals("caption") ||
-              valueName.equals("col") ||
-              valueName.equals("colgroup") ||
-              valueName.equals("tbody") ||
-              valueName.equals("td") ||
-              valueName.equals("tfoot") ||
-              valueName.equals("th") ||
-              valueName.equals("thead") ||
-              valueName.equals("tr")) {
-              if (!this.HasHtmlElementInTableScope("td") &&
-                !this.HasHtmlElementInTableScope("th")) {
+            int atom = tag.GetAtom();
+            if (atom == HtmlAtoms.CAPTION ||
+              atom == HtmlAtoms.COL ||
+              atom == HtmlAtoms.COLGROUP ||
+              atom == HtmlAtoms.TBODY ||
+              atom == HtmlAtoms.TD ||
+              atom == HtmlAtoms.TFOOT ||
+              atom == HtmlAtoms.TH ||
+              atom == HtmlAtoms.THEAD ||
+              atom == HtmlAtoms.TR) {
+              if (!this.HasHtmlElementInTableScope(HtmlAtoms.TD) &&
+                !this.HasHtmlElementInTableScope(HtmlAtoms.TH)) {
                 this.ParseError();
                 return false;
               }
               this.ApplyEndTag(
-                this.HasHtmlElementInTableScope("td") ? "td" : "th",
+                this.HasHtmlElementInTableScope(HtmlAtoms.TD) ? "td" : "th",
                 insMode);
               return this.ApplyThisInsertionMode(token);
             } else {
@@ -3303,38 +3711,39 @@ private boolean propVarvalueselfclosingack;
           } else if ((token & TOKEN_TYPE_MASK) == TOKEN_END_TAG) {
             EndTagToken tag = (EndTagToken)this.GetToken(token);
             String valueName = tag.GetName();
-            if (valueName.equals("td") ||
-              valueName.equals("th")) {
-              if (!this.HasHtmlElementInTableScope(valueName)) {
+            int atom = tag.GetAtom();
+            if (atom == HtmlAtoms.TD ||
+              atom == HtmlAtoms.TH) {
+              if (!this.HasHtmlElementInTableScope(atom)) {
                 this.ParseError();
                 return false;
               }
               this.GenerateImpliedEndTags();
-              if (!this.GetCurrentNode().GetLocalName().equals(valueName)) {
+              if (HtmlAtoms.GetAtom(this.GetCurrentNode()) != atom) {
                 this.ParseError();
               }
-              this.PopUntilHtmlElementPopped(valueName);
+              this.PopUntilHtmlElementPopped(atom);
               this.ClearFormattingToMarker();
               this.insertionMode = InsertionMode.InRow;
-            } else if (valueName.equals("caption") ||
+            } else if (atom == HtmlAtoms.CAPTION ||
               valueName.equals(
                 "col") ||
-              valueName.equals("colgroup") ||
-              valueName.equals("body") ||
-              valueName.equals("html")) {
+              atom == HtmlAtoms.COLGROUP ||
+              atom == HtmlAtoms.BODY ||
+              atom == HtmlAtoms.HTML) {
               this.ParseError();
               return false;
-            } else if (valueName.equals("table") ||
-              valueName.equals("tbody") ||
-              valueName.equals("tfoot") ||
-              valueName.equals("thead") ||
-              valueName.equals("tr")) {
-              if (!this.HasHtmlElementInTableScope(valueName)) {
+            } else if (atom == HtmlAtoms.TABLE ||
+              atom == HtmlAtoms.TBODY ||
+              atom == HtmlAtoms.TFOOT ||
+              atom == HtmlAtoms.THEAD ||
+              atom == HtmlAtoms.TR) {
+              if (!this.HasHtmlElementInTableScope(atom)) {
                 this.ParseError();
                 return false;
               }
               this.ApplyEndTag(
-                this.HasHtmlElementInTableScope("td") ? "td" : "th",
+                this.HasHtmlElementInTableScope(HtmlAtoms.TD) ? "td" : "th",
                 insMode);
               return this.ApplyThisInsertionMode(token);
             } else {
@@ -3363,38 +3772,36 @@ private boolean propVarvalueselfclosingack;
           } else if ((token & TOKEN_TYPE_MASK) == TOKEN_START_TAG) {
             StartTagToken tag = (StartTagToken)this.GetToken(token);
             String valueName = tag.GetName();
-            if (valueName.equals("html")) {
+            int atom = tag.GetAtom();
+            if (atom == HtmlAtoms.HTML) {
               this.ApplyInsertionMode(token, InsertionMode.InBody);
-            } else if (valueName.equals("option")) {
-              if (this.GetCurrentNode().GetLocalName().equals(
-                "option")) {
+            } else if (atom == HtmlAtoms.OPTION) {
+              if (HtmlAtoms.GetAtom(this.GetCurrentNode()) == HtmlAtoms.OPTION) {
                 this.ApplyEndTag("option", insMode);
               }
               this.AddHtmlElement(tag);
-            } else if (valueName.equals("optgroup")) {
-              if (this.GetCurrentNode().GetLocalName().equals(
-                "option")) {
+            } else if (atom == HtmlAtoms.OPTGROUP) {
+              if (HtmlAtoms.GetAtom(this.GetCurrentNode()) == HtmlAtoms.OPTION) {
                 this.ApplyEndTag("option", insMode);
               }
-              if (this.GetCurrentNode().GetLocalName().equals(
-                "optgroup")) {
+              if (HtmlAtoms.GetAtom(this.GetCurrentNode()) == HtmlAtoms.OPTGROUP) {
                 this.ApplyEndTag("optgroup", insMode);
               }
               this.AddHtmlElement(tag);
-            } else if (valueName.equals("select")) {
+            } else if (atom == HtmlAtoms.SELECT) {
               this.ParseError();
               return this.ApplyEndTag("select", insMode);
-            } else if (valueName.equals("input") ||
+            } else if (atom == HtmlAtoms.INPUT ||
               valueName.equals(
                 "keygen") ||
-              valueName.equals("textarea")) {
+              atom == HtmlAtoms.TEXTAREA) {
               this.ParseError();
-              if (!this.HasHtmlElementInSelectScope("select")) {
+              if (!this.HasHtmlElementInSelectScope(HtmlAtoms.SELECT)) {
                 return false;
               }
               this.ApplyEndTag("select", insMode);
               return this.ApplyThisInsertionMode(token);
-            } else if (valueName.equals("script") || valueName.equals(
+            } else if (atom == HtmlAtoms.SCRIPT || valueName.equals(
                 "template")) {
               return this.ApplyInsertionMode(
                   token,
@@ -3406,37 +3813,35 @@ private boolean propVarvalueselfclosingack;
           } else if ((token & TOKEN_TYPE_MASK) == TOKEN_END_TAG) {
             EndTagToken tag = (EndTagToken)this.GetToken(token);
             String valueName = tag.GetName();
-            if (valueName.equals("optgroup")) {
-              if (this.GetCurrentNode().GetLocalName().equals(
-                "option") && this.openElements.size() >= 2 &&
-                this.openElements.get(this.openElements.size() -
-                  2).GetLocalName().equals(
-                "optgroup")) {
+            int atom = tag.GetAtom();
+            if (atom == HtmlAtoms.OPTGROUP) {
+              if (HtmlAtoms.GetAtom(this.GetCurrentNode()) == HtmlAtoms.OPTION &&
+                this.openElements.Size() >= 2 &&
+                HtmlAtoms.GetAtom(this.openElements.Get(
+                  this.openElements.Size() - 2)) == HtmlAtoms.OPTGROUP) {
                 this.ApplyEndTag("option", insMode);
               }
-              if (this.GetCurrentNode().GetLocalName().equals(
-                "optgroup")) {
+              if (HtmlAtoms.GetAtom(this.GetCurrentNode()) == HtmlAtoms.OPTGROUP) {
                 this.PopCurrentNode();
               } else {
                 this.ParseError();
                 return false;
               }
-            } else if (valueName.equals("option")) {
-              if (this.GetCurrentNode().GetLocalName().equals(
-                "option")) {
+            } else if (atom == HtmlAtoms.OPTION) {
+              if (HtmlAtoms.GetAtom(this.GetCurrentNode()) == HtmlAtoms.OPTION) {
                 this.PopCurrentNode();
               } else {
                 this.ParseError();
                 return false;
               }
-            } else if (valueName.equals("select")) {
-              if (!this.HasHtmlElementInScope(valueName)) {
+            } else if (atom == HtmlAtoms.SELECT) {
+              if (!this.HasHtmlElementInScope(atom)) {
                 this.ParseError();
                 return false;
               }
-              this.PopUntilHtmlElementPopped(valueName);
+              this.PopUntilHtmlElementPopped(atom);
               this.ResetInsertionMode();
-            } else if (valueName.equals("template")) {
+            } else if (atom == HtmlAtoms.TEMPLATE) {
               return this.ApplyInsertionMode(
                   token,
                   InsertionMode.InHead);
@@ -3466,16 +3871,17 @@ private boolean propVarvalueselfclosingack;
           } else if ((token & TOKEN_TYPE_MASK) == TOKEN_START_TAG) {
             StartTagToken tag = (StartTagToken)this.GetToken(token);
             String valueName = tag.GetName();
-            if (valueName.equals("caption") ||
-              valueName.equals("table") ||
-              valueName.equals("tbody") ||
-              valueName.equals("tfoot") ||
-              valueName.equals("thead") ||
-              valueName.equals("tr") ||
-              valueName.equals("td") ||
-              valueName.equals("th")) {
-              this.ParseError();
-              this.PopUntilHtmlElementPopped("select");
+            int atom = tag.GetAtom();
+            if (atom == HtmlAtoms.CAPTION ||
+              atom == HtmlAtoms.TABLE ||
+              atom == HtmlAtoms.TBODY ||
+              atom == HtmlAtoms.TFOOT ||
+              atom == HtmlAtoms.THEAD ||
+              atom == HtmlAtoms.TR ||
+              atom == HtmlAtoms.TD ||
+              atom == HtmlAtoms.TH) {
+              this.ParseError();
+              this.PopUntilHtmlElementPopped(HtmlAtoms.SELECT);
               this.ResetInsertionMode();
               return this.ApplyThisInsertionMode(token);
             }
@@ -3485,16 +3891,17 @@ private boolean propVarvalueselfclosingack;
           } else if ((token & TOKEN_TYPE_MASK) == TOKEN_END_TAG) {
             EndTagToken tag = (EndTagToken)this.GetToken(token);
             String valueName = tag.GetName();
-            if (valueName.equals("caption") ||
-              valueName.equals("table") ||
-              valueName.equals("tbody") ||
-              valueName.equals("tfoot") ||
-              valueName.equals("thead") ||
-              valueName.equals("tr") ||
-              valueName.equals("td") ||
-              valueName.equals("th")) {
-              this.ParseError();
-              if (!this.HasHtmlElementInTableScope(valueName)) {
+            int atom = tag.GetAtom();
+            if (atom == HtmlAtoms.CAPTION ||
+              atom == HtmlAtoms.TABLE ||
+              atom == HtmlAtoms.TBODY ||
+              atom == HtmlAtoms.TFOOT ||
+              atom == HtmlAtoms.THEAD ||
+              atom == HtmlAtoms.TR ||
+              atom == HtmlAtoms.TD ||
+              atom == HtmlAtoms.TH) {
+              this.ParseError();
+              if (!this.HasHtmlElementInTableScope(atom)) {
                 return false;
               }
               this.ApplyEndTag("select", insMode);
@@ -3529,7 +3936,8 @@ private boolean propVarvalueselfclosingack;
           } else if ((token & TOKEN_TYPE_MASK) == TOKEN_START_TAG) {
             StartTagToken tag = (StartTagToken)this.GetToken(token);
             String valueName = tag.GetName();
-            if (valueName.equals("html")) {
+            int atom = tag.GetAtom();
+            if (atom == HtmlAtoms.HTML) {
               this.ApplyInsertionMode(token, InsertionMode.InBody);
             } else {
               this.ParseError();
@@ -3539,7 +3947,8 @@ private boolean propVarvalueselfclosingack;
           } else if ((token & TOKEN_TYPE_MASK) == TOKEN_END_TAG) {
             EndTagToken tag = (EndTagToken)this.GetToken(token);
             String valueName = tag.GetName();
-            if (valueName.equals("html")) {
+            int atom = tag.GetAtom();
+            if (atom == HtmlAtoms.HTML) {
               if (this.context != null) {
                 this.ParseError();
                 return false;
@@ -3576,30 +3985,31 @@ private boolean propVarvalueselfclosingack;
           } else if ((token & TOKEN_TYPE_MASK) == TOKEN_START_TAG) {
             StartTagToken tag = (StartTagToken)this.GetToken(token);
             String valueName = tag.GetName();
-            if (valueName.equals("html")) {
+            int atom = tag.GetAtom();
+            if (atom == HtmlAtoms.HTML) {
               this.ApplyInsertionMode(token, InsertionMode.InBody);
-            } else if (valueName.equals("frameset")) {
+            } else if (atom == HtmlAtoms.FRAMESET) {
               this.AddHtmlElement(tag);
-            } else if (valueName.equals("frame")) {
+            } else if (atom == HtmlAtoms.FRAME) {
               this.AddHtmlElementNoPush(tag);
               tag.AckSelfClosing();
-            } else if (valueName.equals("noframes")) {
+            } else if (atom == HtmlAtoms.NOFRAMES) {
               this.ApplyInsertionMode(token, InsertionMode.InHead);
             } else {
               this.ParseError();
             }
           } else if ((token & TOKEN_TYPE_MASK) == TOKEN_END_TAG) {
-            if (this.GetCurrentNode().GetLocalName().equals("html")) {
+            if (HtmlAtoms.GetAtom(this.GetCurrentNode()) == HtmlAtoms.HTML) {
               this.ParseError();
               return false;
             }
             EndTagToken tag = (EndTagToken)this.GetToken(token);
             String valueName = tag.GetName();
-            if (valueName.equals("frameset")) {
+            int atom = tag.GetAtom();
+            if (atom == HtmlAtoms.FRAMESET) {
               this.PopCurrentNode();
               if (this.context == null &&
-                !HtmlCommon.IsHtmlElement(this.GetCurrentNode(),
-                "frameset")) {
+                !HtmlAtoms.IsHtmlElement(this.GetCurrentNode(), HtmlAtoms.FRAMESET)) {
                 this.insertionMode = InsertionMode.AfterFrameset;
               }
             } else {
@@ -3608,7 +4018,7 @@ private boolean propVarvalueselfclosingack;
           } else if ((token & TOKEN_TYPE_MASK) == TOKEN_COMMENT) {
             this.AddCommentNodeToCurrentNode(token);
           } else if (token == TOKEN_EOF) {
-            if (!HtmlCommon.IsHtmlElement(this.GetCurrentNode(), "html")) {
+            if (!HtmlAtoms.IsHtmlElement(this.GetCurrentNode(), HtmlAtoms.HTML)) {
               this.ParseError();
             }
             this.StopParsing();
@@ -3630,11 +4040,12 @@ private boolean propVarvalueselfclosingack;
           } else if ((token & TOKEN_TYPE_MASK) == TOKEN_START_TAG) {
             StartTagToken tag = (StartTagToken)this.GetToken(token);
             String valueName = tag.GetName();
-            if (valueName.equals("html")) {
+            int atom = tag.GetAtom();
+            if (atom == HtmlAtoms.HTML) {
               return this.ApplyInsertionMode(
                   token,
                   InsertionMode.InBody);
-            } else if (valueName.equals("noframes")) {
+            } else if (atom == HtmlAtoms.NOFRAMES) {
               return this.ApplyInsertionMode(
                   token,
                   InsertionMode.InHead);
@@ -3644,7 +4055,8 @@ private boolean propVarvalueselfclosingack;
           } else if ((token & TOKEN_TYPE_MASK) == TOKEN_END_TAG) {
             EndTagToken tag = (EndTagToken)this.GetToken(token);
             String valueName = tag.GetName();
-            if (valueName.equals("html")) {
+            int atom = tag.GetAtom();
+            if (atom == HtmlAtoms.HTML) {
               this.insertionMode = InsertionMode.AfterAfterFrameset;
             } else {
               this.ParseError();
@@ -3671,7 +4083,8 @@ private boolean propVarvalueselfclosingack;
           } else if ((token & TOKEN_TYPE_MASK) == TOKEN_START_TAG) {
             StartTagToken tag = (StartTagToken)this.GetToken(token);
             String valueName = tag.GetName();
-            if (valueName.equals("html")) {
+            int atom = tag.GetAtom();
+            if (atom == HtmlAtoms.HTML) {
               this.ApplyInsertionMode(token, InsertionMode.InBody);
             } else {
               this.ParseError();
@@ -3702,9 +4115,10 @@ private boolean propVarvalueselfclosingack;
           } else if ((token & TOKEN_TYPE_MASK) == TOKEN_START_TAG) {
             StartTagToken tag = (StartTagToken)this.GetToken(token);
             String valueName = tag.GetName();
-            if ("html".equals(valueName)) {
+            int atom = tag.GetAtom();
+            if (atom == HtmlAtoms.HTML) {
               this.ApplyInsertionMode(token, InsertionMode.InBody);
-            } else if ("noframes".equals(valueName)) {
+            } else if (atom == HtmlAtoms.NOFRAMES) {
               this.ApplyInsertionMode(token, InsertionMode.InHead);
             } else {
               this.ParseError();
@@ -3729,6 +4143,11 @@ private boolean propVarvalueselfclosingack;
     }
 
     private void ChangeEncoding(String charset) {
+      if (((charset) == null || (charset).length() == 0)) {
+        // Not a supported encoding
+        return;
+      }
+      charset = com.upokecenter.util.DataUtilities.ToLowerCaseAscii(charset);
       String currentEncoding = this.encoding.GetEncoding();
       if (currentEncoding.equals("utf-16le") ||
         currentEncoding.equals("utf-16be")) {
@@ -3740,23 +4159,39 @@ private boolean propVarvalueselfclosingack;
         charset = "utf-8";
       } else if (charset.equals("utf-16be")) {
         charset = "utf-8";
-      }
-      if (charset.equals(currentEncoding)) {
+      } else if (charset.equals("x-user-defined")) {
+        charset = "windows-1252";
+      }
+      boolean canReread = (this.inputReader != null) ?
+        this.inputReader.CanRewind() : (this.inputBuffer != null);
+      if (charset.equals(currentEncoding) || !canReread ||
+        (this.eventEmitter != null && this.eventEmitter.HasReported())) {
+        // Either the encoding is unchanged, or the input can't be
+        // reread, in which case the guessed encoding is kept
         this.encoding = new EncodingConfidence(currentEncoding,
           EncodingConfidence.Certain);
         return;
       }
-      // Reinitialize all parser state
-      this.Initialize();
-      // Rewind the input stream and set the new encoding
-      this.inputReader.Rewind();
+      // Reread the buffered input with the new encoding; the parser state
+      // is reinitialized once the current token is processed
       this.encoding = new EncodingConfidence(
         charset,
         EncodingConfidence.Certain);
-      ICharacterEncoding henc = new Html5Encoding(this.encoding);
-      // TODO
-      // this.charInput = new StackableCharacterInput(
-      // Encodings.GetDecoderInput(henc, this.inputReader));
+      this.charInput.ReleaseBuffer();
+      if (this.inputReader != null) {
+        this.inputReader.Rewind();
+        this.SetByteInput(this.inputReader);
+      } else {
+        this.SetByteInput(new ByteBufferReader(this.inputBuffer.duplicate()));
+      }
+      this.restartPending = true;
+    }
+
+    private void DisableInputBuffer() {
+      // Only input read from a stream is buffered
+      if (this.inputReader != null) {
+        this.inputReader.DisableBuffer();
+      }
     }
 
     private void ClearFormattingToMarker() {
@@ -3770,21 +4205,21 @@ private boolean propVarvalueselfclosingack;
       }
     }
 
-    private void PopUntilHtmlElementPopped(String name) {
-      while (!HtmlCommon.IsHtmlElement(this.GetCurrentNode(), name)) {
+    private void PopUntilHtmlElementPopped(int atom) {
+      while (!HtmlAtoms.IsHtmlElement(this.GetCurrentNode(), atom)) {
         this.PopCurrentNode();
       }
       this.PopCurrentNode();
     }
 
     private void CloseParagraph() {
-      if (this.HasHtmlElementInButtonScope("p")) {
-        this.GenerateImpliedEndTagsExcept("p");
+      if (this.HasHtmlElementInButtonScope(HtmlAtoms.P)) {
+        this.GenerateImpliedEndTagsExcept(HtmlAtoms.P);
         IElement node = this.GetCurrentNode();
-        if (!HtmlCommon.IsHtmlElement(node, "p")) {
+        if (!HtmlAtoms.IsHtmlElement(node, HtmlAtoms.P)) {
           this.ParseError();
         }
-        this.PopUntilHtmlElementPopped("p");
+        this.PopUntilHtmlElementPopped(HtmlAtoms.P);
       }
     }
 
@@ -3796,6 +4231,24 @@ private boolean propVarvalueselfclosingack;
       return node;
     }
 
+    private void EmitEvents() {
+      if (this.done) {
+        this.eventEmitter.Finish(this.valueDocument);
+        return;
+      }
+      if (this.framesetOk || this.openElements.Size() < 2 ||
+        !HtmlAtoms.IsHtmlElement(this.openElements.Get(1), HtmlAtoms.BODY)) {
+        // Wait until the head element can no longer be reopened and a
+        // frameset start tag can no longer replace the body
+        return;
+      }
+      this.eventEmitter.Flush(
+        this.valueDocument,
+        this.openElements,
+        this.openElements.IndexOfFirst(
+          HtmlAtoms.FORMATTING | HtmlAtoms.FOSTER_PARENTING));
+    }
+
     private int EmitCurrentTag() {
       int ret = this.tokens.size() | this.currentTag.GetTokenType();
       this.AddToken(this.currentTag);
@@ -3812,39 +4265,39 @@ private boolean propVarvalueselfclosingack;
     }
 
     private void FosterParent(INode valueElement) {
-      if (this.openElements.size() == 0) {
+      if (this.openElements.Size() == 0) {
         return;
       }
       // System.out.println("Foster Parenting: " + valueElement);
-      INode FosterParent = this.openElements.get(0);
+      INode FosterParent = this.openElements.Get(0);
       int lastTemplate = -1;
       int lastTable = -1;
       IElement e;
-      for (int i = this.openElements.size() - 1; i >= 0; --i) {
+      for (int i = this.openElements.Size() - 1; i >= 0; --i) {
         if (lastTemplate >= 0 && lastTable >= 0) {
           break;
         }
-        e = this.openElements.get(i);
-        if (lastTable < 0 && HtmlCommon.IsHtmlElement(e, "table")) {
+        e = this.openElements.Get(i);
+        if (lastTable < 0 && HtmlAtoms.IsHtmlElement(e, HtmlAtoms.TABLE)) {
           lastTable = i;
         }
-        if (lastTemplate < 0 && HtmlCommon.IsHtmlElement(e, "template")) {
+        if (lastTemplate < 0 && HtmlAtoms.IsHtmlElement(e, HtmlAtoms.TEMPLATE)) {
           lastTemplate = i;
         }
       }
       if (lastTemplate >= 0 && (lastTable < 0 || lastTemplate > lastTable)) {
-        FosterParent = this.openElements.get(lastTemplate);
+        FosterParent = this.openElements.Get(lastTemplate);
         ((Node)FosterParent).AppendChild(valueElement);
 
         return;
       }
       if (lastTable < 0) {
-        FosterParent = this.openElements.get(0);
+        FosterParent = this.openElements.Get(0);
         ((Node)FosterParent).AppendChild(valueElement);
 
         return;
       }
-      e = this.openElements.get(lastTable);
+      e = this.openElements.Get(lastTable);
       Node parent = (Node)e.GetParentNode();
       boolean isElement = parent != null && parent.GetNodeType() ==
         NodeType.ELEMENT_NODE;
@@ -3854,7 +4307,7 @@ private boolean propVarvalueselfclosingack;
           throw new IllegalStateException();
         }
         // Append to the element before this table
-        FosterParent = this.openElements.get(lastTable - 1);
+        FosterParent = this.openElements.Get(lastTable - 1);
         ((Node)FosterParent).AppendChild(valueElement);
       } else {
         // Parent of the table, insert before the table
@@ -3865,16 +4318,8 @@ private boolean propVarvalueselfclosingack;
     private void GenerateImpliedEndTags() {
       while (true) {
         IElement node = this.GetCurrentNode();
-        if (HtmlCommon.IsHtmlElement(node, "dd") ||
-          HtmlCommon.IsHtmlElement(node, "dt") ||
-          HtmlCommon.IsHtmlElement(node, "li") ||
-          HtmlCommon.IsHtmlElement(node, "option") ||
-          HtmlCommon.IsHtmlElement(node, "optgroup") ||
-          HtmlCommon.IsHtmlElement(node, "p") ||
-          HtmlCommon.IsHtmlElement(node, "rp") ||
-          HtmlCommon.IsHtmlElement(node, "rt") ||
-          HtmlCommon.IsHtmlElement(node, "rb") ||
-          HtmlCommon.IsHtmlElement(node, "rtc")) {
+        if (node != null && (HtmlAtoms.GetCategories(node) &
+          HtmlAtoms.IMPLIED_END_TAG) != 0) {
           this.PopCurrentNode();
         } else {
           break;
@@ -3885,25 +4330,8 @@ private boolean propVarvalueselfclosingack;
     private void GenerateImpliedEndTagsThoroughly() {
       while (true) {
         IElement node = this.GetCurrentNode();
-        if (HtmlCommon.IsHtmlElement(node, "dd") ||
-          HtmlCommon.IsHtmlElement(node, "dd") ||
-          HtmlCommon.IsHtmlElement(node, "dt") ||
-          HtmlCommon.IsHtmlElement(node, "li") ||
-          HtmlCommon.IsHtmlElement(node, "option") ||
-          HtmlCommon.IsHtmlElement(node, "optgroup") ||
-          HtmlCommon.IsHtmlElement(node, "p") ||
-          HtmlCommon.IsHtmlElement(node, "rp") ||
-          HtmlCommon.IsHtmlElement(node, "caption") ||
-          HtmlCommon.IsHtmlElement(node, "colgroup") ||
-          HtmlCommon.IsHtmlElement(node, "tbody") ||
-          HtmlCommon.IsHtmlElement(node, "tfoot") ||
-          HtmlCommon.IsHtmlElement(node, "thead") ||
-          HtmlCommon.IsHtmlElement(node, "td") ||
-          HtmlCommon.IsHtmlElement(node, "th") ||
-          HtmlCommon.IsHtmlElement(node, "tr") ||
-          HtmlCommon.IsHtmlElement(node, "rt") ||
-          HtmlCommon.IsHtmlElement(node, "rb") ||
-          HtmlCommon.IsHtmlElement(node, "rtc")) {
+        if (node != null && (HtmlAtoms.GetCategories(node) &
+          HtmlAtoms.THOROUGH_IMPLIED_END_TAG) != 0) {
           this.PopCurrentNode();
         } else {
           break;
@@ -3911,26 +4339,13 @@ private boolean propVarvalueselfclosingack;
       }
     }
 
-    private void GenerateImpliedEndTagsExcept(String stringValue) {
+    private void GenerateImpliedEndTagsExcept(int atom) {
       while (true) {
         IElement node = this.GetCurrentNode();
-        if (HtmlCommon.IsHtmlElement(node, stringValue)) {
+        if (node == null || HtmlAtoms.IsHtmlElement(node, atom)) {
           break;
         }
-        if (HtmlCommon.IsHtmlElement(node, "dd") ||
-                 HtmlCommon.IsHtmlElement(node, "dt") ||
-                 HtmlCommon.IsHtmlElement(node, "li") ||
-                 HtmlCommon.IsHtmlElement(node, "rb") ||
-                 HtmlCommon.IsHtmlElement(node, "rtc") ||
-                 HtmlCommon.IsHtmlElement(node, "option") ||
-                 HtmlCommon.IsHtmlElement(node, "optgroup") ||
-                 HtmlCommon.IsHtmlElement(
-                 node,
-                 "p") ||
-                 HtmlCommon.IsHtmlElement(
-                 node,
-                 "rp") ||
-                 HtmlCommon.IsHtmlElement(node, "rt")) {
+        if ((HtmlAtoms.GetCategories(node) & HtmlAtoms.IMPLIED_END_TAG) != 0) {
           this.PopCurrentNode();
         } else {
           break;
@@ -3955,8 +4370,8 @@ private boolean propVarvalueselfclosingack;
     }
 
     private IElement GetCurrentNode() {
-      return (this.openElements.size() == 0) ? null :
-        this.openElements.get(this.openElements.size() - 1);
+      return (this.openElements.Size() == 0) ? null :
+        this.openElements.Get(this.openElements.Size() - 1);
     }
 
     private FormattingElement GetFormattingElement(IElement node) {
@@ -3969,14 +4384,14 @@ private boolean propVarvalueselfclosingack;
     }
 
     private Text GetFosterParentedTextNode() {
-      if (this.openElements.size() == 0) {
+      if (this.openElements.Size() == 0) {
         return null;
       }
-      INode FosterParent = this.openElements.get(0);
+      INode FosterParent = this.openElements.Get(0);
       List<INode> childNodes;
-      for (int i = this.openElements.size() - 1; i >= 0; --i) {
-        IElement e = this.openElements.get(i);
-        if (e.GetLocalName().equals("table")) {
+      for (int i = this.openElements.Size() - 1; i >= 0; --i) {
+        IElement e = this.openElements.Get(i);
+        if (HtmlAtoms.GetAtom(e) == HtmlAtoms.TABLE) {
           Node parent = (Node)e.GetParentNode();
           boolean isElement = parent != null && parent.GetNodeType() ==
             NodeType.ELEMENT_NODE;
@@ -3986,7 +4401,7 @@ private boolean propVarvalueselfclosingack;
               throw new IllegalStateException();
             }
             // Append to the valueElement before this table
-            FosterParent = this.openElements.get(i - 1);
+            FosterParent = this.openElements.Get(i - 1);
             break;
           } else {
             // Parent of the table, insert before the table
@@ -4010,9 +4425,7 @@ private boolean propVarvalueselfclosingack;
           }
         }
       }
-      childNodes = FosterParent.GetChildNodes();
-      INode lastChild = (childNodes.size() == 0) ? null :
-        childNodes.get(childNodes.size() - 1);
+      INode lastChild = ((Node)FosterParent).GetLastChildInternal();
       if (lastChild == null || lastChild.GetNodeType() != NodeType.TEXT_NODE) {
         Text textNode = new Text();
         FosterParent.AppendChild(textNode);
@@ -4024,18 +4437,12 @@ private boolean propVarvalueselfclosingack;
 
     private Text GetTextNodeToInsert(INode node) {
       if (this.doFosterParent && node.equals(this.GetCurrentNode())) {
-        String valueName = ((IElement)node).GetLocalName();
-        if ("table".equals(valueName) ||
-          "tbody".equals(valueName) ||
-          "tfoot".equals(valueName) ||
-          "thead".equals(valueName) ||
-          "tr".equals(valueName)) {
+        if ((HtmlAtoms.GetCategories((IElement)node) &
+          HtmlAtoms.FOSTER_PARENTING) != 0) {
           return this.GetFosterParentedTextNode();
         }
       }
-      List<INode> childNodes = ((INode)node).GetChildNodes();
-      INode lastChild = (childNodes.size() == 0) ? null :
-        childNodes.get(childNodes.size() - 1);
+      INode lastChild = ((Node)node).GetLastChildInternal();
       if (lastChild == null || lastChild.GetNodeType() != NodeType.TEXT_NODE) {
         Text textNode = new Text();
         node.AppendChild(textNode);
@@ -4054,222 +4461,36 @@ private boolean propVarvalueselfclosingack;
       }
     }
 
-    private boolean HasHtmlElementInButtonScope(String valueName) {
-      boolean found = false;
-      for (IElement e : this.openElements) {
-        if (e.GetLocalName().equals(valueName)) {
-          found = true;
-        }
-      }
-      if (!found) {
-        return false;
-      }
-      for (int i = this.openElements.size() - 1; i >= 0; --i) {
-        IElement e = this.openElements.get(i);
-        String namespaceValue = e.GetNamespaceURI();
-        String thisName = e.GetLocalName();
-        if (HtmlCommon.HTML_NAMESPACE.equals(namespaceValue)) {
-          if (thisName.equals(valueName)) {
-            return true;
-          }
-          if (thisName.equals("applet") ||
-            thisName.equals("caption") ||
-            thisName.equals("html") ||
-            thisName.equals("table") ||
-            thisName.equals("td") ||
-            thisName.equals("th") ||
-            thisName.equals("marquee") ||
-            thisName.equals("Object") ||
-            thisName.equals("button")) {
-            // System.out.println("not in scope: %s",thisName);
-            return false;
-          }
-        }
-        if (HtmlCommon.MATHML_NAMESPACE.equals(namespaceValue)) {
-          if (thisName.equals("mi") ||
-            thisName.equals("mo") ||
-            thisName.equals("mn") ||
-            thisName.equals("ms") ||
-            thisName.equals("mtext") ||
-            thisName.equals("annotation-xml")) {
-            return false;
-          }
-        }
-        if (HtmlCommon.SVG_NAMESPACE.equals(namespaceValue)) {
-          if (thisName.equals("foreignObject") ||
-            thisName.equals("desc") ||
-            thisName.equals("title")) {
-            return false;
-          }
-        }
-      }
-      return false;
+    private boolean HasHtmlElementInButtonScope(int atom) {
+      return this.HasHtmlElementInScope(atom, HtmlAtoms.BUTTON_SCOPING);
     }
 
-    private boolean HasHtmlElementInListItemScope(String valueName) {
-      for (int i = this.openElements.size() - 1; i >= 0; --i) {
-        IElement e = this.openElements.get(i);
-        if (HtmlCommon.IsHtmlElement(e, valueName)) {
-          return true;
-        }
-        if (HtmlCommon.IsHtmlElement(e, "applet") ||
-                 HtmlCommon.IsHtmlElement(e, "caption") ||
-                 HtmlCommon.IsHtmlElement(e, "html") ||
-                 HtmlCommon.IsHtmlElement(e, "table") ||
-                 HtmlCommon.IsHtmlElement(e, "td") ||
-                 HtmlCommon.IsHtmlElement(e, "th") ||
-                 HtmlCommon.IsHtmlElement(e, "ol") ||
-                 HtmlCommon.IsHtmlElement(e, "ul") ||
-                 HtmlCommon.IsHtmlElement(e, "marquee") ||
-                 HtmlCommon.IsHtmlElement(e, "Object") ||
-                 HtmlCommon.IsMathMLElement(e, "mi") ||
-                 HtmlCommon.IsMathMLElement(e, "mo") ||
-                 HtmlCommon.IsMathMLElement(e, "mn") ||
-                 HtmlCommon.IsMathMLElement(e, "ms") ||
-                 HtmlCommon.IsMathMLElement(e, "mtext") ||
-                 HtmlCommon.IsMathMLElement(e, "annotation-xml") ||
-                 HtmlCommon.IsSvgElement(e, "foreignObject") ||
-                 HtmlCommon.IsSvgElement(
-                 e,
-                 "desc") ||
-                 HtmlCommon.IsSvgElement(
-                 e,
-                 "title")
-) {
-          return false;
-        }
-      }
-      return false;
+    private boolean HasHtmlElementInListItemScope(int atom) {
+      return this.HasHtmlElementInScope(atom, HtmlAtoms.LIST_ITEM_SCOPING);
     }
 
     private boolean HasHtmlElementInScope(IElement node) {
-      for (int i = this.openElements.size() - 1; i >= 0; --i) {
-        IElement e = this.openElements.get(i);
-        if (e == node) {
-          return true;
-        }
-        if (HtmlCommon.IsHtmlElement(e, "applet") ||
-                 HtmlCommon.IsHtmlElement(e, "caption") ||
-                 HtmlCommon.IsHtmlElement(e, "html") ||
-                 HtmlCommon.IsHtmlElement(e, "table") ||
-                 HtmlCommon.IsHtmlElement(e, "td") ||
-                 HtmlCommon.IsHtmlElement(e, "th") ||
-                 HtmlCommon.IsHtmlElement(e, "marquee") ||
-                 HtmlCommon.IsHtmlElement(e, "Object") ||
-                 HtmlCommon.IsMathMLElement(e, "mi") ||
-                 HtmlCommon.IsMathMLElement(e, "mo") ||
-                 HtmlCommon.IsMathMLElement(e, "mn") ||
-                 HtmlCommon.IsMathMLElement(e, "ms") ||
-                 HtmlCommon.IsMathMLElement(e, "mtext") ||
-                 HtmlCommon.IsMathMLElement(e, "annotation-xml") ||
-                 HtmlCommon.IsSvgElement(e, "foreignObject") ||
-                 HtmlCommon.IsSvgElement(
-                 e,
-                 "desc") ||
-                 HtmlCommon.IsSvgElement(
-                 e,
-                 "title")
-) {
-          return false;
-        }
-      }
-      return false;
+      return this.openElements.HasElementInScope(node);
     }
 
-    private boolean HasHtmlElementInScope(String valueName) {
-      for (int i = this.openElements.size() - 1; i >= 0; --i) {
-        IElement e = this.openElements.get(i);
-        if (HtmlCommon.IsHtmlElement(e, valueName)) {
-          return true;
-        }
-        if (HtmlCommon.IsHtmlElement(e, "applet") ||
-                 HtmlCommon.IsHtmlElement(e, "caption") ||
-                 HtmlCommon.IsHtmlElement(e, "html") ||
-                 HtmlCommon.IsHtmlElement(e, "table") ||
-                 HtmlCommon.IsHtmlElement(e, "td") ||
-                 HtmlCommon.IsHtmlElement(e, "th") ||
-                 HtmlCommon.IsHtmlElement(e, "marquee") ||
-                 HtmlCommon.IsHtmlElement(e, "Object") ||
-                 HtmlCommon.IsMathMLElement(e, "mi") ||
-                 HtmlCommon.IsMathMLElement(e, "mo") ||
-                 HtmlCommon.IsMathMLElement(e, "mn") ||
-                 HtmlCommon.IsMathMLElement(e, "ms") ||
-                 HtmlCommon.IsMathMLElement(e, "mtext") ||
-                 HtmlCommon.IsMathMLElement(e, "annotation-xml") ||
-                 HtmlCommon.IsSvgElement(e, "foreignObject") ||
-                 HtmlCommon.IsSvgElement(
-                 e,
-                 "desc") ||
-                 HtmlCommon.IsSvgElement(
-                 e,
-                 "title")
-) {
-          return false;
-        }
-      }
-      return false;
+    private boolean HasHtmlElementInScope(int atom) {
+      return this.HasHtmlElementInScope(atom, HtmlAtoms.SCOPING);
     }
 
-    private boolean HasHtmlElementInSelectScope(String valueName) {
-      for (int i = this.openElements.size() - 1; i >= 0; --i) {
-        IElement e = this.openElements.get(i);
-        if (HtmlCommon.IsHtmlElement(e, valueName)) {
-          return true;
-        }
-        if (!HtmlCommon.IsHtmlElement(e, "optgroup") &&
-          !HtmlCommon.IsHtmlElement(e, "option")) {
-          return false;
-        }
-      }
-      return false;
+    private boolean HasHtmlElementInScope(int atom, int boundaries) {
+      return this.openElements.HasHtmlElementInScope(atom, boundaries);
     }
 
-    private boolean HasHtmlElementInTableScope(String valueName) {
-      for (int i = this.openElements.size() - 1; i >= 0; --i) {
-        IElement e = this.openElements.get(i);
-        if (HtmlCommon.IsHtmlElement(e, valueName)) {
-          return true;
-        }
-        if (HtmlCommon.IsHtmlElement(e, "html") ||
-          HtmlCommon.IsHtmlElement(e, "table")) {
-          return false;
-        }
-      }
-      return false;
+    private boolean HasHtmlElementInSelectScope(int atom) {
+      return this.openElements.HasHtmlElementInSelectScope(atom);
+    }
+
+    private boolean HasHtmlElementInTableScope(int atom) {
+      return this.HasHtmlElementInScope(atom, HtmlAtoms.TABLE_SCOPING);
     }
 
     private boolean HasHtmlHeaderElementInScope() {
-      for (int i = this.openElements.size() - 1; i >= 0; --i) {
-        IElement e = this.openElements.get(i);
-        if (HtmlCommon.IsHtmlElement(e, "h1") ||
-          HtmlCommon.IsHtmlElement(e, "h2") ||
-          HtmlCommon.IsHtmlElement(e, "h3") ||
-          HtmlCommon.IsHtmlElement(e, "h4") ||
-          HtmlCommon.IsHtmlElement(e, "h5") ||
-          HtmlCommon.IsHtmlElement(e, "h6")) {
-          return true;
-        }
-        if (HtmlCommon.IsHtmlElement(e, "applet") ||
-          HtmlCommon.IsHtmlElement(e, "caption") ||
-          HtmlCommon.IsHtmlElement(e, "html") ||
-          HtmlCommon.IsHtmlElement(e, "table") ||
-          HtmlCommon.IsHtmlElement(e, "td") ||
-          HtmlCommon.IsHtmlElement(e, "th") ||
-          HtmlCommon.IsHtmlElement(e, "marquee") ||
-          HtmlCommon.IsHtmlElement(e, "Object") ||
-          HtmlCommon.IsMathMLElement(e, "mi") ||
-          HtmlCommon.IsMathMLElement(e, "mo") ||
-          HtmlCommon.IsMathMLElement(e, "mn") ||
-          HtmlCommon.IsMathMLElement(e, "ms") ||
-          HtmlCommon.IsMathMLElement(e, "mtext") ||
-          HtmlCommon.IsMathMLElement(e, "annotation-xml") ||
-          HtmlCommon.IsSvgElement(e, "foreignObject") ||
-          HtmlCommon.IsSvgElement(e, "desc") ||
-          HtmlCommon.IsSvgElement(e, "title")) {
-          return false;
-        }
-      }
-      return false;
+      return this.openElements.HasHeadingInScope();
     }
 
     private void Initialize() {
@@ -4279,7 +4500,7 @@ private boolean propVarvalueselfclosingack;
       this.valueDocument.setAddress(this.address);
       this.valueDocument.SetBaseURI(this.address);
       this.context = null;
-      this.openElements.clear();
+      this.openElements.Clear();
       this.error = false;
       this.baseurl = null;
       // this.hasForeignContent = false; // performance optimization
@@ -4287,6 +4508,7 @@ private boolean propVarvalueselfclosingack;
       this.lastComment = null;
       this.docTypeToken = null;
       this.tokens.clear();
+      this.heldTokens.clear();
       this.lastStartTag = null;
       this.currentEndTag = null;
       this.currentTag = null;
@@ -4296,7 +4518,10 @@ private boolean propVarvalueselfclosingack;
       this.state = TokenizerState.Data;
       this.framesetOk = true;
       this.integrationElements.clear();
-      this.tokenQueue.clear();
+      this.tokenQueue.Clear();
+      this.charRunPos = 0;
+      this.charRunEnd = 0;
+      this.skipLineFeed = false;
       this.insertionMode = InsertionMode.Initial;
       this.originalInsertionMode = InsertionMode.Initial;
       this.formattingElements.clear();
@@ -4311,13 +4536,7 @@ private boolean propVarvalueselfclosingack;
     private void InsertCharacter(INode node, int ch) {
       Text textNode = this.GetTextNodeToInsert(node);
       if (textNode != null) {
-        StringBuilder builder = textNode.getValueText();
-        if (ch <= 0xffff) {
-          builder.append((char)ch);
-        } else if (ch <= 0x10ffff) {
-          builder.append((char)((((ch - 0x10000) >> 10) & 0x3ff) | 0xd800));
-          builder.append((char)(((ch - 0x10000) & 0x3ff) | 0xdc00));
-        }
+        textNode.AppendCodePoint(ch);
       }
     }
 
@@ -4342,7 +4561,7 @@ private boolean propVarvalueselfclosingack;
       } else {
         this.valueDocument.AppendChild(valueElement);
       }
-      this.openElements.add(valueElement);
+      this.openElements.Add(valueElement);
       return valueElement;
     }
 
@@ -4359,12 +4578,8 @@ private boolean propVarvalueselfclosingack;
     private void InsertInCurrentNode(Node valueElement) {
       IElement node = this.GetCurrentNode();
       if (this.doFosterParent) {
-        String valueName = node.GetLocalName();
-        if ("table".equals(valueName) ||
-          "tbody".equals(valueName) ||
-          "tfoot".equals(valueName) ||
-          "thead".equals(valueName) ||
-          "tr".equals(valueName)) {
+        if ((HtmlAtoms.GetCategories(node) &
+          HtmlAtoms.FOSTER_PARENTING) != 0) {
           this.FosterParent(valueElement);
         } else {
           node.AppendChild(valueElement);
@@ -4377,7 +4592,7 @@ private boolean propVarvalueselfclosingack;
     private void InsertString(INode node, String str) {
       Text textNode = this.GetTextNodeToInsert(node);
       if (textNode != null) {
-        textNode.getValueText().append(str);
+        textNode.AppendText(str);
       }
     }
 
@@ -4393,6 +4608,99 @@ private boolean propVarvalueselfclosingack;
       return this;
     }
 
+    /**
+     * Sets a handler to receive the document as events while it's parsed.
+     * Finished nodes are detached from the document once reported.
+     * @param handler An event handler, or null to build the whole document.
+     * @return This object.
+     */
+    public HtmlParser SetEventHandler(IHtmlEventHandler handler) {
+      this.eventEmitter = (handler == null) ? null :
+        new HtmlEventEmitter(handler);
+      this.filteredBuilder = null;
+      return this;
+    }
+
+    /**
+     * Sets a filter that chooses which elements the parsed document keeps.
+     * Discarded elements are dropped as soon as they're closed.
+     * @param filter An element filter, or null to keep all elements.
+     * @return This object.
+     */
+    public HtmlParser SetElementFilter(IElementFilter filter) {
+      this.SetEventHandler(null);
+      if (filter != null) {
+        this.filteredBuilder = new FilteredDocumentBuilder(filter);
+        this.eventEmitter = new HtmlEventEmitter(this.filteredBuilder);
+      }
+      return this;
+    }
+
+    /**
+     * Sets a condition that ends parsing early. Once it's met, the parser
+     * stops reading input and returns the document parsed so far.
+     * @param condition A stop condition, or null to parse the whole input.
+     * @return This object.
+     */
+    public HtmlParser SetStopCondition(StopCondition condition) {
+      this.stopCondition = condition;
+      this.openElements.TrackRemovals(
+        condition != null && condition.HasClosedElements());
+      this.TrackBytePositions();
+      return this;
+    }
+
+    private void TrackBytePositions() {
+      // The block decoder reads bytes a block ahead, so count bytes by
+      // the characters consumed instead
+      if (this.blockInput && this.stopCondition != null &&
+        this.stopCondition.GetByteCount() >= 0) {
+        this.blockDecoder.TrackBytePositions();
+      }
+    }
+
+    private long GetBytesConsumed() {
+      if (this.chunkedInput != null) {
+        return this.chunkedInput.GetByteCount();
+      }
+      if (this.byteCounter == null) {
+        return this.sequenceInput.GetPosition();
+      }
+      if (this.blockInput) {
+        // Characters read from the decoder but not yet consumed don't
+        // count
+        return this.blockDecoder.GetBytePosition(
+          this.charInput.GetUnreadCount() +
+          (this.charRunEnd - this.charRunPos));
+      }
+      return this.byteCounter.GetCount();
+    }
+
+    private boolean IsStopConditionMet() {
+      StopCondition condition = this.stopCondition;
+      if (condition.IsBodyReached() && this.openElements.Size() > 1 &&
+        (HtmlAtoms.IsHtmlElement(this.openElements.Get(1), HtmlAtoms.BODY) ||
+        HtmlAtoms.IsHtmlElement(
+          this.openElements.Get(1),
+          HtmlAtoms.FRAMESET))) {
+        return true;
+      }
+      if (condition.GetByteCount() >= 0 &&
+        this.GetBytesConsumed() >= condition.GetByteCount()) {
+        return true;
+      }
+      List<IElement> removed = this.openElements.GetRemoved();
+      if (removed != null) {
+        for (IElement element : removed) {
+          if (condition.IsClosedElement(element)) {
+            return true;
+          }
+        }
+        this.openElements.ClearRemoved();
+      }
+      return false;
+    }
+
     private void ParseError() {
       this.error = true;
       if (this.checkErrorVar) {
@@ -4408,11 +4716,11 @@ private boolean propVarvalueselfclosingack;
       if (valueToken == TOKEN_EOF) {
         return false;
       }
-      if (this.openElements.size() == 0) {
+      if (this.openElements.Size() == 0) {
         return false;
       }
       IElement valueElement = (this.context != null &&
-          this.openElements.size() == 1) ?
+          this.openElements.Size() == 1) ?
         this.context : this.GetCurrentNode(); // adjusted current node
       if (valueElement == null) {
         return false;
@@ -4422,20 +4730,17 @@ private boolean propVarvalueselfclosingack;
       }
       if ((valueToken & TOKEN_TYPE_MASK) == TOKEN_START_TAG) {
         StartTagToken tag = (StartTagToken)this.GetToken(valueToken);
-        String valueName = valueElement.GetLocalName();
         // System.out.println("start tag " +valueName+","
         // +valueElement.GetNamespaceURI()+"," +tag);
+        int tokenAtom = tag.GetAtom();
         if (this.IsMathMLTextIntegrationPoint(valueElement)) {
-          String tokenName = tag.GetName();
-          if (!"mglyph".equals(tokenName) &&
-            !"malignmark".equals(tokenName)) {
+          if (tokenAtom != HtmlAtoms.MGLYPH &&
+            tokenAtom != HtmlAtoms.MALIGNMARK) {
             return false;
           }
         }
-        boolean annotationSVG =
-          HtmlCommon.MATHML_NAMESPACE.equals(valueElement.GetNamespaceURI()) &&
-          valueName.equals("annotation-xml") &&
-          "svg".equals(tag.GetName());
+        boolean annotationSVG = tokenAtom == HtmlAtoms.SVG &&
+          HtmlAtoms.IsMathMLElement(valueElement, HtmlAtoms.ANNOTATION_XML);
         return !annotationSVG && !this.IsHtmlIntegrationPoint(valueElement);
       } else if ((valueToken & TOKEN_TYPE_MASK) == TOKEN_CHARACTER) {
         return !this.IsMathMLTextIntegrationPoint(valueElement) &&
@@ -4449,121 +4754,22 @@ private boolean propVarvalueselfclosingack;
       if (this.integrationElements.contains(valueElement)) {
         return true;
       }
-      String valueName = valueElement.GetLocalName();
-      return HtmlCommon.SVG_NAMESPACE.equals(valueElement.GetNamespaceURI()) && (
-          valueName.equals("foreignObject") || valueName.equals(
-              "desc") ||
-          valueName.equals("title"));
+      int atom = HtmlAtoms.GetAtom(valueElement);
+      return (atom == HtmlAtoms.FOREIGN_OBJECT || atom == HtmlAtoms.DESC ||
+          atom == HtmlAtoms.TITLE) &&
+        (HtmlAtoms.GetCategories(valueElement) & HtmlAtoms.SVG_ELEMENT) != 0;
     }
 
     private boolean IsMathMLTextIntegrationPoint(IElement valueElement) {
-      String valueName = valueElement.GetLocalName();
-      return HtmlCommon.MATHML_NAMESPACE.equals(valueElement.GetNamespaceURI()) && (
-          valueName.equals("mi") ||
-          valueName.equals("mo") ||
-          valueName.equals("mn") ||
-          valueName.equals("ms") ||
-          valueName.equals("mtext"));
+      int atom = HtmlAtoms.GetAtom(valueElement);
+      return (atom == HtmlAtoms.MI || atom == HtmlAtoms.MO ||
+          atom == HtmlAtoms.MN || atom == HtmlAtoms.MS ||
+          atom == HtmlAtoms.MTEXT) &&
+        (HtmlAtoms.GetCategories(valueElement) & HtmlAtoms.MATHML_ELEMENT) != 0;
     }
 
     private boolean IsSpecialElement(IElement node) {
-      if (HtmlCommon.IsHtmlElement(node, "address") ||
-        HtmlCommon.IsHtmlElement(node, "applet") ||
-        HtmlCommon.IsHtmlElement(node, "area") ||
-        HtmlCommon.IsHtmlElement(node, "article") ||
-        HtmlCommon.IsHtmlElement(node, "aside") ||
-        HtmlCommon.IsHtmlElement(node, "base") ||
-        HtmlCommon.IsHtmlElement(node, "basefont") ||
-        HtmlCommon.IsHtmlElement(node, "bgsound") ||
-        HtmlCommon.IsHtmlElement(node, "blockquote") ||
-        HtmlCommon.IsHtmlElement(node, "body") ||
-        HtmlCommon.IsHtmlElement(node, "br") ||
-        HtmlCommon.IsHtmlElement(node, "button") ||
-        HtmlCommon.IsHtmlElement(node, "caption") ||
-        HtmlCommon.IsHtmlElement(node, "center") ||
-        HtmlCommon.IsHtmlElement(node, "col") ||
-        HtmlCommon.IsHtmlElement(node, "colgroup") ||
-        HtmlCommon.IsHtmlElement(node, "dd") ||
-        HtmlCommon.IsHtmlElement(node, "details") ||
-        HtmlCommon.IsHtmlElement(node, "dir") ||
-        HtmlCommon.IsHtmlElement(node, "div") ||
-        HtmlCommon.IsHtmlElement(node, "dl") ||
-        HtmlCommon.IsHtmlElement(node, "dt") ||
-        HtmlCommon.IsHtmlElement(node, "embed") ||
-        HtmlCommon.IsHtmlElement(node, "fieldset") ||
-        HtmlCommon.IsHtmlElement(node, "figcaption") ||
-        HtmlCommon.IsHtmlElement(node, "figure") ||
-        HtmlCommon.IsHtmlElement(node, "footer") ||
-        HtmlCommon.IsHtmlElement(node, "form") ||
-        HtmlCommon.IsHtmlElement(node, "frame") ||
-        HtmlCommon.IsHtmlElement(node, "frameset") ||
-        HtmlCommon.IsHtmlElement(node, "h1") ||
-        HtmlCommon.IsHtmlElement(node, "h2") ||
-        HtmlCommon.IsHtmlElement(node, "h3") ||
-        HtmlCommon.IsHtmlElement(node, "h4") ||
-        HtmlCommon.IsHtmlElement(node, "h5") ||
-        HtmlCommon.IsHtmlElement(node, "h6") ||
-        HtmlCommon.IsHtmlElement(node, "head") ||
-        HtmlCommon.IsHtmlElement(node, "header") ||
-        HtmlCommon.IsHtmlElement(node, "hr") ||
-        HtmlCommon.IsHtmlElement(node, "html") ||
-        HtmlCommon.IsHtmlElement(node, "iframe") ||
-        HtmlCommon.IsHtmlElement(node, "img") ||
-        HtmlCommon.IsHtmlElement(node, "input") ||
-        HtmlCommon.IsHtmlElement(node, "isindex") ||
-        HtmlCommon.IsHtmlElement(node, "li") ||
-        HtmlCommon.IsHtmlElement(node, "link") ||
-        HtmlCommon.IsHtmlElement(node, "listing") ||
-        HtmlCommon.IsHtmlElement(node, "main") ||
-        HtmlCommon.IsHtmlElement(node, "marquee") ||
-        HtmlCommon.IsHtmlElement(node, "meta") ||
-        HtmlCommon.IsHtmlElement(node, "nav") ||
-        HtmlCommon.IsHtmlElement(node, "noembed") ||
-        HtmlCommon.IsHtmlElement(node, "noframes") ||
-        HtmlCommon.IsHtmlElement(node, "noscript") ||
-        HtmlCommon.IsHtmlElement(node, "Object") ||
-        HtmlCommon.IsHtmlElement(node, "ol") ||
-        HtmlCommon.IsHtmlElement(node, "p") ||
-        HtmlCommon.IsHtmlElement(node, "param") ||
-        HtmlCommon.IsHtmlElement(node, "plaintext") ||
-        HtmlCommon.IsHtmlElement(node, "pre") ||
-        HtmlCommon.IsHtmlElement(node, "script") ||
-        HtmlCommon.IsHtmlElement(node, "section") ||
-        HtmlCommon.IsHtmlElement(node, "select") ||
-        HtmlCommon.IsHtmlElement(node, "source") ||
-        HtmlCommon.IsHtmlElement(node, "style") ||
-        HtmlCommon.IsHtmlElement(node, "summary") ||
-        HtmlCommon.IsHtmlElement(node, "table") ||
-        HtmlCommon.IsHtmlElement(node, "tbody") ||
-        HtmlCommon.IsHtmlElement(node, "td") ||
-        HtmlCommon.IsHtmlElement(node, "textarea") ||
-        HtmlCommon.IsHtmlElement(node, "tfoot") ||
-        HtmlCommon.IsHtmlElement(node, "th") ||
-        HtmlCommon.IsHtmlElement(node, "thead") ||
-        HtmlCommon.IsHtmlElement(node, "title") ||
-        HtmlCommon.IsHtmlElement(node, "tr") ||
-        HtmlCommon.IsHtmlElement(node, "track") ||
-        HtmlCommon.IsHtmlElement(node, "ul") ||
-        HtmlCommon.IsHtmlElement(node, "wbr") ||
-        HtmlCommon.IsHtmlElement(node, "xmp")) {
-        return true;
-      }
-      if (HtmlCommon.IsMathMLElement(node, "mi") ||
-        HtmlCommon.IsMathMLElement(node, "mo") ||
-        HtmlCommon.IsMathMLElement(node, "mn") ||
-        HtmlCommon.IsMathMLElement(node, "ms") ||
-        HtmlCommon.IsMathMLElement(node, "mtext") ||
-        HtmlCommon.IsMathMLElement(
-          node,
-          "annotation-xml")) {
-        return true;
-      }
-      return (HtmlCommon.IsSvgElement(node, "foreignObject") ||
-        HtmlCommon.IsSvgElement(
-          node,
-          "desc") || HtmlCommon.IsSvgElement(
-          node,
-          "title")) ? true : false;
+      return (HtmlAtoms.GetCategories(node) & HtmlAtoms.SPECIAL) != 0;
     }
     String NodesToDebugString(List<Node>
       nodes) {
@@ -4586,23 +4792,157 @@ private boolean propVarvalueselfclosingack;
     }
 
     public IDocument Parse() {
-      while (true) {
-        int valueToken = this.ParserRead();
-        this.ApplyThisInsertionMode(valueToken);
-        if ((valueToken & TOKEN_TYPE_MASK) == TOKEN_START_TAG) {
-          StartTagToken tag = (StartTagToken)this.GetToken(valueToken);
-          // System.out.println(tag);
-          if (!tag.IsAckSelfClosing()) {
-            this.ParseError();
-          }
+      while (!this.done) {
+        this.ProcessToken(this.ParserRead());
+      }
+      return this.GetParsedDocument();
+    }
+
+    /**
+     * Adds a chunk of the document to a parser created without a stream,
+     * and parses as much of the document as the input so far allows.
+     * Once parsing is finished, further chunks are ignored.
+     * @param chunk A buffer whose remaining bytes are the next part of the
+     * document. Its position is moved to its limit.
+     * @return True if parsing is finished, as when a stop condition is
+     * met; false if more input is needed.
+     */
+    public boolean Feed(ByteBuffer chunk) {
+      if (this.chunkedInput == null) {
+        throw new IllegalStateException();
+      }
+      if (!this.done) {
+        this.chunkedInput.Append(chunk);
+        // Retry a cut-off token only once the input after its start has
+        // doubled, so that reading long tokens again takes linear time
+        // overall
+        if (this.chunkedInput.GetCheckpointLength() < this.retryLength) {
+          return false;
         }
-        // System.out.println("valueToken=%08X, insertionMode=%s, error=%s"
-        // , valueToken, insertionMode, error);
-        if (this.done) {
-          break;
+      }
+      return this.ParseAvailable();
+    }
+
+    /**
+     * Marks the end of the input fed to this parser and finishes parsing.
+     * @return The parsed document.
+     */
+    public IDocument Finish() {
+      if (this.chunkedInput == null) {
+        throw new IllegalStateException();
+      }
+      if (!this.done) {
+        this.chunkedInput.Finish();
+        this.ParseAvailable();
+      }
+      return this.GetParsedDocument();
+    }
+
+    /**
+     * Gets the number of characters of chunked input read again because
+     * they were part of a token cut off by the end of a chunk.
+     * @return The number of characters read again.
+     */
+    long GetRereadCount() {
+      return (this.chunkedInput == null) ? 0 :
+        this.chunkedInput.GetRereadCount();
+    }
+
+    private boolean ParseAvailable() {
+      while (!this.done) {
+        int valueToken;
+        try {
+          valueToken = this.ParserRead();
+        } catch (ChunkedInput.NeedMoreInputException ex) {
+          this.RestoreCheckpoint();
+          this.retryLength = this.chunkedInput.GetCheckpointLength() * 2;
+          return false;
         }
+        this.ProcessToken(valueToken);
+      }
+      return true;
+    }
+
+    private void SaveCheckpoint() {
+      TokenizerCheckpoint cp = this.checkpoint;
+      cp.state = this.state;
+      cp.lastState = this.lastState;
+      cp.lastStartTag = this.lastStartTag;
+      cp.currentEndTag = this.currentEndTag;
+      cp.currentTag = this.currentTag;
+      cp.currentAttribute = this.currentAttribute;
+      cp.lastComment = this.lastComment;
+      cp.docTypeToken = this.docTypeToken;
+      cp.bogusCommentCharacter = this.bogusCommentCharacter;
+      cp.tempText = (this.tempBuilder.length() == 0) ? null :
+        this.tempBuilder.toString();
+      cp.tokenCount = this.tokens.size();
+      cp.error = this.error;
+      cp.skipLineFeed = this.skipLineFeed;
+      this.chunkedInput.SetCheckpoint(
+        this.charInput.GetUnreadCount());
+    }
+
+    private void RestoreCheckpoint() {
+      TokenizerCheckpoint cp = this.checkpoint;
+      this.state = cp.state;
+      this.lastState = cp.lastState;
+      this.lastStartTag = cp.lastStartTag;
+      this.currentEndTag = cp.currentEndTag;
+      this.currentTag = cp.currentTag;
+      this.currentAttribute = cp.currentAttribute;
+      this.lastComment = cp.lastComment;
+      this.docTypeToken = cp.docTypeToken;
+      this.bogusCommentCharacter = cp.bogusCommentCharacter;
+      this.tempBuilder.delete(0, this.tempBuilder.length());
+      if (cp.tempText != null) {
+        this.tempBuilder.append(cp.tempText);
+      }
+      this.tokens.subList(cp.tokenCount, this.tokens.size()).clear();
+      this.error = cp.error;
+      this.skipLineFeed = cp.skipLineFeed;
+      this.tokenQueue.Clear();
+      this.charRunPos = 0;
+      this.charRunEnd = 0;
+      // Read the characters after the checkpoint again
+      this.chunkedInput.Rewind();
+      this.charInput.ReleaseBuffer();
+      this.charInput = new StackableCharacterInput(this.chunkedInput);
+    }
+
+    private IDocument GetParsedDocument() {
+      return (this.filteredBuilder == null) ? this.valueDocument :
+        this.filteredBuilder.GetDocument(this.valueDocument);
+    }
+
+    private void ProcessToken(int valueToken) {
+      this.ApplyThisInsertionMode(valueToken);
+      if (this.restartPending) {
+        // The encoding changed, so parse again from the start
+        this.restartPending = false;
+        this.Initialize();
+        return;
+      }
+      if ((valueToken & TOKEN_TYPE_MASK) == TOKEN_START_TAG) {
+        StartTagToken tag = (StartTagToken)this.GetToken(valueToken);
+        // System.out.println(tag);
+        if (!tag.IsAckSelfClosing()) {
+          this.ParseError();
+        }
+      }
+      // System.out.println("valueToken=%08X, insertionMode=%s, error=%s"
+      // , valueToken, insertionMode, error);
+      if (this.stopCondition != null && !this.done &&
+        this.IsStopConditionMet()) {
+        this.StopParsing();
+      }
+      if (this.eventEmitter != null) {
+        this.EmitEvents();
+      }
+      if (this.tokenQueue.IsEmpty()) {
+        // No queued token refers to earlier tokens
+        this.RecycleTokens();
       }
-      return this.valueDocument;
     }
 
     private int ParseCharacterReference(int allowedCharacter) {
@@ -4738,98 +5078,50 @@ private boolean propVarvalueselfclosingack;
         return value;
       } else if ((c1 >= 'A' && c1 <= 'Z') || (c1 >= 'a' && c1 <= 'z') ||
         (c1 >= '0' && c1 <= '9')) {
-        int[] data = null;
-        // check for certain well-known entities
-        if (c1 == 'g') {
-          if (this.charInput.ReadChar() == 't' && this.charInput.ReadChar() ==
-            ';') {
-            return '>';
-          }
-          this.charInput.SetMarkPosition(markStart + 1);
-        } else if (c1 == 'l') {
-          if (this.charInput.ReadChar() == 't' && this.charInput.ReadChar() ==
-            ';') {
-            return '<';
-          }
-          this.charInput.SetMarkPosition(markStart + 1);
-        } else if (c1 == 'a') {
-          if (this.charInput.ReadChar() == 'm' && this.charInput.ReadChar()
-            == 'p' && this.charInput.ReadChar() == ';') {
-            return '&';
-          }
-          this.charInput.SetMarkPosition(markStart + 1);
-        } else if (c1 == 'n') {
-          if (this.charInput.ReadChar() == 'b' && this.charInput.ReadChar() ==
-            's' &&
-            this.charInput.ReadChar() == 'p' && this.charInput.ReadChar() ==
-            ';') {
-            return 0xa0;
-          }
-          this.charInput.SetMarkPosition(markStart + 1);
+        // Find the longest entity name that matches the input
+        int node = HtmlEntities.GetNextTrieNode(0, c1);
+        int matchIndex = -1;
+        int matchLength = 0;
+        int length = 0;
+        while (node >= 0) {
+          int entityIndex = HtmlEntities.GetTrieEntity(node);
+          if (entityIndex >= 0) {
+            matchIndex = entityIndex;
+            matchLength = length;
+          }
+          int ch = this.charInput.ReadChar();
+          if (ch < 0) {
+            break;
+          }
+          ++length;
+          node = HtmlEntities.GetNextTrieNode(node, ch);
         }
-        int count = 0;
-        for (int index = 0; index < HtmlEntities.GetEntities().length;
-          ++index) {
-          String entity = HtmlEntities.GetEntities()[index];
-          if (entity.charAt(0) == c1) {
-            if (data == null) {
-              // Read the rest of the character reference
-              // (the entities are sorted by length, so
-              // we get the maximum length possible starting
-              // with the first matching character)
-              data = new int[entity.length() - 1];
-              count = this.charInput.Read(data, 0, data.length);
-              // System.out.println("markposch=%c",(char)data[0]);
-            }
-            // if fewer bytes were read than the
-            // entity's remaining length, this
-            // can't match
-            // System.out.println("data count=%s %s"
-            // , count, stream.getMarkPosition());
-            if (count < entity.length() - 1) {
-              continue;
-            }
-            boolean matched = true;
-            for (int i = 1; i < entity.length(); ++i) {
-              // System.out.println("%c %c | markpos=%d",
-              // (char)data[i-1], entity.charAt(i), stream.getMarkPosition());
-              if (data[i - 1] != entity.charAt(i)) {
-                matched = false;
-                break;
+        if (matchIndex >= 0) {
+          String entity = HtmlEntities.GetEntities()[matchIndex];
+          // Move back to just after the matched entity name
+          this.charInput.SetMarkPosition(markStart + 1 + matchLength);
+          if (allowedCharacter >= 0 && entity.charAt(entity.length() - 1) != ';') {
+            // Get the next character after the entity
+            int ch2 = this.charInput.ReadChar();
+            if (ch2 == '=' || (ch2 >= 'A' && ch2 <= 'Z') ||
+              (ch2 >= 'a' && ch2 <= 'z') || (ch2 >= '0' && ch2 <= '9')) {
+              if (ch2 == '=') {
+                this.ParseError();
               }
-            }
-            if (matched) {
-              // Move back the difference between the
-              // number of bytes actually read and
-              // this entity's length
-              this.charInput.MoveBack(count - (entity.length() - 1));
-              // System.out.println("lastchar=%c",entity.charAt(entity.length()-1));
-              if (allowedCharacter >= 0 && entity.charAt(entity.length() - 1) != ';') {
-                // Get the next character after the entity
-                int ch2 = this.charInput.ReadChar();
-                if (ch2 == '=' || (ch2 >= 'A' && ch2 <= 'Z') ||
-                  (ch2 >= 'a' && ch2 <= 'z') || (ch2 >= '0' && ch2 <= '9')) {
-                  if (ch2 == '=') {
-                    this.ParseError();
-                  }
-                  this.charInput.SetMarkPosition(markStart);
-                  return 0x26; // return ampersand rather than entity
-                } else {
-                  if (ch2 >= 0) {
-                    this.charInput.MoveBack(1);
-                  }
-                  if (entity.charAt(entity.length() - 1) != ';') {
-                    this.ParseError();
-                  }
-                }
-              } else {
-                if (entity.charAt(entity.length() - 1) != ';') {
-                  this.ParseError();
-                }
+              this.charInput.SetMarkPosition(markStart);
+              return 0x26; // return ampersand rather than entity
+            } else {
+              if (ch2 >= 0) {
+                this.charInput.MoveBack(1);
               }
-              return HtmlEntities.GetEntityValues()[index];
+              this.ParseError();
+            }
+          } else {
+            if (entity.charAt(entity.length() - 1) != ';') {
+              this.ParseError();
             }
           }
+          return HtmlEntities.GetEntityValues()[matchIndex];
         }
         // no match
         this.charInput.SetMarkPosition(markStart);
@@ -4863,7 +5155,7 @@ private boolean propVarvalueselfclosingack;
       while (ownerDocument != null) {
         if (lastForm == null && ownerDocument.GetNodeType() ==
           NodeType.ELEMENT_NODE) {
-          if (HtmlCommon.IsHtmlElement((IElement)ownerDocument, "form")) {
+          if (HtmlAtoms.IsHtmlElement((IElement)ownerDocument, HtmlAtoms.FORM)) {
             lastForm = ownerDocument;
           }
         }
@@ -4880,20 +5172,20 @@ private boolean propVarvalueselfclosingack;
         this.valueDocument.SetMode(ownerDoc.GetMode());
       }
       this.state = TokenizerState.Data;
-      if (HtmlCommon.IsHtmlElement(context, "title") ||
-        HtmlCommon.IsHtmlElement(context, "textarea")) {
+      if (HtmlAtoms.IsHtmlElement(context, HtmlAtoms.TITLE) ||
+        HtmlAtoms.IsHtmlElement(context, HtmlAtoms.TEXTAREA)) {
         this.state = TokenizerState.RcData;
-      } else if (HtmlCommon.IsHtmlElement(context, "style") ||
-        HtmlCommon.IsHtmlElement(context, "xmp") ||
-        HtmlCommon.IsHtmlElement(context, "iframe") ||
-        HtmlCommon.IsHtmlElement(context, "noembed") ||
-        HtmlCommon.IsHtmlElement(context, "noframes")) {
+      } else if (HtmlAtoms.IsHtmlElement(context, HtmlAtoms.STYLE) ||
+        HtmlAtoms.IsHtmlElement(context, HtmlAtoms.XMP) ||
+        HtmlAtoms.IsHtmlElement(context, HtmlAtoms.IFRAME) ||
+        HtmlAtoms.IsHtmlElement(context, HtmlAtoms.NOEMBED) ||
+        HtmlAtoms.IsHtmlElement(context, HtmlAtoms.NOFRAMES)) {
         this.state = TokenizerState.RawText;
-      } else if (HtmlCommon.IsHtmlElement(context, "script")) {
+      } else if (HtmlAtoms.IsHtmlElement(context, HtmlAtoms.SCRIPT)) {
         this.state = TokenizerState.ScriptData;
-      } else if (HtmlCommon.IsHtmlElement(context, "noscript")) {
+      } else if (HtmlAtoms.IsHtmlElement(context, HtmlAtoms.NOSCRIPT)) {
         this.state = TokenizerState.Data;
-      } else if (HtmlCommon.IsHtmlElement(context, "plaintext")) {
+      } else if (HtmlAtoms.IsHtmlElement(context, HtmlAtoms.PLAINTEXT)) {
         this.state = TokenizerState.PlainText;
       }
       Element valueElement = new Element();
@@ -4901,9 +5193,9 @@ private boolean propVarvalueselfclosingack;
       valueElement.SetNamespace(HtmlCommon.HTML_NAMESPACE);
       this.valueDocument.AppendChild(valueElement);
       this.done = false;
-      this.openElements.clear();
-      this.openElements.add(valueElement);
-      if (HtmlCommon.IsHtmlElement(context, "template")) {
+      this.openElements.Clear();
+      this.openElements.Add(valueElement);
+      if (HtmlAtoms.IsHtmlElement(context, HtmlAtoms.TEMPLATE)) {
         this.templateModes.add(InsertionMode.InTemplate);
       }
       this.context = context;
@@ -5025,6 +5317,33 @@ private boolean propVarvalueselfclosingack;
       return ret;
     }
 
+    private boolean AppendCharacterRun(StringBuilder builder) {
+      // Appends the rest of the current character run, if any,
+      // in bulk; returns true if it had a non-space character
+      if (!this.tokenQueue.IsEmpty()) {
+        return false;
+      }
+      boolean nonspace = false;
+      int[] run = this.charRun;
+      int end = this.charRunEnd;
+      for (int i = this.charRunPos; i < end; ++i) {
+        int ch = run[i];
+        if (ch <= 0xffff) {
+          builder.append((char)ch);
+          if (ch != 0x09 && ch != 0x0a && ch != 0x0c && ch != 0x0d &&
+            ch != 0x20) {
+            nonspace = true;
+          }
+        } else {
+          builder.append((char)((((ch - 0x10000) >> 10) & 0x3ff) | 0xd800));
+          builder.append((char)(((ch - 0x10000) & 0x3ff) | 0xdc00));
+          nonspace = true;
+        }
+      }
+      this.charRunPos = end;
+      return nonspace;
+    }
+
     int ParserRead() {
       int valueToken = this.ParserReadInternal();
       // System.out.println("valueToken=%08X.get(%c)",valueToken,valueToken&0xFF);
@@ -5035,9 +5354,73 @@ private boolean propVarvalueselfclosingack;
       return valueToken;
     }
 
+    // Reads the next token while the tree builder is still handling the
+    // current one. Returns TOKEN_NONE if the input so far ends before the
+    // next token does.
+    private int ParserReadAhead() {
+      if (this.chunkedInput == null) {
+        return this.ParserRead();
+      }
+      try {
+        return this.ParserRead();
+      } catch (ChunkedInput.NeedMoreInputException ex) {
+        this.RestoreCheckpoint();
+        return TOKEN_NONE;
+      }
+    }
+
+    private int ReadCharacterRun(int ch, boolean stopAtAmpersand) {
+      // Keep reading ordinary characters into the character
+      // run, so the tree builder can consume them in bulk
+      this.charRunEnd = this.charInput.ReadUntil(
+        this.charRun,
+        0,
+        this.charRun.length,
+        0x3c,
+        stopAtAmpersand ? 0x26 : 0x3c,
+        0);
+      this.charRunPos = 0;
+      return ch;
+    }
+
+    private void ReadAttributeValueRun(int quote) {
+      // Copy the rest of an attribute value in bulk, up to the next
+      // quote, character reference or null character. The character
+      // run buffer is free while a tag is being read.
+      int[] run = this.charRun;
+      while (true) {
+        int count = this.charInput.ReadUntil(
+          run,
+          0,
+          run.length,
+          quote,
+          0x26,
+          0);
+        if (count > 0) {
+          this.currentAttribute.AppendToValue(run, 0, count);
+        }
+        if (count < run.length) {
+          break;
+        }
+      }
+    }
+
     private int ParserReadInternal() {
-      if (this.tokenQueue.size() > 0) {
-        return RemoveAtIndex(this.tokenQueue, 0);
+      if (!this.tokenQueue.IsEmpty()) {
+        return this.tokenQueue.RemoveFirst();
+      }
+      if (this.charRunPos < this.charRunEnd) {
+        return this.charRun[this.charRunPos++];
+      }
+      if (this.chunkedInput != null) {
+        this.SaveCheckpoint();
+      }
+      if (this.skipLineFeed) {
+        this.skipLineFeed = false;
+        this.SkipPendingLineFeed();
+        if (!this.tokenQueue.IsEmpty()) {
+          return this.tokenQueue.RemoveFirst();
+        }
       }
       while (true) {
         // System.out.println("" + state);
@@ -5054,21 +5437,7 @@ private boolean propVarvalueselfclosingack;
             } else if (c < 0) {
               return TOKEN_EOF;
             } else {
-              int ret = c;
-              // Keep reading characters to
-              // reduce the need to re-call
-              // this method
-              int mark = this.charInput.SetSoftMark();
-              for (int i = 0; i < 100; ++i) {
-                c = this.charInput.ReadChar();
-                if (c > 0 && c != 0x26 && c != 0x3c) {
-                  this.tokenQueue.add(c);
-                } else {
-                  this.charInput.SetMarkPosition(mark + i);
-                  break;
-                }
-              }
-              return ret;
+              return this.ReadCharacterRun(c, true);
             }
             break;
           case CharacterRefInData: {
@@ -5077,7 +5446,7 @@ private boolean propVarvalueselfclosingack;
             if (charref < 0) {
               // more than one character in this reference
               int index = Math.abs(charref + 1);
-              this.tokenQueue.add(HtmlEntities.GetEntityDoubles()[(index * 2) +
+              this.tokenQueue.Add(HtmlEntities.GetEntityDoubles()[(index * 2) +
                 1]);
               return HtmlEntities.GetEntityDoubles()[index * 2];
             }
@@ -5089,7 +5458,7 @@ private boolean propVarvalueselfclosingack;
             if (charref < 0) {
               // more than one character in this reference
               int index = Math.abs(charref + 1);
-              this.tokenQueue.add(HtmlEntities.GetEntityDoubles()[(index * 2) +
+              this.tokenQueue.Add(HtmlEntities.GetEntityDoubles()[(index * 2) +
                 1]);
               return HtmlEntities.GetEntityDoubles()[index * 2];
             }
@@ -5107,7 +5476,7 @@ private boolean propVarvalueselfclosingack;
             } else if (c1 < 0) {
               return TOKEN_EOF;
             } else {
-              return c1;
+              return this.ReadCharacterRun(c1, true);
             }
             break;
           case RawText:
@@ -5123,7 +5492,7 @@ private boolean propVarvalueselfclosingack;
             } else if (c11 < 0) {
               return TOKEN_EOF;
             } else {
-              return c11;
+              return this.ReadCharacterRun(c11, false);
             }
             break;
           }
@@ -5135,7 +5504,7 @@ private boolean propVarvalueselfclosingack;
               this.state = TokenizerState.ScriptDataEndTagOpen;
             } else if (c11 == 0x21) {
               this.state = TokenizerState.ScriptDataEscapeStart;
-              this.tokenQueue.add(0x21);
+              this.tokenQueue.Add(0x21);
               return '<';
             } else {
               this.state = TokenizerState.ScriptData;
@@ -5151,7 +5520,7 @@ private boolean propVarvalueselfclosingack;
             this.charInput.SetHardMark();
             int ch = this.charInput.ReadChar();
             if (ch >= 'A' && ch <= 'Z') {
-              EndTagToken valueToken = new EndTagToken((char)(ch + 0x20));
+              EndTagToken valueToken = this.NewEndTag((char)(ch + 0x20));
               if (ch <= 0xffff) {
                 this.tempBuilder.append((char)ch);
               } else if (ch <= 0x10ffff) {
@@ -5166,7 +5535,7 @@ private boolean propVarvalueselfclosingack;
                 TokenizerState.ScriptDataEndTagName :
                 TokenizerState.ScriptDataEscapedEndTagName;
             } else if (ch >= 'a' && ch <= 'z') {
-              EndTagToken valueToken = new EndTagToken((char)ch);
+              EndTagToken valueToken = this.NewEndTag((char)ch);
               if (ch <= 0xffff) {
                 this.tempBuilder.append((char)ch);
               } else if (ch <= 0x10ffff) {
@@ -5185,7 +5554,7 @@ private boolean propVarvalueselfclosingack;
               this.state = (this.state ==
                   TokenizerState.ScriptDataEndTagOpen) ?
                 TokenizerState.ScriptData : TokenizerState.ScriptDataEscaped;
-              this.tokenQueue.add(0x2f);
+              this.tokenQueue.Add(0x2f);
               if (ch >= 0) {
                 this.charInput.MoveBack(1);
               }
@@ -5215,14 +5584,14 @@ private boolean propVarvalueselfclosingack;
               this.state = (this.state ==
                   TokenizerState.ScriptDataEndTagName) ?
                 TokenizerState.ScriptData : TokenizerState.ScriptDataEscaped;
-              this.tokenQueue.add(0x2f);
+              this.tokenQueue.Add(0x2f);
               String tbs = this.tempBuilder.toString();
               for (int i = 0; i < tbs.length(); ++i) {
                 int c2 = com.upokecenter.util.DataUtilities.CodePointAt(tbs, i);
                 if (c2 >= 0x10000) {
                   ++i;
                 }
-                this.tokenQueue.add(c2);
+                this.tokenQueue.Add(c2);
               }
               if (ch >= 0) {
                 this.charInput.MoveBack(1);
@@ -5472,13 +5841,13 @@ private boolean propVarvalueselfclosingack;
               this.tempBuilder.delete(0, this.tempBuilder.length());
               this.tempBuilder.append((char)(ch + 0x20));
               this.state = TokenizerState.ScriptDataDoubleEscapeStart;
-              this.tokenQueue.add(ch);
+              this.tokenQueue.Add(ch);
               return 0x3c;
             } else if (ch >= 'a' && ch <= 'z') {
               this.tempBuilder.delete(0, this.tempBuilder.length());
               this.tempBuilder.append((char)ch);
               this.state = TokenizerState.ScriptDataDoubleEscapeStart;
-              this.tokenQueue.add(ch);
+              this.tokenQueue.Add(ch);
               return 0x3c;
             } else {
               this.state = TokenizerState.ScriptDataEscaped;
@@ -5509,11 +5878,11 @@ private boolean propVarvalueselfclosingack;
             } else if (c11 == 0x2f) {
               this.state = TokenizerState.EndTagOpen;
             } else if (c11 >= 'A' && c11 <= 'Z') {
-              TagToken valueToken = new StartTagToken((char)(c11 + 0x20));
+              TagToken valueToken = this.NewStartTag((char)(c11 + 0x20));
               this.currentTag = valueToken;
               this.state = TokenizerState.TagName;
             } else if (c11 >= 'a' && c11 <= 'z') {
-              TagToken valueToken = new StartTagToken((char)c11);
+              TagToken valueToken = this.NewStartTag((char)c11);
               this.currentTag = valueToken;
               this.state = TokenizerState.TagName;
             } else if (c11 == 0x3f) {
@@ -5533,12 +5902,12 @@ private boolean propVarvalueselfclosingack;
           case EndTagOpen: {
             int ch = this.charInput.ReadChar();
             if (ch >= 'A' && ch <= 'Z') {
-              TagToken valueToken = new EndTagToken((char)(ch + 0x20));
+              TagToken valueToken = this.NewEndTag((char)(ch + 0x20));
               this.currentEndTag = valueToken;
               this.currentTag = valueToken;
               this.state = TokenizerState.TagName;
             } else if (ch >= 'a' && ch <= 'z') {
-              TagToken valueToken = new EndTagToken((char)ch);
+              TagToken valueToken = this.NewEndTag((char)ch);
               this.currentEndTag = valueToken;
               this.currentTag = valueToken;
               this.state = TokenizerState.TagName;
@@ -5548,7 +5917,7 @@ private boolean propVarvalueselfclosingack;
             } else if (ch < 0) {
               this.ParseError();
               this.state = TokenizerState.Data;
-              this.tokenQueue.add(0x2f); // solidus
+              this.tokenQueue.Add(0x2f); // solidus
               return 0x3c; // Less than
             } else {
               this.ParseError();
@@ -5562,7 +5931,7 @@ private boolean propVarvalueselfclosingack;
             this.charInput.SetHardMark();
             int ch = this.charInput.ReadChar();
             if (ch >= 'A' && ch <= 'Z') {
-              TagToken valueToken = new EndTagToken((char)(ch + 0x20));
+              TagToken valueToken = this.NewEndTag((char)(ch + 0x20));
               if (ch <= 0xffff) {
                 this.tempBuilder.append((char)ch);
               } else if (ch <= 0x10ffff) {
@@ -5577,7 +5946,7 @@ private boolean propVarvalueselfclosingack;
                 TokenizerState.RcDataEndTagName :
                 TokenizerState.RawTextEndTagName;
             } else if (ch >= 'a' && ch <= 'z') {
-              TagToken valueToken = new EndTagToken((char)ch);
+              TagToken valueToken = this.NewEndTag((char)ch);
               if (ch <= 0xffff) {
                 this.tempBuilder.append((char)ch);
               } else if (ch <= 0x10ffff) {
@@ -5597,7 +5966,7 @@ private boolean propVarvalueselfclosingack;
                 this.charInput.MoveBack(1);
               }
               this.state = TokenizerState.RcData;
-              this.tokenQueue.add(0x2f); // solidus
+              this.tokenQueue.Add(0x2f); // solidus
               return 0x3c; // Less than
             }
             break;
@@ -5640,14 +6009,14 @@ private boolean propVarvalueselfclosingack;
               }
               this.state = (this.state == TokenizerState.RcDataEndTagName) ?
                 TokenizerState.RcData : TokenizerState.RawText;
-              this.tokenQueue.add(0x2f); // solidus
+              this.tokenQueue.Add(0x2f); // solidus
               String tbs = this.tempBuilder.toString();
               for (int i = 0; i < tbs.length(); ++i) {
                 int c2 = com.upokecenter.util.DataUtilities.CodePointAt(tbs, i);
                 if (c2 >= 0x10000) {
                   ++i;
                 }
-                this.tokenQueue.add(c2);
+                this.tokenQueue.Add(c2);
               }
               return 0x3c; // Less than
             }
@@ -5808,23 +6177,7 @@ private boolean propVarvalueselfclosingack;
               this.state = TokenizerState.Data;
             } else {
               this.currentAttribute.AppendToValue(ch);
-              // Keep reading characters to
-              // reduce the need to re-call
-              // this method
-              int mark = this.charInput.SetSoftMark();
-              for (int i = 0; i < 100; ++i) {
-                ch = this.charInput.ReadChar();
-                if (ch > 0 && ch != 0x26 && ch != 0x22) {
-                  this.currentAttribute.AppendToValue(ch);
-                } else if (ch == 0x22) {
-                  this.currentAttribute.CommitValue();
-                  this.state = TokenizerState.AfterAttributeValueQuoted;
-                  break;
-                } else {
-                  this.charInput.SetMarkPosition(mark + i);
-                  break;
-                }
-              }
+              this.ReadAttributeValueRun(0x22);
             }
             break;
           }
@@ -5844,23 +6197,7 @@ private boolean propVarvalueselfclosingack;
               this.state = TokenizerState.Data;
             } else {
               this.currentAttribute.AppendToValue(ch);
-              // Keep reading characters to
-              // reduce the need to re-call
-              // this method
-              int mark = this.charInput.SetSoftMark();
-              for (int i = 0; i < 100; ++i) {
-                ch = this.charInput.ReadChar();
-                if (ch > 0 && ch != 0x26 && ch != 0x27) {
-                  this.currentAttribute.AppendToValue(ch);
-                } else if (ch == 0x27) {
-                  this.currentAttribute.CommitValue();
-                  this.state = TokenizerState.AfterAttributeValueQuoted;
-                  break;
-                } else {
-                  this.charInput.SetMarkPosition(mark + i);
-                  break;
-                }
-              }
+              this.ReadAttributeValueRun(0x27);
             }
             break;
           }
@@ -5932,7 +6269,7 @@ private boolean propVarvalueselfclosingack;
             int mark = this.charInput.SetSoftMark();
             int ch = this.charInput.ReadChar();
             if (ch == '-' && this.charInput.ReadChar() == '-') {
-              CommentToken valueToken = new CommentToken();
+              CommentToken valueToken = this.NewComment();
               this.lastComment = valueToken;
               this.state = TokenizerState.CommentStart;
               break;
@@ -6167,7 +6504,7 @@ private boolean propVarvalueselfclosingack;
             break;
           }
           case BogusComment: {
-            CommentToken comment = new CommentToken();
+            CommentToken comment = this.NewComment();
             if (this.bogusCommentCharacter >= 0) {
               var bogusChar = this.bogusCommentCharacter == 0 ? 0xfffd :
                 this.bogusCommentCharacter;
@@ -6589,7 +6926,7 @@ private boolean propVarvalueselfclosingack;
               for (int i = 0; i < size; ++i) {
                 int c2 = com.upokecenter.util.DataUtilities.CodePointAt(str, i);
                 if (i > 0) {
-                  this.tokenQueue.add(c2);
+                  this.tokenQueue.Add(c2);
                 } else {
                   ret1 = c2;
                 }
@@ -6623,8 +6960,8 @@ private boolean propVarvalueselfclosingack;
     }
 
     private IElement PopCurrentNode() {
-      return (this.openElements.size() > 0) ?
-        RemoveAtIndex(this.openElements, this.openElements.size() - 1) : null;
+      return (this.openElements.Size() > 0) ?
+        this.openElements.RemoveLast() : null;
     }
 
     private void PushFormattingElement(StartTagToken tag) {
@@ -6639,19 +6976,20 @@ private boolean propVarvalueselfclosingack;
         }
         if (fe.getElement().GetLocalName().equals(valueName) &&
           fe.getElement().GetNamespaceURI().equals(valueElement.GetNamespaceURI())) {
-          List<IAttr> attribs = fe.getElement().GetAttributes();
-          List<IAttr> myAttribs = valueElement.GetAttributes();
-          if (attribs.size() == myAttribs.size()) {
+          Element other = (Element)fe.getElement();
+          int attrCount = valueElement.GetAttributeCount();
+          if (other.GetAttributeCount() == attrCount) {
             boolean match = true;
-            for (int j = 0; j < myAttribs.size(); ++j) {
-              String name1 = myAttribs.get(j).GetName();
-              String namespaceValue = myAttribs.get(j).GetNamespaceURI();
-              String value = myAttribs.get(j).GetValue();
-              String otherValue = fe.getElement().GetAttributeNS(
+            for (int j = 0; j < attrCount; ++j) {
+              String name1 = valueElement.GetAttributeName(j);
+              String namespaceValue = valueElement.GetAttributeNamespace(j);
+              String value = valueElement.GetAttributeValue(j);
+              String otherValue = other.GetAttributeNS(
                   namespaceValue,
                   name1);
               if (otherValue == null || !otherValue.equals(value)) {
                 match = false;
+                break;
               }
             }
             if (match) {
@@ -6679,14 +7017,14 @@ private boolean propVarvalueselfclosingack;
       // System.out.println(formattingElements);
       FormattingElement fe =
         this.formattingElements.get(this.formattingElements.size() - 1);
-      if (fe.IsMarker() || this.openElements.contains(fe.getElement())) {
+      if (fe.IsMarker() || this.openElements.Contains(fe.getElement())) {
         return;
       }
       int i = this.formattingElements.size() - 1;
       while (i > 0) {
         fe = this.formattingElements.get(i - 1);
         --i;
-        if (!fe.IsMarker() && !this.openElements.contains(fe.getElement())) {
+        if (!fe.IsMarker() && !this.openElements.Contains(fe.getElement())) {
           continue;
         }
         ++i;
@@ -6715,26 +7053,26 @@ private boolean propVarvalueselfclosingack;
 
     private void ResetInsertionMode() {
       boolean last = false;
-      for (int i = this.openElements.size() - 1; i >= 0; --i) {
-        IElement e = this.openElements.get(i);
+      for (int i = this.openElements.Size() - 1; i >= 0; --i) {
+        IElement e = this.openElements.Get(i);
         if (this.context != null && i == 0) {
           e = this.context;
           last = true;
         }
-        if (!last && (HtmlCommon.IsHtmlElement(e, "th") ||
-          HtmlCommon.IsHtmlElement(e, "td"))) {
+        if (!last && (HtmlAtoms.IsHtmlElement(e, HtmlAtoms.TH) ||
+          HtmlAtoms.IsHtmlElement(e, HtmlAtoms.TD))) {
           this.insertionMode = InsertionMode.InCell;
           break;
         }
-        if (HtmlCommon.IsHtmlElement(e, "select")) {
+        if (HtmlAtoms.IsHtmlElement(e, HtmlAtoms.SELECT)) {
           this.insertionMode = InsertionMode.InSelect;
           if (!last) {
             for (int j = i - 1; j >= 0; --j) {
-              e = this.openElements.get(j);
-              if (HtmlCommon.IsHtmlElement(e, "template")) {
+              e = this.openElements.Get(j);
+              if (HtmlAtoms.IsHtmlElement(e, HtmlAtoms.TEMPLATE)) {
                 break;
               }
-              if (HtmlCommon.IsHtmlElement(e, "table")) {
+              if (HtmlAtoms.IsHtmlElement(e, HtmlAtoms.TABLE)) {
                 this.insertionMode = InsertionMode.InSelectInTable;
                 break;
               }
@@ -6742,47 +7080,47 @@ private boolean propVarvalueselfclosingack;
           }
           break;
         }
-        if (HtmlCommon.IsHtmlElement(e, "colgroup")) {
+        if (HtmlAtoms.IsHtmlElement(e, HtmlAtoms.COLGROUP)) {
           this.insertionMode = InsertionMode.InColumnGroup;
           break;
         }
-        if (HtmlCommon.IsHtmlElement(e, "tr")) {
+        if (HtmlAtoms.IsHtmlElement(e, HtmlAtoms.TR)) {
           this.insertionMode = InsertionMode.InRow;
           break;
         }
-        if (HtmlCommon.IsHtmlElement(e, "caption")) {
+        if (HtmlAtoms.IsHtmlElement(e, HtmlAtoms.CAPTION)) {
           this.insertionMode = InsertionMode.InCaption;
           break;
         }
-        if (HtmlCommon.IsHtmlElement(e, "table")) {
+        if (HtmlAtoms.IsHtmlElement(e, HtmlAtoms.TABLE)) {
           this.insertionMode = InsertionMode.InTable;
           break;
         }
-        if (HtmlCommon.IsHtmlElement(e, "template")) {
+        if (HtmlAtoms.IsHtmlElement(e, HtmlAtoms.TEMPLATE)) {
           this.insertionMode = this.templateModes.get(this.templateModes.size() - 1);
           break;
         }
-        if (HtmlCommon.IsHtmlElement(e, "frameset")) {
+        if (HtmlAtoms.IsHtmlElement(e, HtmlAtoms.FRAMESET)) {
           this.insertionMode = InsertionMode.InFrameset;
           break;
         }
-        if (HtmlCommon.IsHtmlElement(e, "html")) {
+        if (HtmlAtoms.IsHtmlElement(e, HtmlAtoms.HTML)) {
           this.insertionMode = (this.headElement == null) ?
             InsertionMode.BeforeHead : InsertionMode.AfterHead;
           break;
         }
-        if (HtmlCommon.IsHtmlElement(e, "head")) {
+        if (HtmlAtoms.IsHtmlElement(e, HtmlAtoms.HEAD)) {
           this.insertionMode = InsertionMode.InHead;
           break;
         }
 
-        if (HtmlCommon.IsHtmlElement(e, "body")) {
+        if (HtmlAtoms.IsHtmlElement(e, HtmlAtoms.BODY)) {
           this.insertionMode = InsertionMode.InBody;
           break;
         }
-        if (HtmlCommon.IsHtmlElement(e, "thead") ||
-          HtmlCommon.IsHtmlElement(e, "tbody") ||
-          HtmlCommon.IsHtmlElement(e, "tfoot")) {
+        if (HtmlAtoms.IsHtmlElement(e, HtmlAtoms.THEAD) ||
+          HtmlAtoms.IsHtmlElement(e, HtmlAtoms.TBODY) ||
+          HtmlAtoms.IsHtmlElement(e, HtmlAtoms.TFOOT)) {
           this.insertionMode = InsertionMode.InTableBody;
           break;
         }
@@ -6810,6 +7148,12 @@ private boolean propVarvalueselfclosingack;
     }
 
     private void SkipLineFeed() {
+      // Done when the next token is read, so that the tree builder never
+      // reads input itself
+      this.skipLineFeed = true;
+    }
+
+    private void SkipPendingLineFeed() {
       int mark = this.charInput.SetSoftMark();
       int nextToken = this.charInput.ReadChar();
       if (nextToken == 0x0a) {
@@ -6819,12 +7163,12 @@ private boolean propVarvalueselfclosingack;
         if (charref < 0) {
           // more than one character in this reference
           int index = Math.abs(charref + 1);
-          this.tokenQueue.add(HtmlEntities.GetEntityDoubles()[index * 2]);
-          this.tokenQueue.add(HtmlEntities.GetEntityDoubles()[(index * 2) + 1]);
+          this.tokenQueue.Add(HtmlEntities.GetEntityDoubles()[index * 2]);
+          this.tokenQueue.Add(HtmlEntities.GetEntityDoubles()[(index * 2) + 1]);
         } else if (charref == 0x0a) {
           return; // ignore the valueToken
         } else {
-          this.tokenQueue.add(charref);
+          this.tokenQueue.Add(charref);
         }
       } else {
         // anything else; reset the input stream
@@ -6834,6 +7178,7 @@ private boolean propVarvalueselfclosingack;
 
     private void StopParsing() {
       this.done = true;
+      this.charInput.ReleaseBuffer();
       if (((this.valueDocument.getDefaultLanguage()) == null || (this.valueDocument.getDefaultLanguage()).length() == 0)) {
         String[] contLang = this.contentLanguage;
         if (contLang.length == 1) {
@@ -6856,7 +7201,7 @@ private boolean propVarvalueselfclosingack;
               docbase));
         }
       }
-      this.openElements.clear();
+      this.openElements.Clear();
       this.formattingElements.clear();
     }
   }
@@ -0,0 +1,166 @@
+package com.upokecenter.html;
+/*
+
+Licensed under the Expat License.
+
+Copyright (C) 2013 Peter Occil
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+import java.nio.*;
+
+  /**
+   * Parses an HTML document whose bytes arrive in chunks, such as from a
+   * non-blocking channel. Each call to Feed parses as much of the document
+   * as the bytes so far allow and then returns, rather than waiting for more
+   * input, so one thread can parse many documents at once. The document is
+   * complete once Finish is called.
+   */
+  public final class HtmlPushParser {
+    private final HtmlParser parser;
+
+    /**
+     * Initializes a new instance of the {@link
+     * com.upokecenter.html.HtmlPushParser} class for a document encoded in
+     * UTF-8. Since chunks are parsed as they arrive, the encoding isn't
+     * sniffed: a byte order mark or meta element declaring another encoding
+     * is ignored. Use the constructor taking a charset if the document's
+     * encoding is known to be different.
+     * @param address An absolute URL representing the document's address.
+     * @throws NullPointerException The parameter {@code address} is null.
+     */
+    public HtmlPushParser(String address) {
+      this(address, "utf-8");
+    }
+
+    /**
+     * Initializes a new instance of the {@link
+     * com.upokecenter.html.HtmlPushParser} class. The document is decoded
+     * with the given encoding, which a byte order mark or meta element
+     * doesn't override.
+     * @param address An absolute URL representing the document's address.
+     * @param charset The name of the document's character encoding.
+     * @throws NullPointerException The parameter {@code address} or {@code
+     * charset} is null.
+     */
+    public HtmlPushParser(String address, String charset) {
+      if (address == null) {
+        throw new NullPointerException("address");
+      }
+      if (charset == null) {
+        throw new NullPointerException("charset");
+      }
+      this.parser = new HtmlParser(address, charset, null);
+    }
+
+    /**
+     * Sets an object that receives the document's nodes as they're finished.
+     * @param handler An object that receives the document's nodes.
+     * @return This object.
+     * @throws NullPointerException The parameter {@code handler} is null.
+     */
+    public HtmlPushParser SetEventHandler(IHtmlEventHandler handler) {
+      if (handler == null) {
+        throw new NullPointerException("handler");
+      }
+      this.parser.SetEventHandler(handler);
+      return this;
+    }
+
+    /**
+     * Sets a filter so that the document returned by Finish keeps only the
+     * elements it accepts. See HtmlDocument.ParseStream for details.
+     * @param filter An object that decides which elements to keep.
+     * @return This object.
+     * @throws NullPointerException The parameter {@code filter} is null.
+     */
+    public HtmlPushParser SetElementFilter(IElementFilter filter) {
+      if (filter == null) {
+        throw new NullPointerException("filter");
+      }
+      this.parser.SetElementFilter(filter);
+      return this;
+    }
+
+    /**
+     * Sets a condition that ends parsing early.
+     * @param condition The condition that ends parsing.
+     * @return This object.
+     * @throws NullPointerException The parameter {@code condition} is null.
+     */
+    public HtmlPushParser SetStopCondition(StopCondition condition) {
+      if (condition == null) {
+        throw new NullPointerException("condition");
+      }
+      this.parser.SetStopCondition(condition);
+      return this;
+    }
+
+    /**
+     * Adds the next chunk of the document and parses as much of the document
+     * as the input so far allows. A token cut off by the end of the chunk
+     * is parsed once the rest of it arrives; so that long tokens fed in
+     * many small chunks don't take quadratic time, a cut-off token is
+     * read again only after the input from its start has doubled.
+     * @param chunk A buffer whose remaining bytes are the next part of the
+     * document. Its position is moved to its limit.
+     * @return False if more input is needed; true if parsing is finished
+     * early, as when a stop condition is met, in which case further chunks
+     * are ignored.
+     * @throws NullPointerException The parameter {@code chunk} is null.
+     */
+    public boolean Feed(ByteBuffer chunk) {
+      if (chunk == null) {
+        throw new NullPointerException("chunk");
+      }
+      return this.parser.Feed(chunk);
+    }
+
+    /**
+     * Adds the next chunk of the document and parses as much of the document
+     * as the input so far allows.
+     * @param bytes A byte array.
+     * @param offset Index of the first byte of the chunk.
+     * @param length Number of bytes in the chunk.
+     * @return False if more input is needed; true if parsing is finished
+     * early.
+     * @throws NullPointerException The parameter {@code bytes} is null.
+     * @throws IllegalArgumentException The parameters {@code offset} and
+     * {@code length} are out of range.
+     */
+    public boolean Feed(byte[] bytes, int offset, int length) {
+      if (bytes == null) {
+        throw new NullPointerException("bytes");
+      }
+      if (offset < 0 || length < 0 || offset > bytes.length - length) {
+        throw new IllegalArgumentException("offset (" + offset +
+          ") or length (" + length + ") is out of range");
+      }
+      return this.parser.Feed(ByteBuffer.wrap(bytes, offset, length));
+    }
+
+    /**
+     * Marks the end of the document's input and finishes parsing.
+     * @return An IDocument representing the parsed HTML document.
+     */
+    public IDocument Finish() {
+      return this.parser.Finish();
+    }
+  }
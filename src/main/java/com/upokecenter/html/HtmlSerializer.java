@@ -0,0 +1,445 @@
+package com.upokecenter.html;
+/*
+
+Licensed under the Expat License.
+
+Copyright (C) 2013 Peter Occil
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+
+  /**
+   * Writes nodes as HTML to a character or byte output. Output is written
+   * in chunks as the tree is walked, without first building the whole
+   * serialized string in memory, and deeply nested trees are walked
+   * without recursion.
+   */
+  public final class HtmlSerializer {
+    private HtmlSerializer() {
+    }
+
+    private static final int ChunkSize = 8192;
+
+    private static final String[] TextEscapes = new String[0xa1];
+    private static final String[] AttributeEscapes = new String[0xa1];
+
+    static {
+      TextEscapes['&'] = "&amp;";
+      TextEscapes['<'] = "&lt;";
+      TextEscapes['>'] = "&gt;";
+      TextEscapes[0xa0] = "&nbsp;";
+      AttributeEscapes['&'] = "&amp;";
+      AttributeEscapes['"'] = "&#x22;";
+      AttributeEscapes[0xa0] = "&nbsp;";
+    }
+
+    // Encodes characters to UTF-8 and writes them in chunks to a byte
+    // stream or channel; unpaired surrogates are written as U+FFFD
+    private static final class Utf8Sink implements Appendable {
+      private final OutputStream stream;
+      private final WritableByteChannel channel;
+      private final byte[] bytes = new byte[ChunkSize];
+      private int count;
+      private int highSurrogate;
+
+      public Utf8Sink(OutputStream stream, WritableByteChannel channel) {
+        this.stream = stream;
+        this.channel = channel;
+      }
+
+      public Appendable append(CharSequence chars) throws IOException {
+        return this.append(chars, 0, chars.length());
+      }
+
+      public Appendable append(
+        CharSequence chars,
+        int start,
+        int end) throws IOException {
+        for (int i = start; i < end; ++i) {
+          this.append(chars.charAt(i));
+        }
+        return this;
+      }
+
+      public Appendable append(char c) throws IOException {
+        if (this.count > ChunkSize - 4) {
+          this.Flush();
+        }
+        if (this.highSurrogate != 0) {
+          if ((c & 0xfc00) == 0xdc00) {
+            int cp = 0x10000 + ((this.highSurrogate & 0x3ff) << 10) +
+              (c & 0x3ff);
+            this.highSurrogate = 0;
+            this.bytes[this.count++] = (byte)(0xf0 | (cp >> 18));
+            this.bytes[this.count++] = (byte)(0x80 | ((cp >> 12) & 0x3f));
+            this.bytes[this.count++] = (byte)(0x80 | ((cp >> 6) & 0x3f));
+            this.bytes[this.count++] = (byte)(0x80 | (cp & 0x3f));
+            return this;
+          }
+          this.highSurrogate = 0;
+          this.WriteUnit(0xfffd);
+          if (this.count > ChunkSize - 4) {
+            this.Flush();
+          }
+        }
+        if ((c & 0xfc00) == 0xd800) {
+          this.highSurrogate = c;
+        } else if ((c & 0xfc00) == 0xdc00) {
+          this.WriteUnit(0xfffd);
+        } else {
+          this.WriteUnit(c);
+        }
+        return this;
+      }
+
+      private void WriteUnit(int c) {
+        if (c < 0x80) {
+          this.bytes[this.count++] = (byte)c;
+        } else if (c < 0x800) {
+          this.bytes[this.count++] = (byte)(0xc0 | (c >> 6));
+          this.bytes[this.count++] = (byte)(0x80 | (c & 0x3f));
+        } else {
+          this.bytes[this.count++] = (byte)(0xe0 | (c >> 12));
+          this.bytes[this.count++] = (byte)(0x80 | ((c >> 6) & 0x3f));
+          this.bytes[this.count++] = (byte)(0x80 | (c & 0x3f));
+        }
+      }
+
+      public void Finish() throws IOException {
+        if (this.highSurrogate != 0) {
+          this.highSurrogate = 0;
+          this.WriteUnit(0xfffd);
+        }
+        this.Flush();
+        if (this.stream != null) {
+          this.stream.flush();
+        }
+      }
+
+      private void Flush() throws IOException {
+        if (this.count == 0) {
+          return;
+        }
+        if (this.stream != null) {
+          this.stream.write(this.bytes, 0, this.count);
+        } else {
+          ByteBuffer buffer = ByteBuffer.wrap(this.bytes, 0, this.count);
+          while (buffer.hasRemaining()) {
+            this.channel.write(buffer);
+          }
+        }
+        this.count = 0;
+      }
+    }
+
+    /**
+     * Writes the HTML form of a node's children to a character output,
+     * such as a StringBuilder or Writer.
+     * @param node A document or element.
+     * @param output The output to write to.
+     * @throws NullPointerException The parameter {@code node} or {@code
+     * output} is null.
+     * @throws java.io.IOException An I/O error occurred.
+     */
+    public static void WriteInnerHtml(INode node, Appendable output)
+      throws IOException {
+      if (node == null) {
+        throw new NullPointerException("node");
+      }
+      if (output == null) {
+        throw new NullPointerException("output");
+      }
+      Serialize(node, false, output);
+    }
+
+    /**
+     * Writes the HTML form of a node, including the node itself, to a
+     * character output, such as a StringBuilder or Writer. For a
+     * document, writes the whole document.
+     * @param node A node.
+     * @param output The output to write to.
+     * @throws NullPointerException The parameter {@code node} or {@code
+     * output} is null.
+     * @throws java.io.IOException An I/O error occurred.
+     */
+    public static void WriteOuterHtml(INode node, Appendable output)
+      throws IOException {
+      if (node == null) {
+        throw new NullPointerException("node");
+      }
+      if (output == null) {
+        throw new NullPointerException("output");
+      }
+      Serialize(node, true, output);
+    }
+
+    /**
+     * Writes the HTML form of a node, including the node itself, to a byte
+     * stream in UTF-8. For a document, writes the whole document. The
+     * stream is flushed but not closed.
+     * @param node A node.
+     * @param output The stream to write to.
+     * @throws NullPointerException The parameter {@code node} or {@code
+     * output} is null.
+     * @throws java.io.IOException An I/O error occurred.
+     */
+    public static void WriteOuterHtml(INode node, OutputStream output)
+      throws IOException {
+      if (output == null) {
+        throw new NullPointerException("output");
+      }
+      Utf8Sink sink = new Utf8Sink(output, null);
+      WriteOuterHtml(node, sink);
+      sink.Finish();
+    }
+
+    /**
+     * Writes the HTML form of a node, including the node itself, to a byte
+     * channel in UTF-8. For a document, writes the whole document. The
+     * channel isn't closed.
+     * @param node A node.
+     * @param output The channel to write to.
+     * @throws NullPointerException The parameter {@code node} or {@code
+     * output} is null.
+     * @throws java.io.IOException An I/O error occurred.
+     */
+    public static void WriteOuterHtml(INode node, WritableByteChannel output)
+      throws IOException {
+      if (output == null) {
+        throw new NullPointerException("output");
+      }
+      Utf8Sink sink = new Utf8Sink(null, output);
+      WriteOuterHtml(node, sink);
+      sink.Finish();
+    }
+
+    static String ToHtmlString(INode node, boolean includeNode) {
+      StringBuilder builder = new StringBuilder();
+      try {
+        Serialize(node, includeNode, builder);
+      } catch (IOException ex) {
+        // Not expected, since StringBuilder doesn't throw
+        throw new IllegalStateException(ex.getMessage(), ex);
+      }
+      return builder.toString();
+    }
+
+    private static void Serialize(
+      INode root,
+      boolean includeRoot,
+      Appendable output) throws IOException {
+      INode node = includeRoot ? root : root.GetFirstChild();
+      if (node == null) {
+        return;
+      }
+      while (true) {
+        INode child = WriteStart(node, output) ? node.GetFirstChild() : null;
+        if (child != null) {
+          node = child;
+          continue;
+        }
+        WriteEnd(node, output);
+        // Move to the next sibling, closing ancestors along the way
+        while (true) {
+          if (node == root) {
+            return;
+          }
+          INode next = node.GetNextSibling();
+          if (next != null) {
+            node = next;
+            break;
+          }
+          node = node.GetParentNode();
+          if (node == null || (node == root && !includeRoot)) {
+            return;
+          }
+          WriteEnd(node, output);
+        }
+      }
+    }
+
+    private static String GetSerializedTagName(IElement element) {
+      String namespaceURI = element.GetNamespaceURI();
+      return (HtmlCommon.HTML_NAMESPACE.equals(namespaceURI) ||
+        HtmlCommon.SVG_NAMESPACE.equals(namespaceURI) ||
+        HtmlCommon.MATHML_NAMESPACE.equals(namespaceURI)) ?
+        element.GetLocalName() : element.GetTagName();
+    }
+
+    // Writes a node's start tag or its entire content if it has no
+    // end tag; returns whether the node's children follow
+    private static boolean WriteStart(INode node, Appendable output)
+      throws IOException {
+      switch (node.GetNodeType()) {
+        case NodeType.ELEMENT_NODE: {
+          IElement e = (IElement)node;
+          output.append('<');
+          output.append(GetSerializedTagName(e));
+          WriteAttributes(e, output);
+          output.append('>');
+          int categories = HtmlAtoms.GetCategories(e);
+          if ((categories & HtmlAtoms.VOID) != 0) {
+            return false;
+          }
+          if ((categories & HtmlAtoms.HTML_ELEMENT) != 0) {
+            int atom = HtmlAtoms.GetAtom(e);
+            if (atom == HtmlAtoms.PRE || atom == HtmlAtoms.TEXTAREA ||
+              atom == HtmlAtoms.LISTING) {
+              INode first = e.GetFirstChild();
+              if (first != null && first.GetNodeType() == NodeType.TEXT_NODE) {
+                String data = ((IText)first).GetData();
+                if (data.length() > 0 && data.charAt(0) == '\n') {
+                  output.append('\n');
+                }
+              }
+            }
+          }
+          return true;
+        }
+        case NodeType.TEXT_NODE: {
+          String data = ((IText)node).GetData();
+          INode parent = node.GetParentNode();
+          if (parent instanceof IElement && (HtmlAtoms.GetCategories(
+            (IElement)parent) & HtmlAtoms.RAW_TEXT) != 0) {
+            output.append(data);
+          } else {
+            WriteEscaped(data, TextEscapes, output);
+          }
+          return false;
+        }
+        case NodeType.COMMENT_NODE:
+          output.append("<!--");
+          output.append(((IComment)node).GetData());
+          output.append("-->");
+          return false;
+        case NodeType.DOCUMENT_TYPE_NODE:
+          output.append("<!DOCTYPE ");
+          output.append(((IDocumentType)node).GetName());
+          output.append('>');
+          return false;
+        case NodeType.PROCESSING_INSTRUCTION_NODE:
+          output.append("<?");
+          output.append(((IProcessingInstruction)node).GetTarget());
+          output.append(' ');
+          output.append(((IProcessingInstruction)node).GetData());
+          output.append('>');
+          return false;
+        default:
+          // Documents and other containers have no markup of their own
+          return true;
+      }
+    }
+
+    private static void WriteEnd(INode node, Appendable output)
+      throws IOException {
+      if (node.GetNodeType() == NodeType.ELEMENT_NODE) {
+        IElement e = (IElement)node;
+        if ((HtmlAtoms.GetCategories(e) & HtmlAtoms.VOID) == 0) {
+          output.append("</");
+          output.append(GetSerializedTagName(e));
+          output.append('>');
+        }
+      }
+    }
+
+    private static void WriteAttributes(IElement e, Appendable output)
+      throws IOException {
+      if (e instanceof Element) {
+        Element element = (Element)e;
+        int count = element.GetAttributeCount();
+        for (int i = 0; i < count; ++i) {
+          String namespaceURI = element.GetAttributeNamespace(i);
+          String name = element.GetAttributeName(i);
+          String localName = name;
+          if (namespaceURI != null) {
+            int io = name.indexOf(':');
+            localName = (io >= 1) ? name.substring(io + 1) : name;
+          }
+          WriteAttribute(
+            namespaceURI,
+            localName,
+            name,
+            element.GetAttributeValue(i),
+            output);
+        }
+      } else {
+        for (IAttr attr : e.GetAttributes()) {
+          WriteAttribute(
+            attr.GetNamespaceURI(),
+            attr.GetLocalName(),
+            attr.GetName(),
+            attr.GetValue(),
+            output);
+        }
+      }
+    }
+
+    private static void WriteAttribute(
+      String namespaceURI,
+      String localName,
+      String name,
+      String value,
+      Appendable output) throws IOException {
+      output.append(' ');
+      if (namespaceURI == null || namespaceURI.length() == 0) {
+        output.append(localName);
+      } else if (namespaceURI.equals(HtmlCommon.XML_NAMESPACE)) {
+        output.append("xml:");
+        output.append(localName);
+      } else if (namespaceURI.equals("http://www.w3.org/2000/xmlns/")) {
+        if (!"xmlns".equals(localName)) {
+          output.append("xmlns:");
+        }
+        output.append(localName);
+      } else if (namespaceURI.equals(HtmlCommon.XLINK_NAMESPACE)) {
+        output.append("xlink:");
+        output.append(localName);
+      } else {
+        output.append(name);
+      }
+      output.append("=\"");
+      WriteEscaped(value, AttributeEscapes, output);
+      output.append('"');
+    }
+
+    private static void WriteEscaped(
+      String value,
+      String[] escapes,
+      Appendable output) throws IOException {
+      int length = value.length();
+      int start = 0;
+      for (int i = 0; i < length; ++i) {
+        char c = value.charAt(i);
+        if (c < escapes.length && escapes[c] != null) {
+          if (i > start) {
+            output.append(value, start, i);
+          }
+          output.append(escapes[c]);
+          start = i + 1;
+        }
+      }
+      if (start < length) {
+        output.append(value, start, length);
+      }
+    }
+  }
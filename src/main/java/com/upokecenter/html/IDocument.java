@@ -67,6 +67,27 @@ THE SOFTWARE.
      */
     List<IElement> GetElementsByTagName(String tagName);
 
+    /**
+     * Finds the first descendant of this document, in tree order, that matches a
+     * group of CSS selectors. See CompiledSelector for the selectors
+     * supported.
+     * @param selectors One or more selectors separated by commas.
+     * @return The first matching element, or null if there is none.
+     * @throws IllegalArgumentException The parameter {@code selectors} is
+     * not a valid group of selectors.
+     */
+    IElement QuerySelector(String selectors);
+
+    /**
+     * Finds all descendants of this document, in tree order, that match a group
+     * of CSS selectors. See CompiledSelector for the selectors supported.
+     * @param selectors One or more selectors separated by commas.
+     * @return A list of the matching elements.
+     * @throws IllegalArgumentException The parameter {@code selectors} is
+     * not a valid group of selectors.
+     */
+    List<IElement> QuerySelectorAll(String selectors);
+
     /**
      * Gets the document's address.
      * @return The return value is not documented yet.
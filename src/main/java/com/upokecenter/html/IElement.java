@@ -82,6 +82,14 @@ import java.util.*;
      */
     String GetInnerHTML();
 
+    /**
+     * Gets a serialized form of this HTML element, including its own start
+     * and end tags. See HtmlSerializer to write the serialized form to an
+     * output instead.
+     * @return The element as HTML.
+     */
+    String GetOuterHTML();
+
     /**
      * Gets the element's local name. For elements with no namespaceValue, this
      * will equal the element's tag name.
@@ -107,4 +115,25 @@ import java.util.*;
      * @return The return value is not documented yet.
      */
     String GetTagName();
+
+    /**
+     * Finds the first descendant of this element, in tree order, that matches a
+     * group of CSS selectors. See CompiledSelector for the selectors
+     * supported.
+     * @param selectors One or more selectors separated by commas.
+     * @return The first matching element, or null if there is none.
+     * @throws IllegalArgumentException The parameter {@code selectors} is
+     * not a valid group of selectors.
+     */
+    IElement QuerySelector(String selectors);
+
+    /**
+     * Finds all descendants of this element, in tree order, that match a group
+     * of CSS selectors. See CompiledSelector for the selectors supported.
+     * @param selectors One or more selectors separated by commas.
+     * @return A list of the matching elements.
+     * @throws IllegalArgumentException The parameter {@code selectors} is
+     * not a valid group of selectors.
+     */
+    List<IElement> QuerySelectorAll(String selectors);
   }
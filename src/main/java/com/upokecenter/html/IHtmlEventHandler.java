@@ -0,0 +1,76 @@
+package com.upokecenter.html;
+/*
+
+Licensed under the Expat License.
+
+Copyright (C) 2013 Peter Occil
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+  /**
+   * Receives the nodes of an HTML document as a series of events while the
+   * document is being parsed. The events describe the same tree the parser
+   * would build, including implied elements, foster-parented content and
+   * elements rearranged by misnested formatting tags, in document order.
+   * Each node is reported only once it can no longer change, after which
+   * the parser discards it. Content inside an open table or an unclosed
+   * formatting element (such as "b" or "a") is held back until that
+   * element is closed, so a document with a table layout or a stray
+   * unclosed "font" element can be held in memory almost whole.
+   * Otherwise, memory use depends on the depth of the document rather
+   * than its size. Attributes that a later "html" or "body" start
+   * tag adds to an element whose start was already reported are not
+   * reported.
+   */
+  public interface IHtmlEventHandler {
+    /**
+     * Called when an element starts. Only the element's name, namespace and
+     * attributes are meaningful at this point; its children are reported
+     * by later events.
+     * @param element The element.
+     */
+    void StartElement(IElement element);
+
+    /**
+     * Called when an element ends.
+     * @param element The element, the same object passed to the matching
+     * StartElement call.
+     */
+    void EndElement(IElement element);
+
+    /**
+     * Called for a run of text. Adjacent calls may split what the document
+     * tree would hold as a single text node.
+     * @param text The text.
+     */
+    void Characters(String text);
+
+    /**
+     * Called for a comment.
+     * @param data The comment's text.
+     */
+    void Comment(String data);
+
+    /**
+     * Called for a document type declaration.
+     * @param doctype The document type.
+     */
+    void DocumentType(IDocumentType doctype);
+  }
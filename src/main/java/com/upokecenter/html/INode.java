@@ -44,6 +44,29 @@ import java.util.*;
      */
     List<INode> GetChildNodes();
 
+    /**
+     * Gets the number of direct children of this node.
+     * @return The number of children.
+     */
+    int GetChildCount();
+
+    /**
+     * Gets the direct child of this node at the given position.
+     * @param index Zero-based position of the child.
+     * @return The child at that position.
+     * @throws IllegalArgumentException The parameter {@code index} is less
+     * than 0 or not less than the number of children.
+     */
+    INode GetChildAt(int index);
+
+    /**
+     * Gets the first direct child of this node. Together with
+     * GetNextSibling, this allows walking the children of a node without
+     * copying them into a list.
+     * @return The first child, or null if this node has no children.
+     */
+    INode GetFirstChild();
+
     /**
      * Gets the language of this node. Not defined in the DOM specification.
      * @return The return value is not documented yet.
@@ -75,6 +98,13 @@ import java.util.*;
      */
     INode GetParentNode();
 
+    /**
+     * Gets the node that follows this one among its parent's children.
+     * @return The next sibling, or null if this node is the last child or
+     * has no parent.
+     */
+    INode GetNextSibling();
+
     /**
      * Gets all the text found within this element.
      * @return The return value is not documented yet.
@@ -0,0 +1,92 @@
+package com.upokecenter.html;
+
+/*
+
+Licensed under the Expat License.
+
+Copyright (C) 2013 Peter Occil
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+  /**
+   * A double-ended queue of 32-bit integers backed by a growable ring
+   * buffer, used as the tokenizer's queue of pending tokens.
+   */
+  final class IntDeque {
+    private int[] buffer;
+    private int head;
+    private int count;
+
+    public IntDeque() {
+      this.buffer = new int[16];
+    }
+
+    public void Add(int value) {
+      if (this.count == this.buffer.length) {
+        this.Grow();
+      }
+      this.buffer[(this.head + this.count) & (this.buffer.length - 1)] =
+        value;
+      ++this.count;
+    }
+
+    public void AddFirst(int value) {
+      if (this.count == this.buffer.length) {
+        this.Grow();
+      }
+      this.head = (this.head - 1) & (this.buffer.length - 1);
+      this.buffer[this.head] = value;
+      ++this.count;
+    }
+
+    public void Clear() {
+      this.head = 0;
+      this.count = 0;
+    }
+
+    public boolean IsEmpty() {
+      return this.count == 0;
+    }
+
+    public int RemoveFirst() {
+      if (this.count == 0) {
+        throw new IllegalStateException();
+      }
+      int ret = this.buffer[this.head];
+      this.head = (this.head + 1) & (this.buffer.length - 1);
+      --this.count;
+      return ret;
+    }
+
+    private void Grow() {
+      // The buffer's length is always a power of two
+      int[] newBuffer = new int[this.buffer.length * 2];
+      int firstPart = Math.min(this.count, this.buffer.length - this.head);
+      System.arraycopy(this.buffer, this.head, newBuffer, 0, firstPart);
+      System.arraycopy(
+        this.buffer,
+        0,
+        newBuffer,
+        firstPart,
+        this.count - firstPart);
+      this.buffer = newBuffer;
+      this.head = 0;
+    }
+  }
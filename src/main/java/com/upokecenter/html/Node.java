@@ -31,6 +31,8 @@ THE SOFTWARE.
   class Node implements INode {
     private List<INode> childNodes;
     private INode parentNode = null;
+    private Node nextSibling = null;
+    private Node previousSibling = null;
     private IDocument ownerDocument = null;
 
     private int valueNodeType;
@@ -46,155 +48,19 @@ THE SOFTWARE.
       if (node == this) {
         throw new IllegalArgumentException();
       }
+      this.InvalidateIndexes();
       ((Node)node).parentNode = this;
-      ((Node)node).ownerDocument = (this instanceof IDocument) ? (IDocument)this :
-        this.ownerDocument;
-      this.childNodes.add(node);
-    }
-
-    private void FragmentSerializeInner(
-      INode current,
-      StringBuilder builder) {
-      if (current.GetNodeType() == NodeType.ELEMENT_NODE) {
-        IElement e = (IElement)current;
-        String tagname = e.GetTagName();
-        String namespaceURI = e.GetNamespaceURI();
-        if (HtmlCommon.HTML_NAMESPACE.equals(namespaceURI) ||
-          HtmlCommon.SVG_NAMESPACE.equals(namespaceURI) ||
-          HtmlCommon.MATHML_NAMESPACE.equals(namespaceURI)) {
-          tagname = e.GetLocalName();
-        }
-        builder.append('<');
-        builder.append(tagname);
-        for (IAttr attr : e.GetAttributes()) {
-          namespaceURI = attr.GetNamespaceURI();
-          builder.append(' ');
-          if (namespaceURI == null || namespaceURI.length() == 0) {
-            builder.append(attr.GetLocalName());
-          } else if (namespaceURI.equals(HtmlCommon.XML_NAMESPACE)) {
-            builder.append("xml:");
-            builder.append(attr.GetLocalName());
-          } else if (namespaceURI.equals(
-            "http://www.w3.org/2000/xmlns/")) {
-            if (!"xmlns".equals(attr.GetLocalName())) {
-              builder.append("xmlns:");
-            }
-            builder.append(attr.GetLocalName());
-          } else if (namespaceURI.equals(HtmlCommon.XLINK_NAMESPACE)) {
-            builder.append("xlink:");
-            builder.append(attr.GetLocalName());
-          } else {
-            builder.append(attr.GetName());
-          }
-          builder.append("=\"");
-          String value = attr.GetValue();
-          for (int i = 0; i < value.length(); ++i) {
-            char c = value.charAt(i);
-            if (c == '&') {
-              builder.append("&amp;");
-            } else if (c == 0xa0) {
-              builder.append("&nbsp;");
-            } else if (c == '"') {
-              builder.append("&#x22;");
-            } else {
-              builder.append(c);
-            }
-          }
-          builder.append('"');
-        }
-        builder.append('>');
-        if (HtmlCommon.HTML_NAMESPACE.equals(namespaceURI)) {
-          String localName = e.GetLocalName();
-          if ("area".equals(localName) ||
-            "base".equals(localName) ||
-            "basefont".equals(localName) ||
-            "bgsound".equals(localName) ||
-            "br".equals(localName) ||
-            "col".equals(localName) ||
-            "embed".equals(localName) ||
-            "frame".equals(localName) ||
-            "hr".equals(localName) ||
-            "img".equals(localName) ||
-            "input".equals(localName) ||
-            "keygen".equals(localName) ||
-            "link".equals(localName) ||
-            "menuitem".equals(localName) ||
-            "meta".equals(localName) ||
-            "param".equals(localName) ||
-            "source".equals(localName) ||
-            "track".equals(localName) ||
-            "wbr".equals(localName)) {
-            return;
-          }
-          if ("pre".equals(localName) ||
-            "textarea".equals(localName) ||
-            "listing".equals(localName)) {
-            for (INode node : e.GetChildNodes()) {
-              if (node.GetNodeType() == NodeType.TEXT_NODE) {
-                String nodeData = ((IText)node).GetData();
-                if (nodeData.length() > 0 && nodeData.charAt(0) == '\n') {
-                  builder.append('\n');
-                }
-              }
-            }
-          }
-        }
-        // Recurse
-        for (INode child : e.GetChildNodes()) {
-          this.FragmentSerializeInner(child, builder);
-        }
-        builder.append("</");
-        builder.append(tagname);
-        builder.append(">");
-      } else if (current.GetNodeType() == NodeType.TEXT_NODE) {
-        INode parent = current.GetParentNode();
-        if (parent instanceof IElement &&
-          HtmlCommon.HTML_NAMESPACE.equals((
-          (IElement)parent).GetNamespaceURI())) {
-          String localName = ((IElement)parent).GetLocalName();
-          if ("script".equals(localName) ||
-            "style".equals(localName) ||
-            "script".equals(localName) ||
-            "xmp".equals(localName) ||
-            "iframe".equals(localName) ||
-            "noembed".equals(localName) ||
-            "noframes".equals(localName) ||
-            "plaintext".equals(localName)) {
-            builder.append(((IText)current).GetData());
-          } else {
-            String value = ((IText)current).GetData();
-            for (int i = 0; i < value.length(); ++i) {
-              char c = value.charAt(i);
-              if (c == '&') {
-                builder.append("&amp;");
-              } else if (c == 0xa0) {
-                builder.append("&nbsp;");
-              } else if (c == '<') {
-                builder.append("&lt;");
-              } else if (c == '>') {
-                builder.append("&gt;");
-              } else {
-                builder.append(c);
-              }
-            }
-          }
-        }
-      } else if (current.GetNodeType() == NodeType.COMMENT_NODE) {
-        builder.append("<!--");
-        builder.append(((IComment)current).GetData());
-        builder.append("-->");
-      } else if (current.GetNodeType() == NodeType.DOCUMENT_TYPE_NODE) {
-        builder.append("<!DOCTYPE ");
-        builder.append(((IDocumentType)current).GetName());
-        builder.append(">");
-      } else if (current.GetNodeType() ==
-        NodeType.PROCESSING_INSTRUCTION_NODE) {
-        builder.append("<?");
-        builder.append(((IProcessingInstruction)current).GetTarget());
-        builder.append(' ');
-        builder.append(((IProcessingInstruction)current).GetData());
-        builder.append(">"); // NOTE: may be erroneous
+      ((Node)node).SetOwnerDocumentDeep((this instanceof IDocument) ?
+        (IDocument)this : this.ownerDocument);
+      ((Node)node).nextSibling = null;
+      ((Node)node).previousSibling = null;
+      int size = this.childNodes.size();
+      if (size > 0) {
+        Node last = (Node)this.childNodes.get(size - 1);
+        last.nextSibling = (Node)node;
+        ((Node)node).previousSibling = last;
       }
+      this.childNodes.add(node);
     }
 
     public String GetBaseURI() {
@@ -223,16 +89,45 @@ THE SOFTWARE.
       return cn;
     }
 
+    public int GetChildCount() {
+      return this.childNodes.size();
+    }
+
+    public INode GetChildAt(int index) {
+      if (index < 0) {
+        throw new IllegalArgumentException("index(" + index +
+          ") is less than 0");
+      }
+      if (index >= this.childNodes.size()) {
+        throw new IllegalArgumentException("index(" + index +
+          ") is not less than " + this.childNodes.size());
+      }
+      return this.childNodes.get(index);
+    }
+
+    public INode GetFirstChild() {
+      return (this.childNodes.size() == 0) ? null : this.childNodes.get(0);
+    }
+
+    public INode GetNextSibling() {
+      return this.nextSibling;
+    }
+
+    INode GetPreviousSiblingInternal() {
+      return this.previousSibling;
+    }
+
     List<INode> GetChildNodesInternal() {
       return this.childNodes;
     }
 
+    INode GetLastChildInternal() {
+      int size = this.childNodes.size();
+      return (size == 0) ? null : this.childNodes.get(size - 1);
+    }
+
     protected String GetInnerHtmlInternal() {
-      StringBuilder builder = new StringBuilder();
-      for (INode child : this.GetChildNodes()) {
-        this.FragmentSerializeInner(child, builder);
-      }
-      return builder.toString();
+      return HtmlSerializer.ToHtmlString(this, false);
     }
 
     public String GetLanguage() {
@@ -273,12 +168,19 @@ THE SOFTWARE.
       if (this.childNodes.size() == 0) {
         throw new IllegalStateException();
       }
+      this.InvalidateIndexes();
       int childNodesSize = this.childNodes.size();
       for (int j = 0; j < childNodesSize; ++j) {
         if (this.childNodes.get(j).equals(sibling)) {
           child.parentNode = this;
-          child.ownerDocument = (child instanceof IDocument) ? (IDocument)this :
-            this.ownerDocument;
+          child.SetOwnerDocumentDeep((this instanceof IDocument) ?
+            (IDocument)this : this.ownerDocument);
+          child.nextSibling = sibling;
+          child.previousSibling = sibling.previousSibling;
+          if (j > 0) {
+            ((Node)this.childNodes.get(j - 1)).nextSibling = child;
+          }
+          sibling.previousSibling = child;
           this.childNodes.add(j, child);
           return;
         }
@@ -287,9 +189,55 @@ THE SOFTWARE.
     }
 
     public void RemoveChild(INode node) {
+      this.InvalidateIndexes();
       ((Node)node).parentNode = null;
       List<INode> cn = this.childNodes;
-      cn.remove(node);
+      int index = cn.indexOf(node);
+      if (index >= 0) {
+        Node next = ((Node)node).nextSibling;
+        if (index > 0) {
+          ((Node)cn.get(index - 1)).nextSibling = next;
+        }
+        if (next != null) {
+          next.previousSibling = ((Node)node).previousSibling;
+        }
+        cn.remove(index);
+      }
+      ((Node)node).nextSibling = null;
+      ((Node)node).previousSibling = null;
+    }
+
+    void RemoveFirstChildren(int count) {
+      this.InvalidateIndexes();
+      List<INode> cn = this.childNodes.subList(0, count);
+      for (INode node : cn) {
+        ((Node)node).parentNode = null;
+        ((Node)node).nextSibling = null;
+        ((Node)node).previousSibling = null;
+      }
+      cn.clear();
+      if (this.childNodes.size() > 0) {
+        ((Node)this.childNodes.get(0)).previousSibling = null;
+      }
+    }
+
+    /**
+     * Discards the element indexes kept by the document this node belongs
+     * to, since the tree or one of its attributes is changing.
+     */
+    final void InvalidateIndexes() {
+      INode doc = (this instanceof Document) ? this : this.ownerDocument;
+      if (doc == null) {
+        // Not yet given an owner document; look for one among the
+        // ancestors instead
+        doc = this.parentNode;
+        while (doc != null && !(doc instanceof Document)) {
+          doc = doc.GetParentNode();
+        }
+      }
+      if (doc instanceof Document) {
+        ((Document)doc).ClearIndexes();
+      }
     }
 
     void SetBaseURI(String value) {
@@ -306,6 +254,32 @@ THE SOFTWARE.
       this.ownerDocument = document;
     }
 
+    // Sets the owner document of this node and its descendants, so that
+    // changes anywhere under a node moved from another document or a
+    // fragment clear the indexes of the document it's now in. A node
+    // that already has the given owner document is left alone, since its
+    // descendants have it too.
+    private void SetOwnerDocumentDeep(IDocument document) {
+      if (this.ownerDocument == document) {
+        return;
+      }
+      Node node = this;
+      while (true) {
+        node.ownerDocument = document;
+        if (node.childNodes.size() > 0) {
+          node = (Node)node.childNodes.get(0);
+          continue;
+        }
+        while (node != this && node.nextSibling == null) {
+          node = (Node)node.parentNode;
+        }
+        if (node == this) {
+          return;
+        }
+        node = node.nextSibling;
+      }
+    }
+
      String ToDebugString() {
       return null;
     }
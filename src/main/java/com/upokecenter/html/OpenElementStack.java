@@ -0,0 +1,358 @@
+package com.upokecenter.html;
+
+/*
+
+Licensed under the Expat License.
+
+Copyright (C) 2013 Peter Occil
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+import java.util.*;
+
+  /**
+   * The stack of open elements. Along with the elements themselves, it
+   * keeps, for each position, the index of the nearest element at or
+   * below that position that bounds each kind of scope, and for each
+   * HTML atom, the topmost position holding an HTML element with that
+   * name, so that scope checks don't have to walk the stack.
+   */
+  final class OpenElementStack {
+    private static final int KIND_SCOPE = 0;
+    private static final int KIND_LIST_ITEM_SCOPE = 1;
+    private static final int KIND_BUTTON_SCOPE = 2;
+    private static final int KIND_TABLE_SCOPE = 3;
+    private static final int KIND_SELECT_SCOPE = 4;
+    private static final int KIND_HEADING = 5;
+    private static final int KIND_COUNT = 6;
+
+    private IElement[] elements;
+    private int[] atoms;
+    private int[] categories;
+    // Position of the next HTML element further down with the same atom
+    private int[] previousSameAtom;
+    // Nearest position at or below each position marked for each kind
+    private final int[][] nearest;
+    // Topmost position of an HTML element with each atom
+    private final int[] lastIndexOfAtom;
+    private int count;
+    // Elements removed since the last call to ClearRemoved, if tracked
+    private List<IElement> removed;
+
+    public OpenElementStack() {
+      int capacity = 16;
+      this.elements = new IElement[capacity];
+      this.atoms = new int[capacity];
+      this.categories = new int[capacity];
+      this.previousSameAtom = new int[capacity];
+      this.nearest = new int[KIND_COUNT][];
+      for (int k = 0; k < KIND_COUNT; ++k) {
+        this.nearest[k] = new int[capacity];
+      }
+      this.lastIndexOfAtom = new int[HtmlAtoms.GetCount()];
+      Arrays.fill(this.lastIndexOfAtom, -1);
+    }
+
+    public void Add(IElement element) {
+      if (this.count == this.elements.length) {
+        this.Grow();
+      }
+      int index = this.count;
+      int categories = HtmlAtoms.GetCategories(element);
+      int atom = ((categories & HtmlAtoms.HTML_ELEMENT) != 0) ?
+        HtmlAtoms.GetAtom(element) : HtmlAtoms.UNKNOWN;
+      this.elements[index] = element;
+      this.atoms[index] = atom;
+      this.categories[index] = categories;
+      if (atom != HtmlAtoms.UNKNOWN) {
+        this.previousSameAtom[index] = this.lastIndexOfAtom[atom];
+        this.lastIndexOfAtom[atom] = index;
+      }
+      this.SetNearest(
+        KIND_SCOPE,
+        index,
+        (categories & HtmlAtoms.SCOPING) != 0);
+      this.SetNearest(
+        KIND_LIST_ITEM_SCOPE,
+        index,
+        (categories & HtmlAtoms.LIST_ITEM_SCOPING) != 0);
+      this.SetNearest(
+        KIND_BUTTON_SCOPE,
+        index,
+        (categories & HtmlAtoms.BUTTON_SCOPING) != 0);
+      this.SetNearest(
+        KIND_TABLE_SCOPE,
+        index,
+        (categories & HtmlAtoms.TABLE_SCOPING) != 0);
+      // Everything except option and optgroup bounds the select scope
+      this.SetNearest(
+        KIND_SELECT_SCOPE,
+        index,
+        (categories & HtmlAtoms.OPTION_OR_OPTGROUP) == 0);
+      this.SetNearest(
+        KIND_HEADING,
+        index,
+        (categories & HtmlAtoms.HEADING) != 0);
+      ++this.count;
+    }
+
+    public void Clear() {
+      while (this.count > 0) {
+        this.Pop();
+      }
+    }
+
+    public void ClearRemoved() {
+      if (this.removed != null) {
+        this.removed.clear();
+      }
+    }
+
+    public boolean Contains(IElement element) {
+      return this.IndexOf(element) >= 0;
+    }
+
+    public IElement Get(int index) {
+      if (index < 0 || index >= this.count) {
+        throw new IndexOutOfBoundsException();
+      }
+      return this.elements[index];
+    }
+
+    /**
+     * Gets the elements removed from the stack since the last call to
+     * ClearRemoved, if removals are tracked.
+     * @return A list of elements, or null if removals aren't tracked.
+     */
+    public List<IElement> GetRemoved() {
+      return this.removed;
+    }
+
+    /**
+     * Gets whether an HTML element with the given name is open.
+     * @param atom An atom.
+     * @return True if such an element is on the stack.
+     */
+    public boolean HasHtmlElement(int atom) {
+      return atom != HtmlAtoms.UNKNOWN && this.lastIndexOfAtom[atom] >= 0;
+    }
+
+    /**
+     * Gets whether the given element is in scope.
+     * @param element An element.
+     * @return True if the element is on the stack and no scope boundary
+     * lies above it.
+     */
+    public boolean HasElementInScope(IElement element) {
+      if (this.count == 0) {
+        return false;
+      }
+      int boundary = this.nearest[KIND_SCOPE][this.count - 1];
+      for (int i = this.count - 1; i >= 0 && i >= boundary; --i) {
+        if (this.elements[i] == element) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    /**
+     * Gets whether an HTML element with the given name is in a scope.
+     * @param atom An atom.
+     * @param boundaries The category bit marking the elements that bound
+     * the scope: SCOPING, LIST_ITEM_SCOPING, BUTTON_SCOPING or
+     * TABLE_SCOPING.
+     * @return True if such an element is on the stack and no boundary lies
+     * above it.
+     */
+    public boolean HasHtmlElementInScope(int atom, int boundaries) {
+      int kind;
+      switch (boundaries) {
+        case HtmlAtoms.SCOPING:
+          kind = KIND_SCOPE;
+          break;
+        case HtmlAtoms.LIST_ITEM_SCOPING:
+          kind = KIND_LIST_ITEM_SCOPE;
+          break;
+        case HtmlAtoms.BUTTON_SCOPING:
+          kind = KIND_BUTTON_SCOPE;
+          break;
+        case HtmlAtoms.TABLE_SCOPING:
+          kind = KIND_TABLE_SCOPE;
+          break;
+        default:
+          throw new IllegalArgumentException("boundaries");
+      }
+      return this.IsInScope(atom, kind);
+    }
+
+    public boolean HasHtmlElementInSelectScope(int atom) {
+      return this.IsInScope(atom, KIND_SELECT_SCOPE);
+    }
+
+    public boolean HasHeadingInScope() {
+      if (this.count == 0) {
+        return false;
+      }
+      int heading = this.nearest[KIND_HEADING][this.count - 1];
+      return heading >= 0 &&
+        heading >= this.nearest[KIND_SCOPE][this.count - 1];
+    }
+
+    public int IndexOf(IElement element) {
+      for (int i = 0; i < this.count; ++i) {
+        if (this.elements[i] == element) {
+          return i;
+        }
+      }
+      return -1;
+    }
+
+    /**
+     * Gets the position of the lowest element on the stack that has any of
+     * the given category bits.
+     * @param categories One or more category bits.
+     * @return The element's position, or the stack's size if there is no
+     * such element.
+     */
+    public int IndexOfFirst(int categories) {
+      for (int i = 0; i < this.count; ++i) {
+        if ((this.categories[i] & categories) != 0) {
+          return i;
+        }
+      }
+      return this.count;
+    }
+
+    public void Insert(int index, IElement element) {
+      if (index < 0 || index > this.count) {
+        throw new IndexOutOfBoundsException();
+      }
+      IElement[] tail = this.Truncate(index);
+      this.Add(element);
+      for (IElement e : tail) {
+        this.Add(e);
+      }
+    }
+
+    public boolean Remove(IElement element) {
+      int index = this.IndexOf(element);
+      if (index < 0) {
+        return false;
+      }
+      this.RemoveAt(index);
+      return true;
+    }
+
+    public IElement RemoveAt(int index) {
+      if (index < 0 || index >= this.count) {
+        throw new IndexOutOfBoundsException();
+      }
+      IElement[] tail = this.Truncate(index);
+      for (int i = 1; i < tail.length; ++i) {
+        this.Add(tail[i]);
+      }
+      if (this.removed != null) {
+        this.removed.add(tail[0]);
+      }
+      return tail[0];
+    }
+
+    public IElement RemoveLast() {
+      if (this.count == 0) {
+        throw new IllegalStateException();
+      }
+      IElement ret = this.Pop();
+      if (this.removed != null) {
+        this.removed.add(ret);
+      }
+      return ret;
+    }
+
+    public void Set(int index, IElement element) {
+      if (index < 0 || index >= this.count) {
+        throw new IndexOutOfBoundsException();
+      }
+      IElement[] tail = this.Truncate(index);
+      this.Add(element);
+      for (int i = 1; i < tail.length; ++i) {
+        this.Add(tail[i]);
+      }
+      if (this.removed != null) {
+        this.removed.add(tail[0]);
+      }
+    }
+
+    public int Size() {
+      return this.count;
+    }
+
+    public void TrackRemovals(boolean track) {
+      this.removed = track ? new ArrayList<IElement>() : null;
+    }
+
+    private void Grow() {
+      int capacity = this.elements.length * 2;
+      this.elements = Arrays.copyOf(this.elements, capacity);
+      this.atoms = Arrays.copyOf(this.atoms, capacity);
+      this.categories = Arrays.copyOf(this.categories, capacity);
+      this.previousSameAtom = Arrays.copyOf(
+        this.previousSameAtom,
+        capacity);
+      for (int k = 0; k < KIND_COUNT; ++k) {
+        this.nearest[k] = Arrays.copyOf(this.nearest[k], capacity);
+      }
+    }
+
+    private boolean IsInScope(int atom, int kind) {
+      if (atom == HtmlAtoms.UNKNOWN || this.count == 0) {
+        return false;
+      }
+      int index = this.lastIndexOfAtom[atom];
+      // The element itself may be the boundary
+      return index >= 0 && index >= this.nearest[kind][this.count - 1];
+    }
+
+    private IElement Pop() {
+      --this.count;
+      int atom = this.atoms[this.count];
+      if (atom != HtmlAtoms.UNKNOWN) {
+        this.lastIndexOfAtom[atom] = this.previousSameAtom[this.count];
+      }
+      IElement ret = this.elements[this.count];
+      this.elements[this.count] = null;
+      return ret;
+    }
+
+    private void SetNearest(int kind, int index, boolean marked) {
+      this.nearest[kind][index] = marked ? index : ((index == 0) ? -1 :
+        this.nearest[kind][index - 1]);
+    }
+
+    // Pops the elements at and above the given position, returning them
+    // from the bottom up
+    private IElement[] Truncate(int index) {
+      IElement[] tail = new IElement[this.count - index];
+      for (int i = tail.length - 1; i >= 0; --i) {
+        tail[i] = this.Pop();
+      }
+      return tail;
+    }
+  }
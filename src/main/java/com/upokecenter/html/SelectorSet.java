@@ -0,0 +1,265 @@
+package com.upokecenter.html;
+/*
+
+Licensed under the Expat License.
+
+Copyright (C) 2013 Peter Occil
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+import java.util.*;
+
+import com.upokecenter.util.*;
+
+  /**
+   * A set of rules, each a group of CSS selectors or an element filter,
+   * that are all matched in a single pass over a document. The rules are
+   * sorted into buckets by the ID, class name or local name their
+   * selectors require, so each element is tested only against the rules
+   * that could match it, and the cost of a pass grows slowly with the
+   * number of rules. Once all rules are added, a selector set isn't
+   * changed by matching, so it can be shared among threads and applied to
+   * any number of documents.
+   */
+  public final class SelectorSet {
+    private static final class Entry {
+      private final int rule;
+      private final CompiledSelector selector;
+      private final int index;
+      private final IElementFilter filter;
+
+      public Entry(int rule, CompiledSelector selector, int index) {
+        this.rule = rule;
+        this.selector = selector;
+        this.index = index;
+        this.filter = null;
+      }
+
+      public Entry(int rule, IElementFilter filter) {
+        this.rule = rule;
+        this.selector = null;
+        this.index = 0;
+        this.filter = filter;
+      }
+
+      public boolean Matches(IElement element) {
+        return (this.filter != null) ? this.filter.IsMatch(element) :
+          this.selector.MatchesSelector(element, this.index);
+      }
+    }
+
+    private final Map<String, List<Entry>> byId =
+      new HashMap<String, List<Entry>>();
+
+    private final Map<String, List<Entry>> byClass =
+      new HashMap<String, List<Entry>>();
+
+    private final Map<String, List<Entry>> byLocalName =
+      new HashMap<String, List<Entry>>();
+
+    // Entries that could match any element
+    private final List<Entry> universal = new ArrayList<Entry>();
+
+    private int ruleCount;
+
+    /**
+     * Initializes a new instance of the SelectorSet class with no rules.
+     */
+    public SelectorSet() {
+    }
+
+    /**
+     * Adds a rule that matches elements matching a group of CSS selectors.
+     * @param selectors One or more selectors separated by commas.
+     * @return The index of the new rule in the lists returned by MatchAll.
+     * @throws NullPointerException The parameter {@code selectors} is null.
+     * @throws IllegalArgumentException The parameter {@code selectors} is
+     * not a valid group of selectors.
+     */
+    public int Add(String selectors) {
+      return this.Add(CompiledSelector.Compile(selectors));
+    }
+
+    /**
+     * Adds a rule that matches elements matching a compiled selector.
+     * @param selector A compiled selector.
+     * @return The index of the new rule in the lists returned by MatchAll.
+     * @throws NullPointerException The parameter {@code selector} is null.
+     */
+    public int Add(CompiledSelector selector) {
+      if (selector == null) {
+        throw new NullPointerException("selector");
+      }
+      int rule = this.ruleCount++;
+      for (int i = 0; i < selector.GetSelectorCount(); ++i) {
+        Entry entry = new Entry(rule, selector, i);
+        String name = selector.GetSubjectName(i, true);
+        if (name != null) {
+          AddToBucket(this.byId, name, entry);
+          continue;
+        }
+        name = selector.GetSubjectName(i, false);
+        if (name != null) {
+          AddToBucket(this.byClass, name, entry);
+          continue;
+        }
+        name = selector.GetSubjectLocalName(i);
+        if (name != null) {
+          // HTML elements match the lower-cased name, and other elements
+          // match the name as given
+          String lowerName = DataUtilities.ToLowerCaseAscii(name);
+          AddToBucket(this.byLocalName, lowerName, entry);
+          if (!lowerName.equals(name)) {
+            AddToBucket(this.byLocalName, name, entry);
+          }
+          continue;
+        }
+        this.universal.add(entry);
+      }
+      return rule;
+    }
+
+    /**
+     * Adds a rule that matches elements accepted by a filter. The filter is
+     * called for every element, and it may look at any part of the
+     * document.
+     * @param filter An element filter.
+     * @return The index of the new rule in the lists returned by MatchAll.
+     * @throws NullPointerException The parameter {@code filter} is null.
+     */
+    public int Add(IElementFilter filter) {
+      if (filter == null) {
+        throw new NullPointerException("filter");
+      }
+      int rule = this.ruleCount++;
+      this.universal.add(new Entry(rule, filter));
+      return rule;
+    }
+
+    /**
+     * Gets the number of rules in this set.
+     * @return The number of rules.
+     */
+    public int GetRuleCount() {
+      return this.ruleCount;
+    }
+
+    private static void AddToBucket(
+      Map<String, List<Entry>> buckets,
+      String key,
+      Entry entry) {
+      List<Entry> bucket = buckets.get(key);
+      if (bucket == null) {
+        bucket = new ArrayList<Entry>();
+        buckets.put(key, bucket);
+      }
+      bucket.add(entry);
+    }
+
+    /**
+     * Finds the descendants of a node that match each rule, walking the
+     * node's descendants only once.
+     * @param root A document or element.
+     * @return A list with one entry per rule, in the order the rules were
+     * added. Each entry lists the elements matching that rule in tree
+     * order.
+     * @throws NullPointerException The parameter {@code root} is null.
+     */
+    public List<List<IElement>> MatchAll(INode root) {
+      if (root == null) {
+        throw new NullPointerException("root");
+      }
+      List<List<IElement>> ret = new ArrayList<List<IElement>>(this.ruleCount);
+      for (int i = 0; i < this.ruleCount; ++i) {
+        ret.add(new ArrayList<IElement>());
+      }
+      // Last element added to each rule's list, so that an element
+      // matching several selectors of a rule is added only once
+      IElement[] lastMatch = new IElement[this.ruleCount];
+      INode node = CompiledSelector.NextInTreeOrder(root, root);
+      while (node != null) {
+        if (node instanceof IElement) {
+          IElement element = (IElement)node;
+          this.MatchBucket(
+            this.byLocalName.get(element.GetLocalName()),
+            element,
+            ret,
+            lastMatch);
+          if (this.byId.size() > 0) {
+            String id = element.GetId();
+            if (id != null) {
+              this.MatchBucket(this.byId.get(id), element, ret, lastMatch);
+            }
+          }
+          if (this.byClass.size() > 0) {
+            this.MatchClasses(element, ret, lastMatch);
+          }
+          this.MatchBucket(this.universal, element, ret, lastMatch);
+        }
+        node = CompiledSelector.NextInTreeOrder(node, root);
+      }
+      return ret;
+    }
+
+    private void MatchClasses(
+      IElement element,
+      List<List<IElement>> ret,
+      IElement[] lastMatch) {
+      String classes = element.GetAttribute("class");
+      if (classes == null) {
+        return;
+      }
+      int length = classes.length();
+      int start = 0;
+      while (start < length) {
+        while (start < length && CompiledSelector.IsSpace(
+          classes.charAt(start))) {
+          ++start;
+        }
+        int end = start;
+        while (end < length && !CompiledSelector.IsSpace(
+          classes.charAt(end))) {
+          ++end;
+        }
+        if (end > start) {
+          List<Entry> bucket = this.byClass.get(classes.substring(start,
+            end));
+          this.MatchBucket(bucket, element, ret, lastMatch);
+        }
+        start = end;
+      }
+    }
+
+    private void MatchBucket(
+      List<Entry> bucket,
+      IElement element,
+      List<List<IElement>> ret,
+      IElement[] lastMatch) {
+      if (bucket == null) {
+        return;
+      }
+      for (Entry entry : bucket) {
+        if (lastMatch[entry.rule] != element && entry.Matches(element)) {
+          lastMatch[entry.rule] = element;
+          ret.get(entry.rule).add(element);
+        }
+      }
+    }
+  }
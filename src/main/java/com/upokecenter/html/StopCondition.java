@@ -0,0 +1,142 @@
+package com.upokecenter.html;
+/*
+
+Licensed under the Expat License.
+
+Copyright (C) 2013 Peter Occil
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+import com.upokecenter.util.*;
+
+  /**
+   * A condition that ends parsing early, leaving a partial document. This is
+   * useful when only part of a document is needed, such as the metadata in
+   * its head. Conditions can be combined with the Or method.
+   */
+  public final class StopCondition {
+    private final boolean bodyReached;
+    private final String[] closedNames;
+    private final long byteCount;
+
+    private StopCondition(
+      boolean bodyReached,
+      String[] closedNames,
+      long byteCount) {
+      this.bodyReached = bodyReached;
+      this.closedNames = closedNames;
+      this.byteCount = byteCount;
+    }
+
+    /**
+     * Gets a condition that's met once the document's body (or frameset) is
+     * reached, that is, once everything in the document's head is parsed.
+     * @return A stop condition.
+     */
+    public static StopCondition BodyReached() {
+      return new StopCondition(true, new String[0], -1);
+    }
+
+    /**
+     * Gets a condition that's met once an HTML element with the given name is
+     * closed.
+     * @param localName The element's local name, compared case-insensitively.
+     * @return A stop condition.
+     * @throws NullPointerException The parameter {@code localName} is null.
+     */
+    public static StopCondition ElementClosed(String localName) {
+      if (localName == null) {
+        throw new NullPointerException("localName");
+      }
+      return new StopCondition(
+        false,
+        new String[] { DataUtilities.ToLowerCaseAscii(localName) },
+        -1);
+    }
+
+    /**
+     * Gets a condition that's met once the given number of bytes of the
+     * document was read.
+     * @param byteCount The number of bytes.
+     * @return A stop condition.
+     * @throws IllegalArgumentException The parameter {@code byteCount} is
+     * less than 0.
+     */
+    public static StopCondition BytesConsumed(long byteCount) {
+      if (byteCount < 0) {
+        throw new IllegalArgumentException("byteCount");
+      }
+      return new StopCondition(false, new String[0], byteCount);
+    }
+
+    /**
+     * Gets a condition that's met when either this condition or another one
+     * is met.
+     * @param other Another stop condition.
+     * @return A stop condition.
+     * @throws NullPointerException The parameter {@code other} is null.
+     */
+    public StopCondition Or(StopCondition other) {
+      if (other == null) {
+        throw new NullPointerException("other");
+      }
+      String[] names = new String[this.closedNames.length +
+        other.closedNames.length];
+      System.arraycopy(this.closedNames, 0, names, 0, this.closedNames.length);
+      System.arraycopy(
+        other.closedNames,
+        0,
+        names,
+        this.closedNames.length,
+        other.closedNames.length);
+      long bytes = (this.byteCount < 0) ? other.byteCount :
+        ((other.byteCount < 0) ? this.byteCount :
+        Math.min(this.byteCount, other.byteCount));
+      return new StopCondition(
+        this.bodyReached || other.bodyReached,
+        names,
+        bytes);
+    }
+
+    boolean IsBodyReached() {
+      return this.bodyReached;
+    }
+
+    long GetByteCount() {
+      return this.byteCount;
+    }
+
+    boolean IsClosedElement(IElement element) {
+      if (!HtmlCommon.HTML_NAMESPACE.equals(element.GetNamespaceURI())) {
+        return false;
+      }
+      String name = element.GetLocalName();
+      for (String closedName : this.closedNames) {
+        if (closedName.equals(name)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    boolean HasClosedElements() {
+      return this.closedNames.length > 0;
+    }
+  }
@@ -0,0 +1,48 @@
+package com.upokecenter.html;
+/*
+
+Licensed under the Expat License.
+
+Copyright (C) 2013 Peter Occil
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+import java.util.*;
+
+import com.upokecenter.util.*;
+
+  /**
+   * An element filter that accepts elements with any of a set of local
+   * names, compared case-insensitively.
+   */
+  final class TagNameFilter implements IElementFilter {
+    private final Set<String> names = new HashSet<String>();
+
+    public TagNameFilter(Collection<String> names) {
+      for (String name : names) {
+        this.names.add(DataUtilities.ToLowerCaseAscii(name));
+      }
+    }
+
+    public boolean IsMatch(IElement element) {
+      return this.names.contains(
+        DataUtilities.ToLowerCaseAscii(element.GetLocalName()));
+    }
+  }
@@ -34,6 +34,20 @@ THE SOFTWARE.
     public final StringBuilder getValueText() { return propVarvaluetext; }
 private final StringBuilder propVarvaluetext;
 
+    void AppendCodePoint(int ch) {
+      StringBuilder builder = this.propVarvaluetext;
+      if (ch <= 0xffff) {
+        builder.append((char)ch);
+      } else if (ch <= 0x10ffff) {
+        builder.append((char)((((ch - 0x10000) >> 10) & 0x3ff) | 0xd800));
+        builder.append((char)(((ch - 0x10000) & 0x3ff) | 0xdc00));
+      }
+    }
+
+    void AppendText(CharSequence str) {
+      this.propVarvaluetext.append(str);
+    }
+
     public String GetData() {
       return this.getValueText().toString();
     }
@@ -110,7 +110,8 @@ import com.upokecenter.util.*;
       stack.add(item);
       if (node instanceof IDocument) {
         boolean beforeElement = true;
-        for (INode child : node.GetChildNodes()) {
+        for (INode child = node.GetFirstChild(); child != null;
+          child = child.GetNextSibling()) {
           if (child instanceof IElement) {
             beforeElement = false;
             Canonicalize(
@@ -128,7 +129,8 @@ import com.upokecenter.util.*;
       } else if (includeRoot) {
         Canonicalize(node, builder, stack, prefixList, true, withComments);
       } else {
-        for (INode child : node.GetChildNodes()) {
+        for (INode child = node.GetFirstChild(); child != null;
+          child = child.GetNextSibling()) {
           Canonicalize(child, builder, stack, prefixList, true, withComments);
         }
       }
@@ -274,7 +276,8 @@ import com.upokecenter.util.*;
             attr.GetValue());
         }
         builder.append('>');
-        for (INode child : node.GetChildNodes()) {
+        for (INode child = node.GetFirstChild(); child != null;
+          child = child.GetNextSibling()) {
           Canonicalize(
             child,
             builder,
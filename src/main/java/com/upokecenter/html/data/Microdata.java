@@ -44,7 +44,8 @@ private IElement propVarelement;
         return valueIndex;
       }
       ++valueIndex;
-      for (INode child : root.GetChildNodes()) {
+      for (INode child = root.GetFirstChild(); child != null;
+        child = child.GetNextSibling()) {
         int idx = GetElementIndex(child, e, runningIndex);
         if (idx >= 0) {
           return idx;
@@ -167,7 +168,8 @@ private IElement propVarelement;
       List<IElement> pending = new ArrayList<IElement>();
       memory.add(root);
       IDocument document = root.GetOwnerDocument();
-      for (INode child : root.GetChildNodes()) {
+      for (INode child = root.GetFirstChild(); child != null;
+        child = child.GetNextSibling()) {
         if (child instanceof IElement) {
           pending.add((IElement)child);
         }
@@ -188,7 +190,8 @@ private IElement propVarelement;
         }
         memory.add(current);
         if (current.GetAttribute("itemscope") == null) {
-          for (INode child : current.GetChildNodes()) {
+          for (INode child = current.GetFirstChild(); child != null;
+            child = child.GetNextSibling()) {
             if (child instanceof IElement) {
               pending.add((IElement)child);
             }
@@ -211,7 +211,8 @@ import com.upokecenter.cbor.*;
 
     private static List<IElement> GetChildElements(INode e) {
       List<IElement> elements = new ArrayList<IElement>();
-      for (INode child : e.GetChildNodes()) {
+      for (INode child = e.GetFirstChild(); child != null;
+        child = child.GetNextSibling()) {
         if (child instanceof IElement) {
           elements.add((IElement)child);
         }
@@ -427,7 +428,8 @@ import com.upokecenter.cbor.*;
     }
 
     private static IElement GetFirstChildElement(INode e) {
-      for (INode child : e.GetChildNodes()) {
+      for (INode child = e.GetFirstChild(); child != null;
+        child = child.GetNextSibling()) {
         if (child instanceof IElement) {
           return (IElement)child;
         }
@@ -793,7 +795,8 @@ import com.upokecenter.cbor.*;
 
     private static boolean HasSingleChildElementNamed(INode e, String name) {
       boolean seen = false;
-      for (INode child : e.GetChildNodes()) {
+      for (INode child = e.GetFirstChild(); child != null;
+        child = child.GetNextSibling()) {
         if (child instanceof IElement) {
           if (seen) {
             return false;
@@ -1208,7 +1211,8 @@ import com.upokecenter.cbor.*;
           // for holding child microformats with no
           // property class
           CBORObject subChildren = CBORObject.NewArray();
-          for (INode child : root.GetChildNodes()) {
+          for (INode child = root.GetFirstChild(); child != null;
+            child = child.GetNextSibling()) {
             if (child instanceof IElement) {
               PropertyWalk(
                 (IElement)child,
@@ -1286,7 +1290,8 @@ import com.upokecenter.cbor.*;
           return;
         }
       }
-      for (INode child : root.GetChildNodes()) {
+      for (INode child = root.GetFirstChild(); child != null;
+        child = child.GetNextSibling()) {
         if (child instanceof IElement) {
           PropertyWalk((IElement)child, properties, children);
         }
@@ -1305,7 +1310,8 @@ import com.upokecenter.cbor.*;
           }
         }
       }
-      for (INode child : root.GetChildNodes()) {
+      for (INode child = root.GetFirstChild(); child != null;
+        child = child.GetNextSibling()) {
         if (child instanceof IElement) {
           RelWalk((IElement)child, properties);
         }
@@ -112,7 +112,8 @@ private ChainingDirection propVarvaluedirection;
 
     private static String GetTextNodeText(INode node) {
       StringBuilder builder = new StringBuilder();
-      for (INode child : node.GetChildNodes()) {
+      for (INode child = node.GetFirstChild(); child != null;
+        child = child.GetNextSibling()) {
         if (child.GetNodeType() == NodeType.TEXT_NODE) {
           builder.append(((IText)child).GetData());
         } else {
@@ -1186,7 +1187,8 @@ ValueOrDefault(prefixMapping, prefixName, null);
         }
       }
       // Step 13
-      for (INode childNode : node.GetChildNodes()) {
+      for (INode childNode = node.GetFirstChild(); childNode != null;
+        childNode = childNode.GetNextSibling()) {
         IElement childElement;
         EvalContext oldContext = this.context;
         if (childNode instanceof IElement) {
@@ -47,7 +47,8 @@ import com.upokecenter.rdf.*;
 
     private static String GetTextNodeText(INode node) {
       StringBuilder builder = new StringBuilder();
-      for (INode child : node.GetChildNodes()) {
+      for (INode child = node.GetFirstChild(); child != null;
+        child = child.GetNextSibling()) {
         if (child.GetNodeType() == NodeType.TEXT_NODE) {
           builder.append(((IText)child).GetData());
         } else {
@@ -120,7 +121,8 @@ import com.upokecenter.rdf.*;
     }
 
     private static boolean HasNonTextChildNodes(INode node) {
-      for (INode child : node.GetChildNodes()) {
+      for (INode child = node.GetFirstChild(); child != null;
+        child = child.GetNextSibling()) {
         if (child.GetNodeType() != NodeType.TEXT_NODE) {
           return true;
         }
@@ -387,7 +389,8 @@ prefixMapping.get(prefixName);
       RDFa.EvalContext evalContext,
       RDFTerm subject) {
       String language = evalContext.getValueLanguage();
-      for (INode child : node.GetChildNodes()) {
+      for (INode child = node.GetFirstChild(); child != null;
+        child = child.GetNextSibling()) {
         IElement childElement = (child instanceof IElement) ?
           ((IElement)child) : null;
         if (childElement == null) {
@@ -408,7 +411,8 @@ prefixMapping.get(prefixName);
               continue;
             }
           }
-          for (INode child2 : child.GetChildNodes()) {
+          for (INode child2 = child.GetFirstChild(); child2 != null;
+            child2 = child2.GetNextSibling()) {
             IElement childElement2 = (child2 instanceof IElement) ? ((IElement)child2) :
               null;
             if (childElement2 == null) {
@@ -741,8 +745,8 @@ prefixMapping.get(prefixName);
       }
       // Step 13
       if (recurse) {
-        List<INode> childNodes = node.GetChildNodes();
-        for (INode childNode : childNodes) {
+        for (INode childNode = node.GetFirstChild(); childNode != null;
+          childNode = childNode.GetNextSibling()) {
           IElement childElement;
           RDFa.EvalContext oldContext = this.context;
           if (childNode instanceof IElement) {
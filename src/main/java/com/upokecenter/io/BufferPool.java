@@ -0,0 +1,95 @@
+package com.upokecenter.io;
+/*
+Written in 2013 by Peter Occil.
+Any copyright to this work is released to the Public Domain.
+In case this is not possible, this work is also
+licensed under the Unlicense: https://unlicense.org/
+
+*/
+
+  /**
+   * Keeps buffers that readers are done with, one of each type per thread, so
+   * that readers created later on the same thread can reuse them rather
+   * than allocate new ones for each document.
+   */
+  final class BufferPool {
+    /**
+     * The longest buffer that is kept for reuse.
+     */
+    static final int MaxPooledLength = 1 << 16;
+
+    private static final ThreadLocal<BufferPool> Pools = new
+    ThreadLocal<BufferPool>() {
+      @Override protected BufferPool initialValue() {
+        return new BufferPool();
+      }
+    };
+
+    private int[] ints;
+    private byte[] bytes;
+
+    private BufferPool() {
+    }
+
+    /**
+     * Gets an integer buffer from the current thread's pool, or a new one if
+     * the pool has none long enough.
+     * @param minLength The buffer's minimum length.
+     * @return An integer buffer of at least the given length.
+     */
+    static int[] GetInts(int minLength) {
+      BufferPool pool = Pools.get();
+      int[] ret = pool.ints;
+      if (ret != null && ret.length >= minLength) {
+        pool.ints = null;
+        return ret;
+      }
+      return new int[minLength];
+    }
+
+    /**
+     * Gets a byte buffer from the current thread's pool, or a new one if the
+     * pool has none long enough.
+     * @param minLength The buffer's minimum length.
+     * @return A byte buffer of at least the given length.
+     */
+    static byte[] GetBytes(int minLength) {
+      BufferPool pool = Pools.get();
+      byte[] ret = pool.bytes;
+      if (ret != null && ret.length >= minLength) {
+        pool.bytes = null;
+        return ret;
+      }
+      return new byte[minLength];
+    }
+
+    /**
+     * Returns an integer buffer to the current thread's pool. The caller must
+     * not use the buffer afterwards.
+     * @param buffer The buffer to return, or null.
+     */
+    static void Release(int[] buffer) {
+      if (buffer == null || buffer.length > MaxPooledLength) {
+        return;
+      }
+      BufferPool pool = Pools.get();
+      if (pool.ints == null || pool.ints.length < buffer.length) {
+        pool.ints = buffer;
+      }
+    }
+
+    /**
+     * Returns a byte buffer to the current thread's pool. The caller must not
+     * use the buffer afterwards.
+     * @param buffer The buffer to return, or null.
+     */
+    static void Release(byte[] buffer) {
+      if (buffer == null || buffer.length > MaxPooledLength) {
+        return;
+      }
+      BufferPool pool = Pools.get();
+      if (pool.bytes == null || pool.bytes.length < buffer.length) {
+        pool.bytes = buffer;
+      }
+    }
+  }
@@ -0,0 +1,77 @@
+package com.upokecenter.io;
+/*
+Written in 2013 by Peter Occil.
+Any copyright to this work is released to the Public Domain.
+In case this is not possible, this work is also
+licensed under the Unlicense: https://unlicense.org/
+
+*/
+
+import java.nio.*;
+import com.upokecenter.util.*;
+
+  /**
+   * An input reader that reads the remaining bytes of a byte buffer, such as a
+   * memory-mapped file, without copying them. Reading moves the buffer's
+   * position.
+   */
+  public final class ByteBufferReader implements IReader {
+    private final ByteBuffer buffer;
+
+    /**
+     * Initializes a new instance of the {@link
+     * com.upokecenter.io.ByteBufferReader} class.
+     * @param buffer A byte buffer.
+     * @throws NullPointerException The parameter {@code buffer} is null.
+     */
+    public ByteBufferReader(ByteBuffer buffer) {
+      if (buffer == null) {
+        throw new NullPointerException("buffer");
+      }
+      this.buffer = buffer;
+    }
+
+    /**
+     * Reads the next byte.
+     * @return The next byte, or -1 at the end of the buffer.
+     */
+    public int read() {
+      return this.buffer.hasRemaining() ? ((int)this.buffer.get()) & 0xff :
+        -1;
+    }
+
+    /**
+     * Reads bytes into a portion of an array.
+     * @param bytes A byte array.
+     * @param offset Index in the array to start storing bytes.
+     * @param length Maximum number of bytes to read.
+     * @return The number of bytes read, or -1 at the end of the buffer.
+     * @throws NullPointerException The parameter {@code bytes} is null.
+     */
+    public int Read(byte[] bytes, int offset, int length) {
+      if (bytes == null) {
+        throw new NullPointerException("bytes");
+      }
+      if (offset < 0) {
+        throw new IllegalArgumentException("offset(" + offset +
+          ") is less than 0");
+      }
+      if (length < 0) {
+        throw new IllegalArgumentException("length(" + length +
+          ") is less than 0");
+      }
+      if (bytes.length - offset < length) {
+        throw new IllegalArgumentException("bytes's length minus " + offset +
+          "(" + (bytes.length - offset) + ") is less than " + length);
+      }
+      if (length == 0) {
+        return 0;
+      }
+      int count = Math.min(length, this.buffer.remaining());
+      if (count == 0) {
+        return -1;
+      }
+      this.buffer.get(bytes, offset, count);
+      return count;
+    }
+  }
@@ -16,7 +16,7 @@ import com.upokecenter.util.*;
    * is disabled, no further bytes are put into the buffer, but any remaining
    * bytes in the buffer will still be used until it's exhausted.
    */
-  public final class ConditionalBufferReader implements IByteReader {
+  public final class ConditionalBufferReader implements IReader {
     private byte[] buffer = null;
     private int pos = 0;
     private int endpos = 0;
@@ -25,14 +25,35 @@ import com.upokecenter.util.*;
     private int posAtMark = 0;
     private long marklimit = 0;
     private IReader reader = null;
+    private final int maxBufferSize;
 
     /**
      * Initializes a new instance of the ConditionalBufferReader class.
      * @param input The parameter {@code input} is an IReader object.
      */
     public ConditionalBufferReader(IReader input) {
+      this(input, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Initializes a new instance of the ConditionalBufferReader class with a
+     * limit on the buffer's size. Once the buffer would have to grow past
+     * that limit while no mark is set, buffering is disabled as though
+     * DisableBuffer were called. The buffer is taken from a per-thread pool
+     * and returned to it once it's exhausted after buffering is disabled.
+     * @param input The parameter {@code input} is an IReader object.
+     * @param maxBufferSize The maximum number of bytes to buffer.
+     * @throws IllegalArgumentException The parameter {@code maxBufferSize} is
+     * less than 1.
+     */
+    public ConditionalBufferReader(IReader input, int maxBufferSize) {
+      if (maxBufferSize < 1) {
+        throw new IllegalArgumentException("maxBufferSize(" + maxBufferSize +
+          ") is less than 1");
+      }
       this.reader = input;
-      this.buffer = new byte[1024];
+      this.maxBufferSize = maxBufferSize;
+      this.buffer = BufferPool.GetBytes(Math.min(1024, maxBufferSize));
     }
 
     /**
@@ -44,10 +65,15 @@ import com.upokecenter.util.*;
     public void DisableBuffer() {
       this.disabled = true;
       if (this.buffer != null && this.IsDisabled()) {
-        this.buffer = null;
+        this.ReleaseBuffer();
       }
     }
 
+    private void ReleaseBuffer() {
+      BufferPool.Release(this.buffer);
+      this.buffer = null;
+    }
+
     private int DoRead(byte[] buffer, int offset, int byteCount) {
       if (this.markpos < 0) {
         return this.ReadInternal(buffer, offset, byteCount);
@@ -62,7 +88,7 @@ import com.upokecenter.util.*;
             this.marklimit = 0;
             this.markpos = -1;
             if (this.buffer != null && this.IsDisabled()) {
-              this.buffer = null;
+              this.ReleaseBuffer();
             }
           }
         }
@@ -121,7 +147,7 @@ import com.upokecenter.util.*;
             this.marklimit = 0;
             this.markpos = -1;
             if (this.buffer != null && this.IsDisabled()) {
-              this.buffer = null;
+              this.ReleaseBuffer();
             }
           }
         }
@@ -167,6 +193,12 @@ import com.upokecenter.util.*;
       if (this.pos < this.endpos) {
         return this.buffer[this.pos++] & 0xff;
       }
+      if (this.pos >= this.buffer.length && this.markpos < 0 &&
+        this.buffer.length * 2 > this.maxBufferSize) {
+        // Buffer is full; stop buffering
+        this.DisableBuffer();
+        return this.reader.read();
+      }
       // No room, read next byte and put it in buffer
       int c = this.reader.read();
       if (c < 0) {
@@ -213,6 +245,9 @@ import com.upokecenter.util.*;
           offset += c;
           unitCount -= c;
           total += c;
+          if (this.IsDisabled()) {
+            this.ReleaseBuffer();
+          }
         }
         // Read directly from the reader for the rest
         if (unitCount > 0) {
@@ -243,6 +278,12 @@ import com.upokecenter.util.*;
       }
       // expand the buffer
       if (this.pos + unitCount > this.buffer.length) {
+        if (this.markpos < 0 &&
+          (long)this.buffer.length * 2 + unitCount > this.maxBufferSize) {
+          // Buffer is full; stop buffering and read the rest directly
+          this.DisableBuffer();
+          return this.ReadInternal(buf, offset, unitCount);
+        }
         byte[] newBuffer = new byte[(this.buffer.length * 2) + unitCount];
         System.arraycopy(this.buffer, 0, newBuffer, 0, this.buffer.length);
         this.buffer = newBuffer;
@@ -283,6 +324,15 @@ import com.upokecenter.util.*;
       this.pos = this.posAtMark;
     }
 
+    /**
+     * Gets whether Rewind can still be called, that is, whether buffering
+     * wasn't disabled.
+     * @return Either {@code true} or {@code false}.
+     */
+    public boolean CanRewind() {
+      return !this.disabled;
+    }
+
     /**
      * Resets the reader to the beginning of the input. This will invalidate the
      * Mark placed on the reader, if any. Throws if DisableBuffer() was already
@@ -25,6 +25,27 @@ licensed under the Unlicense: https://unlicense.org/
      */
     void MoveBack(int count);
 
+    /**
+     * Reads characters into an array until one of three given characters is
+     * next, without reading that character, or until the array portion is
+     * full or the input ends. Sets a mark first if none is set.
+     * @param buf An array to store the characters in.
+     * @param offset Index in the array to start storing characters.
+     * @param length Maximum number of characters to read.
+     * @param delim1 A character that ends the run.
+     * @param delim2 Another character that ends the run.
+     * @param delim3 A third character that ends the run.
+     * @return The number of characters read, which is 0 if the input ended
+     * or one of the given characters is next.
+     */
+    int ReadUntil(
+      int[] buf,
+      int offset,
+      int length,
+      int delim1,
+      int delim2,
+      int delim3);
+
     /**
      * Sets a mark on the stream's current position.
      * @return The return value is not documented yet.
@@ -98,10 +98,19 @@ licensed under the Unlicense: https://unlicense.org/
       }
     }
 
+    /**
+     * The default maximum mark window, in characters.
+     */
+    public static final int DefaultMaxMarkWindow = 1 << 14;
+
     private int pos;
     private int endpos;
     private boolean haveMark;
     private int[] buffer;
+    // Number of characters discarded from the start of the buffer since
+    // the last hard mark
+    private int discarded;
+    private final int maxMarkWindow;
     private List<ICharacterInput> stack = new ArrayList<ICharacterInput>();
 
     /**
@@ -110,7 +119,29 @@ licensed under the Unlicense: https://unlicense.org/
      * @param source The parameter {@code source} is an ICharacterInput object.
      */
     public StackableCharacterInput(ICharacterInput source) {
+      this(source, DefaultMaxMarkWindow);
+    }
+
+    /**
+     * Initializes a new instance of the {@link
+     * com.upokecenter.util.StackableCharacterInput} class with a maximum
+     * mark window. Once the buffer kept for a mark reaches that many
+     * characters, characters well before the current position are
+     * discarded rather than the buffer growing further, so it's an error
+     * to move back to them. The buffer is taken from a per-thread pool and
+     * returned to it by ReleaseBuffer.
+     * @param source The parameter {@code source} is an ICharacterInput object.
+     * @param maxMarkWindow The maximum number of characters kept for a mark.
+     * @throws IllegalArgumentException The parameter {@code maxMarkWindow} is
+     * less than 64.
+     */
+    public StackableCharacterInput(ICharacterInput source, int maxMarkWindow) {
+      if (maxMarkWindow < 64) {
+        throw new IllegalArgumentException("maxMarkWindow(" + maxMarkWindow +
+          ") is less than 64");
+      }
       this.stack.add(source);
+      this.maxMarkWindow = maxMarkWindow;
     }
 
     /**
@@ -118,7 +149,17 @@ licensed under the Unlicense: https://unlicense.org/
      * @return A 32-bit signed integer.
      */
     public int GetMarkPosition() {
-      return this.pos;
+      return this.pos + this.discarded;
+    }
+
+    /**
+     * Gets the number of characters read from the underlying inputs that this
+     * object will return again, because of a call to MoveBack or
+     * SetMarkPosition.
+     * @return The number of characters buffered past the current position.
+     */
+    public int GetUnreadCount() {
+      return this.haveMark ? this.endpos - this.pos : 0;
     }
 
     /**
@@ -193,11 +234,7 @@ licensed under the Unlicense: https://unlicense.org/
         if (c < 0) {
           return c;
         }
-        if (this.pos >= this.buffer.length) {
-          int[] newBuffer = new int[this.buffer.length * 2];
-          System.arraycopy(this.buffer, 0, newBuffer, 0, this.buffer.length);
-          this.buffer = newBuffer;
-        }
+        this.MakeRoom(1);
         // System.out.println(this);
         this.buffer[this.pos++] = c;
         ++this.endpos;
@@ -272,12 +309,7 @@ licensed under the Unlicense: https://unlicense.org/
           this.pos += unitCount;
           return unitCount;
         }
-        // expand the buffer
-        if (this.pos + unitCount > this.buffer.length) {
-          int[] newBuffer = new int[(this.buffer.length * 2) + unitCount];
-          System.arraycopy(this.buffer, 0, newBuffer, 0, this.buffer.length);
-          this.buffer = newBuffer;
-        }
+        this.MakeRoom(this.pos + unitCount - this.endpos);
         count = this.ReadInternal(
             this.buffer,
             this.endpos,
@@ -306,6 +338,126 @@ licensed under the Unlicense: https://unlicense.org/
       }
     }
 
+    /**
+     * Reads characters into an array until one of three given characters is
+     * next, without reading that character, or until the array portion is
+     * full or the input ends. The characters are copied from this object's
+     * buffer in bulk rather than read one at a time. Sets a mark first if
+     * none is set.
+     * @param buf An array to store the characters in.
+     * @param offset Index in the array to start storing characters.
+     * @param length Maximum number of characters to read.
+     * @param delim1 A character that ends the run.
+     * @param delim2 Another character that ends the run.
+     * @param delim3 A third character that ends the run.
+     * @return The number of characters read.
+     * @throws NullPointerException The parameter {@code buf} is null.
+     */
+    public int ReadUntil(
+      int[] buf,
+      int offset,
+      int length,
+      int delim1,
+      int delim2,
+      int delim3) {
+      if (buf == null) {
+        throw new NullPointerException("buf");
+      }
+      if (offset < 0) {
+        throw new IllegalArgumentException("offset(" + offset +
+          ") is less than 0");
+      }
+      if (length < 0) {
+        throw new IllegalArgumentException("length(" + length +
+          ") is less than 0");
+      }
+      if (buf.length - offset < length) {
+        throw new IllegalArgumentException("buf's length minus " + offset + "(" +
+          (buf.length - offset) + ") is less than " + length);
+      }
+      if (!this.haveMark) {
+        this.SetHardMark();
+      }
+      int count = 0;
+      while (count < length) {
+        if (this.pos == this.endpos) {
+          this.MakeRoom(1);
+          int read = this.ReadInternal(
+              this.buffer,
+              this.endpos,
+              this.buffer.length - this.endpos);
+          if (read <= 0) {
+            break;
+          }
+          this.endpos += read;
+        }
+        int end = Math.min(this.endpos, this.pos + length - count);
+        int p = this.pos;
+        while (p < end) {
+          int c = this.buffer[p];
+          if (c == delim1 || c == delim2 || c == delim3) {
+            break;
+          }
+          ++p;
+        }
+        System.arraycopy(this.buffer, this.pos, buf, offset + count, p - this.pos);
+        count += p - this.pos;
+        this.pos = p;
+        if (p < end) {
+          break;
+        }
+      }
+      return count;
+    }
+
+    /**
+     * Returns this object's mark buffer to the current thread's pool, and
+     * clears the mark. Characters buffered past the current position are
+     * discarded, so this is meant for when reading is finished.
+     */
+    public void ReleaseBuffer() {
+      BufferPool.Release(this.buffer);
+      this.buffer = null;
+      this.haveMark = false;
+      this.pos = 0;
+      this.endpos = 0;
+      this.discarded = 0;
+    }
+
+    // Makes room for at least the given number of characters after the
+    // buffered ones. Once the buffer reaches the maximum mark window,
+    // characters more than half a window before the current position are
+    // discarded; otherwise, the buffer grows.
+    private void MakeRoom(int count) {
+      if (this.buffer.length - this.endpos >= count) {
+        return;
+      }
+      int keep = this.maxMarkWindow / 2;
+      if (this.buffer.length >= this.maxMarkWindow && this.pos > keep) {
+        int drop = this.pos - keep;
+        System.arraycopy(
+          this.buffer,
+          drop,
+          this.buffer,
+          0,
+          this.endpos - drop);
+        this.pos -= drop;
+        this.endpos -= drop;
+        this.discarded += drop;
+        if (this.buffer.length - this.endpos >= count) {
+          return;
+        }
+      }
+      int newLength = Math.max(this.buffer.length * 2, this.endpos + count);
+      if (newLength > this.maxMarkWindow &&
+        this.endpos + count <= this.maxMarkWindow) {
+        newLength = this.maxMarkWindow;
+      }
+      int[] newBuffer = new int[newLength];
+      System.arraycopy(this.buffer, 0, newBuffer, 0, this.endpos);
+      this.buffer = newBuffer;
+    }
+
     private int ReadInternal() {
       if (this.stack.size() == 0) {
         return -1;
@@ -339,10 +491,11 @@ licensed under the Unlicense: https://unlicense.org/
         }
         count += c;
         unitCount -= c;
-        if (unitCount == 0) {
-          break;
-        }
-        this.stack.remove(index);
+        // A short read doesn't necessarily mean the input ended, as with
+        // input that arrives in chunks, so return what was read and leave
+        // the input on the stack; it's removed once it reports no more
+        // characters
+        break;
       }
       return count;
     }
@@ -352,8 +505,9 @@ licensed under the Unlicense: https://unlicense.org/
      * @return A 32-bit signed integer.
      */
     public int SetHardMark() {
+      this.discarded = 0;
       if (this.buffer == null) {
-        this.buffer = new int[16];
+        this.buffer = BufferPool.GetInts(16);
         this.pos = 0;
         this.endpos = 0;
         this.haveMark = true;
@@ -382,6 +536,7 @@ licensed under the Unlicense: https://unlicense.org/
      * @param pos The parameter {@code pos} is a 32-bit signed integer.
      */
     public void SetMarkPosition(int pos) {
+      pos -= this.discarded;
       if (!this.haveMark || pos < 0 || pos > this.endpos) {
         throw new IllegalStateException();
       }
@@ -0,0 +1,314 @@
+package com.upokecenter.html;
+/*
+
+Licensed under the Expat License.
+
+Copyright (C) 2013 Peter Occil
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+
+import java.util.*;
+import org.junit.Assert;
+import org.junit.Test;
+
+  public class CompiledSelectorTest {
+    private static final String Page = "<div id=root>" +
+      "<ul id=list>" +
+      "<li id=l1 class='a b'>one</li>" +
+      "<li id=l2 class=b lang=en-US>two</li>" +
+      "<li id=l3 title=x-y>three</li>" +
+      "<li id=l4 data-x='hello world'>four</li>" +
+      "<li id=l5 class=A></li>" +
+      "</ul>" +
+      "<p id=p1>a</p><span id=s1></span><p id=p2></p>" +
+      "</div>";
+
+    private static String Ids(String selector) {
+      IDocument doc = HtmlDocument.FromString(Page);
+      List<IElement> elements = CompiledSelector.Compile(selector)
+        .QueryAll(doc);
+      StringBuilder sb = new StringBuilder();
+      for (IElement element : elements) {
+        if (sb.length() > 0) {
+          sb.append(' ');
+        }
+        sb.append(element.GetId());
+      }
+      return sb.toString();
+    }
+
+    private static void AssertInvalid(String selector) {
+      try {
+        CompiledSelector.Compile(selector);
+        Assert.fail(selector);
+      } catch (IllegalArgumentException ex) {
+        // Expected
+      }
+    }
+
+    @Test
+    public void TestSimpleSelectors() {
+      Assert.assertEquals("l1 l2 l3 l4 l5", Ids("li"));
+      Assert.assertEquals("l1 l2 l3 l4 l5", Ids("LI"));
+      Assert.assertEquals("p2", Ids("#p2"));
+      Assert.assertEquals("l1 l2", Ids(".b"));
+      Assert.assertEquals("l1", Ids("li.a.b"));
+      Assert.assertEquals("l5", Ids(".A"));
+      Assert.assertEquals("l1 p1 p2", Ids("p, #l1"));
+      Assert.assertEquals("", Ids("#nothing"));
+    }
+
+    @Test
+    public void TestCombinators() {
+      Assert.assertEquals("l1 l2 l3 l4 l5", Ids("#root li"));
+      Assert.assertEquals("", Ids("#root > li"));
+      Assert.assertEquals("l1 l2 l3 l4 l5", Ids("#root > ul > li"));
+      Assert.assertEquals("l2", Ids("#l1 + li"));
+      Assert.assertEquals("l3 l4 l5", Ids("#l2 ~ li"));
+      Assert.assertEquals("s1", Ids("p+span"));
+      Assert.assertEquals("p2", Ids("ul ~ span ~ p"));
+      Assert.assertEquals("p1 p2", Ids("div>ul~p"));
+    }
+
+    private static final String[] Compounds = {
+      "div", "p", "span", ".a", "*", "p.a", "div.b", "section",
+    };
+
+    private static final String[] Combinators = { " ", " > ", " + ", " ~ " };
+
+    private static final String[] Parts = {
+      "<div>", "<div class=b>", "</div>", "<p>", "<p class=a>", "</p>",
+      "<span>", "<span class='a b'>", "</span>", "<section>", "</section>",
+    };
+
+    // Matches a selector made of the compounds and combinators above by
+    // trying every ancestor and earlier sibling, for comparison
+    private static boolean NaiveMatches(
+      IElement element,
+      String[] compounds,
+      String[] combinators,
+      int index) {
+      if (!CompiledSelector.Compile(compounds[index]).Matches(element)) {
+        return false;
+      }
+      if (index == 0) {
+        return true;
+      }
+      String combinator = combinators[index - 1];
+      boolean sibling = combinator.equals(" + ") || combinator.equals(" ~ ");
+      boolean repeat = combinator.equals(" ") || combinator.equals(" ~ ");
+      INode node = element;
+      while (true) {
+        if (sibling) {
+          node = node.GetParentNode().GetChildNodes().indexOf(node) > 0 ?
+            PreviousElementSibling(node) : null;
+        } else {
+          node = node.GetParentNode();
+        }
+        if (!(node instanceof IElement)) {
+          return false;
+        }
+        if (NaiveMatches((IElement)node, compounds, combinators, index - 1)) {
+          return true;
+        }
+        if (!repeat) {
+          return false;
+        }
+      }
+    }
+
+    private static INode PreviousElementSibling(INode node) {
+      List<INode> siblings = node.GetParentNode().GetChildNodes();
+      for (int i = siblings.indexOf(node) - 1; i >= 0; --i) {
+        if (siblings.get(i) instanceof IElement) {
+          return siblings.get(i);
+        }
+      }
+      return null;
+    }
+
+    @Test
+    public void TestCombinatorsAgainstNaiveMatching() {
+      Random random = new Random(20261018L);
+      for (int n = 0; n < 200; ++n) {
+        StringBuilder html = new StringBuilder();
+        int partCount = random.nextInt(40);
+        for (int i = 0; i < partCount; ++i) {
+          html.append(Parts[random.nextInt(Parts.length)]);
+        }
+        IDocument doc = HtmlDocument.FromString(html.toString());
+        List<IElement> all = doc.GetElementsByTagName("*");
+        for (int k = 0; k < 10; ++k) {
+          int count = 1 + random.nextInt(4);
+          String[] compounds = new String[count];
+          String[] combinators = new String[count - 1];
+          StringBuilder selector = new StringBuilder();
+          for (int i = 0; i < count; ++i) {
+            if (i > 0) {
+              combinators[i - 1] =
+                Combinators[random.nextInt(Combinators.length)];
+              selector.append(combinators[i - 1]);
+            }
+            compounds[i] = Compounds[random.nextInt(Compounds.length)];
+            selector.append(compounds[i]);
+          }
+          List<IElement> expected = new ArrayList<IElement>();
+          for (IElement element : all) {
+            if (NaiveMatches(element, compounds, combinators, count - 1)) {
+              expected.add(element);
+            }
+          }
+          Assert.assertEquals(
+            html + " " + selector,
+            expected,
+            doc.QuerySelectorAll(selector.toString()));
+        }
+      }
+    }
+
+    @Test(timeout = 5000)
+    public void TestDeepNesting() {
+      // Failed matches of the part left of a descendant combinator
+      // mustn't be retried at every higher ancestor
+      StringBuilder sb = new StringBuilder();
+      for (int i = 0; i < 2000; ++i) {
+        sb.append("<div>");
+      }
+      IDocument doc = HtmlDocument.FromString(sb.toString());
+      Assert.assertEquals(
+        0,
+        doc.QuerySelectorAll("section div div div div").size());
+      Assert.assertEquals(
+        0,
+        doc.QuerySelectorAll("section > div div > div div").size());
+      Assert.assertEquals(
+        1997,
+        doc.QuerySelectorAll("body div div div div").size());
+      sb = new StringBuilder("<section>");
+      for (int i = 0; i < 2000; ++i) {
+        sb.append("<p></p>");
+      }
+      doc = HtmlDocument.FromString(sb.toString());
+      Assert.assertEquals(0, doc.QuerySelectorAll("div ~ p ~ p ~ p").size());
+      Assert.assertEquals(
+        0,
+        doc.QuerySelectorAll("div p ~ p ~ p ~ p").size());
+      Assert.assertEquals(
+        1997,
+        doc.QuerySelectorAll("section p ~ p ~ p ~ p").size());
+    }
+
+    @Test
+    public void TestAttributeOperators() {
+      Assert.assertEquals("l3", Ids("[title]"));
+      Assert.assertEquals("l3", Ids("[title=x-y]"));
+      Assert.assertEquals("l3", Ids("[ title = 'x-y' ]"));
+      Assert.assertEquals("l4", Ids("[data-x~=world]"));
+      Assert.assertEquals("", Ids("[data-x~=wor]"));
+      Assert.assertEquals("l3", Ids("[title|=x]"));
+      Assert.assertEquals("", Ids("[title|=y]"));
+      Assert.assertEquals("l4", Ids("[data-x^=hel]"));
+      Assert.assertEquals("l4", Ids("[data-x$=\"rld\"]"));
+      Assert.assertEquals("l4", Ids("[data-x*='o w']"));
+      Assert.assertEquals("list l1 l2 l3 l4 l5", Ids("[ID^=l]"));
+    }
+
+    @Test
+    public void TestNth() {
+      Assert.assertEquals("l1 l3 l5", Ids("li:nth-child(odd)"));
+      Assert.assertEquals("l2 l4", Ids("li:nth-child(even)"));
+      Assert.assertEquals("l2 l4", Ids("li:nth-child(2n)"));
+      Assert.assertEquals("l3", Ids("li:nth-child(3)"));
+      Assert.assertEquals("l1 l4", Ids("li:nth-child(3n+1)"));
+      Assert.assertEquals("l1 l4", Ids("li:nth-child( 3n + 1 )"));
+      Assert.assertEquals("l1 l2", Ids("li:nth-child(-n+2)"));
+      Assert.assertEquals("l3 l4 l5", Ids("li:nth-child(n+3)"));
+      Assert.assertEquals("l2 l4", Ids("li:nth-last-child(2n)"));
+      Assert.assertEquals("list p1 s1 p2", Ids("#root > :nth-of-type(n)"));
+      Assert.assertEquals("p2", Ids("p:nth-of-type(2)"));
+      Assert.assertEquals("p1", Ids("p:nth-last-of-type(2)"));
+      Assert.assertEquals("l1", Ids("li:first-child"));
+      Assert.assertEquals("l5", Ids("li:last-child"));
+      Assert.assertEquals("list s1", Ids("#root > :only-of-type"));
+      Assert.assertEquals("l5 s1 p2", Ids("#root :empty"));
+    }
+
+    @Test
+    public void TestNot() {
+      Assert.assertEquals("l3 l4 l5", Ids("li:not(.b)"));
+      Assert.assertEquals("l1 l3 l4 l5", Ids("li:not( #l2 )"));
+      Assert.assertEquals("l1 l2 l3 l4", Ids("li:not(:last-child)"));
+      Assert.assertEquals("p1 s1 p2", Ids("#root > :not(ul)"));
+    }
+
+    @Test
+    public void TestMatches() {
+      IDocument doc = HtmlDocument.FromString(Page);
+      IElement element = doc.GetElementById("l2");
+      Assert.assertTrue(CompiledSelector.Compile("ul .b").Matches(element));
+      Assert.assertTrue(CompiledSelector.Compile("p, li").Matches(element));
+      Assert.assertFalse(CompiledSelector.Compile("p > li").Matches(element));
+      Assert.assertEquals(
+        element,
+        CompiledSelector.Compile(":lang(en)").QueryFirst(doc));
+    }
+
+    @Test
+    public void TestCache() {
+      CompiledSelector selector = CompiledSelector.Compile("ul > li.cached");
+      Assert.assertSame(selector, CompiledSelector.Compile("ul > li.cached"));
+      Assert.assertEquals("ul > li.cached", selector.toString());
+      // Compiling many other selectors evicts the least recently used one
+      for (int i = 0; i < 1000; ++i) {
+        CompiledSelector.Compile("#evict" + i);
+      }
+      CompiledSelector recompiled = CompiledSelector.Compile("ul > li.cached");
+      Assert.assertNotSame(selector, recompiled);
+      Assert.assertEquals(selector.toString(), recompiled.toString());
+    }
+
+    @Test
+    public void TestInvalid() {
+      AssertInvalid("");
+      AssertInvalid("li,");
+      AssertInvalid("li >");
+      AssertInvalid("li > > p");
+      AssertInvalid("[title");
+      AssertInvalid("[title!=x]");
+      AssertInvalid("ns|li");
+      AssertInvalid(":unknown");
+      AssertInvalid(":not(li");
+      AssertInvalid("li:nth-child()");
+      AssertInvalid("li:nth-child(2 n)");
+      AssertInvalid("li:nth-child(- n+1)");
+      AssertInvalid("li:nth-child(+ 2)");
+      AssertInvalid("li:nth-child(2n+)");
+      AssertInvalid("li:nth-child(2n 1)");
+      AssertInvalid("li:nth-child(2n+1 1)");
+      AssertInvalid("li:nth-child(o dd)");
+      AssertInvalid("li:nth-child(n-)");
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void TestNull() {
+      CompiledSelector.Compile(null);
+    }
+  }
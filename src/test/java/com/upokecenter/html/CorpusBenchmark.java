@@ -0,0 +1,138 @@
+package com.upokecenter.html;
+/*
+
+Licensed under the Expat License.
+
+Copyright (C) 2013 Peter Occil
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import com.upokecenter.util.*;
+import org.openjdk.jmh.annotations.*;
+
+  /**
+   * Measures parsing of a corpus of pages. Set the corpus parameter to a
+   * directory of saved HTML pages (for example with "-p
+   * corpus=/path/to/pages") to parse real pages; by default a set of
+   * generated pages with typical markup (navigation, tables, forms,
+   * inline formatting, scripts and SVG) is used. Run with
+   * org.openjdk.jmh.Main on the test class path.
+   */
+  @BenchmarkMode(Mode.AverageTime)
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  @State(Scope.Benchmark)
+  @Warmup(iterations = 3, time = 1)
+  @Measurement(iterations = 5, time = 1)
+  @Fork(1)
+  public class CorpusBenchmark {
+    @Param({ "" })
+    public String corpus;
+
+    private List<byte[]> pages;
+
+    @Setup
+    public void Setup() throws IOException {
+      this.pages = new ArrayList<byte[]>();
+      if (this.corpus.length() > 0) {
+        try (DirectoryStream<Path> stream =
+          Files.newDirectoryStream(Paths.get(this.corpus))) {
+          for (Path path : stream) {
+            if (Files.isRegularFile(path)) {
+              this.pages.add(Files.readAllBytes(path));
+            }
+          }
+        }
+      } else {
+        Random random = new Random(1);
+        for (int i = 0; i < 20; ++i) {
+          this.pages.add(GeneratePage(random).getBytes(
+            StandardCharsets.UTF_8));
+        }
+      }
+    }
+
+    private static String GeneratePage(Random random) {
+      StringBuilder sb = new StringBuilder();
+      sb.append("<!DOCTYPE html><html lang=en><head><meta charset=utf-8>");
+      sb.append("<title>Page</title><link rel=stylesheet href=/s.css>");
+      sb.append("<script>var x = 1 < 2 && true;</script></head><body>");
+      sb.append("<header><nav><ul>");
+      for (int i = 0; i < 10; ++i) {
+        sb.append("<li><a href='/section/" + i + "'>Section " + i +
+          "</a>");
+      }
+      sb.append("</ul></nav></header><main>");
+      int sections = 20 + random.nextInt(20);
+      for (int i = 0; i < sections; ++i) {
+        sb.append("<article class='post item'><h2>Heading ").append(i)
+          .append("</h2>");
+        for (int j = 0; j < 3; ++j) {
+          sb.append("<p>Some <b>bold</b>, <i>italic</i> and <a href=?q=")
+            .append(j).append("&amp;p=1>linked</a> text &mdash; ")
+            .append("with an entity or two&nbsp;here.");
+        }
+        switch (random.nextInt(4)) {
+          case 0:
+            sb.append("<table><thead><tr><th>A<th>B</thead><tbody>");
+            for (int j = 0; j < 10; ++j) {
+              sb.append("<tr><td>").append(j).append("<td>value");
+            }
+            sb.append("</table>");
+            break;
+          case 1:
+            sb.append("<form action=/f><label>Name <input name=n></label>")
+              .append("<select><option>1<option selected>2</select>")
+              .append("<textarea>text</textarea><button>Go</button></form>");
+            break;
+          case 2:
+            sb.append("<svg viewBox='0 0 10 10'><path d='M0 0L10 10'/>")
+              .append("<circle cx=5 cy=5 r=2 /></svg>");
+            break;
+          default:
+            sb.append("<div><img src=/i.png alt=''><br><span>caption")
+              .append("</span><object data=x.swf><param name=a>")
+              .append("</object></div>");
+            break;
+        }
+        sb.append("</article>");
+      }
+      sb.append("</main><footer><p>&copy; 2024</footer></body></html>");
+      return sb.toString();
+    }
+
+    @Benchmark
+    public int ParseCorpus() {
+      int count = 0;
+      for (byte[] page : this.pages) {
+        IDocument doc = HtmlDocument.ParseStream(
+          DataIO.ToReader(page),
+          "about:blank");
+        count += doc.GetChildCount();
+      }
+      return count;
+    }
+  }
@@ -0,0 +1,181 @@
+package com.upokecenter.html;
+/*
+
+Licensed under the Expat License.
+
+Copyright (C) 2013 Peter Occil
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Assert;
+import org.junit.Test;
+
+  public class DocumentIndexTest {
+    private static final int ThreadCount = 8;
+
+    private static String Page(int count) {
+      StringBuilder sb = new StringBuilder();
+      for (int i = 0; i < count; ++i) {
+        sb.append("<div id=d").append(i).append("><p>").append(i)
+          .append("<span id=dup>x</span></div>");
+      }
+      return sb.toString();
+    }
+
+    private static <T> List<T> RunConcurrently(Callable<T> task)
+      throws Exception {
+      ExecutorService executor = Executors.newFixedThreadPool(ThreadCount);
+      try {
+        List<Future<T>> futures = new ArrayList<Future<T>>();
+        for (int i = 0; i < ThreadCount; ++i) {
+          futures.add(executor.submit(task));
+        }
+        List<T> ret = new ArrayList<T>();
+        for (Future<T> future : futures) {
+          ret.add(future.get());
+        }
+        return ret;
+      } finally {
+        executor.shutdown();
+      }
+    }
+
+    @Test
+    public void TestConcurrentGetElementById() throws Exception {
+      for (int round = 0; round < 20; ++round) {
+        final IDocument doc = HtmlDocument.FromString(Page(2000));
+        List<Integer> found = RunConcurrently(new Callable<Integer>() {
+          public Integer call() {
+            int count = 0;
+            for (int i = 1999; i >= 0; --i) {
+              IElement e = doc.GetElementById("d" + i);
+              if (e != null && e.GetId().equals("d" + i)) {
+                ++count;
+              }
+            }
+            return count;
+          }
+        });
+        for (int count : found) {
+          Assert.assertEquals(2000, count);
+        }
+      }
+    }
+
+    @Test
+    public void TestConcurrentGetElementsByTagName() throws Exception {
+      for (int round = 0; round < 20; ++round) {
+        final IDocument doc = HtmlDocument.FromString(Page(2000));
+        List<Integer> found = RunConcurrently(new Callable<Integer>() {
+          public Integer call() {
+            int count = doc.GetElementsByTagName("SPAN").size();
+            count += doc.GetElementsByTagName("*").size();
+            IElement div = doc.GetElementById("d1000");
+            count += div.GetElementsByTagName("span").size();
+            return count;
+          }
+        });
+        for (int count : found) {
+          // 2000 spans, then html, head, body and 3 elements per div,
+          // then the one span in the div
+          Assert.assertEquals(2000 + 6003 + 1, count);
+        }
+      }
+    }
+
+    @Test
+    public void TestDuplicateIds() {
+      IDocument doc = HtmlDocument.FromString(Page(3));
+      IElement dup = doc.GetElementById("dup");
+      Assert.assertEquals("0x", doc.GetElementById("d0").GetTextContent());
+      Assert.assertSame(
+        dup,
+        doc.GetElementById("d0").GetElementsByTagName("span").get(0));
+      IElement second = doc.GetElementById("d1");
+      Assert.assertNotNull(second.GetElementById("dup"));
+      Assert.assertNotSame(dup, second.GetElementById("dup"));
+      Assert.assertNull(second.GetElementById("d0"));
+    }
+
+    private static void AssertIndexesSeeLateElement(IDocument doc) {
+      IElement late = doc.QuerySelector("#late");
+      Assert.assertNotNull(late);
+      Assert.assertSame(late, doc.GetElementById("late"));
+      Assert.assertTrue(doc.GetElementsByTagName("span").contains(late));
+      IElement host = doc.GetElementById("host");
+      Assert.assertTrue(host.GetElementsByTagName("span").contains(late));
+      Assert.assertTrue(host.GetElementsByTagName("*").contains(late));
+      Assert.assertSame(late, host.QuerySelectorAll("span").get(0));
+    }
+
+    // Builds the ID and tag indexes of a document, so that later changes
+    // must clear them
+    private static IElement Host(IDocument doc) {
+      IElement host = doc.GetElementById("host");
+      Assert.assertNull(doc.GetElementById("inner"));
+      Assert.assertEquals(0, doc.GetElementsByTagName("span").size());
+      Assert.assertEquals(0, host.GetElementsByTagName("p").size());
+      return host;
+    }
+
+    @Test
+    public void TestChangeUnderFragmentNodes() {
+      IDocument doc = HtmlDocument.FromString("<div id=host></div>");
+      IElement host = Host(doc);
+      for (INode node : HtmlDocument.FragmentFromString(
+        "<section><p id=inner></p></section>",
+        host)) {
+        ((Node)host).AppendChild(node);
+      }
+      IElement inner = doc.GetElementById("inner");
+      Assert.assertNotNull(inner);
+      Assert.assertEquals(1, host.GetElementsByTagName("p").size());
+      IElement late = HtmlDocument.CreateHtmlElement("span");
+      ((Element)late).SetAttribute("id", "late");
+      ((Node)inner).AppendChild(late);
+      AssertIndexesSeeLateElement(doc);
+    }
+
+    @Test
+    public void TestChangeUnderNodesFromAnotherDocument() {
+      IDocument doc = HtmlDocument.FromString("<div id=host></div>");
+      IElement host = Host(doc);
+      IDocument other = HtmlDocument.FromString(
+        "<section><p id=inner></p></section>");
+      INode section = other.GetElementsByTagName("section").get(0);
+      ((Node)section.GetParentNode()).RemoveChild(section);
+      ((Node)host).AppendChild(section);
+      IElement inner = doc.GetElementById("inner");
+      Assert.assertNotNull(inner);
+      Assert.assertSame(doc, inner.GetOwnerDocument());
+      Assert.assertEquals(1, doc.GetElementsByTagName("p").size());
+      IElement late = HtmlDocument.CreateHtmlElement("span");
+      ((Element)late).SetAttribute("id", "late");
+      ((Node)inner).InsertBefore((Node)late, null);
+      AssertIndexesSeeLateElement(doc);
+    }
+  }
@@ -0,0 +1,148 @@
+package com.upokecenter.html;
+/*
+
+Licensed under the Expat License.
+
+Copyright (C) 2013 Peter Occil
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import com.upokecenter.util.*;
+import org.junit.Assert;
+import org.junit.Test;
+
+  public class ElementFilterTest {
+    private static final List<String> Names = Arrays.asList(
+      "meta",
+      "LINK",
+      "a");
+
+    private static IReader Reader(String html) {
+      return DataIO.ToReader(html.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static boolean IsKept(IElement element) {
+      String name = element.GetLocalName();
+      return HtmlCommon.HTML_NAMESPACE.equals(element.GetNamespaceURI()) &&
+        (name.equals("meta") || name.equals("link") || name.equals("a"));
+    }
+
+    // Appends the outer HTML of the outermost kept elements under a node,
+    // in document order
+    private static void AppendKept(StringBuilder sb, INode node) {
+      for (INode child = node.GetFirstChild(); child != null;
+        child = child.GetNextSibling()) {
+        if (child instanceof IElement) {
+          if (IsKept((IElement)child)) {
+            sb.append(((IElement)child).GetOuterHTML());
+          } else {
+            AppendKept(sb, child);
+          }
+        }
+      }
+    }
+
+    private static String Kept(IDocument doc, String name) {
+      StringBuilder sb = new StringBuilder();
+      AppendKept(sb, doc.GetElementsByTagName(name).get(0));
+      return sb.toString();
+    }
+
+    private static String Inner(IDocument doc, String name) {
+      return doc.GetElementsByTagName(name).get(0).GetInnerHTML();
+    }
+
+    private static IDocument AssertKeepsMatchingSubtrees(String html) {
+      IDocument full = HtmlDocument.ParseStream(Reader(html), "about:blank");
+      IDocument filtered = HtmlDocument.ParseStream(
+        Reader(html),
+        "about:blank",
+        Names);
+      Assert.assertEquals(html, Kept(full, "head"), Inner(filtered, "head"));
+      Assert.assertEquals(html, Kept(full, "body"), Inner(filtered, "body"));
+      return filtered;
+    }
+
+    @Test
+    public void TestKeepsMatchingElements() {
+      IDocument doc = AssertKeepsMatchingSubtrees("<!DOCTYPE html><head>" +
+        "<meta charset=utf-8><title>t</title>" +
+        "<link rel=stylesheet href=a.css media=print></head>" +
+        "<body><div class=x><p>text <a href='/one' title=One>1<b>b</b></a>" +
+        "</p><!--c--><span><a href=/two>2</a></span></div>" +
+        "<meta name=late content=yes>");
+      Assert.assertEquals(
+        "<meta charset=\"utf-8\"><link rel=\"stylesheet\" href=\"a.css\"" +
+        " media=\"print\">",
+        Inner(doc, "head"));
+      IElement a = doc.GetElementsByTagName("a").get(0);
+      Assert.assertEquals("/one", a.GetAttribute("href"));
+      Assert.assertEquals("One", a.GetAttribute("title"));
+      Assert.assertEquals("1<b>b</b>", a.GetInnerHTML());
+      Assert.assertEquals(
+        "yes",
+        doc.GetElementsByTagName("meta").get(1).GetAttribute("content"));
+    }
+
+    @Test
+    public void TestKeepsElementsMovedByAdoptionAgency() {
+      // The a element is closed and reopened around the moved div and p,
+      // each copy keeping its attributes
+      IDocument doc = AssertKeepsMatchingSubtrees(
+        "<a href=x id=k class='c d'>1<div>2<p>3</a>4</p></div>");
+      List<IElement> links = doc.GetElementsByTagName("a");
+      Assert.assertEquals(3, links.size());
+      for (IElement a : links) {
+        Assert.assertEquals("x", a.GetAttribute("href"));
+        Assert.assertEquals("c d", a.GetAttribute("class"));
+      }
+      AssertKeepsMatchingSubtrees(
+        "<div><b>1<a href=y rel=r>2<p>3</b>4</a>5</p></div>");
+      AssertKeepsMatchingSubtrees(
+        "<p><b><i><a href=z>1</b>2</i>3</a><link rel=next href=n>");
+    }
+
+    @Test
+    public void TestCustomFilter() {
+      IDocument doc = HtmlDocument.ParseStream(
+        Reader("<div data-keep=1><p>a<span>b</span></p></div>" +
+          "<div><span data-keep=2 title=t>c</span>d</div>"),
+        "about:blank",
+        new IElementFilter() {
+          public boolean IsMatch(IElement element) {
+            return element.GetAttribute("data-keep") != null;
+          }
+        });
+      Assert.assertEquals(
+        "<div data-keep=\"1\"><p>a<span>b</span></p></div>" +
+        "<span data-keep=\"2\" title=\"t\">c</span>",
+        Inner(doc, "body"));
+    }
+
+    @Test
+    public void TestKeepsFosterParentedElements() {
+      AssertKeepsMatchingSubtrees(
+        "<table><a href=t>x<tr><td><a href=u>y</table><meta name=m>");
+    }
+  }
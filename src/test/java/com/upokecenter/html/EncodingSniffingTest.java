@@ -0,0 +1,103 @@
+package com.upokecenter.html;
+/*
+
+Licensed under the Expat License.
+
+Copyright (C) 2013 Peter Occil
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.Assert;
+import org.junit.Test;
+
+  public class EncodingSniffingTest {
+    private static byte[] Concat(byte[] a, byte[] b) {
+      byte[] ret = new byte[a.length + b.length];
+      System.arraycopy(a, 0, ret, 0, a.length);
+      System.arraycopy(b, 0, ret, a.length, b.length);
+      return ret;
+    }
+
+    private static IDocument ParseFile(byte[] bytes) throws IOException {
+      Path path = Files.createTempFile("sniff", ".html");
+      try {
+        Files.write(path, bytes);
+        return HtmlDocument.ParseFile(path);
+      } finally {
+        Files.delete(path);
+      }
+    }
+
+    private static String ParagraphText(IDocument doc) {
+      return doc.GetElementsByTagName("p").get(0).GetTextContent();
+    }
+
+    @Test
+    public void TestFileMetaCharset() throws IOException {
+      byte[] bytes = Concat(
+        "<meta charset=windows-1252><p>caf".getBytes(StandardCharsets.US_ASCII),
+        new byte[] { (byte)0xe9 });
+      Assert.assertEquals("café", ParagraphText(ParseFile(bytes)));
+    }
+
+    @Test
+    public void TestFileWithoutDeclarationIsUtf8() throws IOException {
+      byte[] bytes = "<p>café".getBytes(StandardCharsets.UTF_8);
+      Assert.assertEquals("café", ParagraphText(ParseFile(bytes)));
+    }
+
+    @Test
+    public void TestFileUtf16Bom() throws IOException {
+      byte[] bytes = Concat(
+        new byte[] { (byte)0xff, (byte)0xfe },
+        "<p>café".getBytes(StandardCharsets.UTF_16LE));
+      Assert.assertEquals("café", ParagraphText(ParseFile(bytes)));
+    }
+
+    @Test
+    public void TestBomOverridesTransportCharset() {
+      byte[] bytes = Concat(
+        new byte[] { (byte)0xef, (byte)0xbb, (byte)0xbf },
+        "<p>café".getBytes(StandardCharsets.UTF_8));
+      IDocument doc = HtmlDocument.ParseBuffer(
+        ByteBuffer.wrap(bytes),
+        "about:blank",
+        "windows-1252");
+      Assert.assertEquals("café", ParagraphText(doc));
+    }
+
+    @Test
+    public void TestTransportCharsetOverridesMeta() {
+      byte[] bytes = Concat(
+        "<meta charset=utf-8><p>caf".getBytes(StandardCharsets.US_ASCII),
+        new byte[] { (byte)0xe9 });
+      IDocument doc = HtmlDocument.ParseBuffer(
+        ByteBuffer.wrap(bytes),
+        "about:blank",
+        "windows-1252");
+      Assert.assertEquals("café", ParagraphText(doc));
+    }
+  }
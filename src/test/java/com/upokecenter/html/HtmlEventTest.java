@@ -0,0 +1,178 @@
+package com.upokecenter.html;
+/*
+
+Licensed under the Expat License.
+
+Copyright (C) 2013 Peter Occil
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+
+
+import java.nio.charset.StandardCharsets;
+import com.upokecenter.util.*;
+import org.junit.Assert;
+import org.junit.Test;
+
+  public class HtmlEventTest {
+    // Rebuilds the document tree from parse events as an indented listing,
+    // merging adjacent runs of text the way the tree builder does
+    private static final class TreeDump implements IHtmlEventHandler {
+      private final StringBuilder sb = new StringBuilder();
+      private final StringBuilder text = new StringBuilder();
+      private int depth;
+
+      public void StartElement(IElement element) {
+        this.FlushText();
+        AppendElement(this.sb, this.depth, element);
+        ++this.depth;
+      }
+
+      public void EndElement(IElement element) {
+        this.FlushText();
+        --this.depth;
+      }
+
+      public void Characters(String str) {
+        this.text.append(str);
+      }
+
+      public void Comment(String data) {
+        this.FlushText();
+        AppendLine(this.sb, this.depth, "<!-- " + data + " -->");
+      }
+
+      public void DocumentType(IDocumentType doctype) {
+        this.FlushText();
+        AppendLine(this.sb, this.depth, "<!DOCTYPE " + doctype.GetName() +
+          ">");
+      }
+
+      private void FlushText() {
+        if (this.text.length() > 0) {
+          AppendLine(this.sb, this.depth, "\"" + this.text + "\"");
+          this.text.setLength(0);
+        }
+      }
+
+      @Override public String toString() {
+        this.FlushText();
+        return this.sb.toString();
+      }
+    }
+
+    private static void AppendLine(StringBuilder sb, int depth, String str) {
+      for (int i = 0; i < depth; ++i) {
+        sb.append("  ");
+      }
+      sb.append(str).append('\n');
+    }
+
+    private static void AppendElement(
+      StringBuilder sb,
+      int depth,
+      IElement element) {
+      String ns = element.GetNamespaceURI();
+      String prefix = HtmlCommon.HTML_NAMESPACE.equals(ns) ? "" :
+        HtmlCommon.SVG_NAMESPACE.equals(ns) ? "svg " : "math ";
+      AppendLine(sb, depth, "<" + prefix + element.GetLocalName() + ">");
+      for (IAttr attr : element.GetAttributes()) {
+        AppendLine(sb, depth + 1, attr.GetName() + "=\"" + attr.GetValue() +
+          "\"");
+      }
+    }
+
+    private static void AppendNode(StringBuilder sb, int depth, INode node) {
+      switch (node.GetNodeType()) {
+        case NodeType.ELEMENT_NODE:
+          AppendElement(sb, depth, (IElement)node);
+          break;
+        case NodeType.TEXT_NODE:
+          AppendLine(sb, depth, "\"" + ((IText)node).GetData() + "\"");
+          break;
+        case NodeType.COMMENT_NODE:
+          AppendLine(sb, depth, "<!-- " + ((IComment)node).GetData() +
+            " -->");
+          break;
+        case NodeType.DOCUMENT_TYPE_NODE:
+          AppendLine(sb, depth, "<!DOCTYPE " +
+            ((IDocumentType)node).GetName() + ">");
+          break;
+        default:
+          break;
+      }
+      for (INode child = node.GetFirstChild(); child != null;
+        child = child.GetNextSibling()) {
+        AppendNode(sb, depth + 1, child);
+      }
+    }
+
+    private static void AssertSameTree(String html) {
+      byte[] bytes = html.getBytes(StandardCharsets.UTF_8);
+      IDocument doc = HtmlDocument.ParseStream(
+        DataIO.ToReader(bytes),
+        "about:blank");
+      StringBuilder expected = new StringBuilder();
+      for (INode child = doc.GetFirstChild(); child != null;
+        child = child.GetNextSibling()) {
+        AppendNode(expected, 0, child);
+      }
+      TreeDump dump = new TreeDump();
+      HtmlDocument.ParseEvents(DataIO.ToReader(bytes), dump);
+      Assert.assertEquals(html, expected.toString(), dump.toString());
+    }
+
+    @Test
+    public void TestSimpleDocument() {
+      AssertSameTree("<!DOCTYPE html><title>t</title><!--c-->" +
+        "<p class=a id=b>x<br>y</p><ul><li>1<li>2</ul>");
+    }
+
+    @Test
+    public void TestMisnestedFormatting() {
+      AssertSameTree("<p>1<b>2<i>3</b>4</i>5</p>");
+      AssertSameTree("<a href=x>1<p>2</a>3</p>");
+      AssertSameTree("<b>1<div>2</b>3</div>4");
+      AssertSameTree("<font color=red>a<p>b<font>c</p>d");
+      AssertSameTree("<b><b><b><b>x</b></b></b></b>y<b>z");
+    }
+
+    @Test
+    public void TestFosterParentedTableText() {
+      AssertSameTree("<table>a<tr>b<td>c</td>d</tr>e</table>f");
+      AssertSameTree("<table><tr><td>1</td></tr>x<b>y</b></table>");
+      AssertSameTree("<div><table><p>z<td>w</table></div>");
+    }
+
+    @Test
+    public void TestObjectAndTemplate() {
+      AssertSameTree("<b>1<object>2</b>3</object>4");
+      AssertSameTree("<p>a<object><p>b</object>c");
+      AssertSameTree("<template><td>x</td><b>y</template>z");
+      AssertSameTree("<table><template><tr><td>1</template></table>");
+      AssertSameTree("<head><template><p>x</template></head><p>y");
+    }
+
+    @Test
+    public void TestForeignContent() {
+      AssertSameTree("<svg viewBox='0 0 1 1'><circle r=1/>t</svg>" +
+        "<math><mi>x</mi></math>");
+    }
+  }
@@ -0,0 +1,154 @@
+package com.upokecenter.html;
+/*
+
+Licensed under the Expat License.
+
+Copyright (C) 2013 Peter Occil
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import com.upokecenter.util.*;
+import org.junit.Assert;
+import org.junit.Test;
+
+  public class HtmlPushParserTest {
+    private static final int LongTokenLength = 400000;
+
+    private static final String[] Parts = {
+      "<p>", "</p>", "<div class='a b' id=x>", "</div>", "text ", "\r\n",
+      "\r", "\n", "\u00e9", "\u4e2d", "\ud83d\ude00", "&amp;", "&notin;",
+      "&notit;", "&#x1F600;", "&#233;", "&am", "<!-- comment -->",
+      "<svg><![CDATA[x<y\u00e9]]></svg>", "<script>a<b && '\u4e2d'</script>",
+      "<textarea>\n&lt;t</textarea>", "<a href='?a=1&b=2&copy=3'>",
+      "<table><td>", "<b><i>", "</b>", "<!DOCTYPE html>", "<br/>",
+      "<title>\u00e9</title>",
+    };
+
+    private static String Repeat(String str, int count) {
+      StringBuilder sb = new StringBuilder(str.length() * count);
+      for (int i = 0; i < count; ++i) {
+        sb.append(str);
+      }
+      return sb.toString();
+    }
+
+    private static String ParseWhole(byte[] bytes) {
+      // Without a byte order mark or meta charset, ParseStream decodes
+      // as UTF-8, like the push parser
+      return HtmlDocument.ParseStream(
+        DataIO.ToReader(bytes),
+        "about:blank").toString();
+    }
+
+    // Feeds a document in 1 KiB chunks, and checks that the result matches
+    // parsing it at once and that cut-off tokens weren't read again more
+    // than a linear number of times
+    private static void TestLongToken(String html) {
+      byte[] bytes = html.getBytes(StandardCharsets.UTF_8);
+      HtmlParser parser = new HtmlParser("about:blank", "utf-8", null);
+      for (int i = 0; i < bytes.length; i += 1024) {
+        parser.Feed(java.nio.ByteBuffer.wrap(
+          bytes,
+          i,
+          Math.min(1024, bytes.length - i)));
+      }
+      String pushed = parser.Finish().toString();
+      Assert.assertEquals(ParseWhole(bytes), pushed);
+      long reread = parser.GetRereadCount();
+      Assert.assertTrue(
+        "reread " + reread + " of " + html.length(),
+        reread <= 3L * html.length());
+    }
+
+    @Test(timeout = 20000)
+    public void TestLongComment() {
+      TestLongToken("<!--" + Repeat("a", LongTokenLength) + "-->x");
+    }
+
+    @Test(timeout = 20000)
+    public void TestLongTagName() {
+      TestLongToken("<p" + Repeat("a", LongTokenLength) + ">x");
+    }
+
+    @Test(timeout = 20000)
+    public void TestLongUnquotedAttributeValue() {
+      TestLongToken("<p a=" + Repeat("b", LongTokenLength) + ">x");
+    }
+
+    @Test(timeout = 20000)
+    public void TestLongQuotedAttributeValueWithReferences() {
+      TestLongToken("<p a=\"" + Repeat("&amp;x", LongTokenLength / 6) +
+        "\">x");
+    }
+
+    @Test(timeout = 20000)
+    public void TestLongDoctype() {
+      TestLongToken("<!DOCTYPE " + Repeat("d", LongTokenLength) + ">x");
+    }
+
+    @Test(timeout = 20000)
+    public void TestLongCdata() {
+      TestLongToken("<svg><![CDATA[" + Repeat("c", LongTokenLength) +
+        "]]></svg>x");
+    }
+
+    @Test
+    public void TestRandomChunkSplits() {
+      Random random = new Random(20260101L);
+      for (int n = 0; n < 300; ++n) {
+        StringBuilder sb = new StringBuilder();
+        int count = random.nextInt(60);
+        for (int i = 0; i < count; ++i) {
+          sb.append(Parts[random.nextInt(Parts.length)]);
+        }
+        byte[] bytes = sb.toString().getBytes(StandardCharsets.UTF_8);
+        String expected = ParseWhole(bytes);
+        // Chunks of one byte split every multi-byte character, reference
+        // and CDATA section; random sizes split them at varying points
+        int maxChunk = (n % 3 == 0) ? 1 : 2 + random.nextInt(16);
+        HtmlPushParser parser = new HtmlPushParser("about:blank");
+        int offset = 0;
+        while (offset < bytes.length) {
+          int length = Math.min(
+            bytes.length - offset,
+            1 + random.nextInt(maxChunk));
+          Assert.assertFalse(parser.Feed(bytes, offset, length));
+          offset += length;
+        }
+        Assert.assertEquals(sb.toString(), expected,
+          parser.Finish().toString());
+      }
+    }
+
+    @Test
+    public void TestEmptyChunks() {
+      byte[] bytes = "<p>\u00e9&amp;</p>".getBytes(StandardCharsets.UTF_8);
+      HtmlPushParser parser = new HtmlPushParser("about:blank");
+      parser.Feed(bytes, 0, 0);
+      parser.Feed(bytes, 0, 4);
+      parser.Feed(bytes, 4, 0);
+      parser.Feed(bytes, 4, bytes.length - 4);
+      Assert.assertEquals(ParseWhole(bytes), parser.Finish().toString());
+    }
+  }
@@ -0,0 +1,131 @@
+package com.upokecenter.html;
+/*
+
+Licensed under the Expat License.
+
+Copyright (C) 2013 Peter Occil
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import org.junit.Assert;
+import org.junit.Test;
+
+  public class HtmlSerializerTest {
+    private static void AssertOuterHtml(String expected, String html)
+      throws IOException {
+      IDocument doc = HtmlDocument.FromString(html);
+      StringBuilder builder = new StringBuilder();
+      HtmlSerializer.WriteOuterHtml(doc, builder);
+      Assert.assertEquals(expected, builder.toString());
+      StringWriter writer = new StringWriter();
+      HtmlSerializer.WriteOuterHtml(doc, writer);
+      Assert.assertEquals(expected, writer.toString());
+      byte[] bytes = expected.getBytes(StandardCharsets.UTF_8);
+      ByteArrayOutputStream stream = new ByteArrayOutputStream();
+      HtmlSerializer.WriteOuterHtml(doc, stream);
+      Assert.assertArrayEquals(bytes, stream.toByteArray());
+      ByteArrayOutputStream channelStream = new ByteArrayOutputStream();
+      HtmlSerializer.WriteOuterHtml(doc, Channels.newChannel(channelStream));
+      Assert.assertArrayEquals(bytes, channelStream.toByteArray());
+    }
+
+    @Test
+    public void TestEscaping() throws IOException {
+      AssertOuterHtml(
+        "<!DOCTYPE html><html><head></head><body>" +
+        "<p title=\"a&amp;b&#x22;c&nbsp;<>\">x &lt; y &gt; z &amp; w&nbsp;" +
+        "</p></body></html>",
+        "<!DOCTYPE html><p title='a&amp;b\"c&nbsp;<>'>" +
+        "x &lt; y &gt; z &amp; w&nbsp;</p>");
+    }
+
+    @Test
+    public void TestVoidElements() throws IOException {
+      AssertOuterHtml(
+        "<html><head></head><body><img src=\"a\" alt=\"<\"><br><hr>" +
+        "<input value=\"1\">x</body></html>",
+        "<img src=a alt='<'><br><hr><input value=1>x");
+    }
+
+    @Test
+    public void TestRawText() throws IOException {
+      AssertOuterHtml(
+        "<html><head><script>if (a < b && c) {}</script>" +
+        "<style>p > a {}</style></head><body><xmp>&</xmp></body></html>",
+        "<script>if (a < b && c) {}</script><style>p > a {}</style>" +
+        "<xmp>&</xmp>");
+      AssertOuterHtml(
+        "<html><head></head><body><textarea>a&lt;b</textarea>" +
+        "<pre>\n\nx</pre><!--c--></body></html>",
+        "<textarea>a&lt;b</textarea><pre>\n\nx</pre><!--c-->");
+    }
+
+    @Test
+    public void TestForeignContent() throws IOException {
+      AssertOuterHtml(
+        "<html><head></head><body><svg><text>t&lt;</text><rect></rect>" +
+        "</svg><math><mi>m</mi></math></body></html>",
+        "<svg><text>t&lt;</text><rect/></svg><math><mi>m</mi></math>");
+    }
+
+    @Test
+    public void TestNonAscii() throws IOException {
+      // Longer than the byte sinks' chunk, so that characters straddle
+      // chunk boundaries
+      StringBuilder text = new StringBuilder();
+      for (int i = 0; i < 5000; ++i) {
+        text.append("é😀");
+      }
+      AssertOuterHtml(
+        "<html><head></head><body><p>" + text + "</p></body></html>",
+        "<p>" + text);
+    }
+
+    @Test
+    public void TestInnerAndOuterHtml() throws IOException {
+      IDocument doc = HtmlDocument.FromString("<div id=d><b>x</b>&amp;</div>");
+      IElement div = doc.GetElementById("d");
+      StringBuilder builder = new StringBuilder();
+      HtmlSerializer.WriteInnerHtml(div, builder);
+      Assert.assertEquals("<b>x</b>&amp;", builder.toString());
+      Assert.assertEquals("<b>x</b>&amp;", div.GetInnerHTML());
+      Assert.assertEquals(
+        "<div id=\"d\"><b>x</b>&amp;</div>",
+        div.GetOuterHTML());
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void TestNullNode() throws IOException {
+      HtmlSerializer.WriteOuterHtml(null, new StringBuilder());
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void TestNullOutput() throws IOException {
+      HtmlSerializer.WriteOuterHtml(
+        HtmlDocument.FromString("x"),
+        (Appendable)null);
+    }
+  }
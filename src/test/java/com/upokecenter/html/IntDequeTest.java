@@ -0,0 +1,123 @@
+package com.upokecenter.html;
+/*
+
+Licensed under the Expat License.
+
+Copyright (C) 2013 Peter Occil
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+
+
+import org.junit.Assert;
+import org.junit.Test;
+
+  public class IntDequeTest {
+    @Test
+    public void TestFifoOrder() {
+      IntDeque deque = new IntDeque();
+      Assert.assertTrue(deque.IsEmpty());
+      for (int i = 0; i < 10; ++i) {
+        deque.Add(i);
+      }
+      for (int i = 0; i < 10; ++i) {
+        Assert.assertFalse(deque.IsEmpty());
+        Assert.assertEquals(i, deque.RemoveFirst());
+      }
+      Assert.assertTrue(deque.IsEmpty());
+    }
+
+    @Test
+    public void TestWraparound() {
+      IntDeque deque = new IntDeque();
+      int next = 0;
+      int expected = 0;
+      // Keep a few items queued while the head moves around the
+      // initial 16-element buffer many times
+      for (int round = 0; round < 100; ++round) {
+        for (int i = 0; i < 5; ++i) {
+          deque.Add(next++);
+        }
+        for (int i = 0; i < 4; ++i) {
+          Assert.assertEquals(expected++, deque.RemoveFirst());
+        }
+      }
+      while (!deque.IsEmpty()) {
+        Assert.assertEquals(expected++, deque.RemoveFirst());
+      }
+      Assert.assertEquals(next, expected);
+    }
+
+    @Test
+    public void TestGrowthWhileWrapped() {
+      IntDeque deque = new IntDeque();
+      for (int i = 0; i < 12; ++i) {
+        deque.Add(-1);
+      }
+      for (int i = 0; i < 12; ++i) {
+        deque.RemoveFirst();
+      }
+      // The head is now near the end of the buffer, so the items
+      // below wrap around before the buffer grows
+      for (int i = 0; i < 1000; ++i) {
+        deque.Add(i);
+      }
+      for (int i = 0; i < 1000; ++i) {
+        Assert.assertEquals(i, deque.RemoveFirst());
+      }
+      Assert.assertTrue(deque.IsEmpty());
+    }
+
+    @Test
+    public void TestAddFirst() {
+      IntDeque deque = new IntDeque();
+      deque.Add(2);
+      deque.AddFirst(1);
+      deque.Add(3);
+      for (int i = 0; i < 40; ++i) {
+        // Grows while the head is at the buffer's end
+        deque.AddFirst(-i);
+      }
+      for (int i = 39; i >= 0; --i) {
+        Assert.assertEquals(-i, deque.RemoveFirst());
+      }
+      Assert.assertEquals(1, deque.RemoveFirst());
+      Assert.assertEquals(2, deque.RemoveFirst());
+      Assert.assertEquals(3, deque.RemoveFirst());
+      Assert.assertTrue(deque.IsEmpty());
+    }
+
+    @Test
+    public void TestClear() {
+      IntDeque deque = new IntDeque();
+      for (int i = 0; i < 20; ++i) {
+        deque.Add(i);
+      }
+      deque.Clear();
+      Assert.assertTrue(deque.IsEmpty());
+      deque.Add(7);
+      Assert.assertEquals(7, deque.RemoveFirst());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void TestRemoveFromEmpty() {
+      new IntDeque().RemoveFirst();
+    }
+  }
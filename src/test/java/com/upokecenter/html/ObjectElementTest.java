@@ -0,0 +1,76 @@
+package com.upokecenter.html;
+/*
+
+Licensed under the Expat License.
+
+Copyright (C) 2013 Peter Occil
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+
+
+import org.junit.Assert;
+import org.junit.Test;
+
+  public class ObjectElementTest {
+    private static String ParseBody(String html) {
+      IDocument doc = HtmlDocument.FromString(html);
+      return doc.GetElementsByTagName("body").get(0).GetInnerHTML();
+    }
+
+    @Test
+    public void TestObjectIsScopingForParagraphs() {
+      // A p start tag inside object doesn't close the outer p
+      Assert.assertEquals(
+        "<p>a<object><p>b</p></object>c</p>",
+        ParseBody("<p>a<object><p>b</object>c"));
+    }
+
+    @Test
+    public void TestObjectHidesOuterElementsFromEndTags() {
+      // The div isn't in scope inside object, so its end tag is ignored
+      Assert.assertEquals(
+        "<div><object>x</object></div>",
+        ParseBody("<div><object></div>x"));
+    }
+
+    @Test
+    public void TestObjectInsertsFormattingMarker() {
+      // The marker keeps the b end tag from closing b inside object
+      Assert.assertEquals(
+        "<b>1<object>23</object>4</b>",
+        ParseBody("<b>1<object>2</b>3</object>4"));
+    }
+
+    @Test
+    public void TestObjectEndTagClosesOpenChildren() {
+      Assert.assertEquals(
+        "<object><span></span></object>x",
+        ParseBody("<object><span></object>x"));
+    }
+
+    @Test
+    public void TestObjectIsSpecialForListItems() {
+      // The li algorithm stops at object, so the outer li stays open
+      Assert.assertEquals(
+        "<li>a<object><li>b</li></object></li>",
+        ParseBody("<li>a<object><li>b"));
+    }
+  }
@@ -0,0 +1,157 @@
+package com.upokecenter.html;
+/*
+
+Licensed under the Expat License.
+
+Copyright (C) 2013 Peter Occil
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+
+
+import java.util.*;
+import org.junit.Assert;
+import org.junit.Test;
+
+  public class SelectorSetTest {
+    private static final String Page = "<div id=root class=top>" +
+      "<ul id=list class='a  a b'>" +
+      "<li id=l1 class='a b'>one</li>" +
+      "<li id=l2 class='b b'>two</li>" +
+      "<li id=l3 class=A>three</li>" +
+      "</ul>" +
+      "<p id=p1 class=a>a</p><P id=p2>b</P>" +
+      "<svg id=s1><foreignObject id=f1 class=a><p id=p3></p>" +
+      "</foreignObject><LinearGradient id=g1/></svg>" +
+      "</div>";
+
+    private static final String[] Compounds = {
+      "li", "LI", "p", "P", "*", ".a", ".b", ".A", "#l1", "#p1", "li.a",
+      "p.a", "#list.a", "ul", "div", "foreignObject", "FOREIGNOBJECT",
+      "foreignobject", "linearGradient", "lineargradient", "svg", "[id]",
+      ":first-child", "li:not(.b)",
+    };
+
+    private static final String[] Combinators = { " ", " > ", " + ", " ~ " };
+
+    private static void AssertMatchesEachRule(
+      INode root,
+      List<String> rules,
+      IElementFilter filter) {
+      SelectorSet set = new SelectorSet();
+      for (int i = 0; i < rules.size(); ++i) {
+        Assert.assertEquals(i, set.Add(rules.get(i)));
+      }
+      int filterRule = (filter == null) ? -1 : set.Add(filter);
+      Assert.assertEquals(
+        rules.size() + (filter == null ? 0 : 1),
+        set.GetRuleCount());
+      List<List<IElement>> matches = set.MatchAll(root);
+      Assert.assertEquals(set.GetRuleCount(), matches.size());
+      for (int i = 0; i < rules.size(); ++i) {
+        List<IElement> expected = (root instanceof IDocument) ?
+          ((IDocument)root).QuerySelectorAll(rules.get(i)) :
+          ((IElement)root).QuerySelectorAll(rules.get(i));
+        Assert.assertEquals(rules.get(i), expected, matches.get(i));
+      }
+      if (filter != null) {
+        List<IElement> expected = new ArrayList<IElement>();
+        for (IElement element : ((root instanceof IDocument) ?
+          ((IDocument)root).GetElementsByTagName("*") :
+          ((IElement)root).GetElementsByTagName("*"))) {
+          if (element != root && filter.IsMatch(element)) {
+            expected.add(element);
+          }
+        }
+        Assert.assertEquals(expected, matches.get(filterRule));
+      }
+    }
+
+    @Test
+    public void TestBuckets() {
+      IDocument doc = HtmlDocument.FromString(Page);
+      AssertMatchesEachRule(doc, Arrays.asList(
+        // A comma group whose selectors land in the ID, class, local
+        // name and universal buckets, several of them matching the same
+        // elements
+        "#l1, .a, li, *",
+        "li.a, #l1.a, .b.a",
+        // Class tokens repeated in the class attribute
+        ".a",
+        ".b",
+        // Upper-case type selectors match HTML elements case-insensitively
+        // and other elements as given
+        "LI",
+        "P, FOREIGNOBJECT",
+        "foreignObject, linearGradient",
+        "ul > .a, ul .b",
+        "#nothing, .nothing, nothing"), new IElementFilter() {
+          public boolean IsMatch(IElement element) {
+            return element.GetId() != null && element.GetId().endsWith("1");
+          }
+        });
+    }
+
+    @Test
+    public void TestElementRoot() {
+      IDocument doc = HtmlDocument.FromString(Page);
+      AssertMatchesEachRule(
+        doc.GetElementById("list"),
+        Arrays.asList("li", ".b, #l3", "ul li", "#list", "*"),
+        new IElementFilter() {
+          public boolean IsMatch(IElement element) {
+            return element.GetTextContent().length() > 3;
+          }
+        });
+    }
+
+    @Test
+    public void TestRandomRules() {
+      IDocument doc = HtmlDocument.FromString(Page);
+      Random random = new Random(20261018L);
+      for (int n = 0; n < 100; ++n) {
+        List<String> rules = new ArrayList<String>();
+        int ruleCount = 1 + random.nextInt(12);
+        for (int i = 0; i < ruleCount; ++i) {
+          StringBuilder rule = new StringBuilder();
+          int groupCount = 1 + random.nextInt(3);
+          for (int j = 0; j < groupCount; ++j) {
+            if (j > 0) {
+              rule.append(", ");
+            }
+            int count = 1 + random.nextInt(3);
+            for (int k = 0; k < count; ++k) {
+              if (k > 0) {
+                rule.append(Combinators[random.nextInt(Combinators.length)]);
+              }
+              rule.append(Compounds[random.nextInt(Compounds.length)]);
+            }
+          }
+          rules.add(rule.toString());
+        }
+        AssertMatchesEachRule(doc, rules, null);
+      }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void TestInvalidRule() {
+      new SelectorSet().Add("li >");
+    }
+  }
@@ -0,0 +1,74 @@
+package com.upokecenter.html;
+/*
+
+Licensed under the Expat License.
+
+Copyright (C) 2013 Peter Occil
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+
+
+import java.nio.charset.StandardCharsets;
+import com.upokecenter.util.*;
+import org.junit.Assert;
+import org.junit.Test;
+
+  public class StopConditionTest {
+    private static byte[] Document(String charset) {
+      StringBuilder sb = new StringBuilder();
+      sb.append("<!DOCTYPE html><html><head><title>Title</title>");
+      sb.append("<meta name=description content=x></head><body>");
+      for (int i = 0; i < 500; ++i) {
+        sb.append("<p>Café paragraph ").append(i).append("</p>\n");
+      }
+      return sb.toString().getBytes(charset.equals("utf-8") ?
+        StandardCharsets.UTF_8 : StandardCharsets.ISO_8859_1);
+    }
+
+    private static void TestBytesConsumed(String charset) {
+      byte[] bytes = Document(charset);
+      IDocument doc = HtmlDocument.ParseStream(
+        DataIO.ToReader(bytes),
+        "about:blank",
+        StopCondition.BytesConsumed(100));
+      // The title and meta elements end within the first 100 bytes, and
+      // the 100th byte is in the first paragraph
+      Assert.assertEquals(1, doc.GetElementsByTagName("title").size());
+      Assert.assertEquals(1, doc.GetElementsByTagName("meta").size());
+      Assert.assertEquals(1, doc.GetElementsByTagName("p").size());
+      doc = HtmlDocument.ParseStream(
+        DataIO.ToReader(bytes),
+        "about:blank",
+        StopCondition.BytesConsumed(1000));
+      int count = doc.GetElementsByTagName("p").size();
+      Assert.assertTrue("p count " + count, count > 10 && count < 60);
+    }
+
+    @Test
+    public void TestBytesConsumedUtf8() {
+      TestBytesConsumed("utf-8");
+    }
+
+    @Test
+    public void TestBytesConsumedWindows1252() {
+      TestBytesConsumed("windows-1252");
+    }
+  }
@@ -0,0 +1,110 @@
+package com.upokecenter.html;
+/*
+
+Licensed under the Expat License.
+
+Copyright (C) 2013 Peter Occil
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+
+
+import java.util.*;
+import org.junit.Assert;
+import org.junit.Test;
+
+  public class TextInsertionTest {
+    private static IElement Body(String html) {
+      IDocument doc = HtmlDocument.FromString(html);
+      return doc.GetElementsByTagName("body").get(0);
+    }
+
+    private static List<String> TextChildren(INode node) {
+      List<String> ret = new ArrayList<String>();
+      for (INode child = node.GetFirstChild(); child != null;
+        child = child.GetNextSibling()) {
+        if (child.GetNodeType() == NodeType.TEXT_NODE) {
+          ret.add(((IText)child).GetData());
+        }
+      }
+      return ret;
+    }
+
+    @Test
+    public void TestLongRunIsOneTextNode() {
+      StringBuilder sb = new StringBuilder();
+      for (int i = 0; i < 20000; ++i) {
+        sb.append("word ");
+      }
+      String text = sb.toString();
+      IElement body = Body("<body>" + text);
+      Assert.assertEquals(1, body.GetChildCount());
+      Assert.assertEquals(Arrays.asList(text), TextChildren(body));
+    }
+
+    @Test
+    public void TestRunsAcrossCharacterReferencesAreMerged() {
+      IElement body = Body("<body>a&amp;b&lt;c&#x41;d&notit;\r\ne\rf");
+      Assert.assertEquals(
+        Arrays.asList("a&b<cAd¬it;\ne\nf"),
+        TextChildren(body));
+    }
+
+    @Test
+    public void TestRunsSplitByNodes() {
+      IElement body = Body("<body>one<!--c-->two<b>three</b>four");
+      Assert.assertEquals(Arrays.asList("one", "two", "four"),
+        TextChildren(body));
+      Assert.assertEquals(
+        Arrays.asList("three"),
+        TextChildren(body.GetElementsByTagName("b").get(0)));
+    }
+
+    @Test
+    public void TestTextAfterRemovedNodeMergesWithLastChild() {
+      // The comment ends the first run, and the null character in body
+      // text is dropped without starting a new node
+      IElement body = Body("<body>x\u0000y<!--c-->z");
+      Assert.assertEquals(Arrays.asList("xy", "z"), TextChildren(body));
+    }
+
+    @Test
+    public void TestFosterParentedText() {
+      IElement body = Body("<body><table>ab<tr><td>c</td></tr>de</table>");
+      Assert.assertEquals(Arrays.asList("abde"), TextChildren(body));
+      IElement td = body.GetElementsByTagName("td").get(0);
+      Assert.assertEquals(Arrays.asList("c"), TextChildren(td));
+    }
+
+    @Test
+    public void TestWideParent() {
+      StringBuilder sb = new StringBuilder("<body>");
+      for (int i = 0; i < 5000; ++i) {
+        sb.append("<br>t").append(i);
+      }
+      IElement body = Body(sb.toString());
+      Assert.assertEquals(10000, body.GetChildCount());
+      List<String> texts = TextChildren(body);
+      Assert.assertEquals(5000, texts.size());
+      for (int i = 0; i < 5000; ++i) {
+        Assert.assertEquals("t" + i, texts.get(i));
+      }
+    }
+  }
@@ -0,0 +1,131 @@
+package com.upokecenter.html;
+/*
+
+Licensed under the Expat License.
+
+Copyright (C) 2013 Peter Occil
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+
+
+import java.util.*;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+  /**
+   * Compares the tokenizer's int ring buffer with the boxed ArrayList
+   * queue drained from the front that it replaced, using the queue
+   * patterns of entity-dense and text-dense input, and measures parsing
+   * of such documents. Run with org.openjdk.jmh.Main on the test class
+   * path.
+   */
+  @BenchmarkMode(Mode.AverageTime)
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  @State(Scope.Benchmark)
+  @Warmup(iterations = 3, time = 1)
+  @Measurement(iterations = 5, time = 1)
+  @Fork(1)
+  public class TokenQueueBenchmark {
+    private static final int Operations = 10000;
+
+    private String entityDense;
+    private String textDense;
+
+    @Setup
+    public void Setup() {
+      StringBuilder sb = new StringBuilder("<!DOCTYPE html><body><p>");
+      for (int i = 0; i < 5000; ++i) {
+        sb.append("&amp;&lt;&#x41;&notin;&copy;&#65;&mdash;x");
+      }
+      this.entityDense = sb.toString();
+      sb = new StringBuilder("<!DOCTYPE html><body><p>");
+      for (int i = 0; i < 5000; ++i) {
+        sb.append("Plain text without references, line after line.\n");
+      }
+      this.textDense = sb.toString();
+    }
+
+    // A character reference can queue a few characters at once, which
+    // are then drained one at a time
+    @Benchmark
+    public int EntityPatternIntDeque() {
+      IntDeque deque = new IntDeque();
+      int sum = 0;
+      for (int i = 0; i < Operations; ++i) {
+        deque.Add(i);
+        deque.Add(i + 1);
+        deque.Add(i + 2);
+        while (!deque.IsEmpty()) {
+          sum += deque.RemoveFirst();
+        }
+      }
+      return sum;
+    }
+
+    @Benchmark
+    public int EntityPatternBoxedList() {
+      List<Integer> list = new ArrayList<Integer>();
+      int sum = 0;
+      for (int i = 0; i < Operations; ++i) {
+        list.add(i);
+        list.add(i + 1);
+        list.add(i + 2);
+        while (list.size() > 0) {
+          sum += list.remove(0);
+        }
+      }
+      return sum;
+    }
+
+    // Plain text queues a single character at a time, as after a
+    // carriage return
+    @Benchmark
+    public int TextPatternIntDeque() {
+      IntDeque deque = new IntDeque();
+      int sum = 0;
+      for (int i = 0; i < Operations; ++i) {
+        deque.Add(i);
+        sum += deque.RemoveFirst();
+      }
+      return sum;
+    }
+
+    @Benchmark
+    public int TextPatternBoxedList() {
+      List<Integer> list = new ArrayList<Integer>();
+      int sum = 0;
+      for (int i = 0; i < Operations; ++i) {
+        list.add(i);
+        sum += list.remove(0);
+      }
+      return sum;
+    }
+
+    @Benchmark
+    public IDocument ParseEntityDense() {
+      return HtmlDocument.FromString(this.entityDense);
+    }
+
+    @Benchmark
+    public IDocument ParseTextDense() {
+      return HtmlDocument.FromString(this.textDense);
+    }
+  }
@@ -0,0 +1,66 @@
+package com.upokecenter.html;
+/*
+
+Licensed under the Expat License.
+
+Copyright (C) 2013 Peter Occil
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+
+
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+  /**
+   * Measures parsing of tag-heavy documents, where most tokens are start
+   * and end tags with attributes. Since tag and comment tokens are reused
+   * once the tree builder consumes them, the parser allocates far fewer
+   * tokens than the document has tags. Run with org.openjdk.jmh.Main on
+   * the test class path, adding "-prof gc" to see allocation rates.
+   */
+  @BenchmarkMode(Mode.AverageTime)
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  @State(Scope.Benchmark)
+  @Warmup(iterations = 3, time = 1)
+  @Measurement(iterations = 5, time = 1)
+  @Fork(1)
+  public class TokenRecyclingBenchmark {
+    @Param({ "100000", "1000000" })
+    public int size;
+
+    private String tagHeavy;
+
+    @Setup
+    public void Setup() {
+      StringBuilder sb = new StringBuilder("<!DOCTYPE html><body>");
+      while (sb.length() < this.size) {
+        sb.append("<div class=row><span class=a title=x>1</span>")
+          .append("<a href='/p?q=1' rel=nofollow><b>link</b></a><!--c-->")
+          .append("<i>2</i></div>\n");
+      }
+      this.tagHeavy = sb.toString();
+    }
+
+    @Benchmark
+    public IDocument TagHeavy() {
+      return HtmlDocument.FromString(this.tagHeavy);
+    }
+  }
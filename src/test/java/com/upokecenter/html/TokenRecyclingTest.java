@@ -0,0 +1,105 @@
+package com.upokecenter.html;
+/*
+
+Licensed under the Expat License.
+
+Copyright (C) 2013 Peter Occil
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+
+
+
+import org.junit.Assert;
+import org.junit.Test;
+
+  public class TokenRecyclingTest {
+    private static final int Repeats = 300;
+
+    // Twenty attributes whose values depend on a number
+    private static String Attributes(int n, boolean serialized) {
+      StringBuilder sb = new StringBuilder();
+      for (int i = 0; i < 20; ++i) {
+        sb.append(" a").append(i).append('=');
+        if (serialized) {
+          sb.append('"').append(n).append('-').append(i).append('"');
+        } else {
+          sb.append(n).append('-').append(i);
+        }
+      }
+      return sb.toString();
+    }
+
+    // Parses many copies of a template, each in an object element so that
+    // its formatting elements don't carry over to the next copy. Elements
+    // reopened by the tree builder are created from the tokens that the
+    // list of active formatting elements refers to; if those tokens were
+    // reused for later tags, the copies would get the wrong attributes.
+    private static void AssertRepeated(String html, String expected) {
+      StringBuilder input = new StringBuilder();
+      StringBuilder output = new StringBuilder();
+      for (int n = 0; n < Repeats; ++n) {
+        String num = Integer.toString(n);
+        input.append("<object>")
+          .append(html.replace("#A", Attributes(n, false)).replace("#", num))
+          .append("</object>");
+        output.append("<object>")
+          .append(expected.replace("#A", Attributes(n, true))
+            .replace("#", num))
+          .append("</object>");
+      }
+      IDocument doc = HtmlDocument.FromString(input.toString());
+      Assert.assertEquals(
+        output.toString(),
+        doc.GetElementsByTagName("body").get(0).GetInnerHTML());
+    }
+
+    @Test
+    public void TestReconstructedFormattingElements() {
+      AssertRepeated(
+        "<p><b id=b# class='x y'#A><i title=t#>#</p>" +
+        "<p>q<span s=#>s</span><!--c#--><u#A>u</u>",
+        "<p><b id=\"b#\" class=\"x y\"#A><i title=\"t#\">#</i></b></p>" +
+        "<p><b id=\"b#\" class=\"x y\"#A><i title=\"t#\">q<span s=\"#\">s" +
+        "</span><!--c#--><u#A>u</u></i></b></p>");
+    }
+
+    @Test
+    public void TestAdoptionAgencyClones() {
+      AssertRepeated(
+        "<div><a href=h# class=k##A>1<div id=d# title=t#>2" +
+        "<p data-x=#>3</a>4</p>5</div></div>",
+        "<div><a href=\"h#\" class=\"k#\"#A>1</a><div id=\"d#\" title=\"t#\">" +
+        "<a href=\"h#\" class=\"k#\"#A>2</a><p data-x=\"#\">" +
+        "<a href=\"h#\" class=\"k#\"#A>3</a>4</p>5</div></div>");
+      AssertRepeated(
+        "<b id=o##A>1<p id=p# class=c#>2</b>3<i title=i#>4</p>5</i>",
+        "<b id=\"o#\"#A>1</b><p id=\"p#\" class=\"c#\"><b id=\"o#\"#A>2</b>" +
+        "3<i title=\"i#\">4</i></p><i title=\"i#\">5</i>");
+    }
+
+    @Test
+    public void TestReusedParser() {
+      // Each parse on a thread reuses the same parser and its token pools
+      for (int i = 0; i < 3; ++i) {
+        TestReconstructedFormattingElements();
+        TestAdoptionAgencyClones();
+      }
+    }
+  }